@@ -0,0 +1,96 @@
+//
+// Swiss QR Bill Generator
+// Copyright (c) 2020 Manuel Bleichenbacher
+// Licensed under MIT License
+// https://opensource.org/licenses/MIT
+//
+
+package net.codecrete.qrbill.generator;
+
+import java.math.BigDecimal;
+
+/**
+ * Sample bills used by the benchmarks
+ */
+class BenchmarkData {
+
+    private BenchmarkData() {
+        // Do not instantiate
+    }
+
+    /**
+     * Gets a bill with typical data.
+     *
+     * @return the bill
+     */
+    static Bill getTypicalBill() {
+        Bill bill = new Bill();
+        bill.getFormat().setLanguage(Language.EN);
+        bill.setAccount("CH4431999123000889012");
+        Address creditor = new Address();
+        creditor.setName("Robert Schneider AG");
+        creditor.setStreet("Rue du Lac");
+        creditor.setHouseNo("1268/2/22");
+        creditor.setPostalCode("2501");
+        creditor.setTown("Biel");
+        creditor.setCountryCode("CH");
+        bill.setCreditor(creditor);
+        bill.setAmount(new BigDecimal("199.95"));
+        bill.setCurrency("CHF");
+        Address debtor = new Address();
+        debtor.setName("Pia-Maria Rutschmann-Schnyder");
+        debtor.setStreet("Grosse Marktgasse");
+        debtor.setHouseNo("28");
+        debtor.setPostalCode("9400");
+        debtor.setTown("Rorschach");
+        debtor.setCountryCode("CH");
+        bill.setDebtor(debtor);
+        bill.setReference("210000000003139471430009017");
+        bill.setUnstructuredMessage("Instruction of 15.09.2019");
+        return bill;
+    }
+
+    /**
+     * Gets a bill with the maximum length in all fields.
+     *
+     * @return the bill
+     */
+    static Bill getMaximumBill() {
+        Bill bill = new Bill();
+        bill.getFormat().setLanguage(Language.DE);
+        bill.setAccount("CH4431999123000889012");
+        Address creditor = new Address();
+        creditor.setName(repeat("Salvation Army Foundation Switzerland ", 70));
+        creditor.setStreet(repeat("Grosse Marktgasse ", 70));
+        creditor.setHouseNo("1268/2/22-1268/2");
+        creditor.setPostalCode("9400-12345-12345");
+        creditor.setTown(repeat("Rorschach am Bodensee ", 35));
+        creditor.setCountryCode("CH");
+        bill.setCreditor(creditor);
+        bill.setAmount(new BigDecimal("999999999.99"));
+        bill.setCurrency("CHF");
+        Address debtor = new Address();
+        debtor.setName(repeat("Pia-Maria Rutschmann-Schnyder ", 70));
+        debtor.setAddressLine1(repeat("Rue du Lac 1268/2/22 ", 70));
+        debtor.setAddressLine2(repeat("2501 Biel/Bienne ", 70));
+        debtor.setCountryCode("CH");
+        bill.setDebtor(debtor);
+        bill.setReference("210000000003139471430009017");
+        bill.setUnstructuredMessage(repeat("Instruction of 15.09.2019, invoice 1234-5678, customer 98765. ", 140));
+        bill.setAlternativeSchemes(new AlternativeScheme[] {
+                new AlternativeScheme("Ultraviolet",
+                        repeat("UV;UltraPay005;12345;10201409;190512;1400.000-53;106017086;180508;", 100)),
+                new AlternativeScheme("Xing Yong",
+                        repeat("XY;XYService;54321;XY1234567890;2020-01-31;CH;1400.000-53;", 100))
+        });
+        return bill;
+    }
+
+    private static String repeat(String text, int length) {
+        StringBuilder sb = new StringBuilder(length + text.length());
+        while (sb.length() < length)
+            sb.append(text);
+        sb.setLength(length);
+        return sb.toString().trim();
+    }
+}
@@ -0,0 +1,56 @@
+//
+// Swiss QR Bill Generator
+// Copyright (c) 2020 Manuel Bleichenbacher
+// Licensed under MIT License
+// https://opensource.org/licenses/MIT
+//
+
+package net.codecrete.qrbill.generator;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmark for the layout of the payment part and the receipt
+ * <p>
+ * The bill is drawn onto a canvas discarding all output. So the result
+ * includes the QR code and the text layout but no output format.
+ * </p>
+ */
+@State(Scope.Thread)
+@BenchmarkMode({ Mode.Throughput, Mode.AverageTime })
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class BillLayoutBenchmark {
+
+    @Param({ "typical", "maximum" })
+    public String billData;
+
+    @Param({ "A4_PORTRAIT_SHEET", "QR_BILL_ONLY", "QR_BILL_WITH_HORIZONTAL_LINE" })
+    public OutputSize outputSize;
+
+    private Bill bill;
+    private NullCanvas canvas;
+
+    @Setup
+    public void setup() {
+        Bill rawBill = "maximum".equals(billData) ? BenchmarkData.getMaximumBill() : BenchmarkData.getTypicalBill();
+        rawBill.getFormat().setOutputSize(outputSize);
+        bill = Validator.validate(rawBill).getCleanedBill();
+        canvas = new NullCanvas();
+    }
+
+    @Benchmark
+    public void draw() throws IOException {
+        BillLayout layout = new BillLayout(bill, canvas);
+        layout.draw();
+    }
+}
@@ -0,0 +1,55 @@
+//
+// Swiss QR Bill Generator
+// Copyright (c) 2020 Manuel Bleichenbacher
+// Licensed under MIT License
+// https://opensource.org/licenses/MIT
+//
+
+package net.codecrete.qrbill.generator;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * End-to-end benchmark for generating a QR bill
+ * <p>
+ * Includes validation, layout and the generation of the SVG, PDF
+ * or PNG output for each output size.
+ * </p>
+ */
+@State(Scope.Thread)
+@BenchmarkMode({ Mode.Throughput, Mode.AverageTime })
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class CanvasBenchmark {
+
+    @Param({ "typical", "maximum" })
+    public String billData;
+
+    @Param({ "SVG", "PDF", "PNG" })
+    public GraphicsFormat graphicsFormat;
+
+    @Param({ "A4_PORTRAIT_SHEET", "QR_BILL_ONLY", "QR_CODE_ONLY", "QR_BILL_WITH_HORIZONTAL_LINE" })
+    public OutputSize outputSize;
+
+    private Bill bill;
+
+    @Setup
+    public void setup() {
+        bill = "maximum".equals(billData) ? BenchmarkData.getMaximumBill() : BenchmarkData.getTypicalBill();
+        bill.getFormat().setGraphicsFormat(graphicsFormat);
+        bill.getFormat().setOutputSize(outputSize);
+    }
+
+    @Benchmark
+    public byte[] generate() {
+        return QRBill.generate(bill);
+    }
+}
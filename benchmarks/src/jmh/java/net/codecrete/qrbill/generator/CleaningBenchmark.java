@@ -0,0 +1,79 @@
+//
+// Swiss QR Bill Generator
+// Copyright (c) 2020 Manuel Bleichenbacher
+// Licensed under MIT License
+// https://opensource.org/licenses/MIT
+//
+
+package net.codecrete.qrbill.generator;
+
+import net.codecrete.qrbill.generator.Payments.CleaningResult;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmark for cleaning field values (character set check and replacement),
+ * comparing the current and the previous implementation.
+ */
+@State(Scope.Thread)
+@BenchmarkMode({ Mode.Throughput, Mode.AverageTime })
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class CleaningBenchmark {
+
+    @Param({ "latin1", "mixed" })
+    public String text;
+
+    private String[] values;
+    private final CleaningResult result = new CleaningResult();
+
+    @Setup
+    public void setup() {
+        if ("mixed".equals(text)) {
+            values = new String[] {
+                    "Ζαχαροπλαστείο Λουκουμάς ΑΕ",
+                    "Zuppinger AG, Industriestrasse 34a",
+                    "Rue du Lac 1268, Biel/Bienne",
+                    "Мария Иванова, Москва",
+                    "Mu\u0308ller-Lu\u0308denscheidt, Zu\u0308rich", // decomposed umlauts
+                    "Abonnement für 2020 (Rechnung Nr. 4711 / Kunde 0815)"
+            };
+        } else {
+            values = new String[] {
+                    "Pia-Maria Rutschmann-Schnyder",
+                    "Grosse Marktgasse",
+                    "Zürich",
+                    "Rue de l'Hôpital 14, Genève",
+                    "Société Anonyme des Fromages Réunis",
+                    "Abonnement für 2020 (Rechnung Nr. 4711 / Kunde 0815)"
+            };
+        }
+    }
+
+    @Benchmark
+    public int current() {
+        int length = 0;
+        for (String value : values) {
+            Payments.cleanValue(value, result);
+            length += result.cleanedString.length();
+        }
+        return length;
+    }
+
+    @Benchmark
+    public int legacy() {
+        int length = 0;
+        for (String value : values) {
+            LegacyCleaning.cleanValue(value, result);
+            length += result.cleanedString.length();
+        }
+        return length;
+    }
+}
@@ -0,0 +1,130 @@
+//
+// Swiss QR Bill Generator
+// Copyright (c) 2020 Manuel Bleichenbacher
+// Licensed under MIT License
+// https://opensource.org/licenses/MIT
+//
+package net.codecrete.qrbill.generator;
+
+import net.codecrete.qrbill.generator.Payments.CleaningResult;
+
+import java.text.Normalizer;
+
+/**
+ * Previous implementation of the string cleaning.
+ * <p>
+ * Classifies characters with a chain of comparisons and normalizes the entire
+ * string if a character beyond 0xff is found. Kept as a baseline for
+ * {@link CleaningBenchmark}.
+ * </p>
+ */
+class LegacyCleaning {
+
+    private LegacyCleaning() {
+        // Do not instantiate
+    }
+
+    /**
+     * Cleans a string value.
+     *
+     * @param value  string value to clean
+     * @param result result to be filled with cleaned string and flag
+     */
+    static void cleanValue(String value, CleaningResult result) {
+        result.cleanedString = null;
+        result.replacedUnsupportedChars = false;
+        cleanValue(value, result, false);
+        if (result.cleanedString != null && result.cleanedString.length() == 0)
+            result.cleanedString = null;
+    }
+
+    private static void cleanValue(String value, CleaningResult result, boolean isNormalized) {
+        if (value == null)
+            return;
+
+        int len = value.length();
+        boolean justProcessedSpace = false;
+        StringBuilder sb = null;
+        int lastCopiedPos = 0;
+
+        int pos = 0;
+        while (pos < len) {
+            char ch = value.charAt(pos);
+
+            if (isValidQRBillCharacter(ch)) {
+                justProcessedSpace = ch == ' ';
+                pos++;
+                continue;
+            }
+
+            if (ch > 0xff && !isNormalized) {
+                isNormalized = Normalizer.isNormalized(value, Normalizer.Form.NFC);
+                if (!isNormalized) {
+                    value = Normalizer.normalize(value, Normalizer.Form.NFC);
+                    cleanValue(value, result, true);
+                    return;
+                }
+            }
+
+            if (sb == null)
+                sb = new StringBuilder(value.length());
+
+            if (pos > lastCopiedPos)
+                sb.append(value, lastCopiedPos, pos);
+
+            if (Character.isHighSurrogate(ch)) {
+                int codePoint = value.codePointAt(pos);
+                if (Character.getType(codePoint) != Character.COMBINING_SPACING_MARK)
+                    sb.append('.');
+                justProcessedSpace = false;
+                pos++;
+            } else {
+                if (ch <= ' ') {
+                    if (!justProcessedSpace)
+                        sb.append(' ');
+                    justProcessedSpace = true;
+                } else {
+                    sb.append('.');
+                    justProcessedSpace = false;
+                }
+            }
+            pos++;
+            lastCopiedPos = pos;
+        }
+
+        if (sb == null) {
+            result.cleanedString = value.trim();
+            return;
+        }
+
+        if (lastCopiedPos < len)
+            sb.append(value, lastCopiedPos, len);
+
+        result.cleanedString = sb.toString().trim();
+        result.replacedUnsupportedChars = true;
+    }
+
+    private static boolean isValidQRBillCharacter(char ch) {
+        if (ch < 0x20)
+            return false;
+        if (ch == 0x5e)
+            return false;
+        if (ch <= 0x7e)
+            return true;
+        if (ch == 0xa3 || ch == 0xb4)
+            return true;
+        if (ch < 0xc0 || ch > 0xfd)
+            return false;
+        if (ch == 0xc3 || ch == 0xc5 || ch == 0xc6)
+            return false;
+        if (ch == 0xd0 || ch == 0xd5 || ch == 0xd7 || ch == 0xd8)
+            return false;
+        if (ch == 0xdd || ch == 0xde)
+            return false;
+        if (ch == 0xe3 || ch == 0xe5 || ch == 0xe6)
+            return false;
+        if (ch == 0xf0 || ch == 0xf5 || ch == 0xf8)
+            return false;
+        return true;
+    }
+}
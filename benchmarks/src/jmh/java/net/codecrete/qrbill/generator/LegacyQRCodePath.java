@@ -0,0 +1,140 @@
+//
+// Swiss QR Bill Generator
+// Copyright (c) 2020 Manuel Bleichenbacher
+// Licensed under MIT License
+// https://opensource.org/licenses/MIT
+//
+package net.codecrete.qrbill.generator;
+
+import io.nayuki.qrcodegen.QrCode;
+
+import java.util.Arrays;
+
+/**
+ * Previous implementation of the rectangle decomposition of the QR code.
+ * <p>
+ * Uses a {@code boolean[][]} module matrix. Kept as a baseline for
+ * {@link QRCodePathBenchmark}.
+ * </p>
+ */
+class LegacyQRCodePath {
+
+    private final int size;
+    private final int[] rectangles;
+
+    private LegacyQRCodePath(int size, int[] rectangles) {
+        this.size = size;
+        this.rectangles = rectangles;
+    }
+
+    /**
+     * Encodes the specified text as a QR code and computes the rectangles.
+     *
+     * @param text the text to encode
+     * @return the QR code path
+     */
+    static LegacyQRCodePath create(String text) {
+        return create(QrCode.encodeText(text, QrCode.Ecc.MEDIUM));
+    }
+
+    /**
+     * Computes the rectangles for the specified QR code.
+     *
+     * @param qrCode the encoded QR code
+     * @return the QR code path
+     */
+    static LegacyQRCodePath create(QrCode qrCode) {
+        boolean[][] modules = copyModules(qrCode);
+        clearSwissCrossArea(modules);
+
+        int size = modules.length;
+        int[] rectangles = new int[64];
+        int length = 0;
+        for (int y = 0; y < size; y++) {
+            for (int x = 0; x < size; x++) {
+                if (modules[y][x]) {
+                    if (length + 4 > rectangles.length)
+                        rectangles = Arrays.copyOf(rectangles, rectangles.length * 2);
+                    findLargestRectangle(modules, x, y, rectangles, length);
+                    length += 4;
+                }
+            }
+        }
+
+        return new LegacyQRCodePath(size, Arrays.copyOf(rectangles, length));
+    }
+
+    /**
+     * Gets the number of modules per row and column.
+     *
+     * @return the number of modules
+     */
+    int getSize() {
+        return size;
+    }
+
+    /**
+     * Gets the rectangles (x, y, width, height for each rectangle).
+     *
+     * @return the rectangles
+     */
+    int[] getRectangles() {
+        return rectangles;
+    }
+
+    // Simple algorithms to reduce the number of rectangles for drawing the QR code
+    // and reduce SVG size
+    private static void findLargestRectangle(boolean[][] modules, int x, int y, int[] rectangles, int offset) {
+        int size = modules.length;
+
+        int bestW = 1;
+        int bestH = 1;
+        int maxArea = 1;
+
+        int xLimit = size;
+        int iy = y;
+        while (iy < size && modules[iy][x]) {
+            int w = 0;
+            while (x + w < xLimit && modules[iy][x + w])
+                w++;
+            int area = w * (iy - y + 1);
+            if (area > maxArea) {
+                maxArea = area;
+                bestW = w;
+                bestH = iy - y + 1;
+            }
+            xLimit = x + w;
+            iy++;
+        }
+
+        rectangles[offset] = x;
+        rectangles[offset + 1] = y;
+        rectangles[offset + 2] = bestW;
+        rectangles[offset + 3] = bestH;
+        clearRectangle(modules, x, y, bestW, bestH);
+    }
+
+    private static void clearSwissCrossArea(boolean[][] modules) {
+        // The Swiss cross area is supposed to be 7 by 7 mm in the center of
+        // the QR code, which is 46 by 46 mm.
+        // We clear sufficient modules to make room for the cross.
+        int size = modules.length;
+        int start = (int) Math.floor((46 - 6.8) / 2 * size / 46);
+        clearRectangle(modules, start, start, size - 2 * start, size - 2 * start);
+    }
+
+    private static boolean[][] copyModules(QrCode qrCode) {
+        int size = qrCode.size;
+        boolean[][] modules = new boolean[size][size];
+        for (int y = 0; y < size; y++)
+            for (int x = 0; x < size; x++)
+                modules[y][x] = qrCode.getModule(x, y);
+        return modules;
+    }
+
+    private static void clearRectangle(boolean[][] modules, int x, int y, int width, int height) {
+        for (int iy = y; iy < y + height; iy++)
+            for (int ix = x; ix < x + width; ix++)
+                modules[iy][ix] = false;
+    }
+}
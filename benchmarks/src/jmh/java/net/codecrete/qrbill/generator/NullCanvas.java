@@ -0,0 +1,80 @@
+//
+// Swiss QR Bill Generator
+// Copyright (c) 2020 Manuel Bleichenbacher
+// Licensed under MIT License
+// https://opensource.org/licenses/MIT
+//
+
+package net.codecrete.qrbill.generator;
+
+import net.codecrete.qrbill.canvas.AbstractCanvas;
+
+/**
+ * Canvas discarding all graphics operations.
+ * <p>
+ * Used to measure the layout and the QR code drawing without the cost
+ * of a specific output format. The font metrics are those of the
+ * regular canvases.
+ * </p>
+ */
+class NullCanvas extends AbstractCanvas {
+
+    NullCanvas() {
+        setupFontMetrics("Helvetica,Arial,\"Liberation Sans\"");
+    }
+
+    @Override
+    public void setTransformation(double translateX, double translateY, double rotate, double scaleX, double scaleY) {
+        // no output
+    }
+
+    @Override
+    public void putText(String text, double x, double y, int fontSize, boolean isBold) {
+        // no output
+    }
+
+    @Override
+    public void startPath() {
+        // no output
+    }
+
+    @Override
+    public void moveTo(double x, double y) {
+        // no output
+    }
+
+    @Override
+    public void lineTo(double x, double y) {
+        // no output
+    }
+
+    @Override
+    public void cubicCurveTo(double x1, double y1, double x2, double y2, double x, double y) {
+        // no output
+    }
+
+    @Override
+    public void addRectangle(double x, double y, double width, double height) {
+        // no output
+    }
+
+    @Override
+    public void closeSubpath() {
+        // no output
+    }
+
+    @Override
+    public void fillPath(int color) {
+        // no output
+    }
+
+    @Override
+    public void strokePath(double strokeWidth, int color) {
+        // no output
+    }
+
+    @Override
+    public void close() {
+        // nothing to release
+    }
+}
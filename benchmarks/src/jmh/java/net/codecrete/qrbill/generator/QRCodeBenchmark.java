@@ -0,0 +1,51 @@
+//
+// Swiss QR Bill Generator
+// Copyright (c) 2020 Manuel Bleichenbacher
+// Licensed under MIT License
+// https://opensource.org/licenses/MIT
+//
+
+package net.codecrete.qrbill.generator;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmark for generating and drawing the QR code
+ * <p>
+ * The QR code is drawn onto a canvas discarding all output.
+ * </p>
+ */
+@State(Scope.Thread)
+@BenchmarkMode({ Mode.Throughput, Mode.AverageTime })
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class QRCodeBenchmark {
+
+    @Param({ "typical", "maximum" })
+    public String billData;
+
+    private Bill bill;
+    private NullCanvas canvas;
+
+    @Setup
+    public void setup() {
+        Bill rawBill = "maximum".equals(billData) ? BenchmarkData.getMaximumBill() : BenchmarkData.getTypicalBill();
+        bill = Validator.validate(rawBill).getCleanedBill();
+        canvas = new NullCanvas();
+    }
+
+    @Benchmark
+    public void draw() throws IOException {
+        QRCode qrCode = new QRCode(bill);
+        qrCode.draw(canvas, 0, 0);
+    }
+}
@@ -0,0 +1,56 @@
+//
+// Swiss QR Bill Generator
+// Copyright (c) 2020 Manuel Bleichenbacher
+// Licensed under MIT License
+// https://opensource.org/licenses/MIT
+//
+
+package net.codecrete.qrbill.generator;
+
+import io.nayuki.qrcodegen.QrCode;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmark comparing the bit-packed rectangle decomposition of the QR code
+ * with the previous implementation based on {@code boolean[][]}
+ * <p>
+ * The QR code is encoded once in the setup so that only the decomposition
+ * into rectangles is measured.
+ * </p>
+ */
+@State(Scope.Thread)
+@BenchmarkMode({ Mode.Throughput, Mode.AverageTime })
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class QRCodePathBenchmark {
+
+    @Param({ "typical", "maximum" })
+    public String billData;
+
+    private QrCode qrCode;
+
+    @Setup
+    public void setup() {
+        Bill rawBill = "maximum".equals(billData) ? BenchmarkData.getMaximumBill() : BenchmarkData.getTypicalBill();
+        String text = QRCodeText.create(Validator.validate(rawBill).getCleanedBill());
+        qrCode = QrCode.encodeText(text, QrCode.Ecc.MEDIUM);
+    }
+
+    @Benchmark
+    public QRCodePath bitPacked() {
+        return QRCodePath.create(qrCode);
+    }
+
+    @Benchmark
+    public LegacyQRCodePath legacy() {
+        return LegacyQRCodePath.create(qrCode);
+    }
+}
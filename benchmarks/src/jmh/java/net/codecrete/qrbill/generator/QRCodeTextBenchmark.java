@@ -0,0 +1,77 @@
+//
+// Swiss QR Bill Generator
+// Copyright (c) 2020 Manuel Bleichenbacher
+// Licensed under MIT License
+// https://opensource.org/licenses/MIT
+//
+
+package net.codecrete.qrbill.generator;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmark for encoding and decoding the text embedded in the QR code
+ */
+@State(Scope.Thread)
+@BenchmarkMode({ Mode.Throughput, Mode.AverageTime })
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class QRCodeTextBenchmark {
+
+    @Param({ "typical", "maximum" })
+    public String billData;
+
+    private Bill bill;
+    private String text;
+    private ByteBuffer utf8Text;
+
+    @Setup
+    public void setup() {
+        Bill rawBill = "maximum".equals(billData) ? BenchmarkData.getMaximumBill() : BenchmarkData.getTypicalBill();
+        bill = Validator.validate(rawBill).getCleanedBill();
+        text = QRCodeText.create(bill);
+        utf8Text = ByteBuffer.wrap(text.getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Benchmark
+    public String create() {
+        return QRCodeText.create(bill);
+    }
+
+    @Benchmark
+    public byte[] createUTF8() {
+        return QRCodeText.createUTF8(bill);
+    }
+
+    @Benchmark
+    public byte[] createAndEncode() {
+        return QRCodeText.create(bill).getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Benchmark
+    public Bill decode() {
+        return QRCodeText.decode(text);
+    }
+
+    @Benchmark
+    public String viewAccountAndReference() {
+        QRCodeTextView view = QRCodeTextView.parse(text);
+        return view.getAccount() + view.getReference();
+    }
+
+    @Benchmark
+    public String viewAccountAndReferenceUTF8() {
+        QRCodeTextView view = QRCodeTextView.parse(utf8Text);
+        return view.getAccount() + view.getReference();
+    }
+}
@@ -46,16 +46,16 @@ public class PerformanceTest {
         }
 
         counter.set(0);
-        long startTime = System.currentTimeMillis();
+        long startTime = System.nanoTime();
         for (int i = 0; i < BATCH_COUNT; i++) {
             addBatchOfWork(executor, graphicsFormat);
         }
         executor.shutdown();
         executor.awaitTermination(100, TimeUnit.SECONDS);
-        long endTime = System.currentTimeMillis();
+        long endTime = System.nanoTime();
 
-        double billPerSecond = (endTime - startTime) * 1000.0 / counter.intValue();
-        System.out.printf("Performance for %s: %.0f bill/second", graphicsFormat.name(), billPerSecond);
+        double billPerSecond = counter.intValue() * 1e9 / (endTime - startTime);
+        System.out.printf("Performance for %s: %.0f bill/second%n", graphicsFormat.name(), billPerSecond);
     }
 
     void addBatchOfWork(ExecutorService executor, GraphicsFormat graphicsFormat) {
@@ -21,7 +21,7 @@ public abstract class AbstractCanvas implements Canvas {
     FontMetrics fontMetrics;
 
     protected void setupFontMetrics(String fontFamilyList) {
-        fontMetrics = new FontMetrics(fontFamilyList);
+        fontMetrics = FontMetrics.forFontFamilyList(fontFamilyList);
     }
 
     @Override
@@ -56,4 +56,9 @@ public abstract class AbstractCanvas implements Canvas {
     public String[] splitLines(String text, double maxLength, int fontSize) {
         return fontMetrics.splitLines(text, maxLength, fontSize);
     }
+
+    @Override
+    public int[] countLines(String text, double maxLength, int... fontSizes) {
+        return fontMetrics.countLines(text, maxLength, fontSizes);
+    }
 }
@@ -39,6 +39,21 @@ public interface Canvas extends Closeable {
         Dotted
     }
 
+    /**
+     * Drawing operations for static content
+     *
+     * @see #drawStaticContent(String, StaticContent)
+     */
+    @FunctionalInterface
+    interface StaticContent {
+        /**
+         * Draws the static content onto the canvas.
+         *
+         * @throws IOException thrown if the graphics cannot be generated
+         */
+        void draw() throws IOException;
+    }
+
     /**
      * Sets a translation, rotation and scaling for the subsequent operations
      * <p>
@@ -230,4 +245,46 @@ public interface Canvas extends Closeable {
      * @return an array of text lines
      */
     String[] splitLines(String text, double maxLength, int fontSize);
+
+    /**
+     * Counts the number of lines the text is split into for several font sizes.
+     * <p>
+     * The result is the same as calling {@link #splitLines(String, double, int)}
+     * for each font size and taking the number of lines. Implementations can
+     * measure the text once for all font sizes.
+     * </p>
+     *
+     * @param text      the text
+     * @param maxLength the maximum line length (in pt)
+     * @param fontSizes the font sizes (in pt)
+     * @return an array with the number of lines for each font size
+     */
+    default int[] countLines(String text, double maxLength, int... fontSizes) {
+        int[] counts = new int[fontSizes.length];
+        for (int i = 0; i < fontSizes.length; i++)
+            counts[i] = splitLines(text, maxLength, fontSizes[i]).length;
+        return counts;
+    }
+
+    /**
+     * Draws static content, i.e. content that only depends on the specified key.
+     * <p>
+     * The content is drawn by calling the drawing operations of this canvas.
+     * It starts with the current transformation and may set new transformations.
+     * After the content has been drawn, the last transformation set by the content
+     * remains in effect.
+     * </p>
+     * <p>
+     * Canvas implementations can record the content once and reuse it for
+     * subsequent calls with the same key. The default implementation draws the
+     * content directly.
+     * </p>
+     *
+     * @param key     key uniquely identifying the static content
+     * @param content the drawing operations
+     * @throws IOException thrown if the graphics cannot be generated
+     */
+    default void drawStaticContent(String key, StaticContent content) throws IOException {
+        content.draw();
+    }
 }
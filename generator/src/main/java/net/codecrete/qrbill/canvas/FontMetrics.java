@@ -6,8 +6,11 @@
 //
 package net.codecrete.qrbill.canvas;
 
-import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
 import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Simple font metrics class, independent of graphics subsystems and
@@ -16,67 +19,130 @@ import java.util.Locale;
  * <p>
  * It supports Helvetica, Arial, Frutiger, Liberation Sans. Kerning and ligatures are not supported.
  * </p>
+ * <p>
+ * Instances are thread-safe. Apart from a cache of split texts, they are immutable.
+ * Use {@link #forFontFamilyList(String)} to get a shared instance.
+ * </p>
+ * <p>
+ * The cache of split texts is divided into segments, each a small LRU cache
+ * with a lock of its own. So threads sharing an instance rarely wait for each other.
+ * </p>
  */
 public class FontMetrics {
 
     private static final double PT_TO_MM = 25.4 / 72;
 
+    // Maximum number of shared instances (protects against unbounded growth
+    // if font family lists are generated dynamically)
+    private static final int MAX_SHARED_INSTANCES = 100;
+    private static final Map<String, FontMetrics> sharedInstances = new ConcurrentHashMap<>();
+
+    // Number of segments and maximum number of split texts per segment
+    private static final int LINE_CACHE_SEGMENTS = 16;
+    private static final int LINE_CACHE_SEGMENT_CAPACITY = 16;
+
     private final String fontFamilyList;
     private final String firstFontFamily;
-    private final char[] charWidthx20x7F;
-    private final char[] charWidthxA0xFF;
-    private final char charDefaultWidth;
-    private final FontMetrics boldMetrics;
+    private final short[] charWidths;
+    private final short charDefaultWidth;
+    private final short[] boldCharWidths;
+    private final short boldCharDefaultWidth;
+    // Shared by all threads using the same font family list, therefore segmented
+    private final LineCacheSegment[] lineCache = createLineCache();
+
+    /**
+     * Gets a shared instance for the specified font family list.
+     * <p>
+     * Instances are cached by font family list.
+     * </p>
+     *
+     * @param fontFamilyList list of font families (comma separated, CSS syntax)
+     * @return font metrics
+     */
+    public static FontMetrics forFontFamilyList(String fontFamilyList) {
+        FontMetrics fontMetrics = sharedInstances.get(fontFamilyList);
+        if (fontMetrics != null)
+            return fontMetrics;
+
+        fontMetrics = new FontMetrics(fontFamilyList);
+        if (sharedInstances.size() < MAX_SHARED_INSTANCES) {
+            FontMetrics existing = sharedInstances.putIfAbsent(fontFamilyList, fontMetrics);
+            if (existing != null)
+                fontMetrics = existing;
+        }
+        return fontMetrics;
+    }
 
+    /**
+     * Creates a new instance for the specified font family list.
+     * <p>
+     * The first font family in the list determines the character widths.
+     * </p>
+     *
+     * @param fontFamilyList list of font families (comma separated, CSS syntax)
+     * @see #forFontFamilyList(String)
+     */
     public FontMetrics(String fontFamilyList) {
         this.fontFamilyList = fontFamilyList;
         firstFontFamily = getFirstFontFamily(fontFamilyList);
         String family = firstFontFamily.toLowerCase(Locale.US);
 
+        final char[] charWidthx20x7F;
+        final char[] charWidthxA0xFF;
         final char[] boldCharWidthx20x7F;
         final char[] boldCharWidthxA0xFF;
-        final char boldCharDefaultWidth;
 
         if (family.contains("arial")) {
             charWidthx20x7F = CharWidthData.ARIAL_NORMAL_20_7F;
             charWidthxA0xFF = CharWidthData.ARIAL_NORMAL_A0_FF;
-            charDefaultWidth = CharWidthData.ARIAL_NORMAL_DEFAULT_WIDTH;
+            charDefaultWidth = (short) CharWidthData.ARIAL_NORMAL_DEFAULT_WIDTH;
             boldCharWidthx20x7F = CharWidthData.ARIAL_BOLD_20_7F;
             boldCharWidthxA0xFF = CharWidthData.ARIAL_BOLD_A0_FF;
-            boldCharDefaultWidth = CharWidthData.ARIAL_BOLD_DEFAULT_WIDTH;
+            boldCharDefaultWidth = (short) CharWidthData.ARIAL_BOLD_DEFAULT_WIDTH;
         } else if (family.contains("liberation") && family.contains("sans")) {
             charWidthx20x7F = CharWidthData.LIBERATION_SANS_NORMAL_20_7F;
             charWidthxA0xFF = CharWidthData.LIBERATION_SANS_NORMAL_A0_FF;
-            charDefaultWidth = CharWidthData.LIBERATION_SANS_NORMAL_DEFAULT_WIDTH;
+            charDefaultWidth = (short) CharWidthData.LIBERATION_SANS_NORMAL_DEFAULT_WIDTH;
             boldCharWidthx20x7F = CharWidthData.LIBERATION_SANS_BOLD_20_7F;
             boldCharWidthxA0xFF = CharWidthData.LIBERATION_SANS_BOLD_A0_FF;
-            boldCharDefaultWidth = CharWidthData.LIBERATION_SANS_BOLD_DEFAULT_WIDTH;
+            boldCharDefaultWidth = (short) CharWidthData.LIBERATION_SANS_BOLD_DEFAULT_WIDTH;
         } else if (family.contains("frutiger")) {
             charWidthx20x7F = CharWidthData.FRUTIGER_NORMAL_20_7F;
             charWidthxA0xFF = CharWidthData.FRUTIGER_NORMAL_A0_FF;
-            charDefaultWidth = CharWidthData.FRUTIGER_NORMAL_DEFAULT_WIDTH;
+            charDefaultWidth = (short) CharWidthData.FRUTIGER_NORMAL_DEFAULT_WIDTH;
             boldCharWidthx20x7F = CharWidthData.FRUTIGER_BOLD_20_7F;
             boldCharWidthxA0xFF = CharWidthData.FRUTIGER_BOLD_A0_FF;
-            boldCharDefaultWidth = CharWidthData.FRUTIGER_BOLD_DEFAULT_WIDTH;
+            boldCharDefaultWidth = (short) CharWidthData.FRUTIGER_BOLD_DEFAULT_WIDTH;
         } else {
             charWidthx20x7F = CharWidthData.HELVETICA_NORMAL_20_7F;
             charWidthxA0xFF = CharWidthData.HELVETICA_NORMAL_A0_FF;
-            charDefaultWidth = CharWidthData.HELVETICA_NORMAL_DEFAULT_WIDTH;
+            charDefaultWidth = (short) CharWidthData.HELVETICA_NORMAL_DEFAULT_WIDTH;
             boldCharWidthx20x7F = CharWidthData.HELVETICA_BOLD_20_7F;
             boldCharWidthxA0xFF = CharWidthData.HELVETICA_BOLD_A0_FF;
-            boldCharDefaultWidth = CharWidthData.HELVETICA_BOLD_DEFAULT_WIDTH;
+            boldCharDefaultWidth = (short) CharWidthData.HELVETICA_BOLD_DEFAULT_WIDTH;
         }
 
-        boldMetrics = new FontMetrics(boldCharWidthx20x7F, boldCharWidthxA0xFF, boldCharDefaultWidth);
+        charWidths = createWidthTable(charWidthx20x7F, charWidthxA0xFF, charDefaultWidth);
+        boldCharWidths = createWidthTable(boldCharWidthx20x7F, boldCharWidthxA0xFF, boldCharDefaultWidth);
     }
 
-    private FontMetrics(char[] charWidthx20x7F, char[] charWidthxA0xFF, char charDefaultWidth) {
-        fontFamilyList = null;
-        firstFontFamily = null;
-        this.charWidthx20x7F = charWidthx20x7F;
-        this.charWidthxA0xFF = charWidthxA0xFF;
-        this.charDefaultWidth = charDefaultWidth;
-        this.boldMetrics = null;
+    /**
+     * Creates a table with the widths of the characters 0x00 to 0xff.
+     * <p>
+     * Characters without width data get the default width.
+     * </p>
+     */
+    private static short[] createWidthTable(char[] charWidthx20x7F, char[] charWidthxA0xFF, short defaultWidth) {
+        short[] widths = new short[256];
+        for (int ch = 0; ch < 256; ch++) {
+            char width = 0;
+            if (ch >= 0x20 && ch <= 0x7f)
+                width = charWidthx20x7F[ch - 0x20];
+            else if (ch >= 0xa0)
+                width = charWidthxA0xFF[ch - 0xa0];
+            widths[ch] = width != 0 ? (short) width : defaultWidth;
+        }
+        return widths;
     }
 
     /**
@@ -134,6 +200,10 @@ public class FontMetrics {
      * If a line would exceed the specified maximum length, line breaks are
      * inserted. Newlines are treated as fixed line breaks.
      * </p>
+     * <p>
+     * The results are cached (256 entries, least recently used are evicted first)
+     * as the same texts, e.g. the creditor address, are often split again and again.
+     * </p>
      *
      * @param text      the text
      * @param maxLength the maximum line length (in pt)
@@ -141,109 +211,205 @@ public class FontMetrics {
      * @return an array of text lines
      */
     public String[] splitLines(String text, double maxLength, int fontSize) {
+        LineCacheKey key = new LineCacheKey(text, maxLength, fontSize);
+        LineCacheSegment segment = lineCache[(key.hashCode ^ (key.hashCode >>> 16)) & (LINE_CACHE_SEGMENTS - 1)];
+        String[] lines;
+        synchronized (segment) {
+            lines = segment.get(key);
+        }
 
-        /* Yes, this code has a cognitive complexity of 37. Deal with it. */
+        if (lines == null) {
+            int[] offsets = splitLineOffsets(text, maxLength, fontSize);
+            lines = new String[offsets.length / 2];
+            for (int i = 0; i < lines.length; i++)
+                lines[i] = text.substring(offsets[2 * i], offsets[2 * i + 1]);
+            synchronized (segment) {
+                segment.put(key, lines);
+            }
+        }
+
+        // the cached array must not be modified by the caller
+        return lines.clone();
+    }
 
-        ArrayList<String> lines = new ArrayList<>();
+    /**
+     * Splits the text into lines and returns the start and end offset of each line.
+     * <p>
+     * The result is the same as {@link #splitLines(String, double, int)} but
+     * without creating a string for each line. Element {@code 2 * i} contains
+     * the start offset of line {@code i} (inclusive), element {@code 2 * i + 1}
+     * its end offset (exclusive). The result is not cached.
+     * </p>
+     *
+     * @param text      the text
+     * @param maxLength the maximum line length (in pt)
+     * @param fontSize  the font size (in pt)
+     * @return an array of start and end offsets
+     */
+    public int[] splitLineOffsets(String text, double maxLength, int fontSize) {
+        int[] widthSums = getWidthPrefixSums(text);
         int max = (int) (maxLength * 1000 / fontSize);
+        int[] offsets = new int[2 * breakLines(text, widthSums, max, null)];
+        breakLines(text, widthSums, max, offsets);
+        return offsets;
+    }
+
+    /**
+     * Counts the number of lines the text is split into for several font sizes.
+     * <p>
+     * The result is the same as calling {@link #splitLines(String, double, int)} for
+     * each font size and taking the array length. But the text is only measured once.
+     * </p>
+     *
+     * @param text      the text
+     * @param maxLength the maximum line length (in pt)
+     * @param fontSizes the font sizes (in pt)
+     * @return an array with the number of lines for each font size
+     */
+    public int[] countLines(String text, double maxLength, int... fontSizes) {
+        int[] widthSums = getWidthPrefixSums(text);
+        int[] counts = new int[fontSizes.length];
+        for (int i = 0; i < fontSizes.length; i++)
+            counts[i] = breakLines(text, widthSums, (int) (maxLength * 1000 / fontSizes[i]), null);
+        return counts;
+    }
+
+    /**
+     * Computes the prefix sums of the character widths (of the regular weight).
+     * <p>
+     * Element {@code i} of the result contains the width of the first {@code i} characters.
+     * </p>
+     */
+    private int[] getWidthPrefixSums(String text) {
+        final short[] widths = charWidths;
+        int len = text.length();
+        int[] widthSums = new int[len + 1];
+        int sum = 0;
+        for (int i = 0; i < len; i++) {
+            char ch = text.charAt(i);
+            sum += ch <= 0xff ? widths[ch] : charDefaultWidth;
+            widthSums[i + 1] = sum;
+        }
+        return widthSums;
+    }
 
+    /**
+     * Breaks the text into lines.
+     * <p>
+     * If {@code offsets} is not {@code null}, the start and end offsets of
+     * the lines are stored in it.
+     * </p>
+     *
+     * @param text      the text
+     * @param widthSums prefix sums of the character widths
+     * @param max       the maximum line width (in AFM units)
+     * @param offsets   array for start and end offsets, or {@code null}
+     * @return the number of lines
+     */
+    private static int breakLines(String text, int[] widthSums, int max, int[] offsets) {
         int len = text.length(); // length of line
         int pos = 0; // current position (0 ..< end)
         int lineStartPos = 0; // start position of current line
-        int lineWidth = 0; // current line width (in AFM metric)
+        int lineCount = 0;
         boolean addEmptyLine = true; // flag if an empty line should be added as the last line
 
-        // iterate over all characters
         while (pos < len) {
 
-            // get current character
-            char ch = text.charAt(pos);
-
             // skip leading white space at start of current line
-            if (ch == ' ' && pos == lineStartPos) {
+            if (text.charAt(pos) == ' ' && pos == lineStartPos) {
                 lineStartPos++;
                 pos++;
                 continue;
             }
-
-            // add width of character
-            lineWidth += getCharWidth(ch);
             addEmptyLine = false;
 
-            // line break is need if the maximum width has been reached
-            // or if an explicit line break has been encountered
-            if (ch == '\n' || lineWidth > max) {
+            // find the first character exceeding the maximum width
+            // (the position where the width sum first exceeds the limit)
+            int limit = widthSums[lineStartPos] + max;
+            int low = pos;
+            int high = len;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (widthSums[mid + 1] > limit)
+                    high = mid;
+                else
+                    low = mid + 1;
+            }
 
-                // find the position for the line break
-                int breakPos;
-                if (ch == '\n') {
-                    breakPos = pos;
+            // an explicit line break might come first
+            int newlinePos = text.indexOf('\n', pos);
+            boolean isNewline = newlinePos >= 0 && newlinePos <= low;
+            pos = isNewline ? newlinePos : low;
+            if (pos == len)
+                break; // no line break needed
 
-                } else {
-                    // locate the previous space on the line
-                    int spacePos = pos - 1;
-                    while (spacePos > lineStartPos) {
-                        if (text.charAt(spacePos) == ' ')
-                            break;
-                        spacePos--;
-                    }
-
-                    // if space was found, it's the break position
-                    if (spacePos > lineStartPos) {
-                        breakPos = spacePos;
-
-                    } else {
-                        // if no space was found, forcibly break word
-                        if (pos > lineStartPos)
-                            breakPos = pos;
-                        else
-                            breakPos = lineStartPos + 1; // at least one character
-                    }
+            // find the position for the line break
+            int breakPos;
+            if (isNewline) {
+                breakPos = pos;
+
+            } else {
+                // locate the previous space on the line
+                int spacePos = pos - 1;
+                while (spacePos > lineStartPos) {
+                    if (text.charAt(spacePos) == ' ')
+                        break;
+                    spacePos--;
                 }
 
-                // add line to result
-                addResultLine(lines, text, lineStartPos, breakPos);
+                // if space was found, it's the break position
+                if (spacePos > lineStartPos) {
+                    breakPos = spacePos;
 
-                // setup start of new line
-                lineStartPos = breakPos;
-                if (ch == '\n') {
-                    lineStartPos = breakPos + 1;
-                    addEmptyLine = true;
+                } else {
+                    // if no space was found, forcibly break word
+                    if (pos > lineStartPos)
+                        breakPos = pos;
+                    else
+                        breakPos = lineStartPos + 1; // at least one character
                 }
-                pos = lineStartPos;
-                lineWidth = 0;
+            }
 
-            } else {
-                // no line break needed; progress one character
-                pos++;
+            // add line to result
+            if (offsets != null) {
+                offsets[2 * lineCount] = lineStartPos;
+                offsets[2 * lineCount + 1] = trimTrailingSpaces(text, lineStartPos, breakPos);
             }
+            lineCount++;
+
+            // setup start of new line
+            lineStartPos = breakPos;
+            if (isNewline) {
+                lineStartPos = breakPos + 1;
+                addEmptyLine = true;
+            }
+            pos = lineStartPos;
         }
 
         // complete the last line
-        if (pos > lineStartPos) {
-            addResultLine(lines, text, lineStartPos, pos);
-        } else if (addEmptyLine) {
-            lines.add("");
+        if (pos > lineStartPos || addEmptyLine) {
+            if (offsets != null) {
+                offsets[2 * lineCount] = lineStartPos;
+                offsets[2 * lineCount + 1] = trimTrailingSpaces(text, lineStartPos, pos);
+            }
+            lineCount++;
         }
 
-        return lines.toArray(new String[0]);
+        return lineCount;
     }
 
     /**
-     * Add the specified text range to the resulting lines.
-     * <p>
-     * Trim trailing white space
-     * </p>
+     * Returns the end of the specified text range without trailing white space.
      *
-     * @param lines resulting lines array
      * @param text  text
      * @param start start of text range (including)
      * @param end   end of text range (excluding)
+     * @return end of trimmed text range (excluding)
      */
-    private static void addResultLine(ArrayList<String> lines, String text, int start, int end) {
+    private static int trimTrailingSpaces(String text, int start, int end) {
         while (end > start && text.charAt(end - 1) == ' ')
             end--;
-        lines.add(text.substring(start, end));
+        return end;
     }
 
     /**
@@ -255,42 +421,16 @@ public class FontMetrics {
      * @return width (in mm)
      */
     public double getTextWidth(CharSequence text, int fontSize, boolean isBold) {
-        if (isBold)
-            return boldMetrics.getTextWidth(text, fontSize, false);
+        final short[] widths = isBold ? boldCharWidths : charWidths;
+        final short defaultWidth = isBold ? boldCharDefaultWidth : charDefaultWidth;
 
-        double width = 0;
+        int width = 0;
         int len = text.length();
-        for (int i = 0; i < len; i++)
-            width += getCharWidth(text.charAt(i));
-        return width * fontSize / 1000 * PT_TO_MM;
-    }
-
-    /**
-     * Returns the width of the specified character.
-     * <p>
-     * The width is given in 0.0001 pt for a font size of 1 pt. So to get the
-     * effective width in pt (1/72 in), it must be multiplied with the font size and
-     * divided by 1000.
-     * </p>
-     * <p>
-     * The method only supports characters as defined in "Swiss Implementation
-     * Guidelines for Credit Transfer Initiation". For all other characters, a
-     * default width is returned.
-     * </p>
-     *
-     * @param ch the character
-     * @return the width of the character
-     */
-    private double getCharWidth(char ch) {
-        char width = 0;
-        if (ch >= 0x20 && ch <= 0x7f)
-            width = charWidthx20x7F[ch - 0x20];
-        else if (ch >= 0xa0 && ch <= 0xff) {
-            width = charWidthxA0xFF[ch - 0xa0];
+        for (int i = 0; i < len; i++) {
+            char ch = text.charAt(i);
+            width += ch <= 0xff ? widths[ch] : defaultWidth;
         }
-        if (width == 0)
-            width = charDefaultWidth;
-        return width;
+        return (double) width * fontSize / 1000 * PT_TO_MM;
     }
 
     private static String getFirstFontFamily(String fontFamilyList) {
@@ -304,4 +444,59 @@ public class FontMetrics {
             fontFamily = fontFamily.substring(0, fontFamily.length() - 1);
         return fontFamily;
     }
+
+    private static LineCacheSegment[] createLineCache() {
+        LineCacheSegment[] segments = new LineCacheSegment[LINE_CACHE_SEGMENTS];
+        for (int i = 0; i < LINE_CACHE_SEGMENTS; i++)
+            segments[i] = new LineCacheSegment();
+        return segments;
+    }
+
+    /**
+     * Segment of the cache of split texts: LRU map evicting one entry at a time.
+     * <p>
+     * Access must be synchronized on the segment.
+     * </p>
+     */
+    private static class LineCacheSegment extends LinkedHashMap<LineCacheKey, String[]> {
+        private static final long serialVersionUID = 1L;
+
+        LineCacheSegment() {
+            super(LINE_CACHE_SEGMENT_CAPACITY * 2, 0.75f, true);
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<LineCacheKey, String[]> eldest) {
+            return size() > LINE_CACHE_SEGMENT_CAPACITY;
+        }
+    }
+
+    private static class LineCacheKey {
+        private final String text;
+        private final double maxLength;
+        private final int fontSize;
+        private final int hashCode;
+
+        LineCacheKey(String text, double maxLength, int fontSize) {
+            this.text = text;
+            this.maxLength = maxLength;
+            this.fontSize = fontSize;
+            hashCode = (text.hashCode() * 31 + Double.hashCode(maxLength)) * 31 + fontSize;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            LineCacheKey key = (LineCacheKey) o;
+            return fontSize == key.fontSize &&
+                    Double.compare(key.maxLength, maxLength) == 0 &&
+                    text.equals(key.text);
+        }
+
+        @Override
+        public int hashCode() {
+            return hashCode;
+        }
+    }
 }
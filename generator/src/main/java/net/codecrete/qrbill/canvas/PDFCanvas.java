@@ -6,23 +6,47 @@
 //
 package net.codecrete.qrbill.canvas;
 
+import org.apache.pdfbox.cos.COSArray;
+import org.apache.pdfbox.cos.COSBase;
+import org.apache.pdfbox.cos.COSDictionary;
+import org.apache.pdfbox.cos.COSName;
+import org.apache.pdfbox.io.MemoryUsageSetting;
+import org.apache.pdfbox.io.RandomAccessRead;
+import org.apache.pdfbox.pdfwriter.COSWriter;
 import org.apache.pdfbox.pdmodel.PDDocument;
 import org.apache.pdfbox.pdmodel.PDPage;
 import org.apache.pdfbox.pdmodel.PDPageContentStream;
+import org.apache.pdfbox.pdmodel.PDResources;
 import org.apache.pdfbox.pdmodel.common.PDRectangle;
+import org.apache.pdfbox.pdmodel.font.PDFont;
+import org.apache.pdfbox.pdmodel.font.PDType0Font;
 import org.apache.pdfbox.pdmodel.font.PDType1Font;
+import org.apache.pdfbox.pdmodel.graphics.form.PDFormXObject;
 import org.apache.pdfbox.util.Matrix;
 
+import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Canvas for generating PDF files.
  * <p>
- * The PDF generator currently only supports the Helvetica font.
+ * By default, the standard Helvetica font is used (without embedding it).
+ * TrueType fonts can be registered (see {@link #registerFont(String, Path, Path)}).
+ * If the font family list contains a registered font family, the font is embedded
+ * as a subset. The subset is shared by all pages of the document.
  * </p>
  */
 public class PDFCanvas extends AbstractCanvas implements ByteArrayResult {
@@ -37,13 +61,34 @@ public class PDFCanvas extends AbstractCanvas implements ByteArrayResult {
      */
     public static final int NEW_PAGE_AT_END = -2;
 
+    // marks the graphics state as unknown so it is explicitly set before use
+    private static final int UNKNOWN_COLOR = -1;
+    private static final double UNKNOWN_LINE_WIDTH = -1;
+
     private PDDocument document;
+    // document owning the fonts and templates (different from the current document if pages are streamed)
+    private PDDocument resourceDocument;
+    private PDFStreamWriter streamWriter;
+    private PDPage currentPage;
     private PDPageContentStream contentStream;
     private int lastStrokingColor = 0;
     private int lastNonStrokingColor = 0;
     private double lastLineWidth = 1;
     private LineStyle lastLineStyle = LineStyle.Solid;
     private boolean hasSavedGraphicsState = false;
+    private double[] currentTransformation;
+    private boolean isTemplateMode = false;
+    private boolean isRecordingTemplate = false;
+    private Map<String, Template> templates;
+    private Path sourcePath;
+    private List<PDPage> modifiedPages;
+    private boolean isIncrementalSave = false;
+    private FontData fontData;
+    private PDFont regularFont;
+    private PDFont boldFont;
+
+    // registered TrueType fonts, by lower-case family name
+    private static final Map<String, FontData> registeredFonts = new ConcurrentHashMap<>();
 
     /**
      * Creates a new instance using the specified page size.
@@ -52,12 +97,92 @@ public class PDFCanvas extends AbstractCanvas implements ByteArrayResult {
      * @throws IOException thrown if the creation fails
      */
     public PDFCanvas(double width, double height) throws IOException {
-        setupFontMetrics("Helvetica");
-        document = new PDDocument();
+        this(width, height, -1);
+    }
+
+    /**
+     * Creates a new instance using the specified page size and limiting the main memory
+     * used for buffering the document.
+     * <p>
+     *     Stream data (page contents, form XObjects, fonts) exceeding the specified limit is
+     *     stored in temporary files. This is useful for documents with many pages (see
+     *     {@link #addPage(double, double)}). The object graph of the document (pages,
+     *     resources etc.) is always kept in main memory until the document is written.
+     *     To write documents with many pages without keeping them in memory, see
+     *     {@link #PDFCanvas(double, double, String, OutputStream)}.
+     * </p>
+     * @param width page width, in mm
+     * @param height page height, in mm
+     * @param maxMainMemory maximum main memory used for buffering, in bytes (-1 for no limit)
+     * @throws IOException thrown if the creation fails
+     */
+    public PDFCanvas(double width, double height, long maxMainMemory) throws IOException {
+        this(width, height, maxMainMemory, "Helvetica");
+    }
+
+    /**
+     * Creates a new instance using the specified page size and font family list.
+     * <p>
+     *     The first registered font family of the list is embedded (see
+     *     {@link #registerFont(String, Path, Path)}). If none of them has been registered,
+     *     Helvetica is used.
+     * </p>
+     * @param width page width, in mm
+     * @param height page height, in mm
+     * @param fontFamilyList list of font families (comma separated, CSS syntax)
+     * @throws IOException thrown if the creation fails
+     */
+    public PDFCanvas(double width, double height, String fontFamilyList) throws IOException {
+        this(width, height, -1, fontFamilyList);
+    }
+
+    /**
+     * Creates a new instance using the specified page size and font family list, and
+     * limiting the main memory used for buffering the document.
+     * @param width page width, in mm
+     * @param height page height, in mm
+     * @param maxMainMemory maximum main memory used for buffering, in bytes (-1 for no limit)
+     * @param fontFamilyList list of font families (comma separated, CSS syntax)
+     * @throws IOException thrown if the creation fails
+     * @see #PDFCanvas(double, double, long)
+     * @see #PDFCanvas(double, double, String)
+     */
+    public PDFCanvas(double width, double height, long maxMainMemory, String fontFamilyList) throws IOException {
+        setupFonts(fontFamilyList);
+        document = new PDDocument(maxMainMemory < 0
+                ? MemoryUsageSetting.setupMainMemoryOnly() : MemoryUsageSetting.setupMixed(maxMainMemory));
         document.getDocumentInformation().setTitle("Swiss QR Bill");
-        PDPage page = new PDPage(new PDRectangle((float) (width * MM_TO_PT), (float) (height * MM_TO_PT)));
-        document.addPage(page);
-        contentStream = new PDPageContentStream(document, page, PDPageContentStream.AppendMode.OVERWRITE, true);
+        resourceDocument = document;
+        addNewPage(width, height);
+    }
+
+    /**
+     * Creates a new instance writing the PDF document page by page to the specified output stream.
+     * <p>
+     *     Each page is written to the output stream when the next page is added
+     *     (see {@link #addPage(double, double)}) and is then released. Only the offsets
+     *     of the written objects are kept, a few bytes per page. So the memory usage
+     *     does not grow with the number of pages. Fonts and templates (see
+     *     {@link #setTemplateMode(boolean)}) are shared by all pages.
+     * </p>
+     * <p>
+     *     The document is only complete after {@link #finish()} has been called. It writes
+     *     the last page, the fonts and the document structure. {@link #toByteArray()},
+     *     {@link #writeTo(OutputStream)} and {@link #saveAs(Path)} cannot be used.
+     * </p>
+     * @param width page width, in mm
+     * @param height page height, in mm
+     * @param fontFamilyList list of font families (comma separated, CSS syntax)
+     * @param os the output stream to write the document to (it is not closed)
+     * @throws IOException thrown if the creation fails
+     * @see #PDFCanvas(double, double, String)
+     */
+    public PDFCanvas(double width, double height, String fontFamilyList, OutputStream os) throws IOException {
+        setupFonts(fontFamilyList);
+        resourceDocument = new PDDocument(MemoryUsageSetting.setupMainMemoryOnly());
+        resourceDocument.getDocumentInformation().setTitle("Swiss QR Bill");
+        streamWriter = new PDFStreamWriter(os);
+        addNewPage(width, height);
     }
 
     /**
@@ -76,31 +201,334 @@ public class PDFCanvas extends AbstractCanvas implements ByteArrayResult {
      * @throws IOException thrown if the creation fails
      */
     public PDFCanvas(Path path, int pageNo) throws IOException {
-        setupFontMetrics("Helvetica");
-        document = PDDocument.load(path.toFile());
+        this(path, pageNo, -1);
+    }
+
+    /**
+     * Creates a new instance for adding the QR bill to an exiting PDF document,
+     * limiting the main memory used for the document.
+     * <p>
+     *     Parts of the document exceeding the specified limit are stored in temporary files.
+     *     This is useful for large documents, in particular in combination with
+     *     incremental saving (see {@link #setIncrementalSave(boolean)}).
+     * </p>
+     * @param path path to exiting document
+     * @param pageNo the zero-based number of the page the QR bill should be added to
+     * @param maxMainMemory maximum main memory used for the document, in bytes (-1 for no limit)
+     * @throws IOException thrown if the creation fails
+     * @see #PDFCanvas(Path, int)
+     */
+    public PDFCanvas(Path path, int pageNo, long maxMainMemory) throws IOException {
+        this(path, pageNo, maxMainMemory, "Helvetica");
+    }
+
+    /**
+     * Creates a new instance for adding the QR bill to an exiting PDF document,
+     * using the specified font family list and limiting the main memory used for the document.
+     * @param path path to exiting document
+     * @param pageNo the zero-based number of the page the QR bill should be added to
+     * @param maxMainMemory maximum main memory used for the document, in bytes (-1 for no limit)
+     * @param fontFamilyList list of font families (comma separated, CSS syntax)
+     * @throws IOException thrown if the creation fails
+     * @see #PDFCanvas(Path, int, long)
+     * @see #PDFCanvas(double, double, String)
+     */
+    public PDFCanvas(Path path, int pageNo, long maxMainMemory, String fontFamilyList) throws IOException {
+        setupFonts(fontFamilyList);
+        document = PDDocument.load(path.toFile(), maxMainMemory < 0
+                ? MemoryUsageSetting.setupMainMemoryOnly() : MemoryUsageSetting.setupMixed(maxMainMemory));
+        resourceDocument = document;
+        sourcePath = path;
+        modifiedPages = new ArrayList<>();
         if (pageNo == NEW_PAGE_AT_END) {
-            PDPage page = new PDPage(new PDRectangle((float) (210 * MM_TO_PT), (float) (297 * MM_TO_PT)));
-            document.addPage(page);
-            contentStream = new PDPageContentStream(document, page, PDPageContentStream.AppendMode.OVERWRITE, true);
+            addNewPage(210, 297);
         } else {
             if (pageNo == LAST_PAGE)
                 pageNo = document.getNumberOfPages() - 1;
-            PDPage page = document.getPage(pageNo);
-            contentStream = new PDPageContentStream(document, page, PDPageContentStream.AppendMode.APPEND, true);
+            currentPage = document.getPage(pageNo);
+            modifiedPages.add(currentPage);
+            contentStream = new PDPageContentStream(document, currentPage, PDPageContentStream.AppendMode.APPEND, true);
+        }
+    }
+
+    /**
+     * Registers a TrueType font for embedding into PDF documents.
+     * <p>
+     *     The font files are read once and kept in a process-wide cache. Subsequently
+     *     created canvases with a font family list containing the specified family embed
+     *     a subset of the font. Registering a family again replaces the font files.
+     * </p>
+     * <p>
+     *     For the text layout, the character widths of Helvetica, Arial, Frutiger and
+     *     Liberation Sans are known (see {@link FontMetrics}). So the family name
+     *     should refer to one of them.
+     * </p>
+     * @param fontFamily the font family name
+     * @param regularFontPath the path of the TrueType font file for regular text
+     * @param boldFontPath the path of the TrueType font file for bold text ({@code null} to use the regular font)
+     * @throws IOException thrown if the font files cannot be read
+     */
+    public static void registerFont(String fontFamily, Path regularFontPath, Path boldFontPath) throws IOException {
+        byte[] regular = Files.readAllBytes(regularFontPath);
+        byte[] bold = boldFontPath != null ? Files.readAllBytes(boldFontPath) : null;
+        registeredFonts.put(fontFamily.toLowerCase(Locale.US), new FontData(fontFamily, regular, bold));
+    }
+
+    /**
+     * Removes a registered TrueType font.
+     * @param fontFamily the font family name
+     * @see #registerFont(String, Path, Path)
+     */
+    public static void unregisterFont(String fontFamily) {
+        registeredFonts.remove(fontFamily.toLowerCase(Locale.US));
+    }
+
+    private void setupFonts(String fontFamilyList) {
+        for (String family : fontFamilyList.split(",")) {
+            family = family.trim();
+            int length = family.length();
+            if (length >= 2 && (family.charAt(0) == '"' || family.charAt(0) == '\'')
+                    && family.charAt(length - 1) == family.charAt(0))
+                family = family.substring(1, length - 1);
+            fontData = registeredFonts.get(family.toLowerCase(Locale.US));
+            if (fontData != null) {
+                // metrics of the embedded font
+                setupFontMetrics(fontData.family);
+                return;
+            }
+        }
+        setupFontMetrics("Helvetica");
+    }
+
+    private PDFont getFont(boolean isBold) throws IOException {
+        if (fontData == null)
+            return isBold ? PDType1Font.HELVETICA_BOLD : PDType1Font.HELVETICA;
+
+        // loaded once per document; the subset is created when the document is saved
+        if (isBold && fontData.bold != null) {
+            if (boldFont == null)
+                boldFont = PDType0Font.load(resourceDocument, new ByteArrayInputStream(fontData.bold), true);
+            return boldFont;
+        }
+        if (regularFont == null)
+            regularFont = PDType0Font.load(resourceDocument, new ByteArrayInputStream(fontData.regular), true);
+        return regularFont;
+    }
+
+    /**
+     * Adds a new page with the specified size at the end of the document.
+     * <p>
+     *     The content of the current page is completed. All subsequent drawing operations
+     *     will go to the new page. The fonts and other resources are shared between
+     *     the pages.
+     * </p>
+     * @param width page width, in mm
+     * @param height page height, in mm
+     * @throws IOException thrown if the page cannot be added
+     */
+    public void addPage(double width, double height) throws IOException {
+        if (contentStream != null) {
+            contentStream.close();
+            contentStream = null;
+        }
+        addNewPage(width, height);
+    }
+
+    private void addNewPage(double width, double height) throws IOException {
+        if (streamWriter != null) {
+            // each page has a document of its own, which is released once the page has been written
+            if (currentPage != null) {
+                streamWriter.writePage(currentPage.getCOSObject());
+                document.close();
+            }
+            document = new PDDocument(MemoryUsageSetting.setupMainMemoryOnly());
         }
+
+        currentPage = new PDPage(new PDRectangle((float) (width * MM_TO_PT), (float) (height * MM_TO_PT)));
+        document.addPage(currentPage);
+        if (modifiedPages != null)
+            modifiedPages.add(currentPage);
+        contentStream = new PDPageContentStream(document, currentPage, PDPageContentStream.AppendMode.OVERWRITE, true);
+        lastStrokingColor = 0;
+        lastNonStrokingColor = 0;
+        lastLineWidth = 1;
+        lastLineStyle = LineStyle.Solid;
+        hasSavedGraphicsState = false;
+        currentTransformation = null;
+    }
+
+    /**
+     * Enables or disables incremental saving.
+     * <p>
+     *     If enabled, the changes are saved as a PDF incremental update: the original
+     *     document is copied byte for byte, followed by the modified and new objects only.
+     *     Unchanged objects are not serialized again, and existing signatures stay intact.
+     *     Loading still parses the document structure. Saving to a stream or another file
+     *     reads the entire original file to copy it. Appending the update to the source
+     *     document ({@link #appendToSource()}) does not.
+     * </p>
+     * <p>
+     *     Incremental saving is only possible for instances created for an existing
+     *     document. It is disabled by default.
+     * </p>
+     * @param incrementalSave {@code true} to enable incremental saving, {@code false} to disable it
+     * @see #appendToSource()
+     */
+    public void setIncrementalSave(boolean incrementalSave) {
+        if (incrementalSave && sourcePath == null)
+            throw new IllegalStateException("Incremental saving requires an existing document");
+        isIncrementalSave = incrementalSave;
+    }
+
+    /**
+     * Indicates if incremental saving is enabled.
+     * @return {@code true} if incremental saving is enabled, {@code false} otherwise
+     * @see #setIncrementalSave(boolean)
+     */
+    public boolean isIncrementalSave() {
+        return isIncrementalSave;
+    }
+
+    /**
+     * Enables or disables the template mode.
+     * <p>
+     *     In template mode, static content (titles, separator lines, scissors etc.) is rendered
+     *     once into a PDF form XObject and then referenced from each page using it.
+     *     This reduces the size of documents with many QR bills.
+     * </p>
+     * <p>
+     *     The template mode is disabled by default.
+     * </p>
+     * @param templateMode {@code true} to enable template mode, {@code false} to disable it
+     */
+    public void setTemplateMode(boolean templateMode) {
+        isTemplateMode = templateMode;
+    }
+
+    /**
+     * Indicates if the template mode is enabled.
+     * @return {@code true} if template mode is enabled, {@code false} otherwise
+     * @see #setTemplateMode(boolean)
+     */
+    public boolean isTemplateMode() {
+        return isTemplateMode;
     }
 
     @Override
-    public void setTransformation(double translateX, double translateY, double rotate, double scaleX, double scaleY) throws IOException {
-        translateX *= MM_TO_PT;
-        translateY *= MM_TO_PT;
+    public void drawStaticContent(String key, StaticContent content) throws IOException {
+        if (!isTemplateMode || isRecordingTemplate) {
+            content.draw();
+            return;
+        }
 
+        if (templates == null)
+            templates = new HashMap<>();
+        Template template = templates.get(key);
+        if (template == null) {
+            template = recordTemplate(content);
+            templates.put(key, template);
+        } else if (!Arrays.equals(template.startTransformation, currentTransformation)) {
+            // recorded for a different transformation
+            content.draw();
+            return;
+        }
+
+        // The form is drawn in the original coordinate system
+        // (the form itself applies the start transformation).
+        double[] startTransformation = currentTransformation;
         if (hasSavedGraphicsState) {
             contentStream.restoreGraphicsState();
+            hasSavedGraphicsState = false;
             lastStrokingColor = 0;
             lastNonStrokingColor = 0;
             lastLineWidth = 1;
         }
+        contentStream.drawForm(template.form);
+
+        // set the transformation active at the end of the static content
+        double[] endTransformation = template.endTransformation != null ? template.endTransformation : startTransformation;
+        if (endTransformation != null)
+            setTransformation(endTransformation);
+        else
+            currentTransformation = null;
+    }
+
+    private Template recordTemplate(StaticContent content) throws IOException {
+        PDFormXObject form = new PDFormXObject(resourceDocument);
+        form.setResources(new PDResources());
+        form.setBBox(currentPage.getMediaBox());
+
+        // save state of page content stream
+        PDPageContentStream pageContentStream = contentStream;
+        int pageStrokingColor = lastStrokingColor;
+        int pageNonStrokingColor = lastNonStrokingColor;
+        double pageLineWidth = lastLineWidth;
+        LineStyle pageLineStyle = lastLineStyle;
+        boolean pageHasSavedGraphicsState = hasSavedGraphicsState;
+        double[] startTransformation = currentTransformation;
+
+        Template template = new Template();
+        template.form = form;
+        template.startTransformation = startTransformation;
+
+        try (OutputStream formOutput = form.getContentStream().createOutputStream(COSName.FLATE_DECODE)) {
+            contentStream = new PDPageContentStream(resourceDocument, form, formOutput);
+            isRecordingTemplate = true;
+            setUnknownGraphicsState();
+            hasSavedGraphicsState = false;
+            if (startTransformation != null)
+                setTransformation(startTransformation);
+            currentTransformation = null;
+
+            content.draw();
+
+            template.endTransformation = currentTransformation;
+            if (hasSavedGraphicsState)
+                contentStream.restoreGraphicsState();
+            contentStream.close();
+
+        } finally {
+            isRecordingTemplate = false;
+            contentStream = pageContentStream;
+            lastStrokingColor = pageStrokingColor;
+            lastNonStrokingColor = pageNonStrokingColor;
+            lastLineWidth = pageLineWidth;
+            lastLineStyle = pageLineStyle;
+            hasSavedGraphicsState = pageHasSavedGraphicsState;
+            currentTransformation = startTransformation;
+        }
+
+        return template;
+    }
+
+    private void setUnknownGraphicsState() {
+        lastStrokingColor = UNKNOWN_COLOR;
+        lastNonStrokingColor = UNKNOWN_COLOR;
+        lastLineWidth = UNKNOWN_LINE_WIDTH;
+        lastLineStyle = null;
+    }
+
+    private void setTransformation(double[] transformation) throws IOException {
+        setTransformation(transformation[0], transformation[1], transformation[2], transformation[3], transformation[4]);
+    }
+
+    @Override
+    public void setTransformation(double translateX, double translateY, double rotate, double scaleX, double scaleY) throws IOException {
+        currentTransformation = new double[] { translateX, translateY, rotate, scaleX, scaleY };
+        translateX *= MM_TO_PT;
+        translateY *= MM_TO_PT;
+
+        if (hasSavedGraphicsState) {
+            contentStream.restoreGraphicsState();
+            if (isRecordingTemplate) {
+                // the initial state of a form is inherited from the page using it
+                setUnknownGraphicsState();
+            } else {
+                lastStrokingColor = 0;
+                lastNonStrokingColor = 0;
+                lastLineWidth = 1;
+            }
+        }
 
         contentStream.saveGraphicsState();
         hasSavedGraphicsState = true;
@@ -117,7 +545,7 @@ public class PDFCanvas extends AbstractCanvas implements ByteArrayResult {
     public void putText(String text, double x, double y, int fontSize, boolean isBold) throws IOException {
         x *= MM_TO_PT;
         y *= MM_TO_PT;
-        contentStream.setFont(isBold ? PDType1Font.HELVETICA_BOLD : PDType1Font.HELVETICA, fontSize);
+        contentStream.setFont(getFont(isBold), fontSize);
         contentStream.beginText();
         contentStream.newLineAtOffset((float) x, (float) y);
         contentStream.showText(text);
@@ -129,7 +557,7 @@ public class PDFCanvas extends AbstractCanvas implements ByteArrayResult {
         x *= MM_TO_PT;
         y *= MM_TO_PT;
         float lineHeight = (float) ((fontMetrics.getLineHeight(fontSize) + leading) * MM_TO_PT);
-        contentStream.setFont(PDType1Font.HELVETICA, fontSize);
+        contentStream.setFont(getFont(false), fontSize);
         contentStream.beginText();
         contentStream.newLineAtOffset((float) x, (float) y);
         boolean isFirstLine = true;
@@ -239,12 +667,8 @@ public class PDFCanvas extends AbstractCanvas implements ByteArrayResult {
 
     @Override
     public byte[] toByteArray() throws IOException {
-        if (contentStream != null) {
-            contentStream.close();
-            contentStream = null;
-        }
         try (ByteArrayOutputStream os = new ByteArrayOutputStream()) {
-            document.save(os);
+            save(os);
             return os.toByteArray();
         }
     }
@@ -255,26 +679,152 @@ public class PDFCanvas extends AbstractCanvas implements ByteArrayResult {
      * @throws IOException thrown if the image cannot be written
      */
     public void writeTo(OutputStream os) throws IOException {
-        if (contentStream != null) {
-            contentStream.close();
-            contentStream = null;
-        }
-        document.save(os);
+        save(os);
     }
 
     /**
      * Saves the resulting PDF document to the specified path.
+     * <p>
+     *     If incremental saving is enabled and the path refers to the source document,
+     *     the incremental update is appended to it (see {@link #appendToSource()}).
+     * </p>
      * @param path the path to write to
      * @throws IOException thrown if the image cannot be written
      */
     public void saveAs(Path path) throws IOException {
+        if (streamWriter != null)
+            throw new IllegalStateException("Document is written page by page (see finish())");
+        if (isIncrementalSave && Files.exists(path) && Files.isSameFile(path, sourcePath)) {
+            appendToSource();
+            return;
+        }
+
+        try (OutputStream os = Files.newOutputStream(path)) {
+            save(os);
+        }
+    }
+
+    /**
+     * Appends the changes as a PDF incremental update to the source document.
+     * <p>
+     *     Only the modified and new objects are written to the end of the file. The existing
+     *     content of the file is neither copied nor changed. So writing the update costs
+     *     about the size of the added content. Loading the document (when the instance
+     *     was created) still parses the document structure.
+     * </p>
+     * <p>
+     *     This method can only be called for instances created for an existing document.
+     *     Afterwards, no further changes should be made.
+     * </p>
+     * @throws IOException thrown if the document cannot be written
+     */
+    public void appendToSource() throws IOException {
+        if (sourcePath == null)
+            throw new IllegalStateException("Incremental saving requires an existing document");
+
+        prepareIncrementalSave();
+        // PDDocument.saveIncremental() would first copy the entire source document;
+        // COSWriter is used directly so that only the update is written.
+        subsetFonts();
+        long sourceLength = Files.size(sourcePath);
+        try (COSWriter writer = new COSWriter(Files.newOutputStream(sourcePath, StandardOpenOption.APPEND),
+                new SourceLength(sourceLength))) {
+            writer.write(document);
+        }
+    }
+
+    /**
+     * Completes the PDF document written page by page.
+     * <p>
+     *     Writes the last page, the fonts and the document structure to the output stream
+     *     passed to {@link #PDFCanvas(double, double, String, OutputStream)}. Afterwards,
+     *     no further changes should be made.
+     * </p>
+     * @throws IOException thrown if the document cannot be written
+     */
+    public void finish() throws IOException {
+        if (streamWriter == null)
+            throw new IllegalStateException("Document is not written page by page");
+
         if (contentStream != null) {
             contentStream.close();
             contentStream = null;
         }
+        streamWriter.writePage(currentPage.getCOSObject());
+        subsetFonts();
+        streamWriter.finish(resourceDocument.getDocumentInformation().getCOSObject());
+    }
 
-        try (OutputStream os = Files.newOutputStream(path)) {
-            document.save(os);
+    private void save(OutputStream os) throws IOException {
+        if (streamWriter != null)
+            throw new IllegalStateException("Document is written page by page (see finish())");
+        if (isIncrementalSave) {
+            saveIncremental(os);
+            return;
+        }
+
+        if (contentStream != null) {
+            contentStream.close();
+            contentStream = null;
+        }
+        document.save(os);
+    }
+
+    private void saveIncremental(OutputStream os) throws IOException {
+        prepareIncrementalSave();
+        // like save(), saveIncremental() creates the subsets of the embedded fonts
+        document.saveIncremental(os);
+    }
+
+    private void prepareIncrementalSave() throws IOException {
+        if (contentStream != null) {
+            contentStream.close();
+            contentStream = null;
+        }
+
+        // Only objects marked as updated (and new objects referenced by them) are written.
+        // So the path from the catalog to the modified pages needs to be marked.
+        document.getDocumentCatalog().getCOSObject().setNeedToBeUpdated(true);
+        for (PDPage page : modifiedPages)
+            markForUpdate(page);
+    }
+
+    // PDDocument.save() and saveIncremental() create the subsets of the embedded fonts,
+    // COSWriter and PDFStreamWriter do not
+    private void subsetFonts() throws IOException {
+        if (regularFont != null)
+            regularFont.subset();
+        if (boldFont != null)
+            boldFont.subset();
+    }
+
+    private static void markForUpdate(PDPage page) {
+        COSDictionary pageDict = page.getCOSObject();
+        pageDict.setNeedToBeUpdated(true);
+
+        COSBase contents = pageDict.getDictionaryObject(COSName.CONTENTS);
+        if (contents instanceof COSArray)
+            ((COSArray) contents).setNeedToBeUpdated(true);
+
+        PDResources resources = page.getResources();
+        if (resources != null) {
+            COSDictionary resourcesDict = resources.getCOSObject();
+            resourcesDict.setNeedToBeUpdated(true);
+            for (COSName key : resourcesDict.keySet()) {
+                COSBase entry = resourcesDict.getDictionaryObject(key);
+                if (entry instanceof COSDictionary)
+                    ((COSDictionary) entry).setNeedToBeUpdated(true);
+            }
+        }
+
+        // page tree nodes up to the root (new pages change the kids and counts)
+        COSDictionary node = pageDict.getCOSDictionary(COSName.PARENT);
+        while (node != null) {
+            node.setNeedToBeUpdated(true);
+            COSBase kids = node.getDictionaryObject(COSName.KIDS);
+            if (kids instanceof COSArray)
+                ((COSArray) kids).setNeedToBeUpdated(true);
+            node = node.getCOSDictionary(COSName.PARENT);
         }
     }
 
@@ -289,5 +839,108 @@ public class PDFCanvas extends AbstractCanvas implements ByteArrayResult {
             document.close();
             document = null;
         }
+        if (resourceDocument != null) {
+            resourceDocument.close();
+            resourceDocument = null;
+        }
+    }
+
+    /**
+     * Stand-in for the source document when writing an incremental update with {@link COSWriter}.
+     * <p>
+     * The writer only needs the length of the source (for the object offsets). It copies the
+     * content in front of the update, which is not wanted when appending to the source.
+     * So the content appears to be empty.
+     * </p>
+     */
+    private static class SourceLength implements RandomAccessRead {
+        private final long length;
+
+        private SourceLength(long length) {
+            this.length = length;
+        }
+
+        @Override
+        public long length() {
+            return length;
+        }
+
+        @Override
+        public int read() {
+            return -1;
+        }
+
+        @Override
+        public int read(byte[] b) {
+            return -1;
+        }
+
+        @Override
+        public int read(byte[] b, int offset, int len) {
+            return -1;
+        }
+
+        @Override
+        public long getPosition() {
+            return 0;
+        }
+
+        @Override
+        public void seek(long position) {
+            // no content
+        }
+
+        @Override
+        public boolean isClosed() {
+            return false;
+        }
+
+        @Override
+        public int peek() {
+            return -1;
+        }
+
+        @Override
+        public void rewind(int bytes) {
+            // no content
+        }
+
+        @Override
+        public byte[] readFully(int len) throws IOException {
+            throw new EOFException();
+        }
+
+        @Override
+        public boolean isEOF() {
+            return true;
+        }
+
+        @Override
+        public int available() {
+            return 0;
+        }
+
+        @Override
+        public void close() {
+            // nothing to release
+        }
+    }
+
+    private static class FontData {
+        final String family;
+        final byte[] regular;
+        final byte[] bold;
+
+        FontData(String family, byte[] regular, byte[] bold) {
+            this.family = family;
+            this.regular = regular;
+            this.bold = bold;
+        }
+    }
+
+    private static class Template {
+        PDFormXObject form;
+        double[] startTransformation;
+        double[] endTransformation;
     }
 }
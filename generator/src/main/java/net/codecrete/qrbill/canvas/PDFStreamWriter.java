@@ -0,0 +1,397 @@
+//
+// Swiss QR Bill Generator
+// Copyright (c) 2020 Manuel Bleichenbacher
+// Licensed under MIT License
+// https://opensource.org/licenses/MIT
+//
+package net.codecrete.qrbill.canvas;
+
+import org.apache.pdfbox.cos.COSArray;
+import org.apache.pdfbox.cos.COSBase;
+import org.apache.pdfbox.cos.COSBoolean;
+import org.apache.pdfbox.cos.COSDictionary;
+import org.apache.pdfbox.cos.COSFloat;
+import org.apache.pdfbox.cos.COSInteger;
+import org.apache.pdfbox.cos.COSName;
+import org.apache.pdfbox.cos.COSObject;
+import org.apache.pdfbox.cos.COSStream;
+import org.apache.pdfbox.cos.COSString;
+import org.apache.pdfbox.pdfwriter.COSWriter;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+/**
+ * Writes a PDF document page by page.
+ * <p>
+ * Each page is written together with its content stream as soon as it is complete.
+ * Afterwards, only the file offsets of the written objects are kept for the
+ * cross-reference table. Form XObjects shared by several pages are written once,
+ * when they are first used. Fonts are written by {@link #finish(COSDictionary)} as the
+ * font subsets are only complete when all pages have been drawn.
+ * </p>
+ * <p>
+ * Streams and fonts are written as indirect objects, all other dictionaries and
+ * arrays as direct objects.
+ * </p>
+ */
+class PDFStreamWriter {
+
+    private static final byte[] HEADER = "%PDF-1.4\n%\u00e2\u00e3\u00cf\u00d3\n".getBytes(StandardCharsets.ISO_8859_1);
+    private static final int PAGES_PER_NODE = 256;
+
+    private final PositionOutputStream os;
+    private long[] offsets = new long[256];
+    private int objectCount = 0;
+    private final Map<COSBase, Integer> sharedObjects = new IdentityHashMap<>();
+    private final ArrayDeque<PendingObject> pendingFonts = new ArrayDeque<>();
+    private final ArrayDeque<PendingObject> pendingObjects = new ArrayDeque<>();
+    private final int rootNumber;
+    private int[] pageNumbers = new int[256];
+    private int pageCount = 0;
+    private int[] nodeNumbers = new int[16];
+    private int nodeCount = 0;
+
+    /**
+     * Creates a new instance and writes the PDF header.
+     *
+     * @param os the output stream
+     * @throws IOException thrown if the output stream cannot be written
+     */
+    PDFStreamWriter(OutputStream os) throws IOException {
+        this.os = new PositionOutputStream(os);
+        this.os.write(HEADER);
+        rootNumber = allocateNumber();
+    }
+
+    /**
+     * Writes a completed page and all new objects it uses (except fonts).
+     * <p>
+     * The parent of the page is replaced with a page tree node of this writer.
+     * The buffered data is flushed to the output stream afterwards.
+     * </p>
+     *
+     * @param page the page dictionary
+     * @throws IOException thrown if the output stream cannot be written
+     */
+    void writePage(COSDictionary page) throws IOException {
+        if (pageCount % PAGES_PER_NODE == 0) {
+            if (nodeCount == nodeNumbers.length)
+                nodeNumbers = Arrays.copyOf(nodeNumbers, nodeCount * 2);
+            nodeNumbers[nodeCount++] = allocateNumber();
+        }
+        if (pageCount == pageNumbers.length)
+            pageNumbers = Arrays.copyOf(pageNumbers, pageCount * 2);
+        int number = allocateNumber();
+        pageNumbers[pageCount++] = number;
+
+        startObject(number);
+        os.write(COSWriter.DICT_OPEN);
+        for (Map.Entry<COSName, COSBase> entry : page.entrySet()) {
+            if (COSName.PARENT.equals(entry.getKey()))
+                continue;
+            writeEntry(entry.getKey(), entry.getValue());
+        }
+        COSName.PARENT.writePDF(os);
+        os.write(' ');
+        writeReference(nodeNumbers[nodeCount - 1]);
+        os.write(COSWriter.DICT_CLOSE);
+        endObject();
+
+        writePendingObjects();
+        os.flush();
+    }
+
+    /**
+     * Writes the fonts, the page tree, the catalog, the cross-reference table and the trailer.
+     * <p>
+     * The font subsets must have been created before. The output stream is flushed but not closed.
+     * </p>
+     *
+     * @param info the document information dictionary
+     * @throws IOException thrown if the output stream cannot be written
+     */
+    void finish(COSDictionary info) throws IOException {
+        // fonts can reference further fonts (descendant fonts)
+        PendingObject font;
+        while ((font = pendingFonts.poll()) != null) {
+            writeObject(font.number, font.object);
+            writePendingObjects();
+        }
+
+        writePageTree();
+
+        int catalogNumber = allocateNumber();
+        startObject(catalogNumber);
+        os.write("<</Type /Catalog\n/Pages ".getBytes(StandardCharsets.US_ASCII));
+        writeReference(rootNumber);
+        os.write(COSWriter.DICT_CLOSE);
+        endObject();
+
+        int infoNumber = allocateNumber();
+        writeObject(infoNumber, info);
+
+        long xrefOffset = os.getPosition();
+        writeCrossReferenceTable();
+
+        os.write("trailer\n<</Size ".getBytes(StandardCharsets.US_ASCII));
+        writeAscii(Integer.toString(objectCount + 1));
+        os.write("\n/Root ".getBytes(StandardCharsets.US_ASCII));
+        writeReference(catalogNumber);
+        os.write("\n/Info ".getBytes(StandardCharsets.US_ASCII));
+        writeReference(infoNumber);
+        os.write(">>\nstartxref\n".getBytes(StandardCharsets.US_ASCII));
+        writeAscii(Long.toString(xrefOffset));
+        os.write("\n%%EOF\n".getBytes(StandardCharsets.US_ASCII));
+        os.flush();
+    }
+
+    private void writePageTree() throws IOException {
+        for (int node = 0; node < nodeCount; node++) {
+            int start = node * PAGES_PER_NODE;
+            int end = Math.min(start + PAGES_PER_NODE, pageCount);
+            startObject(nodeNumbers[node]);
+            os.write("<</Type /Pages\n/Parent ".getBytes(StandardCharsets.US_ASCII));
+            writeReference(rootNumber);
+            writeKidsAndCount(pageNumbers, start, end, end - start);
+            endObject();
+        }
+
+        startObject(rootNumber);
+        os.write("<</Type /Pages".getBytes(StandardCharsets.US_ASCII));
+        writeKidsAndCount(nodeNumbers, 0, nodeCount, pageCount);
+        endObject();
+    }
+
+    private void writeKidsAndCount(int[] kids, int start, int end, int count) throws IOException {
+        os.write("\n/Kids [".getBytes(StandardCharsets.US_ASCII));
+        for (int i = start; i < end; i++) {
+            if (i > start)
+                os.write(' ');
+            writeReference(kids[i]);
+        }
+        os.write("]\n/Count ".getBytes(StandardCharsets.US_ASCII));
+        writeAscii(Integer.toString(count));
+        os.write(COSWriter.DICT_CLOSE);
+    }
+
+    private void writeCrossReferenceTable() throws IOException {
+        os.write(COSWriter.XREF);
+        os.write('\n');
+        writeAscii("0 " + (objectCount + 1) + "\n");
+        os.write("0000000000 65535 f\r\n".getBytes(StandardCharsets.US_ASCII));
+
+        byte[] entry = "0000000000 00000 n\r\n".getBytes(StandardCharsets.US_ASCII);
+        for (int number = 1; number <= objectCount; number++) {
+            long offset = offsets[number];
+            for (int i = 9; i >= 0; i--) {
+                entry[i] = (byte) ('0' + offset % 10);
+                offset /= 10;
+            }
+            os.write(entry);
+        }
+    }
+
+    private int allocateNumber() {
+        objectCount++;
+        if (objectCount == offsets.length)
+            offsets = Arrays.copyOf(offsets, objectCount * 2);
+        return objectCount;
+    }
+
+    private void writePendingObjects() throws IOException {
+        PendingObject pending;
+        while ((pending = pendingObjects.poll()) != null)
+            writeObject(pending.number, pending.object);
+    }
+
+    private void writeObject(int number, COSBase object) throws IOException {
+        startObject(number);
+        if (object instanceof COSStream)
+            writeStream((COSStream) object);
+        else
+            writeDirect(object);
+        endObject();
+    }
+
+    private void startObject(int number) throws IOException {
+        offsets[number] = os.getPosition();
+        writeAscii(Integer.toString(number));
+        os.write(' ');
+        os.write('0');
+        os.write(' ');
+        os.write(COSWriter.OBJ);
+        os.write('\n');
+    }
+
+    private void endObject() throws IOException {
+        os.write('\n');
+        os.write(COSWriter.ENDOBJ);
+        os.write('\n');
+    }
+
+    private void writeStream(COSStream stream) throws IOException {
+        long length = stream.getLength();
+        os.write(COSWriter.DICT_OPEN);
+        for (Map.Entry<COSName, COSBase> entry : stream.entrySet()) {
+            if (COSName.LENGTH.equals(entry.getKey()))
+                continue;
+            writeEntry(entry.getKey(), entry.getValue());
+        }
+        COSName.LENGTH.writePDF(os);
+        os.write(' ');
+        writeAscii(Long.toString(length));
+        os.write(COSWriter.DICT_CLOSE);
+        os.write('\n');
+        os.write(COSWriter.STREAM);
+        os.write('\n');
+        if (length > 0) {
+            try (InputStream data = stream.createRawInputStream()) {
+                byte[] buffer = new byte[8192];
+                int n;
+                while ((n = data.read(buffer)) > 0)
+                    os.write(buffer, 0, n);
+            }
+        }
+        os.write('\n');
+        os.write(COSWriter.ENDSTREAM);
+    }
+
+    private void writeEntry(COSName key, COSBase value) throws IOException {
+        key.writePDF(os);
+        os.write(' ');
+        writeValue(value);
+        os.write('\n');
+    }
+
+    private void writeValue(COSBase value) throws IOException {
+        if (value instanceof COSObject) {
+            COSBase object = ((COSObject) value).getObject();
+            if (object == null)
+                writeAscii("null");
+            else
+                writeReference(getIndirectNumber(object, true));
+        } else if (value instanceof COSStream) {
+            writeReference(getIndirectNumber(value, isSharedStream((COSStream) value)));
+        } else if (value instanceof COSDictionary && isFont((COSDictionary) value)) {
+            writeReference(getIndirectNumber(value, true));
+        } else {
+            writeDirect(value);
+        }
+    }
+
+    private void writeDirect(COSBase value) throws IOException {
+        if (value instanceof COSDictionary) {
+            os.write(COSWriter.DICT_OPEN);
+            for (Map.Entry<COSName, COSBase> entry : ((COSDictionary) value).entrySet())
+                writeEntry(entry.getKey(), entry.getValue());
+            os.write(COSWriter.DICT_CLOSE);
+        } else if (value instanceof COSArray) {
+            os.write(COSWriter.ARRAY_OPEN);
+            boolean isFirst = true;
+            for (COSBase element : (COSArray) value) {
+                if (!isFirst)
+                    os.write(' ');
+                isFirst = false;
+                writeValue(element);
+            }
+            os.write(COSWriter.ARRAY_CLOSE);
+        } else if (value instanceof COSName) {
+            ((COSName) value).writePDF(os);
+        } else if (value instanceof COSInteger) {
+            ((COSInteger) value).writePDF(os);
+        } else if (value instanceof COSFloat) {
+            ((COSFloat) value).writePDF(os);
+        } else if (value instanceof COSBoolean) {
+            ((COSBoolean) value).writePDF(os);
+        } else if (value instanceof COSString) {
+            COSWriter.writeString((COSString) value, os);
+        } else {
+            writeAscii("null");
+        }
+    }
+
+    private void writeReference(int number) throws IOException {
+        writeAscii(Integer.toString(number));
+        os.write(' ');
+        os.write('0');
+        os.write(' ');
+        os.write(COSWriter.REFERENCE);
+    }
+
+    private void writeAscii(String text) throws IOException {
+        for (int i = 0; i < text.length(); i++)
+            os.write(text.charAt(i));
+    }
+
+    // Returns the object number of an indirect object; new objects are written
+    // after the current object (fonts at the end of the document)
+    private int getIndirectNumber(COSBase object, boolean isShared) {
+        Integer number = sharedObjects.get(object);
+        if (number != null)
+            return number;
+
+        number = allocateNumber();
+        if (object instanceof COSDictionary && isFont((COSDictionary) object))
+            pendingFonts.add(new PendingObject(number, object));
+        else
+            pendingObjects.add(new PendingObject(number, object));
+        if (isShared)
+            sharedObjects.put(object, number);
+        return number;
+    }
+
+    private static boolean isFont(COSDictionary dictionary) {
+        return !(dictionary instanceof COSStream) && COSName.FONT.equals(dictionary.getCOSName(COSName.TYPE));
+    }
+
+    // Form XObjects and images can be used by several pages; content streams
+    // and streams within fonts are only referenced once.
+    private static boolean isSharedStream(COSStream stream) {
+        return stream.containsKey(COSName.SUBTYPE);
+    }
+
+    private static class PendingObject {
+        final int number;
+        final COSBase object;
+
+        PendingObject(int number, COSBase object) {
+            this.number = number;
+            this.object = object;
+        }
+    }
+
+    /**
+     * Buffered output stream keeping track of the number of bytes written.
+     */
+    private static class PositionOutputStream extends BufferedOutputStream {
+        private long position;
+
+        PositionOutputStream(OutputStream os) {
+            super(os, 0x10000);
+        }
+
+        long getPosition() {
+            return position;
+        }
+
+        @Override
+        public synchronized void write(int b) throws IOException {
+            super.write(b);
+            position++;
+        }
+
+        @Override
+        public synchronized void write(byte[] b, int off, int len) throws IOException {
+            super.write(b, off, len);
+            position += len;
+        }
+    }
+}
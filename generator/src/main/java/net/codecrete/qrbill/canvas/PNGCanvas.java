@@ -6,17 +6,6 @@
 //
 package net.codecrete.qrbill.canvas;
 
-import net.codecrete.qrbill.generator.QRBillGenerationException;
-
-import javax.imageio.IIOImage;
-import javax.imageio.ImageIO;
-import javax.imageio.ImageTypeSpecifier;
-import javax.imageio.ImageWriteParam;
-import javax.imageio.ImageWriter;
-import javax.imageio.metadata.IIOInvalidTreeException;
-import javax.imageio.metadata.IIOMetadata;
-import javax.imageio.metadata.IIOMetadataNode;
-import javax.imageio.stream.ImageOutputStream;
 import java.awt.BasicStroke;
 import java.awt.Color;
 import java.awt.Font;
@@ -30,7 +19,9 @@ import java.io.IOException;
 import java.io.OutputStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.util.Iterator;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.Deflater;
 
 /**
  * Canvas for generating PNG files.
@@ -38,6 +29,16 @@ import java.util.Iterator;
  * PNGs are not an optimal file format for QR bills. Vector formats such a SVG
  * or PDF are of better quality and use far less processing power to generate.
  * </p>
+ * <p>
+ * For generating many PNGs, a canvas can be reused after the result has been
+ * retrieved by calling {@link #reset()}. This keeps the image buffer and the
+ * font and stroke objects. {@link PNGCanvasPool} manages such canvases.
+ * </p>
+ * <p>
+ * The image is written as an 8-bit grayscale PNG by default. For printing, a 1-bit
+ * bilevel PNG (see {@link #setBilevel(boolean)}) is considerably smaller and
+ * faster to encode.
+ * </p>
  */
 public class PNGCanvas extends AbstractCanvas implements ByteArrayResult {
 
@@ -48,6 +49,20 @@ public class PNGCanvas extends AbstractCanvas implements ByteArrayResult {
     private Graphics2D graphics;
     private Path2D.Double currentPath;
 
+    // cached drawing objects
+    private final Map<Integer, Font> fonts = new HashMap<>();
+    private Color lastColor;
+    private BasicStroke lastStroke;
+    private double lastStrokeWidth;
+    private LineStyle lastLineStyle;
+
+    private boolean isBilevel;
+    private int compressionLevel = Deflater.DEFAULT_COMPRESSION;
+    private PNGEncoder encoder;
+
+    // key if the canvas is managed by a pool
+    Object poolKey;
+
     /**
      * Creates a new instance with the specified image size, resolution and font family.
      * <p>
@@ -78,8 +93,7 @@ public class PNGCanvas extends AbstractCanvas implements ByteArrayResult {
         graphics = image.createGraphics();
 
         // clear background
-        graphics.setColor(new Color(0xffffff));
-        graphics.fillRect(0, 0, w, h);
+        clearImage();
 
         // enable high quality output
         graphics.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
@@ -88,9 +102,102 @@ public class PNGCanvas extends AbstractCanvas implements ByteArrayResult {
         graphics.setRenderingHint(RenderingHints.KEY_FRACTIONALMETRICS, RenderingHints.VALUE_FRACTIONALMETRICS_ON);
 
         // initialize transformation
+        currentPath = new Path2D.Double(Path2D.WIND_NON_ZERO);
         setTransformation(0, 0, 0, 1, 1);
     }
 
+    /**
+     * Resets the canvas so it can be used for drawing a new image of the same size.
+     * <p>
+     * The image is cleared, and the transformation and the output settings (bilevel
+     * output and compression level) are reset to their defaults. The image buffer,
+     * the graphics context and the cached font and stroke objects are reused.
+     * The canvas can be reset after the result has been retrieved with
+     * {@link #toByteArray()}, {@link #writeTo(OutputStream)} or {@link #saveAs(Path)}.
+     * </p>
+     */
+    public void reset() {
+        if (image == null)
+            throw new IllegalStateException("Canvas has been closed");
+        clearImage();
+        setTransformation(0, 0, 0, 1, 1);
+        isBilevel = false;
+        compressionLevel = Deflater.DEFAULT_COMPRESSION;
+        if (encoder != null)
+            encoder.setCompressionLevel(compressionLevel);
+    }
+
+    /**
+     * Gets the resolution of the image.
+     *
+     * @return the resolution (in dpi)
+     */
+    public int getResolution() {
+        return resolution;
+    }
+
+    /**
+     * Sets whether the image is written as a 1-bit bilevel PNG.
+     * <p>
+     * In a bilevel image, pixels are either black or white. Anti-aliased
+     * pixels are converted to the closer of the two. By default, the image is
+     * written as an 8-bit grayscale PNG.
+     * </p>
+     *
+     * @param isBilevel {@code true} for a 1-bit bilevel PNG, {@code false} for an 8-bit grayscale PNG
+     */
+    public void setBilevel(boolean isBilevel) {
+        this.isBilevel = isBilevel;
+    }
+
+    /**
+     * Gets whether the image is written as a 1-bit bilevel PNG.
+     *
+     * @return {@code true} for a 1-bit bilevel PNG, {@code false} for an 8-bit grayscale PNG
+     */
+    public boolean isBilevel() {
+        return isBilevel;
+    }
+
+    /**
+     * Sets the compression level used for writing the PNG image.
+     * <p>
+     * The level ranges from 0 (no compression, fastest) to 9 (best compression, slowest).
+     * The default is the deflate default level (-1, equivalent to 6).
+     * </p>
+     *
+     * @param compressionLevel the compression level
+     */
+    public void setCompressionLevel(int compressionLevel) {
+        if (compressionLevel < Deflater.DEFAULT_COMPRESSION || compressionLevel > Deflater.BEST_COMPRESSION)
+            throw new IllegalArgumentException("Invalid compression level");
+        this.compressionLevel = compressionLevel;
+        if (encoder != null)
+            encoder.setCompressionLevel(compressionLevel);
+    }
+
+    /**
+     * Gets the compression level used for writing the PNG image.
+     *
+     * @return the compression level
+     */
+    public int getCompressionLevel() {
+        return compressionLevel;
+    }
+
+    private void clearImage() {
+        graphics.setTransform(new AffineTransform());
+        setColor(0xffffff);
+        graphics.fillRect(0, 0, image.getWidth(), image.getHeight());
+    }
+
+    private void setColor(int color) {
+        if (lastColor == null || lastColor.getRGB() != (color | 0xff000000)) {
+            lastColor = new Color(color);
+            graphics.setColor(lastColor);
+        }
+    }
+
     @Override
     public void setTransformation(double translateX, double translateY, double rotate, double scaleX, double scaleY) {
         // Our coordinate system extends from the bottom up. Java Graphics2D's system
@@ -110,15 +217,17 @@ public class PNGCanvas extends AbstractCanvas implements ByteArrayResult {
     public void putText(String text, double x, double y, int fontSize, boolean isBold) {
         x *= coordinateScale;
         y *= -coordinateScale;
-        graphics.setColor(new Color(0));
-        Font font = new Font(fontMetrics.getFirstFontFamily(), isBold ? Font.BOLD : Font.PLAIN, (int) (fontSize * fontScale + 0.5));
+        setColor(0);
+        int pixelSize = (int) (fontSize * fontScale + 0.5);
+        Font font = fonts.computeIfAbsent(pixelSize << 1 | (isBold ? 1 : 0),
+                key -> new Font(fontMetrics.getFirstFontFamily(), isBold ? Font.BOLD : Font.PLAIN, pixelSize));
         graphics.setFont(font);
         graphics.drawString(text, (float) x, (float) y);
     }
 
     @Override
     public void startPath() {
-        currentPath = new Path2D.Double(Path2D.WIND_NON_ZERO);
+        currentPath.reset();
     }
 
     @Override
@@ -166,7 +275,7 @@ public class PNGCanvas extends AbstractCanvas implements ByteArrayResult {
 
     @Override
     public void fillPath(int color) {
-        graphics.setColor(new Color(color));
+        setColor(color);
         graphics.fill(currentPath);
     }
 
@@ -177,7 +286,17 @@ public class PNGCanvas extends AbstractCanvas implements ByteArrayResult {
 
     @Override
     public void strokePath(double strokeWidth, int color, LineStyle lineStyle) {
-        graphics.setColor(new Color(color));
+        setColor(color);
+        if (lastStroke == null || lastStrokeWidth != strokeWidth || lastLineStyle != lineStyle) {
+            lastStroke = createStroke(strokeWidth, lineStyle);
+            lastStrokeWidth = strokeWidth;
+            lastLineStyle = lineStyle;
+        }
+        graphics.setStroke(lastStroke);
+        graphics.draw(currentPath);
+    }
+
+    private BasicStroke createStroke(double strokeWidth, LineStyle lineStyle) {
         BasicStroke stroke;
         switch (lineStyle) {
             case Dashed:
@@ -191,18 +310,13 @@ public class PNGCanvas extends AbstractCanvas implements ByteArrayResult {
             default:
                 stroke = new BasicStroke((float) (strokeWidth * fontScale), BasicStroke.CAP_BUTT, BasicStroke.JOIN_MITER);
         }
-        graphics.setStroke(stroke);
-        graphics.draw(currentPath);
+        return stroke;
     }
 
     @Override
     public byte[] toByteArray() throws IOException {
-        graphics.dispose();
-        graphics = null;
         ByteArrayOutputStream os = new ByteArrayOutputStream();
-
-        // Instead of ImageIO.write(image, "png", os)
-        createPNG(image, os, resolution);
+        createPNG(os);
         return os.toByteArray();
     }
 
@@ -212,11 +326,7 @@ public class PNGCanvas extends AbstractCanvas implements ByteArrayResult {
      * @throws IOException thrown if the image cannot be written
      */
     public void writeTo(OutputStream os) throws IOException {
-        graphics.dispose();
-        graphics = null;
-
-        // Instead of ImageIO.write(image, "png", os)
-        createPNG(image, os, resolution);
+        createPNG(os);
     }
 
     /**
@@ -225,103 +335,27 @@ public class PNGCanvas extends AbstractCanvas implements ByteArrayResult {
      * @throws IOException thrown if the image cannot be written
      */
     public void saveAs(Path path) throws IOException {
-        graphics.dispose();
-        graphics = null;
-
         try (OutputStream os = Files.newOutputStream(path)) {
-            // Instead of ImageIO.write(image, "png", os)
-            createPNG(image, os, resolution);
+            createPNG(os);
         }
     }
 
-
     @Override
     public void close() {
         if (graphics != null) {
             graphics.dispose();
             graphics = null;
         }
-        image = null;
-    }
-
-    /**
-     * Saves image as PDF and stores meta data to indicate the resolution.
-     */
-    private static void createPNG(BufferedImage image, OutputStream os, int resolution) throws IOException {
-
-        ImageWriter writer = null;
-        ImageWriteParam writeParam = null;
-        IIOMetadata metadata = null;
-
-        for (Iterator<ImageWriter> iw = ImageIO.getImageWritersByFormatName("png"); iw.hasNext(); ) {
-            writer = iw.next();
-            writeParam = writer.getDefaultWriteParam();
-            ImageTypeSpecifier typeSpecifier = ImageTypeSpecifier.createFromBufferedImageType(image.getType());
-            metadata = writer.getDefaultImageMetadata(typeSpecifier, writeParam);
-            if (!metadata.isReadOnly() && metadata.isStandardMetadataFormatSupported())
-                break;
-        }
-
-        if (writer == null || writeParam == null)
-            throw new QRBillGenerationException("No valid PNG writer found");
-
-        addDpiMetadata(metadata, resolution);
-        addTextMetadata(metadata);
-
-        try (ImageOutputStream stream = ImageIO.createImageOutputStream(os)) {
-            writer.setOutput(stream);
-            writer.write(metadata, new IIOImage(image, null, metadata), writeParam);
+        if (encoder != null) {
+            encoder.close();
+            encoder = null;
         }
+        image = null;
     }
 
-    private static final String PNG_STANDARD_METADATA_FORMAT = "javax_imageio_1.0";
-
-    /**
-     * Add meta data to specify the resolution
-     */
-    private static void addDpiMetadata(IIOMetadata metadata, int dpi) throws IIOInvalidTreeException {
-
-        // native metadata format ("pHYs")
-        double pixelsPerMeter = dpi / 25.4 * 1000;
-        String pixelsPerMeterString = Integer.toString((int) (pixelsPerMeter + 0.5));
-
-        IIOMetadataNode physNode = new IIOMetadataNode("pHYs");
-        physNode.setAttribute("pixelsPerUnitXAxis", pixelsPerMeterString);
-        physNode.setAttribute("pixelsPerUnitYAxis", pixelsPerMeterString);
-        physNode.setAttribute("unitSpecifier", "meter");
-
-        IIOMetadataNode root = new IIOMetadataNode(metadata.getNativeMetadataFormatName());
-        root.appendChild(physNode);
-        metadata.mergeTree(metadata.getNativeMetadataFormatName(), root);
-
-        // standard metadata format
-        double pixelsPerMM = dpi / 25.4;
-        String pixelsPerMMString = Double.toString(pixelsPerMM);
-
-        IIOMetadataNode horizontalPixelSize = new IIOMetadataNode("HorizontalPixelSize");
-        horizontalPixelSize.setAttribute("value", pixelsPerMMString);
-
-        IIOMetadataNode verticalPixelSize = new IIOMetadataNode("VerticalPixelSize");
-        verticalPixelSize.setAttribute("value", pixelsPerMMString);
-
-        IIOMetadataNode dimension = new IIOMetadataNode("Dimension");
-        dimension.appendChild(horizontalPixelSize);
-        dimension.appendChild(verticalPixelSize);
-
-        root = new IIOMetadataNode(PNG_STANDARD_METADATA_FORMAT);
-        root.appendChild(dimension);
-        metadata.mergeTree(PNG_STANDARD_METADATA_FORMAT, root);
-    }
-
-    private static void addTextMetadata(IIOMetadata metadata) throws IIOInvalidTreeException {
-        IIOMetadataNode textEntry = new IIOMetadataNode("tEXtEntry");
-        textEntry.setAttribute("keyword", "Title");
-        textEntry.setAttribute("value", "Swiss QR Bill");
-        IIOMetadataNode text = new IIOMetadataNode("tEXt");
-        text.appendChild(textEntry);
-        IIOMetadataNode commentMetadata = new IIOMetadataNode(metadata.getNativeMetadataFormatName());
-        commentMetadata.appendChild(text);
-        metadata.mergeTree(metadata.getNativeMetadataFormatName(), commentMetadata);
+    private void createPNG(OutputStream os) throws IOException {
+        if (encoder == null)
+            encoder = new PNGEncoder(compressionLevel);
+        encoder.encode(image, os, resolution, isBilevel);
     }
-
 }
@@ -0,0 +1,170 @@
+//
+// Swiss QR Bill Generator
+// Copyright (c) 2020 Manuel Bleichenbacher
+// Licensed under MIT License
+// https://opensource.org/licenses/MIT
+//
+package net.codecrete.qrbill.canvas;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Pool of PNG canvases for generating many PNG images.
+ * <p>
+ * A canvas allocates a large image buffer (about 8.7 MB for an A4 page at 300 dpi).
+ * The pool keeps released canvases and hands them out again for images with the
+ * same size, resolution and font family, thereby avoiding the allocation.
+ * </p>
+ * <p>
+ * A typical use is:
+ * </p>
+ * <pre>
+ * PNGCanvas canvas = pool.acquire(QRBill.QR_BILL_WIDTH, QRBill.QR_BILL_HEIGHT, 300, "Arial");
+ * try {
+ *     QRBill.draw(bill, canvas);
+ *     canvas.writeTo(os);
+ * } finally {
+ *     pool.release(canvas);
+ * }
+ * </pre>
+ * <p>
+ * The pool is thread-safe. A canvas must only be used by a single thread
+ * between acquiring and releasing it.
+ * </p>
+ */
+public class PNGCanvasPool implements AutoCloseable {
+
+    private final int maxIdlePerKey;
+    private final Map<Key, Deque<PNGCanvas>> idleCanvases = new HashMap<>();
+    private boolean isClosed;
+
+    /**
+     * Creates a new pool.
+     *
+     * @param maxIdlePerKey maximum number of idle canvases kept for each combination
+     *                      of image size, resolution and font family
+     */
+    public PNGCanvasPool(int maxIdlePerKey) {
+        if (maxIdlePerKey < 0)
+            throw new IllegalArgumentException("Maximum number of idle canvases must not be negative");
+        this.maxIdlePerKey = maxIdlePerKey;
+    }
+
+    /**
+     * Gets a canvas with the specified image size, resolution and font family.
+     * <p>
+     * If an idle canvas is available, it is returned. Otherwise a new canvas is created.
+     * The canvas is cleared and ready for drawing.
+     * </p>
+     *
+     * @param width image width, in mm
+     * @param height image height, in mm
+     * @param resolution resolution of the result (in dpi)
+     * @param fontFamilyList list of font families (comma separated, CSS syntax)
+     * @return the canvas
+     */
+    public PNGCanvas acquire(double width, double height, int resolution, String fontFamilyList) {
+        Key key = new Key(width, height, resolution, fontFamilyList);
+        synchronized (this) {
+            if (isClosed)
+                throw new IllegalStateException("Pool has been closed");
+            Deque<PNGCanvas> canvases = idleCanvases.get(key);
+            if (canvases != null && !canvases.isEmpty())
+                return canvases.pop();
+        }
+
+        PNGCanvas canvas = new PNGCanvas(width, height, resolution, fontFamilyList);
+        canvas.poolKey = key;
+        return canvas;
+    }
+
+    /**
+     * Returns a canvas to the pool.
+     * <p>
+     * The canvas must have been acquired from this pool and must no longer be used
+     * by the caller. If the maximum number of idle canvases has been reached,
+     * the canvas is closed instead.
+     * </p>
+     *
+     * @param canvas the canvas
+     */
+    public void release(PNGCanvas canvas) {
+        Key key = (Key) canvas.poolKey;
+        if (key == null)
+            throw new IllegalArgumentException("Canvas has not been acquired from a pool");
+
+        canvas.reset();
+        synchronized (this) {
+            if (!isClosed) {
+                Deque<PNGCanvas> canvases = idleCanvases.computeIfAbsent(key, k -> new ArrayDeque<>());
+                if (canvases.size() < maxIdlePerKey) {
+                    canvases.push(canvas);
+                    return;
+                }
+            }
+        }
+        canvas.close();
+    }
+
+    /**
+     * Gets the number of idle canvases in the pool.
+     *
+     * @return the number of idle canvases
+     */
+    public synchronized int getIdleCount() {
+        int count = 0;
+        for (Deque<PNGCanvas> canvases : idleCanvases.values())
+            count += canvases.size();
+        return count;
+    }
+
+    /**
+     * Closes all idle canvases.
+     * <p>
+     * Canvases released after the pool has been closed are closed as well.
+     * </p>
+     */
+    @Override
+    public synchronized void close() {
+        isClosed = true;
+        for (Deque<PNGCanvas> canvases : idleCanvases.values()) {
+            for (PNGCanvas canvas : canvases)
+                canvas.close();
+        }
+        idleCanvases.clear();
+    }
+
+    private static class Key {
+        private final double width;
+        private final double height;
+        private final int resolution;
+        private final String fontFamilyList;
+
+        Key(double width, double height, int resolution, String fontFamilyList) {
+            this.width = width;
+            this.height = height;
+            this.resolution = resolution;
+            this.fontFamilyList = fontFamilyList;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            Key key = (Key) o;
+            return Double.compare(key.width, width) == 0 &&
+                    Double.compare(key.height, height) == 0 &&
+                    resolution == key.resolution &&
+                    fontFamilyList.equals(key.fontFamilyList);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(width, height, resolution, fontFamilyList);
+        }
+    }
+}
@@ -0,0 +1,257 @@
+//
+// Swiss QR Bill Generator
+// Copyright (c) 2020 Manuel Bleichenbacher
+// Licensed under MIT License
+// https://opensource.org/licenses/MIT
+//
+package net.codecrete.qrbill.canvas;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.ComponentSampleModel;
+import java.awt.image.DataBufferByte;
+import java.awt.image.Raster;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * Encoder for grayscale PNG images.
+ * <p>
+ * Encodes 8-bit grayscale images ({@code TYPE_BYTE_GRAY}) either as 8-bit grayscale
+ * or as 1-bit bilevel PNG. The resolution and the title are written as
+ * pHYs and tEXt chunks.
+ * </p>
+ * <p>
+ * Rows are filtered and compressed one at a time, so the encoder only needs a
+ * buffer for a single row in addition to the image. An instance keeps its
+ * buffers and the deflater between images. It is not thread-safe.
+ * </p>
+ */
+class PNGEncoder {
+
+    private static final byte[] SIGNATURE = { (byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1a, '\n' };
+    private static final int IDAT_SIZE = 0x10000;
+    private static final int BILEVEL_THRESHOLD = 128;
+
+    private static final int FILTER_NONE = 0;
+    private static final int FILTER_SUB = 1;
+    private static final int FILTER_UP = 2;
+
+    private final Deflater deflater;
+    private final CRC32 crc = new CRC32();
+    private final byte[] header = new byte[8];
+    private final byte[] chunkData = new byte[IDAT_SIZE];
+    private int chunkLength;
+    private byte[] row = new byte[0];
+
+    /**
+     * Creates a new encoder.
+     *
+     * @param compressionLevel deflate compression level (0 to 9)
+     */
+    PNGEncoder(int compressionLevel) {
+        deflater = new Deflater(compressionLevel);
+    }
+
+    /**
+     * Sets the deflate compression level.
+     *
+     * @param compressionLevel compression level (0 to 9)
+     */
+    void setCompressionLevel(int compressionLevel) {
+        deflater.setLevel(compressionLevel);
+    }
+
+    /**
+     * Encodes the image and writes it to the output stream.
+     *
+     * @param image      image of type {@code TYPE_BYTE_GRAY}
+     * @param os         output stream
+     * @param resolution resolution (in dpi)
+     * @param isBilevel  {@code true} for 1-bit bilevel output, {@code false} for 8-bit grayscale
+     * @throws IOException thrown if the output stream cannot be written
+     */
+    void encode(BufferedImage image, OutputStream os, int resolution, boolean isBilevel) throws IOException {
+        int width = image.getWidth();
+        int height = image.getHeight();
+
+        os.write(SIGNATURE);
+        writeHeaderChunk(os, width, height, isBilevel ? 1 : 8);
+        writeResolutionChunk(os, resolution);
+        writeTextChunk(os, "Title", "Swiss QR Bill");
+
+        int rowLength = (isBilevel ? (width + 7) / 8 : width) + 1;
+        if (row.length < rowLength)
+            row = new byte[rowLength];
+
+        deflater.reset();
+        chunkLength = 0;
+        if (isBilevel)
+            packBilevelRows(image.getRaster(), os);
+        else
+            filterGrayRows(image.getRaster(), os);
+        finishImageData(os);
+
+        writeChunk(os, "IEND", chunkData, 0);
+    }
+
+    /**
+     * Releases the deflater.
+     */
+    void close() {
+        deflater.end();
+    }
+
+    private void filterGrayRows(Raster raster, OutputStream os) throws IOException {
+        int width = raster.getWidth();
+        int height = raster.getHeight();
+        byte[] pixels = ((DataBufferByte) raster.getDataBuffer()).getData();
+        int stride = ((ComponentSampleModel) raster.getSampleModel()).getScanlineStride();
+
+        // the previous row is taken from the image itself
+        int rowStart = 0;
+        int prevRowStart = -1;
+        for (int y = 0; y < height; y++, prevRowStart = rowStart, rowStart += stride) {
+            // select filter with smallest sum of absolute values (heuristic from PNG specification)
+            int filter = selectFilter(pixels, rowStart, prevRowStart, width);
+            row[0] = (byte) filter;
+            switch (filter) {
+                case FILTER_SUB:
+                    row[1] = pixels[rowStart];
+                    for (int x = 1; x < width; x++)
+                        row[x + 1] = (byte) (pixels[rowStart + x] - pixels[rowStart + x - 1]);
+                    break;
+                case FILTER_UP:
+                    for (int x = 0; x < width; x++)
+                        row[x + 1] = (byte) (pixels[rowStart + x] - pixels[prevRowStart + x]);
+                    break;
+                default:
+                    System.arraycopy(pixels, rowStart, row, 1, width);
+            }
+            writeRow(os, width + 1);
+        }
+    }
+
+    private static int selectFilter(byte[] pixels, int rowStart, int prevRowStart, int width) {
+        // most rows are identical to the previous one (e.g. white space)
+        long sumUp = Long.MAX_VALUE;
+        if (prevRowStart >= 0) {
+            sumUp = 0;
+            for (int x = 0; x < width; x++)
+                sumUp += Math.abs((byte) (pixels[rowStart + x] - pixels[prevRowStart + x]));
+            if (sumUp == 0)
+                return FILTER_UP;
+        }
+
+        long sumNone = 0;
+        long sumSub = 0;
+        int prev = 0;
+        for (int x = 0; x < width; x++) {
+            int value = pixels[rowStart + x];
+            sumNone += Math.abs(value);
+            sumSub += Math.abs((byte) (value - prev));
+            prev = value;
+        }
+
+        if (sumUp <= sumSub && sumUp <= sumNone)
+            return FILTER_UP;
+        return sumSub < sumNone ? FILTER_SUB : FILTER_NONE;
+    }
+
+    private void packBilevelRows(Raster raster, OutputStream os) throws IOException {
+        int width = raster.getWidth();
+        int height = raster.getHeight();
+        byte[] pixels = ((DataBufferByte) raster.getDataBuffer()).getData();
+        int stride = ((ComponentSampleModel) raster.getSampleModel()).getScanlineStride();
+
+        for (int y = 0; y < height; y++) {
+            int offset = 0;
+            row[offset++] = FILTER_NONE;
+            int rowStart = y * stride;
+            int bits = 0;
+            int x = 0;
+            for (; x < width; x++) {
+                bits = bits << 1 | ((pixels[rowStart + x] & 0xff) >= BILEVEL_THRESHOLD ? 1 : 0);
+                if ((x & 7) == 7) {
+                    row[offset++] = (byte) bits;
+                    bits = 0;
+                }
+            }
+            if ((x & 7) != 0)
+                row[offset++] = (byte) (bits << (8 - (x & 7)));
+            writeRow(os, offset);
+        }
+    }
+
+    // Compresses the filtered row; the compressed data is written in IDAT chunks of IDAT_SIZE bytes
+    private void writeRow(OutputStream os, int length) throws IOException {
+        deflater.setInput(row, 0, length);
+        while (!deflater.needsInput())
+            deflateToChunk(os);
+    }
+
+    private void finishImageData(OutputStream os) throws IOException {
+        deflater.finish();
+        while (!deflater.finished())
+            deflateToChunk(os);
+        if (chunkLength > 0)
+            writeChunk(os, "IDAT", chunkData, chunkLength);
+    }
+
+    private void deflateToChunk(OutputStream os) throws IOException {
+        chunkLength += deflater.deflate(chunkData, chunkLength, IDAT_SIZE - chunkLength);
+        if (chunkLength == IDAT_SIZE) {
+            writeChunk(os, "IDAT", chunkData, IDAT_SIZE);
+            chunkLength = 0;
+        }
+    }
+
+    private void writeHeaderChunk(OutputStream os, int width, int height, int bitDepth) throws IOException {
+        byte[] data = new byte[13];
+        putInt(data, 0, width);
+        putInt(data, 4, height);
+        data[8] = (byte) bitDepth;
+        data[9] = 0; // color type: grayscale
+        data[10] = 0; // compression method: deflate
+        data[11] = 0; // filter method: adaptive
+        data[12] = 0; // interlace method: none
+        writeChunk(os, "IHDR", data, data.length);
+    }
+
+    private void writeResolutionChunk(OutputStream os, int resolution) throws IOException {
+        int pixelsPerMeter = (int) (resolution / 25.4 * 1000 + 0.5);
+        byte[] data = new byte[9];
+        putInt(data, 0, pixelsPerMeter);
+        putInt(data, 4, pixelsPerMeter);
+        data[8] = 1; // unit: meter
+        writeChunk(os, "pHYs", data, data.length);
+    }
+
+    private void writeTextChunk(OutputStream os, String keyword, String text) throws IOException {
+        byte[] data = (keyword + '\0' + text).getBytes(StandardCharsets.ISO_8859_1);
+        writeChunk(os, "tEXt", data, data.length);
+    }
+
+    private void writeChunk(OutputStream os, String type, byte[] data, int length) throws IOException {
+        putInt(header, 0, length);
+        for (int i = 0; i < 4; i++)
+            header[4 + i] = (byte) type.charAt(i);
+        os.write(header, 0, 8);
+        os.write(data, 0, length);
+
+        crc.reset();
+        crc.update(header, 4, 4);
+        crc.update(data, 0, length);
+        putInt(header, 0, (int) crc.getValue());
+        os.write(header, 0, 4);
+    }
+
+    private static void putInt(byte[] data, int offset, int value) {
+        data[offset] = (byte) (value >>> 24);
+        data[offset + 1] = (byte) (value >>> 16);
+        data[offset + 2] = (byte) (value >>> 8);
+        data[offset + 3] = (byte) value;
+    }
+}
@@ -0,0 +1,385 @@
+//
+// Swiss QR Bill Generator
+// Copyright (c) 2020 Manuel Bleichenbacher
+// Licensed under MIT License
+// https://opensource.org/licenses/MIT
+//
+package net.codecrete.qrbill.canvas;
+
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.Arrays;
+
+/**
+ * Canvas recording the drawing operations for later replay.
+ * <p>
+ * The drawing operations are stored compactly in a few primitive arrays.
+ * The result ({@link Recording}) can be replayed onto any other canvas, e.g.
+ * to generate SVG, PDF and PNG output of the same bill while validating
+ * and laying out the bill only once.
+ * </p>
+ * <p>
+ * Text is measured and split into lines using the font metrics of the
+ * specified font family. The recording should thus be replayed onto
+ * canvases using the same font family.
+ * </p>
+ */
+public class RecordingCanvas extends AbstractCanvas {
+
+    private final double width;
+    private final double height;
+    private final String fontFamilyList;
+
+    private byte[] ops = new byte[256];
+    private int opCount;
+    private double[] doubleArgs = new double[1024];
+    private int doubleCount;
+    private int[] intArgs = new int[128];
+    private int intCount;
+    private String[] stringArgs = new String[32];
+    private int stringCount;
+
+    /**
+     * Creates a new instance with the specified drawing size and font family.
+     *
+     * @param width          width of the drawing, in mm
+     * @param height         height of the drawing, in mm
+     * @param fontFamilyList list of font families (comma separated, CSS syntax)
+     */
+    public RecordingCanvas(double width, double height, String fontFamilyList) {
+        this.width = width;
+        this.height = height;
+        this.fontFamilyList = fontFamilyList;
+        setupFontMetrics(fontFamilyList);
+    }
+
+    /**
+     * Gets the recorded drawing operations.
+     * <p>
+     * Additional drawing operations can be recorded after this call. They will
+     * not be part of the returned recording.
+     * </p>
+     *
+     * @return the recording
+     */
+    public Recording getRecording() {
+        return new Recording(width, height, fontFamilyList,
+                Arrays.copyOf(ops, opCount), Arrays.copyOf(doubleArgs, doubleCount),
+                Arrays.copyOf(intArgs, intCount), Arrays.copyOf(stringArgs, stringCount));
+    }
+
+    @Override
+    public void setTransformation(double translateX, double translateY, double rotate, double scaleX, double scaleY) {
+        addOp(Recording.SET_TRANSFORMATION);
+        addDouble(translateX);
+        addDouble(translateY);
+        addDouble(rotate);
+        addDouble(scaleX);
+        addDouble(scaleY);
+    }
+
+    @Override
+    public void putText(String text, double x, double y, int fontSize, boolean isBold) {
+        addOp(Recording.PUT_TEXT);
+        addDouble(x);
+        addDouble(y);
+        addInt(fontSize);
+        addInt(isBold ? 1 : 0);
+        addString(text);
+    }
+
+    @Override
+    public void putTextLines(String[] lines, double x, double y, int fontSize, double leading) {
+        addOp(Recording.PUT_TEXT_LINES);
+        addDouble(x);
+        addDouble(y);
+        addDouble(leading);
+        addInt(fontSize);
+        addInt(lines.length);
+        for (String line : lines)
+            addString(line);
+    }
+
+    @Override
+    public void startPath() {
+        addOp(Recording.START_PATH);
+    }
+
+    @Override
+    public void moveTo(double x, double y) {
+        addOp(Recording.MOVE_TO);
+        addDouble(x);
+        addDouble(y);
+    }
+
+    @Override
+    public void lineTo(double x, double y) {
+        addOp(Recording.LINE_TO);
+        addDouble(x);
+        addDouble(y);
+    }
+
+    @Override
+    public void cubicCurveTo(double x1, double y1, double x2, double y2, double x, double y) {
+        addOp(Recording.CUBIC_CURVE_TO);
+        addDouble(x1);
+        addDouble(y1);
+        addDouble(x2);
+        addDouble(y2);
+        addDouble(x);
+        addDouble(y);
+    }
+
+    @Override
+    public void addRectangle(double x, double y, double width, double height) {
+        addOp(Recording.ADD_RECTANGLE);
+        addDouble(x);
+        addDouble(y);
+        addDouble(width);
+        addDouble(height);
+    }
+
+    @Override
+    public void closeSubpath() {
+        addOp(Recording.CLOSE_SUBPATH);
+    }
+
+    @Override
+    public void fillPath(int color) {
+        addOp(Recording.FILL_PATH);
+        addInt(color);
+    }
+
+    @Override
+    public void strokePath(double strokeWidth, int color) {
+        strokePath(strokeWidth, color, LineStyle.Solid);
+    }
+
+    @Override
+    public void strokePath(double strokeWidth, int color, LineStyle lineStyle) {
+        addOp(Recording.STROKE_PATH);
+        addDouble(strokeWidth);
+        addInt(color);
+        addInt(lineStyle.ordinal());
+    }
+
+    @Override
+    public void drawStaticContent(String key, StaticContent content) throws IOException {
+        // the end positions are filled in after the content has been recorded
+        addOp(Recording.BEGIN_STATIC_CONTENT);
+        addString(key);
+        int endPositions = intCount;
+        for (int i = 0; i < 4; i++)
+            addInt(0);
+
+        content.draw();
+
+        addOp(Recording.END_STATIC_CONTENT);
+        intArgs[endPositions] = opCount;
+        intArgs[endPositions + 1] = doubleCount;
+        intArgs[endPositions + 2] = intCount;
+        intArgs[endPositions + 3] = stringCount;
+    }
+
+    @Override
+    public void close() {
+        // nothing to release
+    }
+
+    private void addOp(byte op) {
+        if (opCount == ops.length)
+            ops = Arrays.copyOf(ops, opCount * 2);
+        ops[opCount++] = op;
+    }
+
+    private void addDouble(double value) {
+        if (doubleCount == doubleArgs.length)
+            doubleArgs = Arrays.copyOf(doubleArgs, doubleCount * 2);
+        doubleArgs[doubleCount++] = value;
+    }
+
+    private void addInt(int value) {
+        if (intCount == intArgs.length)
+            intArgs = Arrays.copyOf(intArgs, intCount * 2);
+        intArgs[intCount++] = value;
+    }
+
+    private void addString(String value) {
+        if (stringCount == stringArgs.length)
+            stringArgs = Arrays.copyOf(stringArgs, stringCount * 2);
+        stringArgs[stringCount++] = value;
+    }
+
+    /**
+     * Recorded drawing operations.
+     * <p>
+     * Instances are immutable and can be shared between threads, cached and serialized.
+     * </p>
+     */
+    public static final class Recording implements Serializable {
+
+        private static final long serialVersionUID = 1L;
+
+        private static final byte SET_TRANSFORMATION = 1;
+        private static final byte PUT_TEXT = 2;
+        private static final byte PUT_TEXT_LINES = 3;
+        private static final byte START_PATH = 4;
+        private static final byte MOVE_TO = 5;
+        private static final byte LINE_TO = 6;
+        private static final byte CUBIC_CURVE_TO = 7;
+        private static final byte ADD_RECTANGLE = 8;
+        private static final byte CLOSE_SUBPATH = 9;
+        private static final byte FILL_PATH = 10;
+        private static final byte STROKE_PATH = 11;
+        private static final byte BEGIN_STATIC_CONTENT = 12;
+        private static final byte END_STATIC_CONTENT = 13;
+
+        private static final LineStyle[] LINE_STYLES = LineStyle.values();
+
+        private final double width;
+        private final double height;
+        private final String fontFamilyList;
+        private final byte[] ops;
+        private final double[] doubleArgs;
+        private final int[] intArgs;
+        private final String[] stringArgs;
+
+        private Recording(double width, double height, String fontFamilyList,
+                          byte[] ops, double[] doubleArgs, int[] intArgs, String[] stringArgs) {
+            this.width = width;
+            this.height = height;
+            this.fontFamilyList = fontFamilyList;
+            this.ops = ops;
+            this.doubleArgs = doubleArgs;
+            this.intArgs = intArgs;
+            this.stringArgs = stringArgs;
+        }
+
+        /**
+         * Gets the width of the drawing.
+         *
+         * @return the width, in mm
+         */
+        public double getWidth() {
+            return width;
+        }
+
+        /**
+         * Gets the height of the drawing.
+         *
+         * @return the height, in mm
+         */
+        public double getHeight() {
+            return height;
+        }
+
+        /**
+         * Gets the font family list used for measuring the text.
+         *
+         * @return the list of font families (comma separated, CSS syntax)
+         */
+        public String getFontFamilyList() {
+            return fontFamilyList;
+        }
+
+        /**
+         * Replays the recorded drawing operations onto the specified canvas.
+         *
+         * @param canvas the canvas to draw to
+         * @throws IOException thrown if the graphics cannot be generated
+         */
+        public void replay(Canvas canvas) throws IOException {
+            replay(canvas, new Position(), ops.length);
+        }
+
+        private void replay(Canvas canvas, Position pos, int endOp) throws IOException {
+            final double[] d = doubleArgs;
+            while (pos.op < endOp) {
+                switch (ops[pos.op++]) {
+                    case SET_TRANSFORMATION:
+                        canvas.setTransformation(d[pos.d], d[pos.d + 1], d[pos.d + 2], d[pos.d + 3], d[pos.d + 4]);
+                        pos.d += 5;
+                        break;
+                    case PUT_TEXT:
+                        canvas.putText(stringArgs[pos.s++], d[pos.d], d[pos.d + 1], intArgs[pos.i], intArgs[pos.i + 1] != 0);
+                        pos.d += 2;
+                        pos.i += 2;
+                        break;
+                    case PUT_TEXT_LINES: {
+                        String[] lines = Arrays.copyOfRange(stringArgs, pos.s, pos.s + intArgs[pos.i + 1]);
+                        canvas.putTextLines(lines, d[pos.d], d[pos.d + 1], intArgs[pos.i], d[pos.d + 2]);
+                        pos.s += lines.length;
+                        pos.d += 3;
+                        pos.i += 2;
+                        break;
+                    }
+                    case START_PATH:
+                        canvas.startPath();
+                        break;
+                    case MOVE_TO:
+                        canvas.moveTo(d[pos.d], d[pos.d + 1]);
+                        pos.d += 2;
+                        break;
+                    case LINE_TO:
+                        canvas.lineTo(d[pos.d], d[pos.d + 1]);
+                        pos.d += 2;
+                        break;
+                    case CUBIC_CURVE_TO:
+                        canvas.cubicCurveTo(d[pos.d], d[pos.d + 1], d[pos.d + 2], d[pos.d + 3], d[pos.d + 4], d[pos.d + 5]);
+                        pos.d += 6;
+                        break;
+                    case ADD_RECTANGLE:
+                        canvas.addRectangle(d[pos.d], d[pos.d + 1], d[pos.d + 2], d[pos.d + 3]);
+                        pos.d += 4;
+                        break;
+                    case CLOSE_SUBPATH:
+                        canvas.closeSubpath();
+                        break;
+                    case FILL_PATH:
+                        canvas.fillPath(intArgs[pos.i++]);
+                        break;
+                    case STROKE_PATH:
+                        canvas.strokePath(d[pos.d++], intArgs[pos.i], LINE_STYLES[intArgs[pos.i + 1]]);
+                        pos.i += 2;
+                        break;
+                    case BEGIN_STATIC_CONTENT:
+                        replayStaticContent(canvas, pos);
+                        break;
+                    case END_STATIC_CONTENT:
+                        break;
+                    default:
+                        throw new IllegalStateException("Invalid recording");
+                }
+            }
+        }
+
+        private void replayStaticContent(Canvas canvas, Position pos) throws IOException {
+            String key = stringArgs[pos.s++];
+            int endOp = intArgs[pos.i];
+            Position end = new Position();
+            end.op = endOp;
+            end.d = intArgs[pos.i + 1];
+            end.i = intArgs[pos.i + 2];
+            end.s = intArgs[pos.i + 3];
+            pos.i += 4;
+
+            // the canvas might reuse previously drawn content and skip the operations
+            canvas.drawStaticContent(key, () -> replay(canvas, pos, endOp));
+            pos.set(end);
+        }
+    }
+
+    private static class Position {
+        int op;
+        int d;
+        int i;
+        int s;
+
+        void set(Position position) {
+            op = position.op;
+            d = position.d;
+            i = position.i;
+            s = position.s;
+        }
+    }
+}
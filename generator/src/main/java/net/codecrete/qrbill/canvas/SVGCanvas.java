@@ -6,6 +6,8 @@
 //
 package net.codecrete.qrbill.canvas;
 
+import net.codecrete.qrbill.generator.QRBillGenerationException;
+
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
@@ -30,6 +32,9 @@ public class SVGCanvas extends AbstractCanvas implements ByteArrayResult {
     private double lastPositionX;
     private double lastPositionY;
     private int approxPathLength;
+    private final char[] numberBuffer = new char[24];
+    private DecimalFormat numberFormat;
+    private DecimalFormat angleFormat;
 
     /**
      * Creates a new instance of the specified size.
@@ -42,25 +47,70 @@ public class SVGCanvas extends AbstractCanvas implements ByteArrayResult {
      * @throws IOException thrown if the instance cannot be created
      */
     public SVGCanvas(double width, double height, String fontFamilyList) throws IOException {
-        setupFontMetrics(fontFamilyList);
-
         buffer = new ByteArrayOutputStream();
         stream = new OutputStreamWriter(buffer, StandardCharsets.UTF_8);
+        writeHeader(width, height, fontFamilyList);
+    }
+
+    /**
+     * Creates a new instance of the specified size writing the SVG image to the specified output stream.
+     * <p>
+     *     The SVG image is written incrementally without buffering the entire image.
+     *     It is complete when the canvas is closed. Closing the canvas flushes the
+     *     output stream but does not close it.
+     * </p>
+     * <p>
+     *     For all text, the specified font family list will be used.
+     * </p>
+     * @param outputStream output stream to write the SVG image to
+     * @param width width of image, in mm
+     * @param height height of image, in mm
+     * @param fontFamilyList font family list (comma separated list, CSS syntax)
+     * @throws IOException thrown if the instance cannot be created
+     */
+    public SVGCanvas(OutputStream outputStream, double width, double height, String fontFamilyList) throws IOException {
+        this(new OutputStreamWriter(outputStream, StandardCharsets.UTF_8), width, height, fontFamilyList);
+    }
+
+    /**
+     * Creates a new instance of the specified size writing the SVG image to the specified writer.
+     * <p>
+     *     The SVG image is written incrementally without buffering the entire image.
+     *     It is complete when the canvas is closed. Closing the canvas flushes the
+     *     writer but does not close it. The SVG image declares UTF-8 encoding.
+     * </p>
+     * <p>
+     *     For all text, the specified font family list will be used.
+     * </p>
+     * @param writer writer to write the SVG image to
+     * @param width width of image, in mm
+     * @param height height of image, in mm
+     * @param fontFamilyList font family list (comma separated list, CSS syntax)
+     * @throws IOException thrown if the instance cannot be created
+     */
+    public SVGCanvas(Writer writer, double width, double height, String fontFamilyList) throws IOException {
+        stream = writer;
+        writeHeader(width, height, fontFamilyList);
+    }
+
+    private void writeHeader(double width, double height, String fontFamilyList) throws IOException {
+        setupFontMetrics(fontFamilyList);
+
         stream.write("<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"no\"?>\n"
                 + "<!DOCTYPE svg PUBLIC \"-//W3C//DTD SVG 1.1//EN\" \"http://www.w3.org/Graphics/SVG/1.1/DTD/svg11.dtd\">\n"
                 + "<svg width=\"");
-        stream.write(formatNumber(width));
+        writeNumber(width);
         stream.write("mm\" height=\"");
-        stream.write(formatNumber(height));
+        writeNumber(height);
         stream.write("mm\" version=\"1.1\" viewBox=\"0 0 ");
-        stream.write(formatCoordinate(width));
+        writeCoordinate(width);
         stream.write(" ");
-        stream.write(formatCoordinate(height));
+        writeCoordinate(height);
         stream.write("\" xmlns=\"http://www.w3.org/2000/svg\">\n");
         stream.write("<g font-family=\"");
         stream.write(escapeXML(fontMetrics.getFontFamilyList()));
         stream.write("\" transform=\"translate(0 ");
-        stream.write(formatCoordinate(height));
+        writeCoordinate(height);
         stream.write(")\">\n");
         stream.write("<title>Swiss QR Bill</title>\n");
     }
@@ -74,7 +124,10 @@ public class SVGCanvas extends AbstractCanvas implements ByteArrayResult {
         if (stream != null) {
             stream.write("</g>\n");
             stream.write("</svg>\n");
-            stream.close();
+            if (buffer != null)
+                stream.close();
+            else
+                stream.flush();
             stream = null;
         }
     }
@@ -91,16 +144,16 @@ public class SVGCanvas extends AbstractCanvas implements ByteArrayResult {
         y = -y;
         if (isFirstMoveInPath) {
             stream.write("M");
-            stream.write(formatCoordinate(x));
+            writeCoordinate(x);
             stream.write(",");
-            stream.write(formatCoordinate(y));
+            writeCoordinate(y);
             isFirstMoveInPath = false;
         } else {
             addPathNewlines(16);
             stream.write("m");
-            stream.write(formatCoordinate(x - lastPositionX));
+            writeCoordinate(x - lastPositionX);
             stream.write(",");
-            stream.write(formatCoordinate(y - lastPositionY));
+            writeCoordinate(y - lastPositionY);
         }
         lastPositionX = x;
         lastPositionY = y;
@@ -112,9 +165,9 @@ public class SVGCanvas extends AbstractCanvas implements ByteArrayResult {
         y = -y;
         addPathNewlines(16);
         stream.write("l");
-        stream.write(formatCoordinate(x - lastPositionX));
+        writeCoordinate(x - lastPositionX);
         stream.write(",");
-        stream.write(formatCoordinate(y - lastPositionY));
+        writeCoordinate(y - lastPositionY);
         lastPositionX = x;
         lastPositionY = y;
         approxPathLength += 16;
@@ -127,17 +180,17 @@ public class SVGCanvas extends AbstractCanvas implements ByteArrayResult {
         y = -y;
         addPathNewlines(48);
         stream.write("c");
-        stream.write(formatCoordinate(x1 - lastPositionX));
+        writeCoordinate(x1 - lastPositionX);
         stream.write(",");
-        stream.write(formatCoordinate(y1 - lastPositionY));
+        writeCoordinate(y1 - lastPositionY);
         stream.write(",");
-        stream.write(formatCoordinate(x2 - lastPositionX));
+        writeCoordinate(x2 - lastPositionX);
         stream.write(",");
-        stream.write(formatCoordinate(y2 - lastPositionY));
+        writeCoordinate(y2 - lastPositionY);
         stream.write(",");
-        stream.write(formatCoordinate(x - lastPositionX));
+        writeCoordinate(x - lastPositionX);
         stream.write(",");
-        stream.write(formatCoordinate(y - lastPositionY));
+        writeCoordinate(y - lastPositionY);
         lastPositionX = x;
         lastPositionY = y;
         approxPathLength += 48;
@@ -148,11 +201,11 @@ public class SVGCanvas extends AbstractCanvas implements ByteArrayResult {
         addPathNewlines(40);
         moveTo(x, y + height);
         stream.write("h");
-        stream.write(formatCoordinate(width));
+        writeCoordinate(width);
         stream.write("v");
-        stream.write(formatCoordinate(height));
+        writeCoordinate(height);
         stream.write("h");
-        stream.write(formatCoordinate(-width));
+        writeCoordinate(-width);
         stream.write("z");
         approxPathLength += 24;
     }
@@ -174,7 +227,7 @@ public class SVGCanvas extends AbstractCanvas implements ByteArrayResult {
     @Override
     public void fillPath(int color) throws IOException {
         stream.write("\" fill=\"#");
-        stream.write(formatColor(color));
+        writeColor(color);
         stream.write("\"/>\n");
         isFirstMoveInPath = true;
     }
@@ -187,17 +240,17 @@ public class SVGCanvas extends AbstractCanvas implements ByteArrayResult {
     @Override
     public void strokePath(double strokeWidth, int color, LineStyle lineStyle) throws IOException {
         stream.write("\" stroke=\"#");
-        stream.write(formatColor(color));
+        writeColor(color);
         if (strokeWidth != 1) {
             stream.write("\" stroke-width=\"");
-            stream.write(formatNumber(strokeWidth));
+            writeNumber(strokeWidth);
         }
         if (lineStyle == LineStyle.Dashed) {
             stream.write("\" stroke-dasharray=\"");
-            stream.write(formatNumber(strokeWidth * 4));
+            writeNumber(strokeWidth * 4);
         } else if (lineStyle == LineStyle.Dotted) {
             stream.write("\" stroke-linecap=\"round\" stroke-dasharray=\"0 ");
-            stream.write(formatNumber(strokeWidth * 3));
+            writeNumber(strokeWidth * 3);
         }
         stream.write("\" fill=\"none\"/>\n");
         isFirstMoveInPath = true;
@@ -207,11 +260,11 @@ public class SVGCanvas extends AbstractCanvas implements ByteArrayResult {
     public void putText(String text, double x, double y, int fontSize, boolean isBold) throws IOException {
         y = -y;
         stream.write("<text x=\"");
-        stream.write(formatCoordinate(x));
+        writeCoordinate(x);
         stream.write("\" y=\"");
-        stream.write(formatCoordinate(y));
+        writeCoordinate(y);
         stream.write("\" font-size=\"");
-        stream.write(formatNumber(fontSize));
+        writeNumber(fontSize);
         if (isBold)
             stream.write("\" font-weight=\"bold");
         stream.write("\">");
@@ -227,19 +280,19 @@ public class SVGCanvas extends AbstractCanvas implements ByteArrayResult {
         }
         if (translateX != 0 || translateY != 0 || scaleX != 1 || scaleY != 1) {
             stream.write("<g transform=\"translate(");
-            stream.write(formatCoordinate(translateX));
+            writeCoordinate(translateX);
             stream.write(" ");
-            stream.write(formatCoordinate(-translateY));
+            writeCoordinate(-translateY);
             if (rotate != 0) {
                 stream.write(") rotate(");
-                stream.write(ANGLE_FORMAT.format(-rotate / Math.PI * 180));
+                writeFixed(-rotate / Math.PI * 180, 5);
             }
             if (scaleX != 1 || scaleY != 1) {
                 stream.write(") scale(");
-                stream.write(formatNumber(scaleX));
+                writeNumber(scaleX);
                 if (scaleX != scaleY) {
                     stream.write(" ");
-                    stream.write(formatNumber(scaleY));
+                    writeNumber(scaleY);
                 }
             }
             stream.write(")\">\n");
@@ -250,6 +303,7 @@ public class SVGCanvas extends AbstractCanvas implements ByteArrayResult {
     @Override
     public byte[] toByteArray() throws IOException {
         close();
+        checkBuffered();
         return buffer.toByteArray();
     }
 
@@ -260,6 +314,7 @@ public class SVGCanvas extends AbstractCanvas implements ByteArrayResult {
      */
     public void writeTo(OutputStream os) throws IOException {
         close();
+        checkBuffered();
         buffer.writeTo(os);
     }
 
@@ -270,26 +325,113 @@ public class SVGCanvas extends AbstractCanvas implements ByteArrayResult {
      */
     public void saveAs(Path path) throws IOException {
         close();
+        checkBuffered();
         try (OutputStream os = Files.newOutputStream(path)) {
             buffer.writeTo(os);
         }
     }
 
-    private static final DecimalFormat NUMBER_FORMAT = new DecimalFormat("#.###", new DecimalFormatSymbols(Locale.UK));
-    private static final DecimalFormat ANGLE_FORMAT = new DecimalFormat("#.#####", new DecimalFormatSymbols(Locale.UK));
+    private void checkBuffered() {
+        if (buffer == null)
+            throw new QRBillGenerationException("SVG image has been written to output stream");
+    }
+
+    private void writeNumber(double value) throws IOException {
+        writeFixed(value, 3);
+    }
+
+    private void writeCoordinate(double value) throws IOException {
+        writeFixed(value * MM_TO_PT, 3);
+    }
 
-    private static String formatNumber(double value) {
-        return NUMBER_FORMAT.format(value);
+    private void writeColor(int color) throws IOException {
+        // equivalent to String.format("%06x", color)
+        int numDigits = Math.max(6, (32 - Integer.numberOfLeadingZeros(color) + 3) / 4);
+        for (int i = numDigits - 1; i >= 0; i--) {
+            numberBuffer[i] = HEX_DIGITS[color & 0xf];
+            color >>>= 4;
+        }
+        stream.write(numberBuffer, 0, numDigits);
     }
 
-    private static String formatCoordinate(double value) {
-        return NUMBER_FORMAT.format(value * MM_TO_PT);
+    /**
+     * Writes the number with the specified maximum number of decimals.
+     * <p>
+     * The result is identical to {@code DecimalFormat} with the pattern "#.###"
+     * (or "#.#####" for 5 decimals), i.e. trailing zeros are omitted, negative
+     * values rounded to 0 are written as "-0" and ties are rounded to even.
+     * Values close to a tie and very large values are formatted with
+     * {@code DecimalFormat} to replicate its exact rounding behavior.
+     * </p>
+     */
+    private void writeFixed(double value, int decimals) throws IOException {
+        long scale = POWERS_OF_10[decimals];
+        double absValue = Math.abs(value);
+        double scaled = absValue * scale;
+
+        // NaN and infinity fail this test as well
+        if (!(scaled < FAST_PATH_LIMIT)) {
+            writeWithDecimalFormat(value, decimals);
+            return;
+        }
+
+        double floor = Math.floor(scaled);
+        double fraction = scaled - floor;
+        if (Math.abs(fraction - 0.5) < TIE_MARGIN) {
+            writeWithDecimalFormat(value, decimals);
+            return;
+        }
+
+        long rounded = (long) floor;
+        if (fraction > 0.5)
+            rounded++;
+
+        long integerPart = rounded / scale;
+        long fractionalPart = rounded % scale;
+
+        // write backwards from the end of the buffer
+        int end = numberBuffer.length;
+        int pos = end;
+        if (fractionalPart != 0) {
+            int numDecimals = decimals;
+            while (fractionalPart % 10 == 0) {
+                fractionalPart /= 10;
+                numDecimals--;
+            }
+            for (int i = 0; i < numDecimals; i++) {
+                numberBuffer[--pos] = (char) ('0' + fractionalPart % 10);
+                fractionalPart /= 10;
+            }
+            numberBuffer[--pos] = '.';
+        }
+        do {
+            numberBuffer[--pos] = (char) ('0' + integerPart % 10);
+            integerPart /= 10;
+        } while (integerPart != 0);
+        if (Double.doubleToRawLongBits(value) < 0)
+            numberBuffer[--pos] = '-';
+
+        stream.write(numberBuffer, pos, end - pos);
     }
 
-    private static String formatColor(int color) {
-        return String.format(Locale.US, "%06x", color);
+    private void writeWithDecimalFormat(double value, int decimals) throws IOException {
+        if (decimals == 3) {
+            if (numberFormat == null)
+                numberFormat = new DecimalFormat("#.###", new DecimalFormatSymbols(Locale.UK));
+            stream.write(numberFormat.format(value));
+        } else {
+            if (angleFormat == null)
+                angleFormat = new DecimalFormat("#.#####", new DecimalFormatSymbols(Locale.UK));
+            stream.write(angleFormat.format(value));
+        }
     }
 
+    private static final long[] POWERS_OF_10 = { 1, 10, 100, 1000, 10000, 100000 };
+    // scaled values below this limit are precise enough for the fast path
+    private static final double FAST_PATH_LIMIT = 1e9;
+    private static final double TIE_MARGIN = 1e-3;
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
     private static String escapeXML(String text) {
         int length = text.length();
         int lastCopiedPosition = 0;
@@ -42,6 +42,8 @@ class BillLayout {
     private Bill bill;
     private QRCode qrCode;
     private Canvas graphics;
+    private final double originX;
+    private final double originY;
 
     private String accountPayableTo;
     private String reference;
@@ -64,9 +66,26 @@ class BillLayout {
 
 
     BillLayout(Bill bill, Canvas graphics) {
+        this(bill, graphics, 0, 0);
+    }
+
+    /**
+     * Creates a layout drawing the payment slip at the specified position.
+     * <p>
+     * This is used to place several payment slips on a single page.
+     * </p>
+     *
+     * @param bill     bill data
+     * @param graphics canvas to draw to
+     * @param originX  x position of the bottom left corner of the slip, in mm
+     * @param originY  y position of the bottom left corner of the slip, in mm
+     */
+    BillLayout(Bill bill, Canvas graphics, double originX, double originY) {
         this.bill = bill;
         this.qrCode = new QRCode(bill);
         this.graphics = graphics;
+        this.originX = originX;
+        this.originY = originY;
     }
 
     void draw() throws IOException {
@@ -76,21 +95,29 @@ class BillLayout {
         // payment part
 
         final int PP_LABEL_PREF_FONT_SIZE = 8; // pt
-        final int PP_TEXT_PREF_FONT_SIZE = 10; // pt
-        final int PP_TEXT_MIN_FONT_SIZE = 8; // pt
-
-        labelFontSize = PP_LABEL_PREF_FONT_SIZE;
-        textFontSize = PP_TEXT_PREF_FONT_SIZE;
-
-        boolean isTooTight;
+        final int[] PP_TEXT_FONT_SIZES = { 10, 9, 8 }; // pt (preferred to minimum)
+
+        // measure the text blocks once for all candidate font sizes
+        // and select the largest font size that fits
+        final double ppMaxLength = PP_INFO_SECTION_WIDTH * MM_TO_PT;
+        int[] accountPayableToLineCounts = graphics.countLines(accountPayableTo, ppMaxLength, PP_TEXT_FONT_SIZES);
+        int[] additionalInfoLineCounts = additionalInfo != null
+                ? graphics.countLines(additionalInfo, ppMaxLength, PP_TEXT_FONT_SIZES) : null;
+        int[] payableByLineCounts = payableBy != null
+                ? graphics.countLines(payableBy, ppMaxLength, PP_TEXT_FONT_SIZES) : null;
+
+        int index = 0;
         while (true) {
-            breakLines(PP_INFO_SECTION_WIDTH);
-            isTooTight = computePaymentPartSpacing();
-            if (!isTooTight || textFontSize == PP_TEXT_MIN_FONT_SIZE)
+            labelFontSize = PP_LABEL_PREF_FONT_SIZE - index;
+            textFontSize = PP_TEXT_FONT_SIZES[index];
+            boolean isTooTight = computePaymentPartSpacing(accountPayableToLineCounts[index],
+                    additionalInfoLineCounts != null ? additionalInfoLineCounts[index] : 0,
+                    payableByLineCounts != null ? payableByLineCounts[index] : 0);
+            if (!isTooTight || index == PP_TEXT_FONT_SIZES.length - 1)
                 break;
-            labelFontSize--;
-            textFontSize--;
+            index++;
         }
+        breakLines(PP_INFO_SECTION_WIDTH, true);
         drawPaymentPart();
 
         // receipt
@@ -100,22 +127,20 @@ class BillLayout {
 
         labelFontSize = RC_LABEL_PREF_FONT_SIZE;
         textFontSize = RC_TEXT_PREF_FONT_SIZE;
-        breakLines(RECEIPT_TEXT_WIDTH);
-        isTooTight = computeReceiptSpacing();
+        boolean isTooTight = computeReceiptSpacing();
         if (isTooTight) {
             prepareReducedReceiptText(false);
-            breakLines(RECEIPT_TEXT_WIDTH);
             isTooTight = computeReceiptSpacing();
         }
         if (isTooTight) {
             prepareReducedReceiptText(true);
-            breakLines(RECEIPT_TEXT_WIDTH);
             computeReceiptSpacing();
         }
+        breakLines(RECEIPT_TEXT_WIDTH, false);
         drawReceipt();
 
         // border
-        drawBorder();
+        graphics.drawStaticContent(getStaticContentKey("border"), this::drawBorder);
     }
 
     private void drawPaymentPart() throws IOException {
@@ -123,12 +148,13 @@ class BillLayout {
         final double QR_CODE_BOTTOM = 42; // mm
 
         // title section
-        graphics.setTransformation(RECEIPT_WIDTH + MARGIN, 0, 0, 1, 1);
+        setTransformation(RECEIPT_WIDTH + MARGIN, 0, 0, 1, 1);
         yPos = SLIP_HEIGHT - MARGIN - graphics.getAscender(FONT_SIZE_TITLE);
-        graphics.putText(getText(MultilingualText.KEY_PAYMENT_PART), 0, yPos, FONT_SIZE_TITLE, true);
+        graphics.drawStaticContent(getStaticContentKey("pp-title"),
+                () -> graphics.putText(getText(MultilingualText.KEY_PAYMENT_PART), 0, yPos, FONT_SIZE_TITLE, true));
 
         // Swiss QR code section
-        qrCode.draw(graphics, RECEIPT_WIDTH + MARGIN, QR_CODE_BOTTOM);
+        qrCode.draw(graphics, originX + RECEIPT_WIDTH + MARGIN, originY + QR_CODE_BOTTOM);
 
         // amount section
         drawPaymentPartAmountSection();
@@ -146,7 +172,7 @@ class BillLayout {
         final double AMOUNT_BOX_WIDTH_PP = 40; // mm
         final double AMOUNT_BOX_HEIGHT_PP = 15; // mm
 
-        graphics.setTransformation(RECEIPT_WIDTH + MARGIN, 0, 0, 1, 1);
+        setTransformation(RECEIPT_WIDTH + MARGIN, 0, 0, 1, 1);
 
         // currency
         double y = AMOUNT_SECTION_TOP - labelAscender;
@@ -166,13 +192,16 @@ class BillLayout {
             graphics.putText(amount, CURRENCY_WIDTH_PP, y, textFontSize, false);
         } else {
             y -= -textAscender + AMOUNT_BOX_HEIGHT_PP;
-            drawCorners(PP_AMOUNT_SECTION_WIDTH + MARGIN - AMOUNT_BOX_WIDTH_PP, y, AMOUNT_BOX_WIDTH_PP, AMOUNT_BOX_HEIGHT_PP);
+            final double boxY = y;
+            graphics.drawStaticContent(getStaticContentKey("pp-amount-box-" + textFontSize),
+                    () -> drawCorners(PP_AMOUNT_SECTION_WIDTH + MARGIN - AMOUNT_BOX_WIDTH_PP, boxY,
+                            AMOUNT_BOX_WIDTH_PP, AMOUNT_BOX_HEIGHT_PP));
         }
     }
 
     private void drawPaymentPartInformationSection() throws IOException {
 
-        graphics.setTransformation(SLIP_WIDTH - PP_INFO_SECTION_WIDTH - MARGIN, 0, 0, 1, 1);
+        setTransformation(SLIP_WIDTH - PP_INFO_SECTION_WIDTH - MARGIN, 0, 0, 1, 1);
         yPos = SLIP_HEIGHT - MARGIN - labelAscender;
 
         // account and creditor
@@ -206,7 +235,7 @@ class BillLayout {
         if (bill.getAlternativeSchemes() == null || bill.getAlternativeSchemes().length == 0)
             return;
 
-        graphics.setTransformation(RECEIPT_WIDTH + MARGIN, 0, 0, 1, 1);
+        setTransformation(RECEIPT_WIDTH + MARGIN, 0, 0, 1, 1);
         double y = FURTHER_INFORMATION_SECTION_TOP - graphics.getAscender(FONT_SIZE);
         double maxWidth = PAYMEMT_PART_WIDTH - 2 * MARGIN;
 
@@ -224,9 +253,10 @@ class BillLayout {
     private void drawReceipt() throws IOException {
 
         // "Receipt" title
-        graphics.setTransformation(MARGIN, 0, 0, 1, 1);
+        setTransformation(MARGIN, 0, 0, 1, 1);
         yPos = SLIP_HEIGHT - MARGIN - graphics.getAscender(FONT_SIZE_TITLE);
-        graphics.putText(getText(MultilingualText.KEY_RECEIPT), 0, yPos, FONT_SIZE_TITLE, true);
+        graphics.drawStaticContent(getStaticContentKey("rc-title"),
+                () -> graphics.putText(getText(MultilingualText.KEY_RECEIPT), 0, yPos, FONT_SIZE_TITLE, true));
 
         // information section
         drawReceiptInformationSection();
@@ -284,9 +314,10 @@ class BillLayout {
             y -= (textFontSize + 3) * PT_TO_MM;
             graphics.putText(amount, CURRENCY_WIDTH_RC, y, textFontSize, false);
         } else {
-            drawCorners(RECEIPT_TEXT_WIDTH - AMOUNT_BOX_WIDTH_RC,
-                    AMOUNT_SECTION_TOP - AMOUNT_BOX_HEIGHT_RC,
-                    AMOUNT_BOX_WIDTH_RC, AMOUNT_BOX_HEIGHT_RC);
+            graphics.drawStaticContent(getStaticContentKey("rc-amount-box"),
+                    () -> drawCorners(RECEIPT_TEXT_WIDTH - AMOUNT_BOX_WIDTH_RC,
+                            AMOUNT_SECTION_TOP - AMOUNT_BOX_HEIGHT_RC,
+                            AMOUNT_BOX_WIDTH_RC, AMOUNT_BOX_HEIGHT_RC));
         }
     }
 
@@ -294,13 +325,16 @@ class BillLayout {
 
         final double ACCEPTANCE_POINT_SECTION_TOP = 23; // mm (from bottom)
 
-        String label = getText(MultilingualText.KEY_ACCEPTANCE_POINT);
-        double y = ACCEPTANCE_POINT_SECTION_TOP - labelAscender;
-        double w = graphics.getTextWidth(label, labelFontSize, true);
-        graphics.putText(label, RECEIPT_TEXT_WIDTH - w, y, labelFontSize, true);
+        graphics.drawStaticContent(getStaticContentKey("rc-acceptance-point-" + labelFontSize), () -> {
+            String label = getText(MultilingualText.KEY_ACCEPTANCE_POINT);
+            double y = ACCEPTANCE_POINT_SECTION_TOP - labelAscender;
+            double w = graphics.getTextWidth(label, labelFontSize, true);
+            graphics.putText(label, RECEIPT_TEXT_WIDTH - w, y, labelFontSize, true);
+        });
     }
 
-    private boolean computePaymentPartSpacing() {
+    private boolean computePaymentPartSpacing(int accountPayableToLineCount, int additionalInfoLineCount,
+                                              int payableByLineCount) {
 
         final double PP_INFO_SECTION_MAX_HEIGHT = 85; // mm
 
@@ -309,18 +343,18 @@ class BillLayout {
         int numExtraLines = 0;
         double fixedHeight = 0;
 
-        numTextLines += 1 + accountPayableToLines.length;
+        numTextLines += 1 + accountPayableToLineCount;
         if (reference != null) {
             numExtraLines++;
             numTextLines += 2;
         }
         if (additionalInfo != null) {
             numExtraLines++;
-            numTextLines += 1 + additionalInfoLines.length;
+            numTextLines += 1 + additionalInfoLineCount;
         }
         numExtraLines++;
         if (payableBy != null) {
-            numTextLines += 1 + payableByLines.length;
+            numTextLines += 1 + payableByLineCount;
         } else {
             numTextLines += 1;
             fixedHeight += DEBTOR_BOX_HEIGHT_PP;
@@ -336,20 +370,21 @@ class BillLayout {
     private boolean computeReceiptSpacing() {
 
         final double RECEIPT_MAX_HEIGHT = 56; // mm
+        final double rcMaxLength = RECEIPT_TEXT_WIDTH * MM_TO_PT;
 
         // numExtraLines: the number of lines between text blocks
         int numTextLines = 0;
         int numExtraLines = 0;
         double fixedHeight = 0;
 
-        numTextLines += 1 + accountPayableToLines.length;
+        numTextLines += 1 + graphics.countLines(accountPayableTo, rcMaxLength, textFontSize)[0];
         if (reference != null) {
             numExtraLines++;
             numTextLines += 2;
         }
         numExtraLines++;
         if (payableBy != null) {
-            numTextLines += 1 + payableByLines.length;
+            numTextLines += 1 + graphics.countLines(payableBy, rcMaxLength, textFontSize)[0];
         } else {
             numTextLines += 1;
             fixedHeight += DEBTOR_BOX_HEIGHT_RC;
@@ -401,7 +436,7 @@ class BillLayout {
                 lineWidth = 0.5;
         }
 
-        graphics.setTransformation(0, 0, 0, 1, 1);
+        setTransformation(0, 0, 0, 1, 1);
 
         // draw vertical separator line between receipt and payment part
         graphics.startPath();
@@ -445,7 +480,7 @@ class BillLayout {
         transform.rotate(angle);
         transform.translate(mirrored ? xOffset : -xOffset, yOffset);
         transform.scale(mirrored ? -scale : scale, scale);
-        graphics.setTransformation(transform.getTranslateX(), transform.getTranslateY(), angle, mirrored ? -scale : scale, scale);
+        setTransformation(transform.getTranslateX(), transform.getTranslateY(), angle, mirrored ? -scale : scale, scale);
 
         graphics.startPath();
         graphics.moveTo(46.48, 126.784);
@@ -542,9 +577,9 @@ class BillLayout {
     }
 
     // Prepare the text (by breaking it into lines where necessary)
-    private void breakLines(double maxWidth) {
+    private void breakLines(double maxWidth, boolean includeAdditionalInfo) {
         accountPayableToLines = graphics.splitLines(accountPayableTo, maxWidth * MM_TO_PT, textFontSize);
-        if (additionalInfo != null)
+        if (includeAdditionalInfo && additionalInfo != null)
             additionalInfoLines = graphics.splitLines(additionalInfo, maxWidth * MM_TO_PT, textFontSize);
         if (payableBy != null)
             payableByLines = graphics.splitLines(payableBy, maxWidth * MM_TO_PT, textFontSize);
@@ -656,6 +691,21 @@ class BillLayout {
         return lines[0] + "…";
     }
 
+    // Sets the transformation relative to the origin of the bill
+    private void setTransformation(double translateX, double translateY, double rotate, double scaleX, double scaleY) throws IOException {
+        graphics.setTransformation(originX + translateX, originY + translateY, rotate, scaleX, scaleY);
+    }
+
+    // Key for static content: content only depends on the key, the language,
+    // the separator type, the output size and the origin of the bill
+    private String getStaticContentKey(String name) {
+        BillFormat format = bill.getFormat();
+        String key = name + "/" + format.getLanguage() + "/" + format.getSeparatorType() + "/" + format.getOutputSize();
+        if (originX != 0 || originY != 0)
+            key += "/" + originX + "," + originY;
+        return key;
+    }
+
     private String getText(String textKey) {
         return MultilingualText.getText(textKey, bill.getFormat().getLanguage());
     }
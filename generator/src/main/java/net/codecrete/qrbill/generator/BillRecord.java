@@ -0,0 +1,636 @@
+//
+// Swiss QR Bill Generator
+// Copyright (c) 2020 Manuel Bleichenbacher
+// Licensed under MIT License
+// https://opensource.org/licenses/MIT
+//
+package net.codecrete.qrbill.generator;
+
+import java.io.Serializable;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Objects;
+
+/**
+ * Immutable, compact QR bill data.
+ * <p>
+ * This is an alternative to {@link Bill} for applications keeping large numbers
+ * of bills in memory (e.g. in queues). Instead of a graph of beans and strings, all
+ * text fields are packed into a single byte array (one byte per character if
+ * all characters are in the Latin-1 range, which includes the entire character set
+ * of QR bills, two bytes per character otherwise). The amount is stored as a
+ * number of cents. The bill format is shared between all records created by the
+ * same builder.
+ * </p>
+ * <p>
+ * Instances are created with a {@link Builder} or from a {@link Bill} and can
+ * be used with {@link QRBill#validate(BillRecord)}, {@link QRBill#generate(BillRecord)}
+ * and {@link QRBill#encodeQrCodeText(BillRecord)}. They are thread-safe.
+ * </p>
+ * <p>
+ * The getters for addresses and the bill format return new instances on each
+ * call. Modifying them does not affect the record.
+ * </p>
+ */
+public final class BillRecord implements Serializable {
+
+    private static final long serialVersionUID = 6327618302451796117L;
+
+    private static final int ACCOUNT = 0;
+    private static final int CURRENCY = 1;
+    private static final int REFERENCE = 2;
+    private static final int UNSTRUCTURED_MESSAGE = 3;
+    private static final int BILL_INFORMATION = 4;
+    private static final int CREDITOR = 5;
+    private static final int DEBTOR = 13;
+    private static final int ALTERNATIVE_SCHEMES = 21;
+
+    // offsets of the fields within an address
+    private static final int NAME = 0;
+    private static final int ADDRESS_LINE_1 = 1;
+    private static final int ADDRESS_LINE_2 = 2;
+    private static final int STREET = 3;
+    private static final int HOUSE_NO = 4;
+    private static final int POSTAL_CODE = 5;
+    private static final int TOWN = 6;
+    private static final int COUNTRY_CODE = 7;
+
+    private static final long NO_AMOUNT = Long.MIN_VALUE;
+    private static final byte NO_ADDRESS = -1;
+    private static final byte NO_SCHEMES = -1;
+    private static final Address.Type[] ADDRESS_TYPES = Address.Type.values();
+    private static final BigDecimal MAX_AMOUNT_IN_CENTS = BigDecimal.valueOf(Long.MAX_VALUE);
+
+    /**
+     * Packed text fields: for each field, its length plus 1 (0 for {@code null}) as a
+     * variable-length integer followed by the characters.
+     */
+    private final byte[] data;
+    private final boolean isLatin1;
+    private final long amountInCents;
+    private final byte creditorType;
+    private final byte debtorType;
+    private final byte alternativeSchemeCount;
+    private final BillFormat format;
+
+    private BillRecord(byte[] data, boolean isLatin1, long amountInCents, byte creditorType, byte debtorType,
+                       byte alternativeSchemeCount, BillFormat format) {
+        this.data = data;
+        this.isLatin1 = isLatin1;
+        this.amountInCents = amountInCents;
+        this.creditorType = creditorType;
+        this.debtorType = debtorType;
+        this.alternativeSchemeCount = alternativeSchemeCount;
+        this.format = format;
+    }
+
+    /**
+     * Creates a new builder.
+     * <p>
+     * The initial values are the same as for a new {@link Bill} instance.
+     * </p>
+     *
+     * @return the builder
+     */
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * Creates a record with the data of the specified bill.
+     * <p>
+     * The amount is rounded to a multiple of 0.01.
+     * </p>
+     *
+     * @param bill the bill data
+     * @return the record
+     * @throws IllegalArgumentException if the amount or the number of alternative schemes
+     *                                  is too large to be stored
+     */
+    public static BillRecord of(Bill bill) {
+        return builder()
+                .account(bill.getAccount())
+                .creditor(bill.getCreditor())
+                .amount(bill.getAmount())
+                .currency(bill.getCurrency())
+                .debtor(bill.getDebtor())
+                .reference(bill.getReference())
+                .unstructuredMessage(bill.getUnstructuredMessage())
+                .billInformation(bill.getBillInformation())
+                .alternativeSchemes(bill.getAlternativeSchemes())
+                .format(bill.getFormat())
+                .build();
+    }
+
+    /**
+     * Creates a {@link Bill} instance with the data of this record.
+     *
+     * @return the bill data
+     */
+    public Bill toBill() {
+        Bill bill = new Bill();
+        bill.setAccount(getAccount());
+        bill.setCreditor(getCreditor());
+        bill.setAmount(getAmount());
+        bill.setCurrency(getCurrency());
+        bill.setDebtor(getDebtor());
+        bill.setReference(getReference());
+        bill.setUnstructuredMessage(getUnstructuredMessage());
+        bill.setBillInformation(getBillInformation());
+        bill.setAlternativeSchemes(getAlternativeSchemes());
+        bill.setFormat(getFormat());
+        return bill;
+    }
+
+    /**
+     * Gets the account number (IBAN).
+     *
+     * @return the account number
+     */
+    public String getAccount() {
+        return getField(ACCOUNT);
+    }
+
+    /**
+     * Gets the amount.
+     *
+     * @return the amount (with two decimals), or {@code null} if no amount has been set
+     */
+    public BigDecimal getAmount() {
+        return amountInCents != NO_AMOUNT ? BigDecimal.valueOf(amountInCents, 2) : null;
+    }
+
+    /**
+     * Tests if an amount has been set.
+     *
+     * @return {@code true} if an amount has been set, {@code false} otherwise
+     */
+    public boolean hasAmount() {
+        return amountInCents != NO_AMOUNT;
+    }
+
+    /**
+     * Gets the amount in cents (hundredths of the currency unit).
+     *
+     * @return the amount in cents
+     * @throws IllegalStateException if no amount has been set
+     */
+    public long getAmountInCents() {
+        if (amountInCents == NO_AMOUNT)
+            throw new IllegalStateException("No amount has been set");
+        return amountInCents;
+    }
+
+    /**
+     * Gets the currency code.
+     *
+     * @return the currency code
+     */
+    public String getCurrency() {
+        return getField(CURRENCY);
+    }
+
+    /**
+     * Gets the creditor address.
+     *
+     * @return a new instance with the creditor address, or {@code null} if it has not been set
+     */
+    public Address getCreditor() {
+        return getAddress(CREDITOR, creditorType);
+    }
+
+    /**
+     * Gets the debtor address.
+     *
+     * @return a new instance with the debtor address, or {@code null} if it has not been set
+     */
+    public Address getDebtor() {
+        return getAddress(DEBTOR, debtorType);
+    }
+
+    /**
+     * Gets the reference.
+     *
+     * @return the reference
+     */
+    public String getReference() {
+        return getField(REFERENCE);
+    }
+
+    /**
+     * Gets the unstructured message.
+     *
+     * @return the unstructured message
+     */
+    public String getUnstructuredMessage() {
+        return getField(UNSTRUCTURED_MESSAGE);
+    }
+
+    /**
+     * Gets the bill information.
+     *
+     * @return the bill information
+     */
+    public String getBillInformation() {
+        return getField(BILL_INFORMATION);
+    }
+
+    /**
+     * Gets the alternative schemes.
+     *
+     * @return a new array of alternative schemes, or {@code null} if they have not been set
+     */
+    public AlternativeScheme[] getAlternativeSchemes() {
+        if (alternativeSchemeCount == NO_SCHEMES)
+            return null;
+        AlternativeScheme[] schemes = new AlternativeScheme[alternativeSchemeCount];
+        for (int i = 0; i < alternativeSchemeCount; i++) {
+            int field = ALTERNATIVE_SCHEMES + 2 * i;
+            schemes[i] = new AlternativeScheme(getField(field), getField(field + 1));
+        }
+        return schemes;
+    }
+
+    /**
+     * Gets the bill format.
+     *
+     * @return a new instance with the bill format, or {@code null} if it has not been set
+     */
+    public BillFormat getFormat() {
+        return format != null ? new BillFormat(format) : null;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        BillRecord record = (BillRecord) o;
+        return isLatin1 == record.isLatin1 &&
+                amountInCents == record.amountInCents &&
+                creditorType == record.creditorType &&
+                debtorType == record.debtorType &&
+                alternativeSchemeCount == record.alternativeSchemeCount &&
+                Arrays.equals(data, record.data) &&
+                Objects.equals(format, record.format);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int hashCode() {
+        int result = Objects.hash(amountInCents, creditorType, debtorType, alternativeSchemeCount, format);
+        result = 31 * result + Arrays.hashCode(data);
+        return result;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String toString() {
+        return "BillRecord" + toBill().toString().substring(4);
+    }
+
+    private Address getAddress(int startField, byte type) {
+        if (type == NO_ADDRESS)
+            return null;
+
+        Address address = new Address();
+        address.setName(getField(startField + NAME));
+        Address.Type addressType = ADDRESS_TYPES[type];
+        // the setters determine the address type
+        if (addressType == Address.Type.COMBINED_ELEMENTS || addressType == Address.Type.CONFLICTING) {
+            address.setAddressLine1(getField(startField + ADDRESS_LINE_1));
+            address.setAddressLine2(getField(startField + ADDRESS_LINE_2));
+        }
+        if (addressType == Address.Type.STRUCTURED || addressType == Address.Type.CONFLICTING) {
+            address.setStreet(getField(startField + STREET));
+            address.setHouseNo(getField(startField + HOUSE_NO));
+            address.setPostalCode(getField(startField + POSTAL_CODE));
+            address.setTown(getField(startField + TOWN));
+        }
+        address.setCountryCode(getField(startField + COUNTRY_CODE));
+        return address;
+    }
+
+    private String getField(int index) {
+        int charSize = isLatin1 ? 1 : 2;
+        int pos = 0;
+        int lengthPlus1;
+        int field = 0;
+        while (true) {
+            lengthPlus1 = 0;
+            int shift = 0;
+            byte b;
+            do {
+                b = data[pos++];
+                lengthPlus1 |= (b & 0x7f) << shift;
+                shift += 7;
+            } while (b < 0);
+
+            if (field == index)
+                break;
+            // skip preceding field
+            if (lengthPlus1 > 1)
+                pos += (lengthPlus1 - 1) * charSize;
+            field++;
+        }
+
+        if (lengthPlus1 == 0)
+            return null;
+        int length = lengthPlus1 - 1;
+        if (isLatin1)
+            return new String(data, pos, length, StandardCharsets.ISO_8859_1);
+
+        char[] chars = new char[length];
+        for (int i = 0; i < length; i++, pos += 2)
+            chars[i] = (char) (((data[pos] & 0xff) << 8) | (data[pos + 1] & 0xff));
+        return new String(chars);
+    }
+
+    /**
+     * Builder for {@link BillRecord} instances.
+     * <p>
+     * A builder can be used to create several records. The records created
+     * by the same builder share the bill format instance (unless it is changed).
+     * </p>
+     */
+    public static final class Builder {
+
+        private final String[] fields = new String[ALTERNATIVE_SCHEMES];
+        private AlternativeScheme[] alternativeSchemes;
+        private long amountInCents = NO_AMOUNT;
+        private Address.Type creditorType = Address.Type.UNDETERMINED;
+        private Address.Type debtorType;
+        private BillFormat format = new BillFormat();
+
+        private Builder() {
+            fields[CURRENCY] = "CHF";
+        }
+
+        /**
+         * Sets the account number (IBAN).
+         *
+         * @param account the account number
+         * @return this builder
+         */
+        public Builder account(String account) {
+            fields[ACCOUNT] = account;
+            return this;
+        }
+
+        /**
+         * Sets the amount.
+         * <p>
+         * The amount is rounded to a multiple of 0.01 (in the same way as
+         * the validation does).
+         * </p>
+         *
+         * @param amount the amount, or {@code null} for no amount
+         * @return this builder
+         * @throws IllegalArgumentException if the amount is too large to be stored
+         */
+        public Builder amount(BigDecimal amount) {
+            if (amount == null) {
+                amountInCents = NO_AMOUNT;
+                return this;
+            }
+
+            BigDecimal cents = amount.setScale(2, RoundingMode.HALF_UP).movePointRight(2);
+            if (cents.abs().compareTo(MAX_AMOUNT_IN_CENTS) >= 0)
+                throw new IllegalArgumentException("Amount is too large: " + amount);
+            amountInCents = cents.longValueExact();
+            return this;
+        }
+
+        /**
+         * Sets the amount in cents (hundredths of the currency unit).
+         *
+         * @param amountInCents the amount in cents
+         * @return this builder
+         * @throws IllegalArgumentException if the amount is too large to be stored
+         */
+        public Builder amountInCents(long amountInCents) {
+            if (amountInCents == NO_AMOUNT)
+                throw new IllegalArgumentException("Amount is too large: " + amountInCents);
+            this.amountInCents = amountInCents;
+            return this;
+        }
+
+        /**
+         * Sets the currency code.
+         *
+         * @param currency the currency code
+         * @return this builder
+         */
+        public Builder currency(String currency) {
+            fields[CURRENCY] = currency;
+            return this;
+        }
+
+        /**
+         * Sets the creditor address.
+         * <p>
+         * The address data is copied.
+         * </p>
+         *
+         * @param creditor the creditor address
+         * @return this builder
+         */
+        public Builder creditor(Address creditor) {
+            creditorType = setAddress(CREDITOR, creditor);
+            return this;
+        }
+
+        /**
+         * Sets the debtor address.
+         * <p>
+         * The address data is copied.
+         * </p>
+         *
+         * @param debtor the debtor address, or {@code null} for no debtor
+         * @return this builder
+         */
+        public Builder debtor(Address debtor) {
+            debtorType = setAddress(DEBTOR, debtor);
+            return this;
+        }
+
+        /**
+         * Sets the reference.
+         *
+         * @param reference the reference
+         * @return this builder
+         */
+        public Builder reference(String reference) {
+            fields[REFERENCE] = reference;
+            return this;
+        }
+
+        /**
+         * Sets the unstructured message.
+         *
+         * @param unstructuredMessage the unstructured message
+         * @return this builder
+         */
+        public Builder unstructuredMessage(String unstructuredMessage) {
+            fields[UNSTRUCTURED_MESSAGE] = unstructuredMessage;
+            return this;
+        }
+
+        /**
+         * Sets the bill information.
+         *
+         * @param billInformation the bill information
+         * @return this builder
+         */
+        public Builder billInformation(String billInformation) {
+            fields[BILL_INFORMATION] = billInformation;
+            return this;
+        }
+
+        /**
+         * Sets the alternative schemes.
+         * <p>
+         * The scheme data is copied.
+         * </p>
+         *
+         * @param alternativeSchemes the alternative schemes, or {@code null} for none
+         * @return this builder
+         * @throws IllegalArgumentException if more than 127 schemes are specified
+         */
+        public Builder alternativeSchemes(AlternativeScheme... alternativeSchemes) {
+            if (alternativeSchemes == null) {
+                this.alternativeSchemes = null;
+                return this;
+            }
+            if (alternativeSchemes.length > Byte.MAX_VALUE)
+                throw new IllegalArgumentException("Too many alternative schemes");
+
+            this.alternativeSchemes = new AlternativeScheme[alternativeSchemes.length];
+            for (int i = 0; i < alternativeSchemes.length; i++)
+                this.alternativeSchemes[i] = new AlternativeScheme(alternativeSchemes[i].getName(),
+                        alternativeSchemes[i].getInstruction());
+            return this;
+        }
+
+        /**
+         * Sets the bill format.
+         * <p>
+         * The format is copied. The copy is shared by all records subsequently created by this builder.
+         * </p>
+         *
+         * @param format the bill format
+         * @return this builder
+         */
+        public Builder format(BillFormat format) {
+            this.format = format != null ? new BillFormat(format) : null;
+            return this;
+        }
+
+        /**
+         * Creates a record with the current data of this builder.
+         *
+         * @return the record
+         */
+        public BillRecord build() {
+            int schemeCount = alternativeSchemes != null ? alternativeSchemes.length : 0;
+            int fieldCount = ALTERNATIVE_SCHEMES + 2 * schemeCount;
+            String[] values = Arrays.copyOf(fields, fieldCount);
+            for (int i = 0; i < schemeCount; i++) {
+                values[ALTERNATIVE_SCHEMES + 2 * i] = alternativeSchemes[i].getName();
+                values[ALTERNATIVE_SCHEMES + 2 * i + 1] = alternativeSchemes[i].getInstruction();
+            }
+
+            boolean isLatin1 = true;
+            int size = 0;
+            for (String value : values) {
+                size += varIntSize(value != null ? value.length() + 1 : 0);
+                if (value == null)
+                    continue;
+                size += value.length();
+                if (isLatin1 && !isLatin1(value))
+                    isLatin1 = false;
+            }
+            if (!isLatin1) {
+                for (String value : values) {
+                    if (value != null)
+                        size += value.length();
+                }
+            }
+
+            byte[] data = new byte[size];
+            int pos = 0;
+            for (String value : values) {
+                int lengthPlus1 = value != null ? value.length() + 1 : 0;
+                while (lengthPlus1 >= 0x80) {
+                    data[pos++] = (byte) (lengthPlus1 | 0x80);
+                    lengthPlus1 >>>= 7;
+                }
+                data[pos++] = (byte) lengthPlus1;
+                if (value == null)
+                    continue;
+
+                int length = value.length();
+                if (isLatin1) {
+                    for (int i = 0; i < length; i++)
+                        data[pos++] = (byte) value.charAt(i);
+                } else {
+                    for (int i = 0; i < length; i++) {
+                        char ch = value.charAt(i);
+                        data[pos++] = (byte) (ch >> 8);
+                        data[pos++] = (byte) ch;
+                    }
+                }
+            }
+
+            return new BillRecord(data, isLatin1, amountInCents, toByte(creditorType), toByte(debtorType),
+                    alternativeSchemes != null ? (byte) schemeCount : NO_SCHEMES, format);
+        }
+
+        private Address.Type setAddress(int startField, Address address) {
+            if (address == null) {
+                Arrays.fill(fields, startField, startField + 8, null);
+                return null;
+            }
+
+            fields[startField + NAME] = address.getName();
+            fields[startField + ADDRESS_LINE_1] = address.getAddressLine1();
+            fields[startField + ADDRESS_LINE_2] = address.getAddressLine2();
+            fields[startField + STREET] = address.getStreet();
+            fields[startField + HOUSE_NO] = address.getHouseNo();
+            fields[startField + POSTAL_CODE] = address.getPostalCode();
+            fields[startField + TOWN] = address.getTown();
+            fields[startField + COUNTRY_CODE] = address.getCountryCode();
+            return address.getType();
+        }
+
+        private static byte toByte(Address.Type type) {
+            return type != null ? (byte) type.ordinal() : NO_ADDRESS;
+        }
+
+        private static boolean isLatin1(String value) {
+            int length = value.length();
+            for (int i = 0; i < length; i++) {
+                if (value.charAt(i) > 0xff)
+                    return false;
+            }
+            return true;
+        }
+
+        private static int varIntSize(int value) {
+            int size = 1;
+            while (value >= 0x80) {
+                value >>>= 7;
+                size++;
+            }
+            return size;
+        }
+    }
+}
@@ -0,0 +1,343 @@
+//
+// Swiss QR Bill Generator
+// Copyright (c) 2020 Manuel Bleichenbacher
+// Licensed under MIT License
+// https://opensource.org/licenses/MIT
+//
+package net.codecrete.qrbill.generator;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Decodes and validates large numbers of QR code texts in parallel.
+ * <p>
+ * The texts are read from a stream of records separated by a record separator
+ * character (by default the ASCII record separator {@code U+001E}). The records
+ * are split off incrementally so the input is never loaded into memory as a whole.
+ * Each record is decoded and validated on a pool of worker threads. The results
+ * are delivered to a sink in the order of the input, one at a time and on the thread
+ * calling {@link #decode(Reader, Sink)}.
+ * </p>
+ * <p>
+ * Line breaks directly following a record separator are ignored. So the records
+ * can be put on separate lines. Empty records are skipped and not counted.
+ * </p>
+ * <p>
+ * The number of records being processed or waiting for delivery is limited
+ * (see {@link #setMaxPending(int)}). If the limit is reached, no further
+ * records are read until the oldest result has been delivered.
+ * </p>
+ * <p>
+ * An instance can be used for several runs but not concurrently.
+ * </p>
+ */
+public class BulkDecoder implements AutoCloseable {
+
+    /**
+     * ASCII record separator
+     */
+    public static final char RECORD_SEPARATOR = '\u001E';
+
+    /**
+     * Receives the decoded and validated bills.
+     */
+    @FunctionalInterface
+    public interface Sink {
+
+        /**
+         * Accepts a decoded and validated bill.
+         * <p>
+         * The method is called in the order of the input. If the record cannot be
+         * decoded, {@code bill} is {@code null} and the validation result contains the
+         * decoding error. Otherwise, the validation result is the result of validating
+         * the decoded bill (see {@link QRBill#validate(Bill)}).
+         * </p>
+         *
+         * @param recordIndex      the index of the record in the input (starting at 0)
+         * @param bill             the decoded bill data, or {@code null} if the record cannot be decoded
+         * @param validationResult the validation result
+         * @throws IOException thrown if the result cannot be processed
+         */
+        void accept(int recordIndex, Bill bill, ValidationResult validationResult) throws IOException;
+    }
+
+    private final ExecutorService executor;
+    private final boolean ownsExecutor;
+    private int maxPending;
+    private char recordSeparator = RECORD_SEPARATOR;
+
+    /**
+     * Creates a new instance using as many worker threads as there are processors.
+     */
+    public BulkDecoder() {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Creates a new instance with the specified number of worker threads.
+     *
+     * @param parallelism the number of worker threads
+     */
+    public BulkDecoder(int parallelism) {
+        this(Executors.newFixedThreadPool(parallelism, runnable -> {
+            Thread thread = new Thread(runnable, "qrbill-bulk-decoder");
+            thread.setDaemon(true);
+            return thread;
+        }), parallelism, true);
+    }
+
+    /**
+     * Creates a new instance using the specified executor service for the worker threads.
+     * <p>
+     * The executor service is not shut down when this instance is closed.
+     * </p>
+     *
+     * @param executor    the executor service
+     * @param parallelism the number of records the executor service is expected to process in parallel
+     */
+    public BulkDecoder(ExecutorService executor, int parallelism) {
+        this(executor, parallelism, false);
+    }
+
+    private BulkDecoder(ExecutorService executor, int parallelism, boolean ownsExecutor) {
+        if (parallelism < 1)
+            throw new IllegalArgumentException("Parallelism must be at least 1");
+        this.executor = executor;
+        this.ownsExecutor = ownsExecutor;
+        maxPending = 16 * parallelism;
+    }
+
+    /**
+     * Sets the maximum number of records being processed or waiting for delivery to the sink.
+     * <p>
+     * The default is sixteen times the parallelism.
+     * </p>
+     *
+     * @param maxPending the maximum number of pending records
+     */
+    public void setMaxPending(int maxPending) {
+        if (maxPending < 1)
+            throw new IllegalArgumentException("Maximum number of pending records must be at least 1");
+        this.maxPending = maxPending;
+    }
+
+    /**
+     * Gets the maximum number of records being processed or waiting for delivery to the sink.
+     *
+     * @return the maximum number of pending records
+     */
+    public int getMaxPending() {
+        return maxPending;
+    }
+
+    /**
+     * Sets the character separating the records.
+     * <p>
+     * The default is the ASCII record separator {@code U+001E}.
+     * The separator must not be a line break.
+     * </p>
+     *
+     * @param recordSeparator the record separator
+     */
+    public void setRecordSeparator(char recordSeparator) {
+        if (recordSeparator == '\n' || recordSeparator == '\r')
+            throw new IllegalArgumentException("Record separator must not be a line break");
+        this.recordSeparator = recordSeparator;
+    }
+
+    /**
+     * Gets the character separating the records.
+     *
+     * @return the record separator
+     */
+    public char getRecordSeparator() {
+        return recordSeparator;
+    }
+
+    /**
+     * Decodes and validates the records read from the specified channel.
+     * <p>
+     * The input is expected to be encoded in UTF-8. The channel is not closed.
+     * </p>
+     *
+     * @param channel the channel to read from
+     * @param sink    the sink receiving the decoded bills
+     * @return the number of records
+     * @throws IOException thrown if the input cannot be read or the sink fails
+     * @see #decode(Reader, Sink)
+     */
+    public int decode(ReadableByteChannel channel, Sink sink) throws IOException {
+        return decode(Channels.newReader(channel, StandardCharsets.UTF_8.newDecoder(), -1), sink);
+    }
+
+    /**
+     * Decodes and validates the records read from the specified reader.
+     * <p>
+     * Records that cannot be decoded or do not validate are delivered to the sink
+     * with the respective validation result. They do not stop the run. If reading
+     * the input or the sink fails, the records still being processed are cancelled
+     * and the exception is thrown. The reader is not closed.
+     * </p>
+     *
+     * @param reader the reader to read from
+     * @param sink   the sink receiving the decoded bills
+     * @return the number of records
+     * @throws IOException thrown if the input cannot be read or the sink fails
+     */
+    public int decode(Reader reader, Sink sink) throws IOException {
+        RecordReader records = new RecordReader(reader, recordSeparator);
+        ArrayDeque<Future<Result>> pendingResults = new ArrayDeque<>();
+        int index = 0;
+
+        try {
+            String record = records.next();
+            while (record != null || !pendingResults.isEmpty()) {
+                // submit records until limit is reached
+                while (pendingResults.size() < maxPending && record != null) {
+                    String text = record;
+                    pendingResults.add(executor.submit(() -> decode(text)));
+                    record = records.next();
+                }
+
+                // deliver oldest result
+                Result result = getResult(pendingResults.remove());
+                sink.accept(index, result.bill, result.validationResult);
+                index++;
+            }
+
+        } finally {
+            for (Future<Result> future : pendingResults)
+                future.cancel(true);
+        }
+
+        return index;
+    }
+
+    /**
+     * Shuts down the worker threads (if they were created by this instance).
+     */
+    @Override
+    public void close() {
+        if (ownsExecutor)
+            executor.shutdownNow();
+    }
+
+    private static Result decode(String text) {
+        Bill bill;
+        try {
+            bill = QRCodeText.decode(text);
+        } catch (QRBillValidationError e) {
+            return new Result(null, e.getValidationResult());
+        }
+        return new Result(bill, Validator.validate(bill));
+    }
+
+    private static Result getResult(Future<Result> future) {
+        try {
+            return future.get();
+
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new QRBillGenerationException("Bulk decoding has been interrupted");
+
+        } catch (CancellationException e) {
+            throw new QRBillGenerationException("Bulk decoding has been cancelled");
+
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException)
+                throw (RuntimeException) cause;
+            if (cause instanceof Error)
+                throw (Error) cause;
+            throw new QRBillGenerationException(cause);
+        }
+    }
+
+    private static class Result {
+        private final Bill bill;
+        private final ValidationResult validationResult;
+
+        private Result(Bill bill, ValidationResult validationResult) {
+            this.bill = bill;
+            this.validationResult = validationResult;
+        }
+    }
+
+    /**
+     * Splits the input into records, reading it in chunks.
+     */
+    private static class RecordReader {
+        private final Reader reader;
+        private final char separator;
+        private final char[] buffer = new char[8192];
+        private final StringBuilder record = new StringBuilder(512);
+        private int pos;
+        private int len;
+        private boolean isAtRecordStart = true;
+
+        private RecordReader(Reader reader, char separator) {
+            this.reader = reader;
+            this.separator = separator;
+        }
+
+        /**
+         * Reads the next non-empty record.
+         *
+         * @return the record, or {@code null} if the end of the input has been reached
+         */
+        private String next() throws IOException {
+            while (true) {
+                if (pos == len) {
+                    len = reader.read(buffer);
+                    pos = 0;
+                    if (len < 0) {
+                        len = 0;
+                        return takeRecord();
+                    }
+                }
+
+                int start = pos;
+                if (isAtRecordStart) {
+                    // skip line breaks following the separator
+                    while (start < len && (buffer[start] == '\n' || buffer[start] == '\r'))
+                        start++;
+                    if (start < len)
+                        isAtRecordStart = false;
+                }
+
+                int end = start;
+                while (end < len && buffer[end] != separator)
+                    end++;
+                record.append(buffer, start, end - start);
+                if (end == len) {
+                    pos = len;
+                    continue;
+                }
+
+                pos = end + 1;
+                isAtRecordStart = true;
+                String text = takeRecord();
+                if (text != null)
+                    return text;
+            }
+        }
+
+        private String takeRecord() {
+            if (record.length() == 0)
+                return null;
+            String text = record.toString();
+            record.setLength(0);
+            return text;
+        }
+    }
+}
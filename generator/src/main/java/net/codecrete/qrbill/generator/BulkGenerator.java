@@ -0,0 +1,392 @@
+//
+// Swiss QR Bill Generator
+// Copyright (c) 2020 Manuel Bleichenbacher
+// Licensed under MIT License
+// https://opensource.org/licenses/MIT
+//
+package net.codecrete.qrbill.generator;
+
+import net.codecrete.qrbill.canvas.ByteArrayResult;
+import net.codecrete.qrbill.canvas.Canvas;
+import net.codecrete.qrbill.canvas.PNGCanvas;
+import net.codecrete.qrbill.canvas.PNGCanvasPool;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Stream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Generates large numbers of QR bills in parallel.
+ * <p>
+ * The bills are validated and rendered on a pool of worker threads. Each bill is
+ * generated in the graphics format and output size specified in its format.
+ * The results are delivered to a sink in the order of the input, one at a time
+ * and on the thread calling {@link #generate(Iterator, Sink)}.
+ * </p>
+ * <p>
+ * The number of bills being processed or waiting for delivery is limited
+ * (see {@link #setMaxPending(int)}). If the limit is reached, no further
+ * bills are taken from the input until the oldest result has been delivered.
+ * So the memory usage does not grow with the number of bills, even if the sink
+ * is slower than the workers.
+ * </p>
+ * <p>
+ * To generate a single PDF document containing all bills, use
+ * {@link QRBill#generateBatch(Iterable, java.io.OutputStream)} instead.
+ * </p>
+ * <p>
+ * An instance can be used for several runs but not concurrently.
+ * </p>
+ */
+public class BulkGenerator implements AutoCloseable {
+
+    /**
+     * Receives the generated QR bills.
+     */
+    @FunctionalInterface
+    public interface Sink {
+
+        /**
+         * Accepts a generated QR bill.
+         * <p>
+         * The method is called in the order of the input.
+         * </p>
+         *
+         * @param index the index of the bill in the input (starting at 0)
+         * @param bill  the bill data
+         * @param data  the generated QR bill in the graphics format specified in the bill data
+         * @throws IOException thrown if the QR bill cannot be saved
+         */
+        void accept(int index, Bill bill, byte[] data) throws IOException;
+    }
+
+    private final ExecutorService executor;
+    private final boolean ownsExecutor;
+    private final PNGCanvasPool canvasPool;
+    private int maxPending;
+
+    /**
+     * Creates a new instance using as many worker threads as there are processors.
+     */
+    public BulkGenerator() {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Creates a new instance with the specified number of worker threads.
+     *
+     * @param parallelism the number of worker threads
+     */
+    public BulkGenerator(int parallelism) {
+        this(Executors.newFixedThreadPool(parallelism, runnable -> {
+            Thread thread = new Thread(runnable, "qrbill-bulk-generator");
+            thread.setDaemon(true);
+            return thread;
+        }), parallelism, true);
+    }
+
+    /**
+     * Creates a new instance using the specified executor service for the worker threads.
+     * <p>
+     * The executor service is not shut down when this instance is closed.
+     * </p>
+     *
+     * @param executor    the executor service
+     * @param parallelism the number of bills the executor service is expected to process in parallel
+     */
+    public BulkGenerator(ExecutorService executor, int parallelism) {
+        this(executor, parallelism, false);
+    }
+
+    private BulkGenerator(ExecutorService executor, int parallelism, boolean ownsExecutor) {
+        if (parallelism < 1)
+            throw new IllegalArgumentException("Parallelism must be at least 1");
+        this.executor = executor;
+        this.ownsExecutor = ownsExecutor;
+        canvasPool = new PNGCanvasPool(parallelism);
+        maxPending = 4 * parallelism;
+    }
+
+    /**
+     * Sets the maximum number of bills being processed or waiting for delivery to the sink.
+     * <p>
+     * The default is four times the parallelism.
+     * </p>
+     *
+     * @param maxPending the maximum number of pending bills
+     */
+    public void setMaxPending(int maxPending) {
+        if (maxPending < 1)
+            throw new IllegalArgumentException("Maximum number of pending bills must be at least 1");
+        this.maxPending = maxPending;
+    }
+
+    /**
+     * Gets the maximum number of bills being processed or waiting for delivery to the sink.
+     *
+     * @return the maximum number of pending bills
+     */
+    public int getMaxPending() {
+        return maxPending;
+    }
+
+    /**
+     * Generates the QR bills from the specified stream of bills.
+     *
+     * @param bills the bills
+     * @param sink  the sink receiving the generated QR bills
+     * @return the statistics of this run
+     * @throws QRBillValidationError thrown if the data of a bill does not validate
+     * @see #generate(Iterator, Sink)
+     */
+    public Statistics generate(Stream<Bill> bills, Sink sink) {
+        return generate(bills.iterator(), sink);
+    }
+
+    /**
+     * Generates the QR bills from the specified bills.
+     * <p>
+     * If a bill does not validate or cannot be generated, the bills still being
+     * processed are cancelled and the exception is thrown. The results of all
+     * preceding bills have been delivered to the sink at this point.
+     * </p>
+     *
+     * @param bills the bills
+     * @param sink  the sink receiving the generated QR bills
+     * @return the statistics of this run
+     * @throws QRBillValidationError thrown if the data of a bill does not validate
+     */
+    public Statistics generate(Iterator<Bill> bills, Sink sink) {
+        Statistics statistics = new Statistics();
+        long startTime = System.nanoTime();
+        ArrayDeque<Future<byte[]>> pendingResults = new ArrayDeque<>();
+        ArrayDeque<Bill> pendingBills = new ArrayDeque<>();
+        int index = 0;
+
+        try {
+            while (bills.hasNext() || !pendingResults.isEmpty()) {
+                // submit bills until limit is reached
+                while (pendingResults.size() < maxPending && bills.hasNext()) {
+                    Bill bill = bills.next();
+                    pendingResults.add(executor.submit(() -> generate(bill, statistics)));
+                    pendingBills.add(bill);
+                }
+
+                // deliver oldest result
+                byte[] data = getResult(pendingResults.remove());
+                long sinkStart = System.nanoTime();
+                sink.accept(index, pendingBills.remove(), data);
+                statistics.sinkTime.add(System.nanoTime() - sinkStart);
+                index++;
+            }
+
+        } catch (IOException e) {
+            throw new QRBillGenerationException(e);
+
+        } finally {
+            for (Future<byte[]> future : pendingResults)
+                future.cancel(true);
+        }
+
+        statistics.billCount = index;
+        statistics.elapsedTime = System.nanoTime() - startTime;
+        return statistics;
+    }
+
+    /**
+     * Shuts down the worker threads (if they were created by this instance)
+     * and releases the cached canvases.
+     */
+    @Override
+    public void close() {
+        if (ownsExecutor)
+            executor.shutdownNow();
+        canvasPool.close();
+    }
+
+    private byte[] generate(Bill bill, Statistics statistics) throws IOException {
+        long startTime = System.nanoTime();
+        Bill cleanedBill = QRBill.validateAndClean(bill);
+        long validationEndTime = System.nanoTime();
+        statistics.validationTime.add(validationEndTime - startTime);
+
+        BillFormat format = bill.getFormat();
+        OutputSize outputSize = format.getOutputSize();
+        byte[] data;
+        long drawingEndTime;
+
+        if (format.getGraphicsFormat() == GraphicsFormat.PNG) {
+            PNGCanvas canvas = canvasPool.acquire(QRBill.getDrawingWidth(outputSize),
+                    QRBill.getDrawingHeight(outputSize), format.getResolution(), format.getFontFamily());
+            try {
+                QRBill.drawValidated(cleanedBill, outputSize, canvas);
+                drawingEndTime = System.nanoTime();
+                data = canvas.toByteArray();
+            } finally {
+                canvasPool.release(canvas);
+            }
+
+        } else {
+            try (Canvas canvas = QRBill.createCanvas(format)) {
+                QRBill.drawValidated(cleanedBill, outputSize, canvas);
+                drawingEndTime = System.nanoTime();
+                data = ((ByteArrayResult) canvas).toByteArray();
+            }
+        }
+
+        statistics.drawingTime.add(drawingEndTime - validationEndTime);
+        statistics.serializationTime.add(System.nanoTime() - drawingEndTime);
+        return data;
+    }
+
+    private static byte[] getResult(Future<byte[]> future) throws IOException {
+        try {
+            return future.get();
+
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new QRBillGenerationException("Bulk generation has been interrupted");
+
+        } catch (CancellationException e) {
+            throw new QRBillGenerationException("Bulk generation has been cancelled");
+
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException)
+                throw (RuntimeException) cause;
+            if (cause instanceof IOException)
+                throw (IOException) cause;
+            if (cause instanceof Error)
+                throw (Error) cause;
+            throw new QRBillGenerationException(cause);
+        }
+    }
+
+    /**
+     * Creates a sink saving each QR bill as a separate file in the specified directory.
+     * <p>
+     * The file name is created by formatting the specified pattern with the bill's index,
+     * e.g. {@code "bill-%05d.pdf"}.
+     * </p>
+     *
+     * @param directory       the directory
+     * @param fileNamePattern the file name pattern (see {@link String#format(String, Object...)})
+     * @return the sink
+     */
+    public static Sink directorySink(Path directory, String fileNamePattern) {
+        return (index, bill, data) -> Files.write(directory.resolve(String.format(fileNamePattern, index)), data);
+    }
+
+    /**
+     * Creates a sink writing each QR bill as a separate entry to the specified ZIP stream.
+     * <p>
+     * The entry name is created by formatting the specified pattern with the bill's index,
+     * e.g. {@code "bill-%05d.pdf"}. The ZIP stream is not closed.
+     * </p>
+     *
+     * @param zipStream        the ZIP stream
+     * @param entryNamePattern the entry name pattern (see {@link String#format(String, Object...)})
+     * @return the sink
+     */
+    public static Sink zipSink(ZipOutputStream zipStream, String entryNamePattern) {
+        return (index, bill, data) -> {
+            zipStream.putNextEntry(new ZipEntry(String.format(entryNamePattern, index)));
+            zipStream.write(data);
+            zipStream.closeEntry();
+        };
+    }
+
+    /**
+     * Statistics of a bulk generation run.
+     * <p>
+     * The time of the validation, drawing and serialization stage is the sum of the time
+     * spent in the worker threads. The sink time is the time spent delivering the results.
+     * All times are in nanoseconds.
+     * </p>
+     */
+    public static class Statistics {
+
+        private final LongAdder validationTime = new LongAdder();
+        private final LongAdder drawingTime = new LongAdder();
+        private final LongAdder serializationTime = new LongAdder();
+        private final LongAdder sinkTime = new LongAdder();
+        private int billCount;
+        private long elapsedTime;
+
+        private Statistics() {
+        }
+
+        /**
+         * Gets the number of generated bills.
+         *
+         * @return the number of bills
+         */
+        public int getBillCount() {
+            return billCount;
+        }
+
+        /**
+         * Gets the total time spent validating and cleaning the bill data.
+         *
+         * @return the time (in ns)
+         */
+        public long getValidationTime() {
+            return validationTime.sum();
+        }
+
+        /**
+         * Gets the total time spent laying out and drawing the bills.
+         *
+         * @return the time (in ns)
+         */
+        public long getDrawingTime() {
+            return drawingTime.sum();
+        }
+
+        /**
+         * Gets the total time spent creating the resulting SVG, PDF or PNG data.
+         *
+         * @return the time (in ns)
+         */
+        public long getSerializationTime() {
+            return serializationTime.sum();
+        }
+
+        /**
+         * Gets the total time spent in the sink.
+         *
+         * @return the time (in ns)
+         */
+        public long getSinkTime() {
+            return sinkTime.sum();
+        }
+
+        /**
+         * Gets the elapsed (wall-clock) time of the run.
+         *
+         * @return the time (in ns)
+         */
+        public long getElapsedTime() {
+            return elapsedTime;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%d bills in %.1f ms (validation: %.1f ms, drawing: %.1f ms, "
+                            + "serialization: %.1f ms, sink: %.1f ms)",
+                    billCount, elapsedTime / 1e6, getValidationTime() / 1e6, getDrawingTime() / 1e6,
+                    getSerializationTime() / 1e6, getSinkTime() / 1e6);
+        }
+    }
+}
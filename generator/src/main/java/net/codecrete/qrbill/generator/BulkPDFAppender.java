@@ -0,0 +1,550 @@
+//
+// Swiss QR Bill Generator
+// Copyright (c) 2020 Manuel Bleichenbacher
+// Licensed under MIT License
+// https://opensource.org/licenses/MIT
+//
+package net.codecrete.qrbill.generator;
+
+import net.codecrete.qrbill.canvas.PDFCanvas;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Adds QR bills to large numbers of existing PDF documents in parallel.
+ * <p>
+ * Each job of the manifest specifies the source document, the bill data, the page the
+ * QR bill is added to (see {@link PDFCanvas#PDFCanvas(Path, int)}) and the target path.
+ * The jobs are processed on a pool of worker threads.
+ * </p>
+ * <p>
+ * The concurrency is limited in two ways: by the maximum number of jobs being processed
+ * (see {@link #setMaxPending(int)}) and by the estimated main memory used for the documents
+ * (see {@link #setMaxMemory(long)}). The estimate of a job is based on the size of the
+ * source document and is capped by the main memory limit per document (see
+ * {@link #setMaxDocumentMemory(long)}). Larger documents are buffered in temporary files.
+ * So large documents reduce the number of jobs processed in parallel instead of
+ * exhausting the heap.
+ * </p>
+ * <p>
+ * Jobs that fail (e.g. because the bill data does not validate or the source document
+ * cannot be read) do not stop the run. They are reported together with the processing
+ * time of each job in the resulting {@link Report}. Targets are only replaced once the
+ * QR bill has been successfully added.
+ * </p>
+ * <p>
+ * An instance can be used for several runs but not concurrently.
+ * </p>
+ */
+public class BulkPDFAppender implements AutoCloseable {
+
+    private static final long DEFAULT_MAX_DOCUMENT_MEMORY = 16 * 1024 * 1024;
+    // fixed overhead per document (font metrics, page content, QR code etc.)
+    private static final long DOCUMENT_OVERHEAD = 1024 * 1024;
+
+    /**
+     * Job adding a QR bill to an existing PDF document.
+     */
+    public static class Job {
+
+        private final Path source;
+        private final Bill bill;
+        private final int pageNo;
+        private final Path target;
+
+        /**
+         * Creates a new job.
+         * <p>
+         * The target path may be the same as the source path. In this case,
+         * the source document is updated.
+         * </p>
+         *
+         * @param source the path of the existing PDF document
+         * @param bill   the bill data
+         * @param pageNo the zero-based number of the page the QR bill is added to,
+         *               or {@link PDFCanvas#LAST_PAGE} or {@link PDFCanvas#NEW_PAGE_AT_END}
+         * @param target the path to save the resulting PDF document to
+         */
+        public Job(Path source, Bill bill, int pageNo, Path target) {
+            this.source = source;
+            this.bill = bill;
+            this.pageNo = pageNo;
+            this.target = target;
+        }
+
+        /**
+         * Gets the path of the existing PDF document.
+         *
+         * @return the source path
+         */
+        public Path getSource() {
+            return source;
+        }
+
+        /**
+         * Gets the bill data.
+         *
+         * @return the bill data
+         */
+        public Bill getBill() {
+            return bill;
+        }
+
+        /**
+         * Gets the number of the page the QR bill is added to.
+         *
+         * @return the zero-based page number, or {@link PDFCanvas#LAST_PAGE} or {@link PDFCanvas#NEW_PAGE_AT_END}
+         */
+        public int getPageNo() {
+            return pageNo;
+        }
+
+        /**
+         * Gets the path the resulting PDF document is saved to.
+         *
+         * @return the target path
+         */
+        public Path getTarget() {
+            return target;
+        }
+    }
+
+    private final ExecutorService executor;
+    private final boolean ownsExecutor;
+    private int maxPending;
+    private long maxMemory;
+    private long maxDocumentMemory = DEFAULT_MAX_DOCUMENT_MEMORY;
+    private boolean isIncrementalSave = true;
+
+    /**
+     * Creates a new instance using as many worker threads as there are processors.
+     */
+    public BulkPDFAppender() {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Creates a new instance with the specified number of worker threads.
+     *
+     * @param parallelism the number of worker threads
+     */
+    public BulkPDFAppender(int parallelism) {
+        this(Executors.newFixedThreadPool(parallelism, runnable -> {
+            Thread thread = new Thread(runnable, "qrbill-bulk-pdf-appender");
+            thread.setDaemon(true);
+            return thread;
+        }), parallelism, true);
+    }
+
+    /**
+     * Creates a new instance using the specified executor service for the worker threads.
+     * <p>
+     * The executor service is not shut down when this instance is closed.
+     * </p>
+     *
+     * @param executor    the executor service
+     * @param parallelism the number of jobs the executor service is expected to process in parallel
+     */
+    public BulkPDFAppender(ExecutorService executor, int parallelism) {
+        this(executor, parallelism, false);
+    }
+
+    private BulkPDFAppender(ExecutorService executor, int parallelism, boolean ownsExecutor) {
+        if (parallelism < 1)
+            throw new IllegalArgumentException("Parallelism must be at least 1");
+        this.executor = executor;
+        this.ownsExecutor = ownsExecutor;
+        maxPending = parallelism;
+        maxMemory = Runtime.getRuntime().maxMemory() / 2;
+    }
+
+    /**
+     * Sets the maximum number of jobs being processed in parallel.
+     * <p>
+     * The default is the parallelism.
+     * </p>
+     *
+     * @param maxPending the maximum number of pending jobs
+     */
+    public void setMaxPending(int maxPending) {
+        if (maxPending < 1)
+            throw new IllegalArgumentException("Maximum number of pending jobs must be at least 1");
+        this.maxPending = maxPending;
+    }
+
+    /**
+     * Gets the maximum number of jobs being processed in parallel.
+     *
+     * @return the maximum number of pending jobs
+     */
+    public int getMaxPending() {
+        return maxPending;
+    }
+
+    /**
+     * Sets the maximum main memory used by all documents being processed.
+     * <p>
+     * If the estimated memory of the next job exceeds the remaining memory, the job is
+     * not started until enough memory has been released. A single job is always started
+     * (even if its estimate exceeds the limit). The default is half of the maximum heap size.
+     * </p>
+     *
+     * @param maxMemory the maximum memory, in bytes
+     */
+    public void setMaxMemory(long maxMemory) {
+        if (maxMemory < 1)
+            throw new IllegalArgumentException("Maximum memory must be positive");
+        this.maxMemory = maxMemory;
+    }
+
+    /**
+     * Gets the maximum main memory used by all documents being processed.
+     *
+     * @return the maximum memory, in bytes
+     */
+    public long getMaxMemory() {
+        return maxMemory;
+    }
+
+    /**
+     * Sets the maximum main memory used for a single document.
+     * <p>
+     * Parts of the document exceeding this limit are buffered in temporary files.
+     * The default is 16 MB.
+     * </p>
+     *
+     * @param maxDocumentMemory the maximum memory per document, in bytes
+     */
+    public void setMaxDocumentMemory(long maxDocumentMemory) {
+        if (maxDocumentMemory < 1)
+            throw new IllegalArgumentException("Maximum memory must be positive");
+        this.maxDocumentMemory = maxDocumentMemory;
+    }
+
+    /**
+     * Gets the maximum main memory used for a single document.
+     *
+     * @return the maximum memory per document, in bytes
+     */
+    public long getMaxDocumentMemory() {
+        return maxDocumentMemory;
+    }
+
+    /**
+     * Enables or disables incremental saving.
+     * <p>
+     * If enabled, the QR bill is saved as a PDF incremental update (see
+     * {@link PDFCanvas#setIncrementalSave(boolean)}). If the target is the source document,
+     * only the update is appended to it. Incremental saving is enabled by default.
+     * </p>
+     *
+     * @param incrementalSave {@code true} to enable incremental saving, {@code false} to disable it
+     */
+    public void setIncrementalSave(boolean incrementalSave) {
+        isIncrementalSave = incrementalSave;
+    }
+
+    /**
+     * Indicates if incremental saving is enabled.
+     *
+     * @return {@code true} if incremental saving is enabled, {@code false} otherwise
+     */
+    public boolean isIncrementalSave() {
+        return isIncrementalSave;
+    }
+
+    /**
+     * Processes the jobs of the specified manifest.
+     * <p>
+     * The method returns when all jobs have been processed.
+     * </p>
+     *
+     * @param jobs the jobs
+     * @return the report of this run
+     */
+    public Report append(Iterable<Job> jobs) {
+        return append(jobs.iterator());
+    }
+
+    /**
+     * Processes the jobs of the specified manifest.
+     * <p>
+     * The jobs are taken from the iterator as capacity becomes available. So the
+     * manifest can be read incrementally. The method returns when all jobs have been processed.
+     * </p>
+     *
+     * @param jobs the jobs
+     * @return the report of this run
+     */
+    public Report append(Iterator<Job> jobs) {
+        long startTime = System.nanoTime();
+        // memory is managed in units of 1 KB so it fits the int permits of a semaphore
+        int memoryPermits = (int) Math.min(Integer.MAX_VALUE, Math.max(1, maxMemory / 1024));
+        Semaphore memory = new Semaphore(memoryPermits);
+        Semaphore pending = new Semaphore(maxPending);
+        ConcurrentLinkedQueue<Result> results = new ConcurrentLinkedQueue<>();
+        int index = 0;
+
+        try {
+            while (jobs.hasNext()) {
+                Job job = jobs.next();
+                int jobIndex = index;
+                int permits = Math.min(memoryPermits, estimateMemory(job));
+
+                pending.acquire();
+                memory.acquire(permits);
+                try {
+                    executor.execute(() -> {
+                        try {
+                            results.add(process(jobIndex, job));
+                        } finally {
+                            memory.release(permits);
+                            pending.release();
+                        }
+                    });
+                } catch (RejectedExecutionException e) {
+                    memory.release(permits);
+                    pending.release();
+                    throw new QRBillGenerationException(e);
+                }
+                index++;
+            }
+
+            // wait for the remaining jobs
+            pending.acquire(maxPending);
+            pending.release(maxPending);
+
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new QRBillGenerationException("Bulk PDF append has been interrupted");
+        }
+
+        List<Result> sortedResults = new ArrayList<>(results);
+        sortedResults.sort(Comparator.comparingInt(Result::getIndex));
+        return new Report(sortedResults, System.nanoTime() - startTime);
+    }
+
+    /**
+     * Shuts down the worker threads (if they were created by this instance).
+     */
+    @Override
+    public void close() {
+        if (ownsExecutor)
+            executor.shutdownNow();
+    }
+
+    private int estimateMemory(Job job) {
+        long fileSize;
+        try {
+            fileSize = Files.size(job.getSource());
+        } catch (IOException e) {
+            // the job will fail and report the error
+            fileSize = 0;
+        }
+        long estimate = Math.min(fileSize, maxDocumentMemory) + DOCUMENT_OVERHEAD;
+        return (int) Math.min(Integer.MAX_VALUE, estimate / 1024);
+    }
+
+    private Result process(int index, Job job) {
+        long startTime = System.nanoTime();
+        try {
+            Bill cleanedBill = QRBill.validateAndClean(job.getBill());
+            try (PDFCanvas canvas = new PDFCanvas(job.getSource(), job.getPageNo(), maxDocumentMemory,
+                    job.getBill().getFormat().getFontFamily())) {
+                canvas.setIncrementalSave(isIncrementalSave);
+                QRBill.drawValidated(cleanedBill, job.getBill().getFormat().getOutputSize(), canvas);
+                save(canvas, job);
+            }
+            return new Result(index, job, System.nanoTime() - startTime, null);
+
+        } catch (Throwable e) {
+            // errors are reported as well so that every job has a result
+            return new Result(index, job, System.nanoTime() - startTime, e);
+        }
+    }
+
+    private void save(PDFCanvas canvas, Job job) throws IOException {
+        Path target = job.getTarget();
+        if (isIncrementalSave && Files.exists(target) && Files.isSameFile(target, job.getSource())) {
+            canvas.appendToSource();
+            return;
+        }
+
+        // write to temporary file first so the target is not replaced by an incomplete document
+        Path directory = target.toAbsolutePath().getParent();
+        Path tempFile = Files.createTempFile(directory, ".qrbill-", ".tmp");
+        try {
+            canvas.saveAs(tempFile);
+            Files.move(tempFile, target, StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            Files.deleteIfExists(tempFile);
+        }
+    }
+
+    /**
+     * Result of a single job.
+     */
+    public static class Result {
+
+        private final int index;
+        private final Job job;
+        private final long processingTime;
+        private final Throwable failure;
+
+        private Result(int index, Job job, long processingTime, Throwable failure) {
+            this.index = index;
+            this.job = job;
+            this.processingTime = processingTime;
+            this.failure = failure;
+        }
+
+        /**
+         * Gets the index of the job in the manifest.
+         *
+         * @return the index (starting at 0)
+         */
+        public int getIndex() {
+            return index;
+        }
+
+        /**
+         * Gets the job.
+         *
+         * @return the job
+         */
+        public Job getJob() {
+            return job;
+        }
+
+        /**
+         * Gets the time spent processing the job (loading, drawing and saving).
+         *
+         * @return the time (in ns)
+         */
+        public long getProcessingTime() {
+            return processingTime;
+        }
+
+        /**
+         * Indicates if the job has failed.
+         *
+         * @return {@code true} if the job has failed, {@code false} if it was successful
+         */
+        public boolean hasFailed() {
+            return failure != null;
+        }
+
+        /**
+         * Gets the reason the job has failed.
+         * <p>
+         * If the bill data does not validate, the exception is a {@link QRBillValidationError}.
+         * Errors such as {@link OutOfMemoryError} are reported as well.
+         * </p>
+         *
+         * @return the exception or error, or {@code null} if the job was successful
+         */
+        public Throwable getFailure() {
+            return failure;
+        }
+    }
+
+    /**
+     * Report of a bulk PDF append run.
+     */
+    public static class Report {
+
+        private final List<Result> results;
+        private final long elapsedTime;
+
+        private Report(List<Result> results, long elapsedTime) {
+            this.results = Collections.unmodifiableList(results);
+            this.elapsedTime = elapsedTime;
+        }
+
+        /**
+         * Gets the results of all jobs, in the order of the manifest.
+         *
+         * @return the results
+         */
+        public List<Result> getResults() {
+            return results;
+        }
+
+        /**
+         * Gets the results of the failed jobs, in the order of the manifest.
+         *
+         * @return the results of the failed jobs
+         */
+        public List<Result> getFailures() {
+            List<Result> failures = new ArrayList<>();
+            for (Result result : results) {
+                if (result.hasFailed())
+                    failures.add(result);
+            }
+            return failures;
+        }
+
+        /**
+         * Gets the number of jobs.
+         *
+         * @return the number of jobs
+         */
+        public int getJobCount() {
+            return results.size();
+        }
+
+        /**
+         * Gets the number of failed jobs.
+         *
+         * @return the number of failed jobs
+         */
+        public int getFailureCount() {
+            int count = 0;
+            for (Result result : results) {
+                if (result.hasFailed())
+                    count++;
+            }
+            return count;
+        }
+
+        /**
+         * Gets the total time spent processing the jobs in the worker threads.
+         *
+         * @return the time (in ns)
+         */
+        public long getProcessingTime() {
+            long time = 0;
+            for (Result result : results)
+                time += result.processingTime;
+            return time;
+        }
+
+        /**
+         * Gets the elapsed (wall-clock) time of the run.
+         *
+         * @return the time (in ns)
+         */
+        public long getElapsedTime() {
+            return elapsedTime;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%d documents in %.1f ms (failed: %d, processing: %.1f ms)",
+                    getJobCount(), elapsedTime / 1e6, getFailureCount(), getProcessingTime() / 1e6);
+        }
+    }
+}
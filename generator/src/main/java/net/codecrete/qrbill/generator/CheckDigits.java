@@ -0,0 +1,261 @@
+//
+// Swiss QR Bill Generator
+// Copyright (c) 2020 Manuel Bleichenbacher
+// Licensed under MIT License
+// https://opensource.org/licenses/MIT
+//
+package net.codecrete.qrbill.generator;
+
+import java.nio.CharBuffer;
+import java.util.function.IntConsumer;
+import java.util.stream.IntStream;
+
+/**
+ * Check digit calculations for IBANs, QR references and ISO 11649 creditor references
+ * operating on entire batches.
+ * <p>
+ * The methods validate or generate the check digits of many values at once,
+ * e.g. for reconciliation jobs. The results are the same as the ones of the
+ * corresponding methods of {@link Payments}. If {@code parallel} is set,
+ * the batch is processed on several threads (of the common fork/join pool).
+ * This is beneficial for large batches only (several thousand values).
+ * </p>
+ * <p>
+ * The check digits are calculated without creating intermediate strings: the modulo 97
+ * calculation uses a precomputed table of powers of 10 modulo 97 instead of
+ * rearranging the characters and the modulo 10 calculation (recursive) processes
+ * two digits per step.
+ * </p>
+ */
+public class CheckDigits {
+
+    private CheckDigits() {
+        // Do not instantiate
+    }
+
+    /**
+     * Validates the specified IBANs.
+     * <p>
+     * See {@link Payments#isValidIBAN(String)} for the validation rules.
+     * {@code null} values are invalid.
+     * </p>
+     *
+     * @param ibans    IBANs to validate
+     * @param parallel {@code true} to process the IBANs in parallel
+     * @return array with {@code true} for each valid IBAN and {@code false} for each invalid one
+     */
+    public static boolean[] validateIBANs(String[] ibans, boolean parallel) {
+        boolean[] result = new boolean[ibans.length];
+        forEach(ibans.length, parallel, i -> result[i] = ibans[i] != null && Payments.isValidIBAN(ibans[i]));
+        return result;
+    }
+
+    /**
+     * Validates the specified QR references.
+     * <p>
+     * See {@link Payments#isValidQRReference(String)} for the validation rules.
+     * {@code null} values are invalid.
+     * </p>
+     *
+     * @param references QR references to validate
+     * @param parallel   {@code true} to process the references in parallel
+     * @return array with {@code true} for each valid reference and {@code false} for each invalid one
+     */
+    public static boolean[] validateQRReferences(String[] references, boolean parallel) {
+        boolean[] result = new boolean[references.length];
+        forEach(references.length, parallel,
+                i -> result[i] = references[i] != null && Payments.isValidQRReference(references[i]));
+        return result;
+    }
+
+    /**
+     * Validates the specified ISO 11649 creditor references.
+     * <p>
+     * See {@link Payments#isValidISO11649Reference(String)} for the validation rules.
+     * {@code null} values are invalid.
+     * </p>
+     *
+     * @param references creditor references to validate
+     * @param parallel   {@code true} to process the references in parallel
+     * @return array with {@code true} for each valid reference and {@code false} for each invalid one
+     */
+    public static boolean[] validateISO11649References(String[] references, boolean parallel) {
+        boolean[] result = new boolean[references.length];
+        forEach(references.length, parallel,
+                i -> result[i] = references[i] != null && Payments.isValidISO11649Reference(references[i]));
+        return result;
+    }
+
+    /**
+     * Creates QR references from invoice numbers.
+     * <p>
+     * Each QR reference consists of the prefix (e.g. a customer identification
+     * number assigned by the bank), the invoice number padded with leading zeros
+     * to a total of 26 digits, and the check digit.
+     * </p>
+     *
+     * @param prefix         digits to prefix each reference with ({@code null} or empty for no prefix)
+     * @param invoiceNumbers invoice numbers (non-negative)
+     * @param parallel       {@code true} to create the references in parallel
+     * @return array of QR references (27 digits without spaces)
+     * @throws IllegalArgumentException if the prefix is not numeric or a reference would be
+     *                                  longer than 27 digits
+     */
+    public static String[] createQRReferences(String prefix, long[] invoiceNumbers, boolean parallel) {
+        char[] prefixDigits = prefix != null ? prefix.toCharArray() : new char[0];
+        for (char ch : prefixDigits) {
+            if (ch < '0' || ch > '9')
+                throw new IllegalArgumentException("Prefix is not numeric: " + prefix);
+        }
+        if (prefixDigits.length > 26)
+            throw new IllegalArgumentException("Prefix has more than 26 digits: " + prefix);
+
+        String[] result = new String[invoiceNumbers.length];
+        forEach(invoiceNumbers.length, parallel,
+                i -> result[i] = createQRReference(prefixDigits, invoiceNumbers[i]));
+        return result;
+    }
+
+    /**
+     * Creates ISO 11649 creditor references from raw references.
+     * <p>
+     * See {@link Payments#createISO11649Reference(String)} for details.
+     * </p>
+     *
+     * @param rawReferences raw references
+     * @param parallel      {@code true} to create the references in parallel
+     * @return array of creditor references
+     * @throws IllegalArgumentException if a raw reference contains invalid characters
+     */
+    public static String[] createISO11649References(String[] rawReferences, boolean parallel) {
+        String[] result = new String[rawReferences.length];
+        forEach(rawReferences.length, parallel,
+                i -> result[i] = Payments.createISO11649Reference(rawReferences[i]));
+        return result;
+    }
+
+    private static void forEach(int count, boolean parallel, IntConsumer action) {
+        if (parallel) {
+            IntStream.range(0, count).parallel().forEach(action);
+        } else {
+            for (int i = 0; i < count; i++)
+                action.accept(i);
+        }
+    }
+
+    private static String createQRReference(char[] prefixDigits, long invoiceNumber) {
+        if (invoiceNumber < 0)
+            throw new IllegalArgumentException("Invoice number is negative: " + invoiceNumber);
+
+        char[] reference = new char[27];
+        System.arraycopy(prefixDigits, 0, reference, 0, prefixDigits.length);
+        int pos = 26;
+        long number = invoiceNumber;
+        do {
+            if (pos == prefixDigits.length)
+                throw new IllegalArgumentException("QR reference would be longer than 27 digits: " + invoiceNumber);
+            reference[--pos] = (char) ('0' + number % 10);
+            number /= 10;
+        } while (number != 0);
+        for (int i = prefixDigits.length; i < pos; i++)
+            reference[i] = '0';
+
+        reference[26] = (char) ('0' + (10 - mod10(CharBuffer.wrap(reference), 26)) % 10);
+        return new String(reference);
+    }
+
+    // 10^i mod 97 (10 has order 96 modulo 97, i.e. the powers repeat every 96 digits)
+    private static final int[] POW10_MOD97 = new int[96];
+
+    static {
+        int power = 1;
+        for (int i = 0; i < 96; i++) {
+            POW10_MOD97[i] = power;
+            power = power * 10 % 97;
+        }
+    }
+
+    /**
+     * Calculates the modulo 97 checksum according to ISO 11649 and the IBAN standard.
+     * <p>
+     * The first four characters are moved to the end, letters are replaced with
+     * two digits ('A' = 10, 'B' = 11 etc.) and the result is taken modulo 97.
+     * The rearrangement is not carried out. Instead, the characters are processed
+     * from the end and each one is weighted with the power of 10 of its position.
+     * </p>
+     *
+     * @param value the value, consisting of digits and letters ('A' to 'Z' and 'a' to 'z') only
+     * @return the checksum (0 to 96)
+     * @throws IllegalArgumentException thrown if the value contains an invalid character
+     *                                  or has less than 5 characters
+     */
+    static int mod97(CharSequence value) {
+        int len = value.length();
+        if (len < 5)
+            throw new IllegalArgumentException("Insufficient characters for checksum calculation");
+
+        int sum = 0;
+        int shift = 0;
+        // Process the rearranged value from the end: the first four characters in
+        // reverse order (negative index), followed by the remaining ones in reverse order
+        for (int i = 3; i > 3 - len; i--) {
+            char ch = value.charAt(i >= 0 ? i : i + len);
+            int digits;
+            if (ch >= '0' && ch <= '9') {
+                digits = ch - '0';
+            } else if (ch >= 'A' && ch <= 'Z') {
+                digits = ch - 'A' + 10;
+            } else if (ch >= 'a' && ch <= 'z') {
+                digits = ch - 'a' + 10;
+            } else {
+                throw new IllegalArgumentException("Invalid character in reference: " + ch);
+            }
+
+            sum += digits * POW10_MOD97[shift];
+            shift += digits < 10 ? 1 : 2;
+            if (shift >= 96)
+                shift -= 96;
+            if (sum >= 0x1000000)
+                sum %= 97;
+        }
+
+        return sum % 97;
+    }
+
+    private static final int[] MOD_10 = { 0, 9, 4, 6, 8, 2, 7, 1, 3, 5 };
+
+    // recursive modulo 10 transitions for two digits: index is carry * 100 + 2-digit number
+    private static final byte[] MOD_10_PAIRS = new byte[1000];
+
+    static {
+        for (int carry = 0; carry < 10; carry++) {
+            for (int digit1 = 0; digit1 < 10; digit1++) {
+                int intermediate = MOD_10[(carry + digit1) % 10];
+                for (int digit2 = 0; digit2 < 10; digit2++)
+                    MOD_10_PAIRS[carry * 100 + digit1 * 10 + digit2] = (byte) MOD_10[(intermediate + digit2) % 10];
+            }
+        }
+    }
+
+    /**
+     * Calculates the recursive modulo 10 checksum of the specified digits.
+     * <p>
+     * A number including the check digit is valid if the checksum is 0.
+     * </p>
+     *
+     * @param digits the digits ('0' to '9')
+     * @param length the number of digits to process
+     * @return the checksum (0 to 9)
+     */
+    static int mod10(CharSequence digits, int length) {
+        int carry = 0;
+        int i = 0;
+        for (; i + 1 < length; i += 2)
+            carry = MOD_10_PAIRS[carry * 100 + (digits.charAt(i) - '0') * 10 + digits.charAt(i + 1) - '0'];
+        if (i < length) {
+            int index = carry + digits.charAt(i) - '0';
+            carry = MOD_10[index < 10 ? index : index - 10];
+        }
+        return carry;
+    }
+}
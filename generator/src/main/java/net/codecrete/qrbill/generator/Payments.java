@@ -41,10 +41,10 @@ public class Payments {
      * removed.
      * </p>
      * <p>
-     * If characters beyond 0xff are detected, the string is first normalized such
-     * that letters with umlauts or accents expressed with two code points are
-     * merged into a single code point (if possible), some of which might become
-     * valid.
+     * If characters beyond 0x2ff are detected, the affected part of the string
+     * is first normalized such that letters with umlauts or accents expressed with
+     * two code points are merged into a single code point (if possible), some of
+     * which might become valid.
      * </p>
      * <p>
      * If the resulting strings is all white space, {@code null} is returned.
@@ -56,16 +56,15 @@ public class Payments {
     static void cleanValue(String value, CleaningResult result) {
         result.cleanedString = null;
         result.replacedUnsupportedChars = false;
+        if (value == null)
+            return;
+
         cleanValue(value, result, false);
-        if (result.cleanedString != null && result.cleanedString.length() == 0)
+        if (result.cleanedString.length() == 0)
             result.cleanedString = null;
     }
 
     private static void cleanValue(String value, CleaningResult result, boolean isNormalized) {
-        /* This code has cognitive complexity 30. Deal with it. */
-        if (value == null)
-            return;
-
         int len = value.length(); // length of value
         boolean justProcessedSpace = false; // flag indicating whether we've just processed a space character
         StringBuilder sb = null; // String builder for result
@@ -78,21 +77,21 @@ public class Payments {
         while (pos < len) {
             char ch = value.charAt(pos); // current character
 
-            if (Payments.isValidQRBillCharacter(ch)) {
+            if (isValidQRBillCharacter(ch)) {
                 justProcessedSpace = ch == ' ';
                 pos++;
                 continue;
             }
 
             // Check for normalization
-            if (ch > 0xff && !isNormalized) {
-                isNormalized = Normalizer.isNormalized(value, Normalizer.Form.NFC);
-                if (!isNormalized) {
-                    // Normalize string and start over
-                    value = Normalizer.normalize(value, Normalizer.Form.NFC);
-                    cleanValue(value, result, true);
+            if (ch >= FIRST_NORMALIZATION_CANDIDATE && !isNormalized) {
+                String normalizedValue = normalizedValue(value, pos);
+                if (normalizedValue != value) {
+                    // Start over with normalized string
+                    cleanValue(normalizedValue, result, true);
                     return;
                 }
+                isNormalized = true;
             }
 
             if (sb == null)
@@ -137,6 +136,40 @@ public class Payments {
         result.replacedUnsupportedChars = true;
     }
 
+    // Characters below U+0300 are not affected by NFC normalization and
+    // do not combine with preceding characters.
+    private static final char FIRST_NORMALIZATION_CANDIDATE = '\u0300';
+
+    /**
+     * Normalizes the part of the string that might not be in NFC form.
+     * <p>
+     * If the string is not normalized, only the substring from the first to the
+     * last character from U+0300 upwards (including the preceding base character)
+     * is normalized instead of the entire string. The result is the same as
+     * normalization never crosses the boundary before a character below U+0300.
+     * </p>
+     *
+     * @param value string value
+     * @param start index of the first character from U+0300 upwards
+     * @return normalized string value (same instance if already normalized)
+     */
+    private static String normalizedValue(String value, int start) {
+        if (Normalizer.isNormalized(value, Normalizer.Form.NFC))
+            return value;
+
+        int len = value.length();
+        int end = len;
+        while (value.charAt(end - 1) < FIRST_NORMALIZATION_CANDIDATE)
+            end--;
+        if (start > 0)
+            start--; // include base character
+
+        String normalized = Normalizer.normalize(value.substring(start, end), Normalizer.Form.NFC);
+        if (start == 0 && end == len)
+            return normalized;
+        return new StringBuilder(len).append(value, 0, start).append(normalized).append(value, end, len).toString();
+    }
+
     /**
      * Validates if the string is a valid IBAN number
      * <p>
@@ -166,8 +199,8 @@ public class Payments {
         if (!Character.isDigit(iban.charAt(2)) || !Character.isDigit(iban.charAt(3)))
             return false;
 
-        String checkDigits = iban.substring(2, 4);
-        if ("00".equals(checkDigits) || "01".equals(checkDigits) || "99".equals(checkDigits))
+        int checkDigits = (iban.charAt(2) - '0') * 10 + (iban.charAt(3) - '0');
+        if (checkDigits == 0 || checkDigits == 1 || checkDigits == 99)
             return false;
 
         return hasValidMod97CheckDigits(iban);
@@ -242,55 +275,16 @@ public class Payments {
      */
     public static String createISO11649Reference(String rawReference) {
         final String whiteSpaceRemoved = Strings.whiteSpaceRemoved(rawReference);
-        final int modulo = Payments.calculateMod97("RF00" + whiteSpaceRemoved);
-        return String.format("RF%02d", 98 - modulo) + whiteSpaceRemoved;
+        final int checkDigits = 98 - CheckDigits.mod97("RF00" + whiteSpaceRemoved);
+        return new StringBuilder(whiteSpaceRemoved.length() + 4).append("RF")
+                .append((char) ('0' + checkDigits / 10)).append((char) ('0' + checkDigits % 10))
+                .append(whiteSpaceRemoved).toString();
     }
 
     private static boolean hasValidMod97CheckDigits(String number) {
-        return calculateMod97(number) == 1;
-    }
-
-    /**
-     * Calculate the reference's modulo 97 checksum according to ISO11649 and IBAN
-     * standard.
-     * <p>
-     * The string may only contains digits, letters ('A' to 'Z' and 'a' to 'z', no
-     * accents). It must not contain white space.
-     * </p>
-     *
-     * @param reference the reference
-     * @return the checksum (0 to 96)
-     * @throws IllegalArgumentException thrown if the reference contains an invalid
-     *                                  character
-     */
-    private static int calculateMod97(String reference) {
-        int len = reference.length();
-        if (len < 5)
-            throw new IllegalArgumentException("Insufficient characters for checksum calculation");
-
-        String rearranged = reference.substring(4) + reference.substring(0, 4);
-        int sum = 0;
-        for (int i = 0; i < len; i++) {
-            char ch = rearranged.charAt(i);
-            if (ch >= '0' && ch <= '9') {
-                sum = sum * 10 + (ch - '0');
-            } else if (ch >= 'A' && ch <= 'Z') {
-                sum = sum * 100 + (ch - 'A' + 10);
-            } else if (ch >= 'a' && ch <= 'z') {
-                sum = sum * 100 + (ch - 'a' + 10);
-            } else {
-                throw new IllegalArgumentException("Invalid character in reference: " + ch);
-            }
-            if (sum > 9999999)
-                sum = sum % 97;
-        }
-
-        sum = sum % 97;
-        return sum;
+        return CheckDigits.mod97(number) == 1;
     }
 
-    private static final int[] MOD_10 = { 0, 9, 4, 6, 8, 2, 7, 1, 3, 5 };
-
     /**
      * Validates if the string is a valid QR reference.
      * <p>
@@ -312,17 +306,37 @@ public class Payments {
         if (!isNumeric(reference))
             return false;
 
-        int carry = 0;
-        int len = reference.length();
-        if (len != 27)
+        if (reference.length() != 27)
             return false;
 
-        for (int i = 0; i < len; i++) {
-            int digit = reference.charAt(i) - '0';
-            carry = MOD_10[(carry + digit) % 10];
-        }
+        return CheckDigits.mod10(reference, 27) == 0;
+    }
 
-        return carry == 0;
+    /**
+     * Creates a QR reference from a raw reference by padding it with leading zeros
+     * and appending the check digit.
+     * <p>
+     * Whitespace is removed from the reference
+     * </p>
+     *
+     * @param rawReference the raw reference (up to 26 digits)
+     * @return QR reference (27 digits without spaces)
+     * @throws IllegalArgumentException if {@code rawReference} contains non-numeric
+     *                                  characters or has more than 26 digits
+     */
+    public static String createQRReference(String rawReference) {
+        final String rawNumber = Strings.whiteSpaceRemoved(rawReference);
+        if (!isNumeric(rawNumber))
+            throw new IllegalArgumentException("Invalid character in reference (digits allowed only)");
+        if (rawNumber.length() > 26)
+            throw new IllegalArgumentException("Reference number is too long");
+
+        StringBuilder sb = new StringBuilder(27);
+        for (int i = rawNumber.length(); i < 26; i++)
+            sb.append('0');
+        sb.append(rawNumber);
+        sb.append((char) ('0' + (10 - CheckDigits.mod10(sb, 26)) % 10));
+        return sb.toString();
     }
 
     /**
@@ -375,7 +389,45 @@ public class Payments {
         return true;
     }
 
+    /**
+     * Tests if a string value is already clean.
+     * <p>
+     * A clean value only consists of supported characters, is not empty and
+     * has no leading or trailing whitespace. {@link #cleanValue(String, CleaningResult)}
+     * returns clean values unchanged.
+     * </p>
+     *
+     * @param value string value to test (non null)
+     * @return {@code true} if the value is clean, {@code false} otherwise
+     */
+    static boolean isCleanValue(String value) {
+        int len = value.length();
+        if (len == 0 || value.charAt(0) == ' ' || value.charAt(len - 1) == ' ')
+            return false;
+        for (int i = 0; i < len; i++) {
+            if (!isValidQRBillCharacter(value.charAt(i)))
+                return false;
+        }
+        return true;
+    }
+
+    // Bitmap of supported characters, one bit for each of the 65,536 UTF-16 code units
+    private static final long[] VALID_CHARACTERS = createValidCharacterBitmap();
+
     private static boolean isValidQRBillCharacter(char ch) {
+        return (VALID_CHARACTERS[ch >>> 6] & (1L << ch)) != 0;
+    }
+
+    private static long[] createValidCharacterBitmap() {
+        long[] bitmap = new long[0x10000 / 64];
+        for (int ch = 0; ch <= 0xffff; ch++) {
+            if (isSupportedCharacter((char) ch))
+                bitmap[ch >>> 6] |= 1L << ch;
+        }
+        return bitmap;
+    }
+
+    private static boolean isSupportedCharacter(char ch) {
         if (ch < 0x20)
             return false;
         if (ch == 0x5e)
@@ -13,6 +13,8 @@ import net.codecrete.qrbill.canvas.PNGCanvas;
 import net.codecrete.qrbill.canvas.SVGCanvas;
 
 import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Iterator;
 
 /**
  * Generates Swiss QR bill payment part.
@@ -88,6 +90,17 @@ public class QRBill {
         return Validator.validate(bill);
     }
 
+    /**
+     * Validates and cleans the bill data of the specified record.
+     *
+     * @param bill the bill data to validate
+     * @return the validation result
+     * @see #validate(Bill)
+     */
+    public static ValidationResult validate(BillRecord bill) {
+        return Validator.validate(bill.toBill());
+    }
+
     /**
      * Generates a QR bill (payment part and receipt) or QR code as an SVG image or PDF document.
      * <p>
@@ -117,6 +130,119 @@ public class QRBill {
         }
     }
 
+    /**
+     * Generates a QR bill (payment part and receipt) or QR code as an SVG image or PDF document
+     * from the bill data of the specified record.
+     *
+     * @param bill the bill data
+     * @return the generated QR bill (as a byte array encoded in the specified graphics format)
+     * @throws QRBillValidationError thrown if the bill data does not validate
+     * @see #generate(Bill)
+     */
+    public static byte[] generate(BillRecord bill) {
+        return generate(bill.toBill());
+    }
+
+    /**
+     * Generates a QR bill (payment part and receipt) or QR code as an SVG image, PDF document
+     * or PNG image and writes it to the specified output stream.
+     * <p>
+     * If the bill data is not valid, a {@link QRBillValidationError} is
+     * thrown, which contains the validation result. For details about the
+     * validation result, see <a href=
+     * "https://github.com/manuelbl/SwissQRBill/wiki/Bill-data-validation">Bill data
+     * validation</a>. The bill data is validated before anything is written to the
+     * output stream.
+     * </p>
+     * <p>
+     * SVG images are written incrementally without buffering the entire image. The
+     * output stream is not closed.
+     * </p>
+     *
+     * @param bill the bill data
+     * @param os   the output stream to write the QR bill to
+     * @throws QRBillValidationError thrown if the bill data does not validate
+     */
+    public static void generate(Bill bill, OutputStream os) {
+        Bill cleanedBill = validateAndClean(bill);
+        BillFormat format = bill.getFormat();
+        try {
+            if (format.getGraphicsFormat() == GraphicsFormat.SVG) {
+                double drawingWidth = getDrawingWidth(format.getOutputSize());
+                double drawingHeight = getDrawingHeight(format.getOutputSize());
+                try (SVGCanvas canvas = new SVGCanvas(os, drawingWidth, drawingHeight, format.getFontFamily())) {
+                    drawValidated(cleanedBill, format.getOutputSize(), canvas);
+                }
+
+            } else {
+                try (Canvas canvas = createCanvas(format)) {
+                    drawValidated(cleanedBill, format.getOutputSize(), canvas);
+                    if (canvas instanceof PDFCanvas)
+                        ((PDFCanvas) canvas).writeTo(os);
+                    else
+                        ((PNGCanvas) canvas).writeTo(os);
+                }
+            }
+        } catch (IOException e) {
+            throw new QRBillGenerationException(e);
+        }
+    }
+
+    /**
+     * Generates a multi-page PDF document with a QR bill (payment part and receipt) or QR code
+     * for each of the specified bills and writes it to the specified output stream.
+     * <p>
+     * Each bill is placed on a separate page. The page size is determined by the
+     * output size of the bill. The graphics format of the bills is ignored.
+     * </p>
+     * <p>
+     * All pages are drawn into a single document sharing fonts and other resources.
+     * The fonts are selected by the font family of the first bill.
+     * Static content (titles, separator lines etc.) is rendered once and reused.
+     * Each page is written to the output stream as soon as the next bill is started
+     * and is then released. Only the positions of the written objects are kept (a few bytes
+     * per bill), so the memory usage does not grow with the number of bills.
+     * </p>
+     * <p>
+     * If the data of any bill is not valid, a {@link QRBillValidationError} is
+     * thrown, which contains the validation result. The pages of the preceding bills
+     * have already been written at that point; the output is not a complete PDF document.
+     * For details about the
+     * validation result, see <a href=
+     * "https://github.com/manuelbl/SwissQRBill/wiki/Bill-data-validation">Bill data
+     * validation</a>
+     * </p>
+     *
+     * @param bills the bills
+     * @param os    the output stream to write the PDF document to
+     * @throws QRBillValidationError thrown if the data of a bill does not validate
+     */
+    public static void generateBatch(Iterable<Bill> bills, OutputStream os) {
+        Iterator<Bill> iterator = bills.iterator();
+        if (!iterator.hasNext())
+            throw new QRBillGenerationException("No bills to generate");
+
+        Bill bill = iterator.next();
+        OutputSize outputSize = bill.getFormat().getOutputSize();
+        try (PDFCanvas canvas = new PDFCanvas(getDrawingWidth(outputSize), getDrawingHeight(outputSize),
+                bill.getFormat().getFontFamily(), os)) {
+            canvas.setTemplateMode(true);
+            while (true) {
+                validateAndGenerate(bill, canvas);
+                if (!iterator.hasNext())
+                    break;
+
+                bill = iterator.next();
+                outputSize = bill.getFormat().getOutputSize();
+                canvas.addPage(getDrawingWidth(outputSize), getDrawingHeight(outputSize));
+            }
+            canvas.finish();
+
+        } catch (IOException e) {
+            throw new QRBillGenerationException(e);
+        }
+    }
+
     /**
      * Draws the QR bill (payment part and receipt) or QR code for the specified bill data onto the specified canvas.
      * <p>
@@ -152,17 +278,188 @@ public class QRBill {
         }
     }
 
+    /**
+     * Draws the next bills onto the slips of a single page of the specified layout.
+     * <p>
+     * Bills are taken from the iterator until all slips of the layout are filled
+     * or the iterator is exhausted. The canvas must have the page size of the layout.
+     * It is neither initialized nor closed.
+     * </p>
+     * <p>
+     * If the data of any bill is not valid, a {@link QRBillValidationError} is
+     * thrown, which contains the validation result.
+     * </p>
+     *
+     * @param bills  the bills
+     * @param layout the sheet layout
+     * @param canvas the canvas to draw to
+     * @return the number of bills drawn
+     * @throws QRBillValidationError thrown if the data of a bill does not validate
+     */
+    public static int drawSheet(Iterator<Bill> bills, SheetLayout layout, Canvas canvas) {
+        int slipCount = layout.getSlipCount();
+        int index = 0;
+        try {
+            while (index < slipCount && bills.hasNext()) {
+                Bill bill = bills.next();
+                Bill cleanedBill = validateAndClean(bill);
+                drawValidated(cleanedBill, bill.getFormat().getOutputSize(), canvas,
+                        layout.getSlipX(index), layout.getSlipY(index));
+                index++;
+            }
+        } catch (IOException e) {
+            throw new QRBillGenerationException(e);
+        }
+        return index;
+    }
+
+    /**
+     * Generates a multi-page PDF document with several QR bills per page
+     * and writes it to the specified output stream.
+     * <p>
+     * The bills are placed on the slips of the layout, page by page. A new page is
+     * started when all slips of the current page have been filled. The graphics
+     * format of the bills is ignored.
+     * </p>
+     * <p>
+     * As with {@link #generateBatch(Iterable, OutputStream)}, all pages share fonts
+     * and static content, and each page is written to the output stream as soon as
+     * the next page is started. So the memory usage does not grow with the number of pages.
+     * </p>
+     * <p>
+     * If the data of any bill is not valid, a {@link QRBillValidationError} is
+     * thrown, which contains the validation result. The preceding pages have already
+     * been written at that point; the output is not a complete PDF document.
+     * </p>
+     *
+     * @param bills  the bills
+     * @param layout the sheet layout
+     * @param os     the output stream to write the PDF document to
+     * @return the number of pages
+     * @throws QRBillValidationError thrown if the data of a bill does not validate
+     */
+    public static int generateSheets(Iterator<Bill> bills, SheetLayout layout, OutputStream os) {
+        return generateSheets(bills, layout, new BillFormat().getFontFamily(), os);
+    }
+
+    /**
+     * Generates a multi-page PDF document with several QR bills per page, using the
+     * specified font family list, and writes it to the specified output stream.
+     * <p>
+     * If the list contains a font family registered with
+     * {@link PDFCanvas#registerFont(String, java.nio.file.Path, java.nio.file.Path)},
+     * a single subset of the font is embedded and shared by all pages.
+     * </p>
+     *
+     * @param bills          the bills
+     * @param layout         the sheet layout
+     * @param fontFamilyList a list of font family names, separated by comma
+     * @param os             the output stream to write the PDF document to
+     * @return the number of pages
+     * @throws QRBillValidationError thrown if the data of a bill does not validate
+     * @see #generateSheets(Iterator, SheetLayout, OutputStream)
+     */
+    public static int generateSheets(Iterator<Bill> bills, SheetLayout layout, String fontFamilyList,
+                                     OutputStream os) {
+        checkSheetRun(bills, layout);
+
+        int pageCount = 1;
+        try (PDFCanvas canvas = new PDFCanvas(layout.getPageWidth(), layout.getPageHeight(),
+                fontFamilyList, os)) {
+            canvas.setTemplateMode(true);
+            while (true) {
+                drawSheet(bills, layout, canvas);
+                if (!bills.hasNext())
+                    break;
+
+                canvas.addPage(layout.getPageWidth(), layout.getPageHeight());
+                pageCount++;
+            }
+            canvas.finish();
+
+        } catch (IOException e) {
+            throw new QRBillGenerationException(e);
+        }
+        return pageCount;
+    }
+
+    /**
+     * Generates PNG images with several QR bills per page and passes them to the specified sink.
+     * <p>
+     * The bills are placed on the slips of the layout, page by page. Each page is
+     * passed to the sink as soon as all its slips have been filled (or the bills are
+     * exhausted). So only a single page is kept in memory. A single canvas is
+     * used for all pages; it is reset after each page.
+     * </p>
+     * <p>
+     * If the data of any bill is not valid, a {@link QRBillValidationError} is
+     * thrown, which contains the validation result. Pages completed before are
+     * passed to the sink.
+     * </p>
+     *
+     * @param bills          the bills
+     * @param layout         the sheet layout
+     * @param resolution     the resolution of the PNG images, in pixels per inch
+     * @param fontFamilyList a list of font family names, separated by comma
+     * @param sink           the sink receiving the completed pages
+     * @return the number of pages
+     * @throws QRBillValidationError thrown if the data of a bill does not validate
+     */
+    public static int generateSheets(Iterator<Bill> bills, SheetLayout layout, int resolution,
+                                     String fontFamilyList, SheetLayout.PageSink sink) {
+        checkSheetRun(bills, layout);
+
+        int pageIndex = 0;
+        try (PNGCanvas canvas = new PNGCanvas(layout.getPageWidth(), layout.getPageHeight(),
+                resolution, fontFamilyList)) {
+            do {
+                if (pageIndex > 0)
+                    canvas.reset();
+                drawSheet(bills, layout, canvas);
+                sink.accept(pageIndex, canvas.toByteArray());
+                pageIndex++;
+            } while (bills.hasNext());
+
+        } catch (IOException e) {
+            throw new QRBillGenerationException(e);
+        }
+        return pageIndex;
+    }
+
+    private static void checkSheetRun(Iterator<Bill> bills, SheetLayout layout) {
+        if (layout.getSlipCount() == 0)
+            throw new IllegalArgumentException("Sheet layout has no slips");
+        if (!bills.hasNext())
+            throw new QRBillGenerationException("No bills to generate");
+    }
+
     private static void validateAndGenerate(Bill bill, Canvas canvas) throws IOException {
+        Bill cleanedBill = validateAndClean(bill);
+        drawValidated(cleanedBill, bill.getFormat().getOutputSize(), canvas);
+    }
+
+    static Bill validateAndClean(Bill bill) {
+        // bill data that is already clean is used as is
+        if (Validator.isValidAndClean(bill))
+            return bill;
+
         ValidationResult result = Validator.validate(bill);
-        Bill cleanedBill = result.getCleanedBill();
         if (result.hasErrors())
             throw new QRBillValidationError(result);
+        return result.getCleanedBill();
+    }
+
+    static void drawValidated(Bill cleanedBill, OutputSize outputSize, Canvas canvas) throws IOException {
+        drawValidated(cleanedBill, outputSize, canvas, 0, 0);
+    }
 
-        if (bill.getFormat().getOutputSize() == OutputSize.QR_CODE_ONLY) {
+    static void drawValidated(Bill cleanedBill, OutputSize outputSize, Canvas canvas,
+                              double originX, double originY) throws IOException {
+        if (outputSize == OutputSize.QR_CODE_ONLY) {
             QRCode qrCode = new QRCode(cleanedBill);
-            qrCode.draw(canvas, 0, 0);
+            qrCode.draw(canvas, originX, originY);
         } else {
-            BillLayout layout = new BillLayout(cleanedBill, canvas);
+            BillLayout layout = new BillLayout(cleanedBill, canvas, originX, originY);
             layout.draw();
         }
     }
@@ -185,12 +482,19 @@ public class QRBill {
      * @throws QRBillValidationError thrown if the bill data does not validate
      */
     public static String encodeQrCodeText(Bill bill) {
-        ValidationResult result = Validator.validate(bill);
-        Bill cleanedBill = result.getCleanedBill();
-        if (result.hasErrors())
-            throw new QRBillValidationError(result);
+        return QRCodeText.create(validateAndClean(bill));
+    }
 
-        return QRCodeText.create(cleanedBill);
+    /**
+     * Encodes the text embedded in the QR code from the bill data of the specified record.
+     *
+     * @param bill the bill data to encode
+     * @return the QR code text
+     * @throws QRBillValidationError thrown if the bill data does not validate
+     * @see #encodeQrCodeText(Bill)
+     */
+    public static String encodeQrCodeText(BillRecord bill) {
+        return encodeQrCodeText(bill.toBill());
     }
 
     /**
@@ -213,30 +517,38 @@ public class QRBill {
         return QRCodeText.decode(text);
     }
 
-    private static Canvas createCanvas(BillFormat format) throws IOException {
-        double drawingWidth;
-        double drawingHeight;
+    static double getDrawingWidth(OutputSize outputSize) {
+        switch (outputSize) {
+            case QR_BILL_ONLY:
+                return QR_BILL_WIDTH;
+            case QR_BILL_WITH_HORIZONTAL_LINE:
+                return QR_BILL_WITH_HORI_LINE_WIDTH;
+            case QR_CODE_ONLY:
+                return QR_CODE_WIDTH;
+            case A4_PORTRAIT_SHEET:
+            default:
+                return A4_PORTRAIT_WIDTH;
+        }
+    }
 
-        // define page size
-        switch (format.getOutputSize()) {
+    static double getDrawingHeight(OutputSize outputSize) {
+        switch (outputSize) {
             case QR_BILL_ONLY:
-                drawingWidth = QR_BILL_WIDTH;
-                drawingHeight = QR_BILL_HEIGHT;
-                break;
+                return QR_BILL_HEIGHT;
             case QR_BILL_WITH_HORIZONTAL_LINE:
-                drawingWidth = QR_BILL_WITH_HORI_LINE_WIDTH;
-                drawingHeight = QR_BILL_WITH_HORI_LINE_HEIGHT;
-                break;
+                return QR_BILL_WITH_HORI_LINE_HEIGHT;
             case QR_CODE_ONLY:
-                drawingWidth = QR_CODE_WIDTH;
-                drawingHeight = QR_CODE_HEIGHT;
-                break;
+                return QR_CODE_HEIGHT;
             case A4_PORTRAIT_SHEET:
             default:
-                drawingWidth = A4_PORTRAIT_WIDTH;
-                drawingHeight = A4_PORTRAIT_HEIGHT;
-                break;
+                return A4_PORTRAIT_HEIGHT;
         }
+    }
+
+    static Canvas createCanvas(BillFormat format) throws IOException {
+        // define page size
+        double drawingWidth = getDrawingWidth(format.getOutputSize());
+        double drawingHeight = getDrawingHeight(format.getOutputSize());
 
         Canvas canvas;
         switch (format.getGraphicsFormat()) {
@@ -244,7 +556,7 @@ public class QRBill {
                 canvas = new SVGCanvas(drawingWidth, drawingHeight, format.getFontFamily());
                 break;
             case PDF:
-                canvas = new PDFCanvas(drawingWidth, drawingHeight);
+                canvas = new PDFCanvas(drawingWidth, drawingHeight, format.getFontFamily());
                 break;
             case PNG:
                 canvas = new PNGCanvas(drawingWidth, drawingHeight, format.getResolution(), format.getFontFamily());
@@ -0,0 +1,133 @@
+//
+// Swiss QR Bill Generator
+// Copyright (c) 2020 Manuel Bleichenbacher
+// Licensed under MIT License
+// https://opensource.org/licenses/MIT
+//
+package net.codecrete.qrbill.generator;
+
+import java.nio.ByteBuffer;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Cache for encoded QR codes.
+ * <p>
+ * If the same bill is generated several times (e.g. in different graphics
+ * formats or output sizes), the cache saves encoding the QR code again.
+ * The key is the (UTF-8 encoded) text embedded in the QR code.
+ * </p>
+ * <p>
+ * The cache is disabled by default (capacity 0). If enabled, it keeps the
+ * most recently used QR codes up to the configured capacity. It is
+ * thread-safe.
+ * </p>
+ */
+public class QRCodeCache {
+
+    private static int capacity = 0;
+    private static final Map<ByteBuffer, QRCodePath> cache = new LinkedHashMap<ByteBuffer, QRCodePath>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<ByteBuffer, QRCodePath> eldest) {
+            return size() > capacity;
+        }
+    };
+    private static final AtomicLong hitCount = new AtomicLong();
+    private static final AtomicLong missCount = new AtomicLong();
+
+    private QRCodeCache() {
+        // Do not instantiate
+    }
+
+    /**
+     * Sets the maximum number of QR codes kept in the cache.
+     * <p>
+     * If the capacity is reduced, the least recently used QR codes are removed.
+     * A capacity of 0 disables the cache.
+     * </p>
+     *
+     * @param capacity the maximum number of QR codes
+     */
+    public static void setCapacity(int capacity) {
+        if (capacity < 0)
+            throw new IllegalArgumentException("Capacity must not be negative");
+        synchronized (cache) {
+            QRCodeCache.capacity = capacity;
+            while (cache.size() > capacity)
+                cache.remove(cache.keySet().iterator().next());
+        }
+    }
+
+    /**
+     * Gets the maximum number of QR codes kept in the cache.
+     *
+     * @return the maximum number of QR codes
+     */
+    public static int getCapacity() {
+        synchronized (cache) {
+            return capacity;
+        }
+    }
+
+    /**
+     * Gets the number of times a QR code was found in the cache.
+     *
+     * @return the number of cache hits
+     */
+    public static long getHitCount() {
+        return hitCount.get();
+    }
+
+    /**
+     * Gets the number of times a QR code was not found in the cache and had to be encoded.
+     * <p>
+     * If the cache is disabled, the QR codes are not counted.
+     * </p>
+     *
+     * @return the number of cache misses
+     */
+    public static long getMissCount() {
+        return missCount.get();
+    }
+
+    /**
+     * Removes all QR codes from the cache and resets the hit and miss counters.
+     */
+    public static void clear() {
+        synchronized (cache) {
+            cache.clear();
+            hitCount.set(0);
+            missCount.set(0);
+        }
+    }
+
+    /**
+     * Gets the QR code for the specified text, either from the cache or by encoding it.
+     *
+     * @param utf8Text the text embedded in the QR code (UTF-8 encoded)
+     * @return the QR code path
+     */
+    static QRCodePath getPath(byte[] utf8Text) {
+        ByteBuffer key = ByteBuffer.wrap(utf8Text);
+        synchronized (cache) {
+            if (capacity > 0) {
+                QRCodePath path = cache.get(key);
+                if (path != null) {
+                    hitCount.incrementAndGet();
+                    return path;
+                }
+            }
+        }
+
+        // encode outside of the lock
+        QRCodePath path = QRCodePath.create(utf8Text);
+        synchronized (cache) {
+            if (capacity > 0) {
+                missCount.incrementAndGet();
+                cache.put(key, path);
+            }
+        }
+        return path;
+    }
+}
@@ -0,0 +1,202 @@
+//
+// Swiss QR Bill Generator
+// Copyright (c) 2020 Manuel Bleichenbacher
+// Licensed under MIT License
+// https://opensource.org/licenses/MIT
+//
+package net.codecrete.qrbill.generator;
+
+import io.nayuki.qrcodegen.QrCode;
+import net.codecrete.qrbill.canvas.Canvas;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Encoded QR code as a list of rectangles covering the dark modules.
+ * <p>
+ * The rectangles are computed on a bit-packed module matrix (64 modules
+ * per {@code long}) so that runs of dark modules are found with bit operations.
+ * </p>
+ * <p>
+ * The area for the Swiss cross has already been cleared. Instances are
+ * immutable and can be shared between threads.
+ * </p>
+ */
+class QRCodePath {
+
+    private final int size;
+    private final int[] rectangles;
+
+    private QRCodePath(int size, int[] rectangles) {
+        this.size = size;
+        this.rectangles = rectangles;
+    }
+
+    /**
+     * Encodes the specified text as a QR code and computes the rectangles.
+     * <p>
+     * The text is encoded in byte mode. As the QR code text always contains line
+     * breaks, this is the mode {@link QrCode#encodeText(CharSequence, QrCode.Ecc)}
+     * would select as well.
+     * </p>
+     *
+     * @param utf8Text the UTF-8 encoded text
+     * @return the QR code path
+     */
+    static QRCodePath create(byte[] utf8Text) {
+        return create(QrCode.encodeBinary(utf8Text, QrCode.Ecc.MEDIUM));
+    }
+
+    /**
+     * Computes the rectangles for the specified QR code.
+     *
+     * @param qrCode the encoded QR code
+     * @return the QR code path
+     */
+    static QRCodePath create(QrCode qrCode) {
+        int size = qrCode.size;
+        int stride = (size + 63) >>> 6;
+        long[] modules = copyModules(qrCode, stride);
+        clearSwissCrossArea(modules, size, stride);
+
+        int[] rectangles = new int[64];
+        int length = 0;
+        for (int y = 0; y < size; y++) {
+            for (int i = 0; i < stride; i++) {
+                // the rectangle always covers the module at (x, y) so that
+                // the next iteration continues with the next dark module
+                long word;
+                while ((word = modules[y * stride + i]) != 0) {
+                    if (length + 4 > rectangles.length)
+                        rectangles = Arrays.copyOf(rectangles, rectangles.length * 2);
+                    int x = (i << 6) + Long.numberOfTrailingZeros(word);
+                    findLargestRectangle(modules, size, stride, x, y, rectangles, length);
+                    length += 4;
+                }
+            }
+        }
+
+        return new QRCodePath(size, Arrays.copyOf(rectangles, length));
+    }
+
+    /**
+     * Gets the number of modules per row and column.
+     *
+     * @return the number of modules
+     */
+    int getSize() {
+        return size;
+    }
+
+    /**
+     * Adds the rectangles to the current path of the graphics context.
+     * <p>
+     * One module is 1 pt wide and high.
+     * </p>
+     *
+     * @param graphics graphics context
+     * @throws IOException exception thrown in case of error in graphics context
+     */
+    void addRectangles(Canvas graphics) throws IOException {
+        final double unit = 25.4 / 72;
+        for (int i = 0; i < rectangles.length; i += 4) {
+            int x = rectangles[i];
+            int y = rectangles[i + 1];
+            int w = rectangles[i + 2];
+            int h = rectangles[i + 3];
+            graphics.addRectangle(x * unit, (size - y - h) * unit, w * unit, h * unit);
+        }
+    }
+
+    // Simple algorithms to reduce the number of rectangles for drawing the QR code
+    // and reduce SVG size.
+    // The modules are stored as bits, one row after the other, with each row
+    // padded to a multiple of 64 bits (stride is the number of longs per row).
+    private static void findLargestRectangle(long[] modules, int size, int stride, int x, int y,
+                                             int[] rectangles, int offset) {
+        int bestW = 1;
+        int bestH = 1;
+        int maxArea = 1;
+
+        int xLimit = size;
+        int iy = y;
+        while (iy < size && isSet(modules, iy * stride, x)) {
+            int w = runLength(modules, iy * stride, x, xLimit);
+            int area = w * (iy - y + 1);
+            if (area > maxArea) {
+                maxArea = area;
+                bestW = w;
+                bestH = iy - y + 1;
+            }
+            xLimit = x + w;
+            iy++;
+        }
+
+        rectangles[offset] = x;
+        rectangles[offset + 1] = y;
+        rectangles[offset + 2] = bestW;
+        rectangles[offset + 3] = bestH;
+        clearRectangle(modules, stride, x, y, bestW, bestH);
+    }
+
+    private static boolean isSet(long[] modules, int rowOffset, int x) {
+        return (modules[rowOffset + (x >>> 6)] >>> x & 1) != 0;
+    }
+
+    // Returns the number of consecutive set bits starting at x (but not beyond the limit)
+    private static int runLength(long[] modules, int rowOffset, int x, int limit) {
+        int i = rowOffset + (x >>> 6);
+        int bit = x & 63;
+        int length = Long.numberOfTrailingZeros(~(modules[i] >>> bit));
+        if (length == 64 - bit) {
+            // run continues in the next word(s)
+            int rowEnd = rowOffset + (limit + 63 >>> 6);
+            int n = 64;
+            while (n == 64 && ++i < rowEnd) {
+                n = Long.numberOfTrailingZeros(~modules[i]);
+                length += n;
+            }
+        }
+        return Math.min(length, limit - x);
+    }
+
+    private static void clearSwissCrossArea(long[] modules, int size, int stride) {
+        // The Swiss cross area is supposed to be 7 by 7 mm in the center of
+        // the QR code, which is 46 by 46 mm.
+        // We clear sufficient modules to make room for the cross.
+        int start = (int) Math.floor((46 - 6.8) / 2 * size / 46);
+        clearRectangle(modules, stride, start, start, size - 2 * start, size - 2 * start);
+    }
+
+    private static long[] copyModules(QrCode qrCode, int stride) {
+        int size = qrCode.size;
+        long[] modules = new long[size * stride];
+        for (int y = 0; y < size; y++) {
+            for (int i = 0; i < stride; i++) {
+                // assemble word from highest to lowest bit
+                long word = 0;
+                for (int x = Math.min(size, (i + 1) << 6) - 1; x >= i << 6; x--)
+                    word = word << 1 | (qrCode.getModule(x, y) ? 1 : 0);
+                modules[y * stride + i] = word;
+            }
+        }
+        return modules;
+    }
+
+    private static void clearRectangle(long[] modules, int stride, int x, int y, int width, int height) {
+        int end = x + width;
+        int firstWord = x >>> 6;
+        int lastWord = (end - 1) >>> 6;
+        for (int i = firstWord; i <= lastWord; i++) {
+            long mask = -1L;
+            if (i == firstWord)
+                mask = -1L << x;
+            if (i == lastWord && (end & 63) != 0)
+                mask &= -1L >>> (64 - end);
+            int index = y * stride + i;
+            for (int iy = 0; iy < height; iy++, index += stride)
+                modules[index] &= ~mask;
+        }
+    }
+}
@@ -7,10 +7,17 @@
 package net.codecrete.qrbill.generator;
 
 import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
 import java.text.DecimalFormat;
 import java.text.DecimalFormatSymbols;
 import java.text.ParsePosition;
-import java.util.ArrayList;
 import java.util.Locale;
 
 
@@ -19,7 +26,7 @@ import java.util.Locale;
  */
 public class QRCodeText {
 
-    private Bill bill;
+    private final Bill bill;
     private StringBuilder textBuilder;
 
     private QRCodeText(Bill bill) {
@@ -35,11 +42,79 @@ public class QRCodeText {
      */
     public static String create(Bill bill) {
         QRCodeText qrCodeText = new QRCodeText(bill);
-        return qrCodeText.createText();
+        return qrCodeText.createText().toString();
     }
 
-    private String createText() {
-        textBuilder = new StringBuilder();
+    /**
+     * Gets the text embedded in the QR code encoded in UTF-8.
+     * <p>
+     * This is the payload of the QR code.
+     * </p>
+     *
+     * @param bill bill data
+     * @return QR code text (UTF-8 encoded)
+     */
+    public static byte[] createUTF8(Bill bill) {
+        return create(bill).getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Writes the text embedded in the QR code encoded in UTF-8 to the specified array.
+     * <p>
+     * The text is encoded directly from the text builder into the array.
+     * If the array is too small, the content of the array beyond the offset is unspecified.
+     * </p>
+     *
+     * @param bill   bill data
+     * @param buffer array to write to
+     * @param offset offset within the array
+     * @return number of bytes written
+     * @throws IndexOutOfBoundsException if the array is too small
+     */
+    public static int createUTF8(Bill bill, byte[] buffer, int offset) {
+        if (offset < 0 || offset > buffer.length)
+            throw new IndexOutOfBoundsException("Invalid offset");
+        try {
+            return createUTF8(bill, ByteBuffer.wrap(buffer, offset, buffer.length - offset));
+        } catch (BufferOverflowException e) {
+            throw new IndexOutOfBoundsException("Buffer too small for QR code text");
+        }
+    }
+
+    /**
+     * Writes the text embedded in the QR code encoded in UTF-8 to the specified buffer.
+     * <p>
+     * The text is encoded directly from the text builder into the buffer, starting at
+     * the buffer's current position. The position is advanced by the number of bytes
+     * written. If the buffer has insufficient space, the position is not changed and
+     * the content of the buffer beyond the position is unspecified.
+     * </p>
+     *
+     * @param bill   bill data
+     * @param buffer buffer to write to
+     * @return number of bytes written
+     * @throws BufferOverflowException if the buffer has insufficient space
+     */
+    public static int createUTF8(Bill bill, ByteBuffer buffer) {
+        StringBuilder text = new QRCodeText(bill).createText();
+
+        // same replacement behavior as String.getBytes()
+        CharsetEncoder encoder = StandardCharsets.UTF_8.newEncoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        int start = buffer.position();
+        CoderResult result = encoder.encode(CharBuffer.wrap(text), buffer, true);
+        if (result.isUnderflow())
+            result = encoder.flush(buffer);
+        if (result.isOverflow()) {
+            buffer.position(start);
+            throw new BufferOverflowException();
+        }
+        return buffer.position() - start;
+    }
+
+    private StringBuilder createText() {
+        textBuilder = new StringBuilder(estimateLength());
 
         // Header
         textBuilder.append("SPC\n"); // QRType
@@ -52,7 +127,9 @@ public class QRCodeText {
         textBuilder.append("\n\n\n\n\n\n\n"); // UltmtCdtr
 
         // CcyAmt
-        appendDataField(bill.getAmount() == null ? "" : formatAmountForCode(bill.getAmount())); // Amt
+        textBuilder.append('\n');
+        if (bill.getAmount() != null)
+            appendAmount(textBuilder, bill.getAmount()); // Amt
         appendDataField(bill.getCurrency()); // Ccy
 
         // UltmtDbtr
@@ -81,7 +158,39 @@ public class QRCodeText {
                 appendDataField(bill.getAlternativeSchemes()[1].getInstruction()); // AltPmt
         }
 
-        return textBuilder.toString();
+        return textBuilder;
+    }
+
+    /**
+     * Estimates the text length from the field lengths so that the text
+     * builder does not need to grow.
+     *
+     * @return estimated length (in characters)
+     */
+    private int estimateLength() {
+        // line breaks, header, reference type, trailer and amount
+        int length = 64;
+        length += lengthOf(bill.getAccount()) + lengthOf(bill.getCurrency());
+        length += lengthOf(bill.getCreditor()) + lengthOf(bill.getDebtor());
+        length += lengthOf(bill.getReference()) + lengthOf(bill.getUnstructuredMessage());
+        length += lengthOf(bill.getBillInformation());
+        if (bill.getAlternativeSchemes() != null) {
+            for (AlternativeScheme scheme : bill.getAlternativeSchemes())
+                length += lengthOf(scheme.getInstruction()) + 1;
+        }
+        return length;
+    }
+
+    private static int lengthOf(Address address) {
+        if (address == null)
+            return 0;
+        return 1 + lengthOf(address.getName()) + lengthOf(address.getStreet()) + lengthOf(address.getHouseNo())
+                + lengthOf(address.getAddressLine1()) + lengthOf(address.getAddressLine2())
+                + lengthOf(address.getPostalCode()) + lengthOf(address.getTown()) + lengthOf(address.getCountryCode());
+    }
+
+    private static int lengthOf(String value) {
+        return value != null ? value.length() : 0;
     }
 
     private void appendPerson(Address address) {
@@ -101,10 +210,39 @@ public class QRCodeText {
     }
 
     private void appendDataField(String value) {
-        if (value == null)
-            value = "";
+        textBuilder.append('\n');
+        if (value != null)
+            textBuilder.append(value);
+    }
 
-        textBuilder.append('\n').append(value);
+    /**
+     * Appends the amount with two decimals.
+     * <p>
+     * Amounts with a scale of 2 (the case for all validated bills) are formatted
+     * directly from the unscaled value. Other amounts are rounded and formatted
+     * by the decimal format.
+     * </p>
+     *
+     * @param sb     string builder to append to
+     * @param amount the amount
+     */
+    private static void appendAmount(StringBuilder sb, BigDecimal amount) {
+        if (amount.scale() == 2) {
+            BigInteger unscaled = amount.unscaledValue();
+            if (unscaled.bitLength() < 63) {
+                long value = unscaled.longValue();
+                if (value < 0) {
+                    sb.append('-');
+                    value = -value;
+                }
+                sb.append(value / 100).append('.');
+                int cents = (int) (value % 100);
+                sb.append((char) ('0' + cents / 10)).append((char) ('0' + cents % 10));
+                return;
+            }
+        }
+
+        sb.append(formatAmountForCode(amount));
     }
 
     private static final DecimalFormat amountFieldFormat;
@@ -118,7 +256,53 @@ public class QRCodeText {
     }
 
     private static String formatAmountForCode(BigDecimal amount) {
-        return amountFieldFormat.format(amount);
+        // DecimalFormat is not thread-safe
+        synchronized (amountFieldFormat) {
+            return amountFieldFormat.format(amount);
+        }
+    }
+
+    /**
+     * Parses the amount field.
+     * <p>
+     * Plain decimal numbers (optional minus sign, digits and optional decimal point) are
+     * parsed directly. Other values are parsed with the same decimal format as before,
+     * which yields the same result for plain decimal numbers.
+     * </p>
+     *
+     * @param value the field value
+     * @return the amount, or {@code null} if the value is not a valid number
+     */
+    static BigDecimal parseAmount(String value) {
+        if (isPlainDecimalNumber(value))
+            return new BigDecimal(value);
+
+        ParsePosition position = new ParsePosition(0);
+        Number amount;
+        synchronized (amountFieldFormat) {
+            amount = amountFieldFormat.parse(value, position);
+        }
+        if (position.getIndex() != value.length() || !(amount instanceof BigDecimal))
+            return null;
+        return (BigDecimal) amount;
+    }
+
+    private static boolean isPlainDecimalNumber(String value) {
+        int len = value.length();
+        int pos = len > 0 && value.charAt(0) == '-' ? 1 : 0;
+        boolean hasDigits = false;
+        boolean hasDecimalPoint = false;
+        for (; pos < len; pos++) {
+            char ch = value.charAt(pos);
+            if (ch >= '0' && ch <= '9') {
+                hasDigits = true;
+            } else if (ch == '.' && !hasDecimalPoint) {
+                hasDecimalPoint = true;
+            } else {
+                return false;
+            }
+        }
+        return hasDigits;
     }
 
     /**
@@ -131,131 +315,16 @@ public class QRCodeText {
      * The returned data is only minimally validated. The format and the header are
      * checked. Amount and date must be parsable.
      * </p>
+     * <p>
+     * To access individual fields without creating the entire bill data, use
+     * {@link QRCodeTextView}.
+     * </p>
      *
      * @param text the text to decode
      * @return the bill data
      * @throws QRBillValidationError if a validation error occurs
      */
     public static Bill decode(String text) {
-        String[] lines = splitLines(text);
-        if (lines.length < 31 || lines.length > 34) {
-            // A line feed at the end is illegal (cf 4.2.3) but found in practice. Don't be too strict.
-            if (!(lines.length == 35 && lines[34].isEmpty()))
-                throwSingleValidationError(ValidationConstants.FIELD_QR_TYPE, ValidationConstants.KEY_VALID_DATA_STRUCTURE);
-        }
-        if (!"SPC".equals(lines[0]))
-            throwSingleValidationError(ValidationConstants.FIELD_QR_TYPE, ValidationConstants.KEY_VALID_DATA_STRUCTURE);
-        if (!"0200".equals(lines[1]))
-            throwSingleValidationError(ValidationConstants.FIELD_VERSION, ValidationConstants.KEY_SUPPORTED_VERSION);
-        if (!"1".equals(lines[2]))
-            throwSingleValidationError(ValidationConstants.FIELD_CODING_TYPE, ValidationConstants.KEY_SUPPORTED_CODING_TYPE);
-
-        Bill bill = new Bill();
-        bill.setVersion(Bill.Version.V2_0);
-
-        bill.setAccount(lines[3]);
-
-        bill.setCreditor(decodeAddress(lines, 4, false));
-
-        if (lines[18].length() > 0) {
-            ParsePosition position = new ParsePosition(0);
-            BigDecimal amount = (BigDecimal) amountFieldFormat.parse(lines[18], position);
-            if (position.getIndex() == lines[18].length())
-                bill.setAmount(amount);
-            else
-                throwSingleValidationError(ValidationConstants.FIELD_AMOUNT, ValidationConstants.KEY_VALID_NUMBER);
-        } else {
-            bill.setAmount(null);
-        }
-
-        bill.setCurrency(lines[19]);
-
-        bill.setDebtor(decodeAddress(lines, 20, true));
-
-        // reference type is ignored (line 27)
-        bill.setReference(lines[28]);
-        bill.setUnstructuredMessage(lines[29]);
-        if (!"EPD".equals(lines[30]))
-            throwSingleValidationError(ValidationConstants.FIELD_TRAILER, ValidationConstants.KEY_VALID_DATA_STRUCTURE);
-
-        bill.setBillInformation(lines.length > 31 ? lines[31] : "");
-
-        AlternativeScheme[] alternativeSchemes = null;
-        int numSchemes = lines.length - 32;
-        // skip empty schemes at end (due to invalid line feed at end)
-        if (numSchemes > 0 && lines[32 + numSchemes - 1].isEmpty())
-            numSchemes--;
-        if (numSchemes > 0) {
-            alternativeSchemes = new AlternativeScheme[numSchemes];
-            for (int i = 0; i < numSchemes; i++) {
-                AlternativeScheme scheme = new AlternativeScheme();
-                scheme.setInstruction(lines[32 + i]);
-                alternativeSchemes[i] = scheme;
-            }
-        }
-        bill.setAlternativeSchemes(alternativeSchemes);
-
-        return bill;
-    }
-
-    /**
-     * Process seven lines and extract and address
-     *
-     * @param lines      line array
-     * @param startLine  index of first line to process
-     * @param isOptional indicates if address is optional
-     * @return decoded address or {@code null} if address is optional and empty
-     */
-    private static Address decodeAddress(String[] lines, int startLine, boolean isOptional) {
-
-        boolean isEmpty = lines[startLine].length() == 0 && lines[startLine + 1].length() == 0
-                && lines[startLine + 2].length() == 0 && lines[startLine + 3].length() == 0
-                && lines[startLine + 4].length() == 0 && lines[startLine + 5].length() == 0
-                && lines[startLine + 6].length() == 0;
-
-        if (isEmpty && isOptional)
-            return null;
-
-        Address address = new Address();
-        boolean isStructuredAddress = "S".equals(lines[startLine]);
-        address.setName(lines[startLine + 1]);
-        if (isStructuredAddress) {
-            address.setStreet(lines[startLine + 2]);
-            address.setHouseNo(lines[startLine + 3]);
-        } else {
-            address.setAddressLine1(lines[startLine + 2]);
-            address.setAddressLine2(lines[startLine + 3]);
-        }
-        if (lines[startLine + 4].length() > 0)
-            address.setPostalCode(lines[startLine + 4]);
-        if (lines[startLine + 5].length() > 0)
-            address.setTown(lines[startLine + 5]);
-        address.setCountryCode(lines[startLine + 6]);
-        return address;
-    }
-
-    private static String[] splitLines(String text) {
-        ArrayList<String> lines = new ArrayList<>(32);
-        int lastPos = 0;
-        while (true) {
-            int pos = text.indexOf('\n', lastPos);
-            if (pos < 0)
-                break;
-            int pos2 = pos;
-            if (pos2 > lastPos && text.charAt(pos2 - 1) == '\r')
-                pos2--;
-            lines.add(text.substring(lastPos, pos2));
-            lastPos = pos + 1;
-        }
-
-        // add last line
-        lines.add(text.substring(lastPos, text.length()));
-        return lines.toArray(new String[0]);
-    }
-
-    private static void throwSingleValidationError(String field, String messageKey) {
-        ValidationResult result = new ValidationResult();
-        result.addMessage(ValidationMessage.Type.ERROR, field, messageKey);
-        throw new QRBillValidationError(result);
+        return QRCodeTextView.parse(text).toBill();
     }
 }
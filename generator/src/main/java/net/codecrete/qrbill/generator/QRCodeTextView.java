@@ -0,0 +1,441 @@
+//
+// Swiss QR Bill Generator
+// Copyright (c) 2020 Manuel Bleichenbacher
+// Licensed under MIT License
+// https://opensource.org/licenses/MIT
+//
+package net.codecrete.qrbill.generator;
+
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Read-only view of the fields of the text embedded in the QR code.
+ * <p>
+ * When the text is parsed, only the line breaks are located and the data
+ * structure (number of lines, header and trailer) is checked. The field values
+ * are extracted when they are first accessed. So fields that are never read
+ * are never copied.
+ * </p>
+ * <p>
+ * The text can be provided as a {@link CharSequence} or as UTF-8 encoded bytes
+ * in a {@link ByteBuffer}. The view refers to the original text. It must not be
+ * modified while the view is in use.
+ * </p>
+ * <p>
+ * Instances are not thread-safe.
+ * </p>
+ */
+public class QRCodeTextView {
+
+    /**
+     * Index of the IBAN field
+     */
+    public static final int FIELD_ACCOUNT = 3;
+    /**
+     * Index of the first field of the creditor address (address type)
+     */
+    public static final int FIELD_CREDITOR = 4;
+    /**
+     * Index of the amount field
+     */
+    public static final int FIELD_AMOUNT = 18;
+    /**
+     * Index of the currency field
+     */
+    public static final int FIELD_CURRENCY = 19;
+    /**
+     * Index of the first field of the debtor address (address type)
+     */
+    public static final int FIELD_DEBTOR = 20;
+    /**
+     * Index of the reference type field
+     */
+    public static final int FIELD_REFERENCE_TYPE = 27;
+    /**
+     * Index of the reference field
+     */
+    public static final int FIELD_REFERENCE = 28;
+    /**
+     * Index of the unstructured message field
+     */
+    public static final int FIELD_UNSTRUCTURED_MESSAGE = 29;
+    /**
+     * Index of the bill information field
+     */
+    public static final int FIELD_BILL_INFORMATION = 31;
+    /**
+     * Index of the first alternative scheme field
+     */
+    public static final int FIELD_ALTERNATIVE_SCHEMES = 32;
+
+    private static final int MAX_FIELDS = 35;
+    private static final int TRAILER = 30;
+
+    private final CharSequence text;
+    private final ByteBuffer bytes;
+    // start and end offset of each field (excluding line breaks)
+    private final int[] offsets = new int[2 * MAX_FIELDS];
+    private final int fieldCount;
+    private final String[] fields = new String[MAX_FIELDS];
+
+    /**
+     * Parses the specified QR code text.
+     *
+     * @param text the text to decode
+     * @return the view of the text fields
+     * @throws QRBillValidationError if the text does not have the data structure of a QR bill
+     */
+    public static QRCodeTextView parse(CharSequence text) {
+        return new QRCodeTextView(text, null);
+    }
+
+    /**
+     * Parses the specified QR code text encoded in UTF-8.
+     * <p>
+     * The text consists of the bytes between the buffer's position and its limit.
+     * The position of the buffer is not changed.
+     * </p>
+     *
+     * @param utf8Text the UTF-8 encoded text to decode
+     * @return the view of the text fields
+     * @throws QRBillValidationError if the text does not have the data structure of a QR bill
+     */
+    public static QRCodeTextView parse(ByteBuffer utf8Text) {
+        return new QRCodeTextView(null, utf8Text);
+    }
+
+    private QRCodeTextView(CharSequence text, ByteBuffer bytes) {
+        this.text = text;
+        this.bytes = bytes;
+        fieldCount = splitFields();
+
+        if (fieldCount < 31 || fieldCount > 34) {
+            // A line feed at the end is illegal (cf 4.2.3) but found in practice. Don't be too strict.
+            if (!(fieldCount == 35 && isFieldEmpty(34)))
+                throwSingleValidationError(ValidationConstants.FIELD_QR_TYPE, ValidationConstants.KEY_VALID_DATA_STRUCTURE);
+        }
+        if (!fieldEquals(0, "SPC"))
+            throwSingleValidationError(ValidationConstants.FIELD_QR_TYPE, ValidationConstants.KEY_VALID_DATA_STRUCTURE);
+        if (!fieldEquals(1, "0200"))
+            throwSingleValidationError(ValidationConstants.FIELD_VERSION, ValidationConstants.KEY_SUPPORTED_VERSION);
+        if (!fieldEquals(2, "1"))
+            throwSingleValidationError(ValidationConstants.FIELD_CODING_TYPE, ValidationConstants.KEY_SUPPORTED_CODING_TYPE);
+        if (!fieldEquals(TRAILER, "EPD"))
+            throwSingleValidationError(ValidationConstants.FIELD_TRAILER, ValidationConstants.KEY_VALID_DATA_STRUCTURE);
+    }
+
+    /**
+     * Gets the number of fields (lines) of the text.
+     *
+     * @return the number of fields
+     */
+    public int getFieldCount() {
+        return fieldCount;
+    }
+
+    /**
+     * Gets the value of the field with the specified index.
+     * <p>
+     * Fields beyond the number of fields are empty.
+     * </p>
+     *
+     * @param index the field index (0 to 34)
+     * @return the field value (empty string for empty fields)
+     */
+    public String getField(int index) {
+        if (index >= fieldCount)
+            return "";
+
+        String value = fields[index];
+        if (value == null) {
+            int start = offsets[2 * index];
+            int end = offsets[2 * index + 1];
+            if (start == end)
+                value = "";
+            else if (text != null)
+                value = text.subSequence(start, end).toString();
+            else
+                value = decodeUTF8(start, end);
+            fields[index] = value;
+        }
+        return value;
+    }
+
+    /**
+     * Tests if the field with the specified index is empty.
+     *
+     * @param index the field index (0 to 34)
+     * @return {@code true} if the field is empty, {@code false} otherwise
+     */
+    public boolean isFieldEmpty(int index) {
+        return index >= fieldCount || offsets[2 * index] == offsets[2 * index + 1];
+    }
+
+    /**
+     * Gets the account number (IBAN).
+     *
+     * @return the account number
+     */
+    public String getAccount() {
+        return getField(FIELD_ACCOUNT);
+    }
+
+    /**
+     * Gets the creditor address.
+     *
+     * @return the creditor address
+     */
+    public Address getCreditor() {
+        return getAddress(FIELD_CREDITOR, false);
+    }
+
+    /**
+     * Gets the amount.
+     *
+     * @return the amount, or {@code null} if the amount field is empty
+     * @throws QRBillValidationError if the amount is not a valid number
+     */
+    public BigDecimal getAmount() {
+        if (isFieldEmpty(FIELD_AMOUNT))
+            return null;
+
+        BigDecimal amount = QRCodeText.parseAmount(getField(FIELD_AMOUNT));
+        if (amount == null)
+            throwSingleValidationError(ValidationConstants.FIELD_AMOUNT, ValidationConstants.KEY_VALID_NUMBER);
+        return amount;
+    }
+
+    /**
+     * Gets the currency.
+     *
+     * @return the currency code
+     */
+    public String getCurrency() {
+        return getField(FIELD_CURRENCY);
+    }
+
+    /**
+     * Gets the debtor address.
+     *
+     * @return the debtor address, or {@code null} if all debtor fields are empty
+     */
+    public Address getDebtor() {
+        return getAddress(FIELD_DEBTOR, true);
+    }
+
+    /**
+     * Gets the reference type.
+     *
+     * @return the reference type ("QRR", "SCOR" or "NON")
+     */
+    public String getReferenceType() {
+        return getField(FIELD_REFERENCE_TYPE);
+    }
+
+    /**
+     * Gets the reference.
+     *
+     * @return the reference
+     */
+    public String getReference() {
+        return getField(FIELD_REFERENCE);
+    }
+
+    /**
+     * Gets the unstructured message.
+     *
+     * @return the unstructured message
+     */
+    public String getUnstructuredMessage() {
+        return getField(FIELD_UNSTRUCTURED_MESSAGE);
+    }
+
+    /**
+     * Gets the bill information.
+     *
+     * @return the bill information
+     */
+    public String getBillInformation() {
+        return getField(FIELD_BILL_INFORMATION);
+    }
+
+    /**
+     * Gets the alternative schemes.
+     * <p>
+     * The text only contains the instructions. The scheme names are empty.
+     * </p>
+     *
+     * @return the alternative schemes, or {@code null} if there are none
+     */
+    public AlternativeScheme[] getAlternativeSchemes() {
+        int numSchemes = fieldCount - FIELD_ALTERNATIVE_SCHEMES;
+        // skip empty schemes at end (due to invalid line feed at end)
+        if (numSchemes > 0 && isFieldEmpty(FIELD_ALTERNATIVE_SCHEMES + numSchemes - 1))
+            numSchemes--;
+        if (numSchemes <= 0)
+            return null;
+
+        AlternativeScheme[] alternativeSchemes = new AlternativeScheme[numSchemes];
+        for (int i = 0; i < numSchemes; i++) {
+            AlternativeScheme scheme = new AlternativeScheme();
+            scheme.setInstruction(getField(FIELD_ALTERNATIVE_SCHEMES + i));
+            alternativeSchemes[i] = scheme;
+        }
+        return alternativeSchemes;
+    }
+
+    /**
+     * Creates the bill data from all fields.
+     * <p>
+     * The returned data is only minimally validated. The format and the header are
+     * checked. The amount must be parsable.
+     * </p>
+     *
+     * @return the bill data
+     * @throws QRBillValidationError if the amount is not a valid number
+     */
+    public Bill toBill() {
+        Bill bill = new Bill();
+        bill.setVersion(Bill.Version.V2_0);
+        bill.setAccount(getAccount());
+        bill.setCreditor(getCreditor());
+        bill.setAmount(getAmount());
+        bill.setCurrency(getCurrency());
+        bill.setDebtor(getDebtor());
+        // reference type is ignored
+        bill.setReference(getReference());
+        bill.setUnstructuredMessage(getUnstructuredMessage());
+        bill.setBillInformation(getBillInformation());
+        bill.setAlternativeSchemes(getAlternativeSchemes());
+        return bill;
+    }
+
+    /**
+     * Extracts the address from seven fields.
+     *
+     * @param startField index of first field
+     * @param isOptional indicates if address is optional
+     * @return decoded address or {@code null} if address is optional and empty
+     */
+    private Address getAddress(int startField, boolean isOptional) {
+        if (isOptional && isAddressEmpty(startField))
+            return null;
+
+        Address address = new Address();
+        boolean isStructuredAddress = fieldEquals(startField, "S");
+        address.setName(getField(startField + 1));
+        if (isStructuredAddress) {
+            address.setStreet(getField(startField + 2));
+            address.setHouseNo(getField(startField + 3));
+        } else {
+            address.setAddressLine1(getField(startField + 2));
+            address.setAddressLine2(getField(startField + 3));
+        }
+        if (!isFieldEmpty(startField + 4))
+            address.setPostalCode(getField(startField + 4));
+        if (!isFieldEmpty(startField + 5))
+            address.setTown(getField(startField + 5));
+        address.setCountryCode(getField(startField + 6));
+        return address;
+    }
+
+    private boolean isAddressEmpty(int startField) {
+        for (int i = 0; i < 7; i++) {
+            if (!isFieldEmpty(startField + i))
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * Locates the fields, i.e. the line breaks.
+     * <p>
+     * Lines are separated by LF or CR LF. Both are ASCII characters that cannot
+     * occur within a multi-byte UTF-8 sequence. So the bytes can be scanned directly.
+     * </p>
+     *
+     * @return number of fields (limited to one more than the maximum)
+     */
+    private int splitFields() {
+        int start = text != null ? 0 : bytes.position();
+        int end = text != null ? text.length() : bytes.limit();
+        int count = 0;
+        int lineStart = start;
+        while (true) {
+            int pos = indexOfLineFeed(lineStart, end);
+            if (pos < 0)
+                break;
+            if (count == MAX_FIELDS)
+                return count + 1;
+            int lineEnd = pos > lineStart && charAt(pos - 1) == '\r' ? pos - 1 : pos;
+            offsets[2 * count] = lineStart;
+            offsets[2 * count + 1] = lineEnd;
+            count++;
+            lineStart = pos + 1;
+        }
+
+        // last line
+        if (count == MAX_FIELDS)
+            return count + 1;
+        offsets[2 * count] = lineStart;
+        offsets[2 * count + 1] = end;
+        return count + 1;
+    }
+
+    private int indexOfLineFeed(int start, int end) {
+        if (text instanceof String)
+            return ((String) text).indexOf('\n', start);
+
+        if (text == null && bytes.hasArray()) {
+            byte[] array = bytes.array();
+            int offset = bytes.arrayOffset();
+            for (int pos = start; pos < end; pos++) {
+                if (array[offset + pos] == '\n')
+                    return pos;
+            }
+            return -1;
+        }
+
+        for (int pos = start; pos < end; pos++) {
+            if (charAt(pos) == '\n')
+                return pos;
+        }
+        return -1;
+    }
+
+    private int charAt(int pos) {
+        return text != null ? text.charAt(pos) : bytes.get(pos);
+    }
+
+    private boolean fieldEquals(int index, String value) {
+        if (index >= fieldCount)
+            return value.isEmpty();
+        int start = offsets[2 * index];
+        int len = value.length();
+        if (offsets[2 * index + 1] - start != len)
+            return false;
+        for (int i = 0; i < len; i++) {
+            if (charAt(start + i) != value.charAt(i))
+                return false;
+        }
+        return true;
+    }
+
+    private String decodeUTF8(int start, int end) {
+        if (bytes.hasArray())
+            return new String(bytes.array(), bytes.arrayOffset() + start, end - start, StandardCharsets.UTF_8);
+
+        byte[] data = new byte[end - start];
+        for (int i = 0; i < data.length; i++)
+            data[i] = bytes.get(start + i);
+        return new String(data, StandardCharsets.UTF_8);
+    }
+
+    private static void throwSingleValidationError(String field, String messageKey) {
+        ValidationResult result = new ValidationResult();
+        result.addMessage(ValidationMessage.Type.ERROR, field, messageKey);
+        throw new QRBillValidationError(result);
+    }
+}
@@ -0,0 +1,136 @@
+//
+// Swiss QR Bill Generator
+// Copyright (c) 2020 Manuel Bleichenbacher
+// Licensed under MIT License
+// https://opensource.org/licenses/MIT
+//
+package net.codecrete.qrbill.generator;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Arrangement of several payment slips on a single page.
+ * <p>
+ * A sheet layout consists of the page size and the positions of the slips
+ * on the page. Each position is the bottom left corner of a payment slip
+ * (receipt and payment part, 210 by 105 mm). Bills are placed on the slips
+ * in the order the slips have been added.
+ * </p>
+ *
+ * @see QRBill#generateSheets(java.util.Iterator, SheetLayout, java.io.OutputStream)
+ */
+public class SheetLayout {
+
+    /**
+     * Receives the pages of a sheet run as they have been completed.
+     */
+    @FunctionalInterface
+    public interface PageSink {
+
+        /**
+         * Accepts a completed page.
+         *
+         * @param pageIndex the index of the page (starting at 0)
+         * @param data      the page's image data
+         * @throws IOException thrown if the page cannot be processed
+         */
+        void accept(int pageIndex, byte[] data) throws IOException;
+    }
+
+    private final double pageWidth;
+    private final double pageHeight;
+    private final List<double[]> slips = new ArrayList<>();
+
+    /**
+     * Creates a new layout for pages of the specified size without any slips.
+     *
+     * @param pageWidth  the page width, in mm
+     * @param pageHeight the page height, in mm
+     */
+    public SheetLayout(double pageWidth, double pageHeight) {
+        if (pageWidth < QRBill.A4_PORTRAIT_WIDTH / 10 || pageHeight < QRBill.A4_PORTRAIT_HEIGHT / 10)
+            throw new IllegalArgumentException("Page size is too small");
+        this.pageWidth = pageWidth;
+        this.pageHeight = pageHeight;
+    }
+
+    /**
+     * Creates a layout for A4 portrait pages with two slips on top of each other,
+     * filling the lower half of the page first.
+     *
+     * @return the layout
+     */
+    public static SheetLayout a4TwoSlips() {
+        SheetLayout layout = new SheetLayout(QRBill.A4_PORTRAIT_WIDTH, QRBill.A4_PORTRAIT_HEIGHT);
+        layout.addSlip(0, 0);
+        layout.addSlip(0, QRBill.QR_BILL_HEIGHT);
+        return layout;
+    }
+
+    /**
+     * Adds a slip at the specified position.
+     * <p>
+     * The slip must fit onto the page.
+     * </p>
+     *
+     * @param x the x position of the bottom left corner of the slip, in mm
+     * @param y the y position of the bottom left corner of the slip, in mm
+     * @return this instance
+     */
+    public SheetLayout addSlip(double x, double y) {
+        if (x < 0 || y < 0 || x + QRBill.QR_BILL_WIDTH > pageWidth + 0.001
+                || y + QRBill.QR_BILL_HEIGHT > pageHeight + 0.001)
+            throw new IllegalArgumentException("Slip does not fit onto the page");
+        slips.add(new double[] { x, y });
+        return this;
+    }
+
+    /**
+     * Gets the page width.
+     *
+     * @return the page width, in mm
+     */
+    public double getPageWidth() {
+        return pageWidth;
+    }
+
+    /**
+     * Gets the page height.
+     *
+     * @return the page height, in mm
+     */
+    public double getPageHeight() {
+        return pageHeight;
+    }
+
+    /**
+     * Gets the number of slips per page.
+     *
+     * @return the number of slips
+     */
+    public int getSlipCount() {
+        return slips.size();
+    }
+
+    /**
+     * Gets the x position of the specified slip.
+     *
+     * @param index the slip index (starting at 0)
+     * @return the x position of the bottom left corner, in mm
+     */
+    public double getSlipX(int index) {
+        return slips.get(index)[0];
+    }
+
+    /**
+     * Gets the y position of the specified slip.
+     *
+     * @param index the slip index (starting at 0)
+     * @return the y position of the bottom left corner, in mm
+     */
+    public double getSlipY(int index) {
+        return slips.get(index)[1];
+    }
+}
@@ -33,10 +33,175 @@ class Validator {
      * @return validation result
      */
     static ValidationResult validate(Bill bill) {
+        if (isValidAndClean(bill)) {
+            ValidationResult result = new ValidationResult();
+            result.setCleanedBill(copyOf(bill));
+            return result;
+        }
+
         Validator validator = new Validator(bill);
         return validator.validateBill();
     }
 
+    /**
+     * Tests if the QR bill data is valid and already clean.
+     * <p>
+     * The bill data is valid and clean if the validation would neither produce
+     * any messages nor modify any of the fields. In this case, the bill data can
+     * be used as is. The check is done in a single pass over the fields without
+     * allocating any memory.
+     * </p>
+     *
+     * @param bill bill data to test
+     * @return {@code true} if the bill data is valid and clean, {@code false} otherwise
+     */
+    static boolean isValidAndClean(Bill bill) {
+        String account = bill.getAccount();
+        if (account == null || account.length() != 21 || !isUpperCaseAlphaNumeric(account)
+                || !(account.startsWith("CH") || account.startsWith("LI")) || !Payments.isValidIBAN(account))
+            return false;
+
+        String currency = bill.getCurrency();
+        if (!"CHF".equals(currency) && !"EUR".equals(currency))
+            return false;
+
+        BigDecimal amount = bill.getAmount();
+        if (amount != null && (amount.scale() != 2 || amount.signum() < 0 || AMOUNT_MAX.compareTo(amount) < 0))
+            return false;
+
+        if (!isCleanAddress(bill.getCreditor()))
+            return false;
+        if (bill.getDebtor() != null && !isCleanAddress(bill.getDebtor()))
+            return false;
+
+        return isCleanReference(account, bill.getReference())
+                && isCleanAdditionalInformation(bill.getBillInformation(), bill.getUnstructuredMessage())
+                && isCleanAlternativeSchemes(bill.getAlternativeSchemes());
+    }
+
+    private static boolean isCleanAddress(Address address) {
+        if (address == null || !isCleanMandatoryValue(address.getName(), 70))
+            return false;
+
+        if (address.getType() == Address.Type.STRUCTURED) {
+            if (!isCleanOptionalValue(address.getStreet(), 70)
+                    || !isCleanOptionalValue(address.getHouseNo(), 16)
+                    || !isCleanMandatoryValue(address.getPostalCode(), 16)
+                    || !isCleanMandatoryValue(address.getTown(), 35))
+                return false;
+        } else if (address.getType() == Address.Type.COMBINED_ELEMENTS) {
+            if (!isCleanOptionalValue(address.getAddressLine1(), 70)
+                    || !isCleanMandatoryValue(address.getAddressLine2(), 70))
+                return false;
+        } else {
+            return false;
+        }
+
+        String countryCode = address.getCountryCode();
+        return countryCode != null && countryCode.length() == 2 && isUpperCaseAlphaNumeric(countryCode);
+    }
+
+    private static boolean isCleanReference(String account, String reference) {
+        boolean isQRBillIBAN = account.charAt(4) == '3'
+                && (account.charAt(5) == '0' || account.charAt(5) == '1');
+        if (isQRBillIBAN)
+            return reference != null && reference.length() == 27 && Payments.isValidQRReference(reference);
+
+        return reference == null
+                || (Payments.isAlphaNumeric(reference) && Payments.isValidISO11649Reference(reference));
+    }
+
+    private static boolean isCleanAdditionalInformation(String billInformation, String unstructuredMessage) {
+        if (billInformation != null && (!isCleanMandatoryValue(billInformation, 140)
+                || billInformation.length() < 4 || !billInformation.startsWith("//")))
+            return false;
+        if (!isCleanOptionalValue(unstructuredMessage, 140))
+            return false;
+        return billInformation == null || unstructuredMessage == null
+                || billInformation.length() + unstructuredMessage.length() <= 140;
+    }
+
+    private static boolean isCleanAlternativeSchemes(AlternativeScheme[] schemes) {
+        if (schemes == null)
+            return true;
+        if (schemes.length == 0 || schemes.length > 2)
+            return false;
+
+        for (AlternativeScheme scheme : schemes) {
+            String name = scheme.getName();
+            String instruction = scheme.getInstruction();
+            if ((name == null && instruction == null) || !isTrimmed(name) || !isTrimmed(instruction)
+                    || (instruction != null && instruction.length() > 100))
+                return false;
+        }
+        return true;
+    }
+
+    private static boolean isCleanMandatoryValue(String value, int maxLength) {
+        return value != null && value.length() <= maxLength && Payments.isCleanValue(value);
+    }
+
+    private static boolean isCleanOptionalValue(String value, int maxLength) {
+        return value == null || isCleanMandatoryValue(value, maxLength);
+    }
+
+    private static boolean isTrimmed(String value) {
+        if (value == null)
+            return true;
+        int len = value.length();
+        return len > 0 && value.charAt(0) > ' ' && value.charAt(len - 1) > ' ';
+    }
+
+    private static boolean isUpperCaseAlphaNumeric(String value) {
+        int len = value.length();
+        for (int i = 0; i < len; i++) {
+            char ch = value.charAt(i);
+            if ((ch < '0' || ch > '9') && (ch < 'A' || ch > 'Z'))
+                return false;
+        }
+        return true;
+    }
+
+    private static Bill copyOf(Bill bill) {
+        Bill copy = new Bill();
+        copy.setFormat(bill.getFormat() != null ? new BillFormat(bill.getFormat()) : null);
+        copy.setVersion(bill.getVersion());
+        copy.setAccount(bill.getAccount());
+        copy.setCreditor(copyOf(bill.getCreditor()));
+        copy.setCurrency(bill.getCurrency());
+        copy.setAmount(bill.getAmount());
+        copy.setDebtor(bill.getDebtor() != null ? copyOf(bill.getDebtor()) : null);
+        copy.setReference(bill.getReference());
+        copy.setUnstructuredMessage(bill.getUnstructuredMessage());
+        copy.setBillInformation(bill.getBillInformation());
+
+        AlternativeScheme[] schemes = bill.getAlternativeSchemes();
+        if (schemes != null) {
+            AlternativeScheme[] schemesCopy = new AlternativeScheme[schemes.length];
+            for (int i = 0; i < schemes.length; i++)
+                schemesCopy[i] = new AlternativeScheme(schemes[i].getName(), schemes[i].getInstruction());
+            copy.setAlternativeSchemes(schemesCopy);
+        }
+        return copy;
+    }
+
+    private static Address copyOf(Address address) {
+        Address copy = new Address();
+        copy.setName(address.getName());
+        if (address.getType() == Address.Type.STRUCTURED) {
+            copy.setStreet(address.getStreet());
+            copy.setHouseNo(address.getHouseNo());
+            copy.setPostalCode(address.getPostalCode());
+            copy.setTown(address.getTown());
+        } else {
+            if (address.getAddressLine1() != null)
+                copy.setAddressLine1(address.getAddressLine1());
+            copy.setAddressLine2(address.getAddressLine2());
+        }
+        copy.setCountryCode(address.getCountryCode());
+        return copy;
+    }
+
     private Validator(Bill bill) {
         billIn = bill;
         billOut = new Bill();
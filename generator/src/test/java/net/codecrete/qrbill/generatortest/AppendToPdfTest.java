@@ -10,14 +10,24 @@ package net.codecrete.qrbill.generatortest;
 import net.codecrete.qrbill.canvas.PDFCanvas;
 import net.codecrete.qrbill.generator.Bill;
 import net.codecrete.qrbill.generator.QRBill;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.text.PDFTextStripper;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 
 import java.io.IOException;
 import java.net.URISyntaxException;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 
 /**
@@ -62,4 +72,61 @@ class AppendToPdfTest {
             FileComparison.assertFileContentsEqual(imageData, "invoice-03.pdf");
         }
     }
-}
\ No newline at end of file
+
+    @Test
+    void incrementalUpdateKeepsOriginal() throws IOException {
+        Bill bill = SampleData.getExample7();
+        byte[] original = Files.readAllBytes(invoicePath);
+        byte[] pdf;
+        try (PDFCanvas canvas = new PDFCanvas(invoicePath, PDFCanvas.LAST_PAGE, 1024 * 1024)) {
+            canvas.setIncrementalSave(true);
+            QRBill.draw(bill, canvas);
+            pdf = canvas.toByteArray();
+        }
+
+        assertArrayEquals(original, Arrays.copyOf(pdf, original.length));
+        try (PDDocument document = PDDocument.load(pdf)) {
+            assertEquals(2, document.getNumberOfPages());
+            assertTrue(getPageText(document, 2).contains("Zahlteil"));
+        }
+    }
+
+    @Test
+    void appendToSource(@TempDir Path tempDir) throws IOException {
+        Path path = tempDir.resolve("invoice.pdf");
+        Files.copy(invoicePath, path);
+        long originalSize = Files.size(path);
+
+        Bill bill = SampleData.getExample7();
+        try (PDFCanvas canvas = new PDFCanvas(path, PDFCanvas.NEW_PAGE_AT_END, 1024 * 1024)) {
+            canvas.setIncrementalSave(true);
+            QRBill.draw(bill, canvas);
+            canvas.saveAs(path);
+        }
+
+        assertTrue(Files.size(path) - originalSize < originalSize);
+        byte[] original = Files.readAllBytes(invoicePath);
+        byte[] updated = Files.readAllBytes(path);
+        assertArrayEquals(original, Arrays.copyOf(updated, original.length));
+        try (PDDocument document = PDDocument.load(path.toFile())) {
+            assertEquals(3, document.getNumberOfPages());
+            assertTrue(getPageText(document, 1).contains("Omnia Trading AG"));
+            assertTrue(getPageText(document, 3).contains("Zahlteil"));
+        }
+    }
+
+    @Test
+    void incrementalSaveRequiresExistingDocument() throws IOException {
+        try (PDFCanvas canvas = new PDFCanvas(QRBill.A4_PORTRAIT_WIDTH, QRBill.A4_PORTRAIT_HEIGHT)) {
+            assertThrows(IllegalStateException.class, () -> canvas.setIncrementalSave(true));
+            assertThrows(IllegalStateException.class, canvas::appendToSource);
+        }
+    }
+
+    private static String getPageText(PDDocument document, int pageNo) throws IOException {
+        PDFTextStripper stripper = new PDFTextStripper();
+        stripper.setStartPage(pageNo);
+        stripper.setEndPage(pageNo);
+        return stripper.getText(document);
+    }
+}
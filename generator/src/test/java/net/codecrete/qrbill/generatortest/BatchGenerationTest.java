@@ -0,0 +1,225 @@
+//
+// Swiss QR Bill Generator
+// Copyright (c) 2020 Manuel Bleichenbacher
+// Licensed under MIT License
+// https://opensource.org/licenses/MIT
+//
+
+package net.codecrete.qrbill.generatortest;
+
+import net.codecrete.qrbill.canvas.PDFCanvas;
+import net.codecrete.qrbill.generator.Bill;
+import net.codecrete.qrbill.generator.OutputSize;
+import net.codecrete.qrbill.generator.QRBill;
+import net.codecrete.qrbill.generator.QRBillGenerationException;
+import net.codecrete.qrbill.generator.QRBillValidationError;
+import net.codecrete.qrbill.generator.SeparatorType;
+import org.apache.pdfbox.io.RandomAccessBuffer;
+import org.apache.pdfbox.pdfparser.PDFParser;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.common.PDRectangle;
+import org.apache.pdfbox.rendering.ImageType;
+import org.apache.pdfbox.rendering.PDFRenderer;
+import org.apache.pdfbox.text.PDFTextStripper;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Unit tests for generating several QR bills into a single PDF document
+ */
+@DisplayName("Batch generation")
+class BatchGenerationTest {
+
+    @Test
+    void generateMultiPageDocument() throws IOException {
+        List<Bill> bills = Arrays.asList(
+                SampleData.getExample1(),
+                SampleData.getExample2(),
+                SampleData.getExample3(),
+                SampleData.getExample4()
+        );
+        ByteArrayOutputStream os = new ByteArrayOutputStream();
+        QRBill.generateBatch(bills, os);
+
+        try (PDDocument document = PDDocument.load(os.toByteArray())) {
+            assertEquals(4, document.getNumberOfPages());
+        }
+    }
+
+    @Test
+    void pageSizeFollowsOutputSize() throws IOException {
+        Bill bill1 = SampleData.getExample1();
+        bill1.getFormat().setOutputSize(OutputSize.A4_PORTRAIT_SHEET);
+        Bill bill2 = SampleData.getExample2();
+        bill2.getFormat().setOutputSize(OutputSize.QR_CODE_ONLY);
+        ByteArrayOutputStream os = new ByteArrayOutputStream();
+        QRBill.generateBatch(Arrays.asList(bill1, bill2), os);
+
+        try (PDDocument document = PDDocument.load(os.toByteArray())) {
+            PDRectangle a4 = document.getPage(0).getMediaBox();
+            assertEquals(QRBill.A4_PORTRAIT_HEIGHT, a4.getHeight() / 72 * 25.4, 0.01);
+            PDRectangle qrCode = document.getPage(1).getMediaBox();
+            assertEquals(QRBill.QR_CODE_HEIGHT, qrCode.getHeight() / 72 * 25.4, 0.01);
+        }
+    }
+
+    @Test
+    void generateLargeBatch() throws IOException {
+        List<Bill> bills = new ArrayList<>();
+        for (int i = 0; i < 100; i++)
+            bills.add(SampleData.getExample3());
+        ByteArrayOutputStream os = new ByteArrayOutputStream();
+        QRBill.generateBatch(bills, os);
+
+        try (PDDocument document = PDDocument.load(os.toByteArray())) {
+            assertEquals(100, document.getNumberOfPages());
+        }
+    }
+
+    @Test
+    void largeBatchHasValidStructure() throws IOException {
+        List<Bill> bills = new ArrayList<>();
+        for (int i = 0; i < 300; i++)
+            bills.add(SampleData.getExample3());
+        ByteArrayOutputStream os = new ByteArrayOutputStream();
+        QRBill.generateBatch(bills, os);
+
+        // strict parsing fails if the cross-reference table is not correct
+        PDFParser parser = new PDFParser(new RandomAccessBuffer(os.toByteArray()));
+        parser.setLenient(false);
+        parser.parse();
+        try (PDDocument document = parser.getPDDocument()) {
+            assertEquals(300, document.getNumberOfPages());
+            assertTrue(getPageText(document, 300).contains("Robert Schneider AG"));
+        }
+    }
+
+    @Test
+    void pagesAreWrittenBeforeFinish() throws IOException {
+        ByteArrayOutputStream os = new ByteArrayOutputStream();
+        try (PDFCanvas canvas = new PDFCanvas(QRBill.A4_PORTRAIT_WIDTH, QRBill.A4_PORTRAIT_HEIGHT,
+                "Helvetica", os)) {
+            QRBill.draw(SampleData.getExample1(), canvas);
+            canvas.addPage(QRBill.A4_PORTRAIT_WIDTH, QRBill.A4_PORTRAIT_HEIGHT);
+            int size1 = os.size();
+            assertTrue(size1 > 0);
+            QRBill.draw(SampleData.getExample2(), canvas);
+            canvas.addPage(QRBill.A4_PORTRAIT_WIDTH, QRBill.A4_PORTRAIT_HEIGHT);
+            assertTrue(os.size() > size1);
+            QRBill.draw(SampleData.getExample3(), canvas);
+            canvas.finish();
+            assertThrows(IllegalStateException.class, canvas::toByteArray);
+        }
+
+        try (PDDocument document = PDDocument.load(os.toByteArray())) {
+            assertEquals(3, document.getNumberOfPages());
+            assertTrue(getPageText(document, 1).contains("Robert Schneider AG"));
+            assertTrue(getPageText(document, 3).contains("Section de paiement"));
+        }
+    }
+
+    @Test
+    void invalidBillThrowsValidationError() {
+        Bill bill = SampleData.getExample1();
+        bill.setAccount("CH0000000000000000000");
+        List<Bill> bills = Arrays.asList(SampleData.getExample2(), bill);
+        ByteArrayOutputStream os = new ByteArrayOutputStream();
+        assertThrows(QRBillValidationError.class, () -> QRBill.generateBatch(bills, os));
+    }
+
+    @Test
+    void emptyBatchThrowsException() {
+        ByteArrayOutputStream os = new ByteArrayOutputStream();
+        assertThrows(QRBillGenerationException.class, () -> QRBill.generateBatch(Collections.emptyList(), os));
+    }
+
+    @Test
+    void templatesRenderIdentically() throws IOException {
+        List<Bill> bills = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            bills.add(SampleData.getExample1());
+            bills.add(SampleData.getExample3());
+        }
+        bills.get(1).getFormat().setSeparatorType(SeparatorType.DOTTED_LINE_WITH_SCISSORS);
+
+        byte[] withTemplates = generatePdf(bills, true);
+        byte[] withoutTemplates = generatePdf(bills, false);
+        byte[] streamed = generateStreamedPdf(bills);
+        assertTrue(withTemplates.length < withoutTemplates.length);
+
+        try (PDDocument document1 = PDDocument.load(withTemplates);
+             PDDocument document2 = PDDocument.load(withoutTemplates);
+             PDDocument document3 = PDDocument.load(streamed)) {
+            PDFRenderer renderer1 = new PDFRenderer(document1);
+            PDFRenderer renderer2 = new PDFRenderer(document2);
+            PDFRenderer renderer3 = new PDFRenderer(document3);
+            for (int i = 0; i < 4; i++) {
+                BufferedImage image1 = renderer1.renderImageWithDPI(i, 72, ImageType.GRAY);
+                BufferedImage image2 = renderer2.renderImageWithDPI(i, 72, ImageType.GRAY);
+                BufferedImage image3 = renderer3.renderImageWithDPI(i, 72, ImageType.GRAY);
+                assertSimilar(image2, image1, "page " + i);
+                assertSimilar(image2, image3, "streamed page " + i);
+            }
+        }
+    }
+
+    private static byte[] generatePdf(List<Bill> bills, boolean templateMode) throws IOException {
+        try (PDFCanvas canvas = new PDFCanvas(QRBill.A4_PORTRAIT_WIDTH, QRBill.A4_PORTRAIT_HEIGHT)) {
+            canvas.setTemplateMode(templateMode);
+            drawBills(bills, canvas);
+            return canvas.toByteArray();
+        }
+    }
+
+    private static byte[] generateStreamedPdf(List<Bill> bills) throws IOException {
+        ByteArrayOutputStream os = new ByteArrayOutputStream();
+        try (PDFCanvas canvas = new PDFCanvas(QRBill.A4_PORTRAIT_WIDTH, QRBill.A4_PORTRAIT_HEIGHT,
+                "Helvetica", os)) {
+            canvas.setTemplateMode(true);
+            drawBills(bills, canvas);
+            canvas.finish();
+        }
+        return os.toByteArray();
+    }
+
+    private static void drawBills(List<Bill> bills, PDFCanvas canvas) throws IOException {
+        boolean isFirst = true;
+        for (Bill bill : bills) {
+            if (!isFirst)
+                canvas.addPage(QRBill.A4_PORTRAIT_WIDTH, QRBill.A4_PORTRAIT_HEIGHT);
+            QRBill.draw(bill, canvas);
+            isFirst = false;
+        }
+    }
+
+    private static String getPageText(PDDocument document, int pageNo) throws IOException {
+        PDFTextStripper stripper = new PDFTextStripper();
+        stripper.setStartPage(pageNo);
+        stripper.setEndPage(pageNo);
+        return stripper.getText(document);
+    }
+
+    // Form XObjects are rasterized separately, which can shift anti-aliased edges by a gray level
+    private static void assertSimilar(BufferedImage expected, BufferedImage actual, String message) {
+        assertEquals(expected.getWidth(), actual.getWidth(), message);
+        assertEquals(expected.getHeight(), actual.getHeight(), message);
+        for (int y = 0; y < expected.getHeight(); y++) {
+            for (int x = 0; x < expected.getWidth(); x++) {
+                int diff = (expected.getRGB(x, y) & 0xff) - (actual.getRGB(x, y) & 0xff);
+                assertTrue(Math.abs(diff) <= 2, message + " at " + x + "," + y);
+            }
+        }
+    }
+}
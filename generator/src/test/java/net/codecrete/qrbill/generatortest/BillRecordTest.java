@@ -0,0 +1,173 @@
+//
+// Swiss QR Bill Generator
+// Copyright (c) 2020 Manuel Bleichenbacher
+// Licensed under MIT License
+// https://opensource.org/licenses/MIT
+//
+package net.codecrete.qrbill.generatortest;
+
+import net.codecrete.qrbill.generator.Address;
+import net.codecrete.qrbill.generator.AlternativeScheme;
+import net.codecrete.qrbill.generator.Bill;
+import net.codecrete.qrbill.generator.BillFormat;
+import net.codecrete.qrbill.generator.BillRecord;
+import net.codecrete.qrbill.generator.GraphicsFormat;
+import net.codecrete.qrbill.generator.Language;
+import net.codecrete.qrbill.generator.QRBill;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.math.BigDecimal;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Unit tests for the compact bill representation
+ */
+@DisplayName("Bill record")
+class BillRecordTest {
+
+    @ParameterizedTest
+    @ValueSource(ints = { 1, 2, 3, 4, 5, 6, 7 })
+    void roundTrip(int example) {
+        Bill bill = SampleData.getExample(example);
+        assertEquals(bill, BillRecord.of(bill).toBill());
+    }
+
+    @Test
+    void emptyBill() {
+        assertEquals(new Bill(), BillRecord.builder().build().toBill());
+    }
+
+    @Test
+    void nonLatin1Characters() {
+        Bill bill = SampleData.getExample1();
+        bill.getCreditor().setName("Zürich Škoda €");
+        bill.setUnstructuredMessage("😀");
+        BillRecord record = BillRecord.of(bill);
+        assertEquals("Zürich Škoda €", record.getCreditor().getName());
+        assertEquals(bill, record.toBill());
+    }
+
+    @Test
+    void longFields() {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 2000; i++)
+            sb.append((char) ('a' + i % 26));
+        Bill bill = SampleData.getExample1();
+        bill.setUnstructuredMessage(sb.toString());
+        bill.setBillInformation("//S1/10/10201409");
+        BillRecord record = BillRecord.of(bill);
+        assertEquals(sb.toString(), record.getUnstructuredMessage());
+        assertEquals("//S1/10/10201409", record.getBillInformation());
+    }
+
+    @Test
+    void addressTypesArePreserved() {
+        Address conflicting = new Address();
+        conflicting.setName("Name");
+        conflicting.setStreet("Street");
+        conflicting.setAddressLine2("Line 2");
+        Address undetermined = new Address();
+        undetermined.setName("Name");
+
+        BillRecord record = BillRecord.builder().creditor(conflicting).debtor(undetermined).build();
+        assertEquals(conflicting, record.getCreditor());
+        assertEquals(Address.Type.CONFLICTING, record.getCreditor().getType());
+        assertEquals(undetermined, record.getDebtor());
+        assertEquals(Address.Type.UNDETERMINED, record.getDebtor().getType());
+    }
+
+    @Test
+    void amounts() {
+        assertNull(BillRecord.builder().build().getAmount());
+        assertFalse(BillRecord.builder().amount(null).build().hasAmount());
+        assertEquals(new BigDecimal("123.45"), BillRecord.builder().amountInCents(12345).build().getAmount());
+        assertEquals(new BigDecimal("10.00"), BillRecord.builder().amount(BigDecimal.TEN).build().getAmount());
+        assertEquals(1001, BillRecord.builder().amount(new BigDecimal("10.005")).build().getAmountInCents());
+        assertThrows(IllegalArgumentException.class,
+                () -> BillRecord.builder().amount(new BigDecimal("1E20")));
+        assertThrows(IllegalStateException.class, () -> BillRecord.builder().build().getAmountInCents());
+    }
+
+    @Test
+    void recordIsImmutable() {
+        Bill bill = SampleData.getExample1();
+        BillRecord record = BillRecord.of(bill);
+        bill.getCreditor().setName("Changed");
+        bill.getFormat().setLanguage(Language.IT);
+        record.getCreditor().setName("Changed");
+        record.getFormat().setLanguage(Language.IT);
+        record.getAlternativeSchemes()[0].setInstruction("Changed");
+
+        Bill original = SampleData.getExample1();
+        assertEquals(original, record.toBill());
+    }
+
+    @Test
+    void equalsAndHashCode() {
+        BillRecord record1 = BillRecord.of(SampleData.getExample2());
+        BillRecord record2 = BillRecord.of(SampleData.getExample2());
+        assertEquals(record1, record2);
+        assertEquals(record1.hashCode(), record2.hashCode());
+        assertNotEquals(record1, BillRecord.of(SampleData.getExample3()));
+    }
+
+    @Test
+    void builderIsReusable() {
+        BillRecord.Builder builder = BillRecord.builder()
+                .account("CH4431999123000889012")
+                .alternativeSchemes(new AlternativeScheme("Ultraviolet", "UV;UltraPay005;12345"));
+        BillRecord record1 = builder.reference("RF18539007547034").build();
+        BillRecord record2 = builder.reference(null).build();
+        assertEquals("RF18539007547034", record1.getReference());
+        assertNull(record2.getReference());
+        assertEquals("CH4431999123000889012", record2.getAccount());
+        assertEquals("UV;UltraPay005;12345", record2.getAlternativeSchemes()[0].getInstruction());
+    }
+
+    @Test
+    void serialization() throws IOException, ClassNotFoundException {
+        BillRecord record = BillRecord.of(SampleData.getExample4());
+        ByteArrayOutputStream os = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(os)) {
+            out.writeObject(record);
+        }
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(os.toByteArray()))) {
+            assertEquals(record, in.readObject());
+        }
+    }
+
+    @Test
+    void qrBillFunctions() {
+        Bill bill = SampleData.getExample3();
+        bill.getFormat().setGraphicsFormat(GraphicsFormat.SVG);
+        BillRecord record = BillRecord.of(bill);
+
+        assertEquals(QRBill.validate(bill).getCleanedBill(), QRBill.validate(record).getCleanedBill());
+        assertEquals(QRBill.encodeQrCodeText(bill), QRBill.encodeQrCodeText(record));
+        assertArrayEquals(QRBill.generate(bill), QRBill.generate(record));
+    }
+
+    @Test
+    void formatIsCopied() {
+        BillFormat format = new BillFormat();
+        format.setLanguage(Language.FR);
+        BillRecord.Builder builder = BillRecord.builder().format(format);
+        format.setLanguage(Language.IT);
+        assertEquals(Language.FR, builder.build().getFormat().getLanguage());
+        assertNull(BillRecord.builder().format(null).build().getFormat());
+    }
+}
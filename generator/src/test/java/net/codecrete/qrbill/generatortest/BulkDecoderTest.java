@@ -0,0 +1,171 @@
+//
+// Swiss QR Bill Generator
+// Copyright (c) 2020 Manuel Bleichenbacher
+// Licensed under MIT License
+// https://opensource.org/licenses/MIT
+//
+package net.codecrete.qrbill.generatortest;
+
+import net.codecrete.qrbill.generator.Bill;
+import net.codecrete.qrbill.generator.BulkDecoder;
+import net.codecrete.qrbill.generator.QRBill;
+import net.codecrete.qrbill.generator.ValidationConstants;
+import net.codecrete.qrbill.generator.ValidationResult;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static net.codecrete.qrbill.generatortest.DecodedTextTest.assertSingleError;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Unit tests for decoding QR code texts in parallel
+ */
+@DisplayName("Bulk decoding")
+class BulkDecoderTest {
+
+    @Test
+    void resultsAreInInputOrder() throws IOException {
+        List<String> texts = createTexts(50);
+        List<Bill> results = new ArrayList<>();
+
+        try (BulkDecoder decoder = new BulkDecoder(4)) {
+            int count = decoder.decode(new StringReader(joinRecords(texts, "\u001E")), (index, bill, result) -> {
+                assertEquals(results.size(), index);
+                assertFalse(result.hasErrors());
+                results.add(bill);
+            });
+            assertEquals(50, count);
+        }
+
+        for (int i = 0; i < texts.size(); i++)
+            assertEquals(QRBill.decodeQrCodeText(texts.get(i)), results.get(i));
+    }
+
+    @Test
+    void decodeFromChannel() throws IOException {
+        List<String> texts = createTexts(5);
+        texts.set(2, texts.get(2).replace("Pia-Maria", "Pia-Müller"));
+        byte[] data = joinRecords(texts, "\u001E\r\n").getBytes(StandardCharsets.UTF_8);
+        List<Bill> results = new ArrayList<>();
+
+        try (BulkDecoder decoder = new BulkDecoder(2)) {
+            decoder.decode(Channels.newChannel(new ByteArrayInputStream(data)),
+                    (index, bill, result) -> results.add(bill));
+        }
+
+        assertEquals(5, results.size());
+        assertEquals("Pia-Müller Rutschmann-Schnyder", results.get(2).getDebtor().getName());
+    }
+
+    @Test
+    void readsIncrementally() throws IOException {
+        List<String> texts = createTexts(40);
+        String input = joinRecords(texts, "|");
+        AtomicInteger charsRead = new AtomicInteger();
+        Reader reader = new StringReader(input) {
+            @Override
+            public int read(char[] buffer, int offset, int length) throws IOException {
+                // small chunks so records span several reads
+                int n = super.read(buffer, offset, Math.min(length, 100));
+                if (n > 0)
+                    charsRead.addAndGet(n);
+                return n;
+            }
+        };
+
+        try (BulkDecoder decoder = new BulkDecoder(2)) {
+            decoder.setRecordSeparator('|');
+            decoder.setMaxPending(2);
+            int count = decoder.decode(reader, (index, bill, result) -> {
+                assertFalse(result.hasErrors());
+                assertTrue(charsRead.get() < input.length() || index >= 35);
+            });
+            assertEquals(40, count);
+        }
+    }
+
+    @Test
+    void invalidRecordsAreReported() throws IOException {
+        List<String> texts = createTexts(4);
+        texts.set(1, "garbage");
+        texts.set(3, texts.get(3).replace("CH7400700110006116002", "CH7400700110006116003"));
+        List<ValidationResult> results = new ArrayList<>();
+        List<Bill> bills = new ArrayList<>();
+
+        try (BulkDecoder decoder = new BulkDecoder(2)) {
+            decoder.decode(new StringReader(joinRecords(texts, "\u001E")), (index, bill, result) -> {
+                bills.add(bill);
+                results.add(result);
+            });
+        }
+
+        assertEquals(4, results.size());
+        assertFalse(results.get(0).hasErrors());
+        assertNull(bills.get(1));
+        assertSingleError(results.get(1), ValidationConstants.KEY_VALID_DATA_STRUCTURE, ValidationConstants.FIELD_QR_TYPE);
+        assertFalse(results.get(2).hasErrors());
+        assertSingleError(results.get(3), ValidationConstants.KEY_ACCOUNT_IS_VALID_IBAN, ValidationConstants.FIELD_ACCOUNT);
+    }
+
+    @Test
+    void emptyRecordsAreSkipped() throws IOException {
+        String text = SampleQrCodeText.getQrCodeText4(false);
+        String input = "\u001E\n" + text + "\u001E\u001E\n\n" + text + "\u001E\n";
+        AtomicInteger count = new AtomicInteger();
+
+        try (BulkDecoder decoder = new BulkDecoder(1)) {
+            assertEquals(2, decoder.decode(new StringReader(input), (index, bill, result) -> count.incrementAndGet()));
+        }
+        assertEquals(2, count.get());
+    }
+
+    @Test
+    void sinkErrorStopsDecoding() {
+        List<String> texts = createTexts(20);
+        try (BulkDecoder decoder = new BulkDecoder(2)) {
+            assertThrows(IOException.class, () -> decoder.decode(new StringReader(joinRecords(texts, "\u001E")),
+                    (index, bill, result) -> {
+                        if (index == 3)
+                            throw new IOException("sink failed");
+                    }));
+        }
+    }
+
+    @Test
+    void lineBreakAsSeparatorIsRejected() {
+        try (BulkDecoder decoder = new BulkDecoder(1)) {
+            assertThrows(IllegalArgumentException.class, () -> decoder.setRecordSeparator('\n'));
+        }
+    }
+
+    private static List<String> createTexts(int count) {
+        List<String> texts = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            Bill bill = SampleData.getExample3();
+            bill.setUnstructuredMessage("Invoice " + i);
+            texts.add(QRBill.encodeQrCodeText(bill));
+        }
+        return texts;
+    }
+
+    private static String joinRecords(List<String> texts, String separator) {
+        StringBuilder sb = new StringBuilder();
+        for (String text : texts)
+            sb.append(text).append(separator);
+        return sb.toString();
+    }
+}
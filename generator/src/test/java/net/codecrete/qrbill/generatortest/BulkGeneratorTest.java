@@ -0,0 +1,165 @@
+//
+// Swiss QR Bill Generator
+// Copyright (c) 2020 Manuel Bleichenbacher
+// Licensed under MIT License
+// https://opensource.org/licenses/MIT
+//
+package net.codecrete.qrbill.generatortest;
+
+import net.codecrete.qrbill.generator.Bill;
+import net.codecrete.qrbill.generator.BulkGenerator;
+import net.codecrete.qrbill.generator.GraphicsFormat;
+import net.codecrete.qrbill.generator.OutputSize;
+import net.codecrete.qrbill.generator.QRBill;
+import net.codecrete.qrbill.generator.QRBillValidationError;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+import java.util.zip.ZipOutputStream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Unit tests for generating QR bills in parallel
+ */
+@DisplayName("Bulk generation")
+class BulkGeneratorTest {
+
+    @Test
+    void resultsAreInInputOrder() {
+        List<Bill> bills = createBills(40);
+        List<byte[]> results = new ArrayList<>();
+
+        try (BulkGenerator generator = new BulkGenerator(4)) {
+            BulkGenerator.Statistics statistics = generator.generate(bills.iterator(), (index, bill, data) -> {
+                assertEquals(results.size(), index);
+                assertTrue(bills.get(index) == bill);
+                results.add(data);
+            });
+            assertEquals(40, statistics.getBillCount());
+            assertTrue(statistics.getValidationTime() > 0);
+            assertTrue(statistics.getDrawingTime() > 0);
+            assertTrue(statistics.getSerializationTime() > 0);
+            assertTrue(statistics.getElapsedTime() > 0);
+        }
+
+        assertEquals(40, results.size());
+        // SVG output is deterministic (unlike PDF with its document ID)
+        for (int i = 0; i < bills.size(); i += 2)
+            assertArrayEquals(QRBill.generate(bills.get(i)), results.get(i));
+    }
+
+    @Test
+    void pendingBillsAreLimited() {
+        AtomicInteger takenCount = new AtomicInteger();
+        Iterator<Bill> bills = new Iterator<Bill>() {
+            @Override
+            public boolean hasNext() {
+                return takenCount.get() < 30;
+            }
+
+            @Override
+            public Bill next() {
+                takenCount.incrementAndGet();
+                return createBill(GraphicsFormat.SVG);
+            }
+        };
+
+        try (BulkGenerator generator = new BulkGenerator(2)) {
+            generator.setMaxPending(3);
+            generator.generate(bills, (index, bill, data) -> assertTrue(takenCount.get() <= index + 3));
+        }
+    }
+
+    @Test
+    void generatePng() {
+        List<Bill> bills = new ArrayList<>();
+        for (int i = 0; i < 6; i++)
+            bills.add(createBill(GraphicsFormat.PNG));
+
+        List<byte[]> results = new ArrayList<>();
+        try (BulkGenerator generator = new BulkGenerator(2)) {
+            generator.generate(bills.stream(), (index, bill, data) -> results.add(data));
+        }
+        for (byte[] result : results)
+            assertArrayEquals(results.get(0), result);
+    }
+
+    @Test
+    void invalidBillThrowsValidationError() {
+        List<Bill> bills = createBills(10);
+        bills.get(5).setAccount("CH0000000000000000000");
+        AtomicInteger count = new AtomicInteger();
+
+        try (BulkGenerator generator = new BulkGenerator(2)) {
+            assertThrows(QRBillValidationError.class,
+                    () -> generator.generate(bills.iterator(), (index, bill, data) -> count.incrementAndGet()));
+        }
+        assertEquals(5, count.get());
+    }
+
+    @Test
+    void writeToDirectory() throws IOException {
+        Path directory = Files.createTempDirectory("qrbill");
+        try (BulkGenerator generator = new BulkGenerator(2)) {
+            generator.generate(createBills(3).iterator(), BulkGenerator.directorySink(directory, "bill-%d.bin"));
+        }
+
+        for (int i = 0; i < 3; i++) {
+            Path path = directory.resolve("bill-" + i + ".bin");
+            assertTrue(Files.size(path) > 0);
+            Files.delete(path);
+        }
+        Files.delete(directory);
+    }
+
+    @Test
+    void writeToZip() throws IOException {
+        ByteArrayOutputStream os = new ByteArrayOutputStream();
+        try (BulkGenerator generator = new BulkGenerator(2);
+             ZipOutputStream zipStream = new ZipOutputStream(os)) {
+            generator.generate(createBills(4).iterator(), BulkGenerator.zipSink(zipStream, "bill-%02d"));
+        }
+
+        try (ZipInputStream zipStream = new ZipInputStream(new ByteArrayInputStream(os.toByteArray()))) {
+            for (int i = 0; i < 4; i++) {
+                ZipEntry entry = zipStream.getNextEntry();
+                assertEquals(String.format("bill-%02d", i), entry.getName());
+            }
+            assertNull(zipStream.getNextEntry());
+        }
+    }
+
+    private static List<Bill> createBills(int count) {
+        GraphicsFormat[] formats = { GraphicsFormat.SVG, GraphicsFormat.PDF };
+        List<Bill> bills = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            Bill bill = createBill(formats[i % 2]);
+            bill.setUnstructuredMessage("Invoice " + i);
+            bills.add(bill);
+        }
+        return bills;
+    }
+
+    private static Bill createBill(GraphicsFormat graphicsFormat) {
+        Bill bill = SampleData.getExample3();
+        bill.getFormat().setGraphicsFormat(graphicsFormat);
+        bill.getFormat().setOutputSize(OutputSize.QR_BILL_ONLY);
+        return bill;
+    }
+}
@@ -0,0 +1,175 @@
+//
+// Swiss QR Bill Generator
+// Copyright (c) 2020 Manuel Bleichenbacher
+// Licensed under MIT License
+// https://opensource.org/licenses/MIT
+//
+package net.codecrete.qrbill.generatortest;
+
+import net.codecrete.qrbill.canvas.PDFCanvas;
+import net.codecrete.qrbill.generator.Bill;
+import net.codecrete.qrbill.generator.BulkPDFAppender;
+import net.codecrete.qrbill.generator.QRBillValidationError;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Unit tests for adding QR bills to many PDF documents in parallel
+ */
+@DisplayName("Bulk PDF append")
+class BulkPDFAppenderTest {
+
+    private Path invoicePath;
+
+    @BeforeEach
+    void init() throws URISyntaxException {
+        invoicePath = Paths.get(BulkPDFAppenderTest.class.getResource("/invoice.pdf").toURI());
+    }
+
+    @Test
+    void appendToManyDocuments(@TempDir Path tempDir) throws IOException {
+        List<BulkPDFAppender.Job> jobs = new ArrayList<>();
+        for (int i = 0; i < 12; i++) {
+            int pageNo = i % 2 == 0 ? PDFCanvas.LAST_PAGE : PDFCanvas.NEW_PAGE_AT_END;
+            jobs.add(new BulkPDFAppender.Job(invoicePath, SampleData.getExample7(), pageNo,
+                    tempDir.resolve("invoice-" + i + ".pdf")));
+        }
+
+        BulkPDFAppender.Report report;
+        try (BulkPDFAppender appender = new BulkPDFAppender(3)) {
+            report = appender.append(jobs);
+        }
+
+        assertEquals(12, report.getJobCount());
+        assertEquals(0, report.getFailureCount());
+        for (int i = 0; i < 12; i++) {
+            BulkPDFAppender.Result result = report.getResults().get(i);
+            assertEquals(i, result.getIndex());
+            assertFalse(result.hasFailed());
+            assertTrue(result.getProcessingTime() > 0);
+            try (PDDocument document = PDDocument.load(tempDir.resolve("invoice-" + i + ".pdf").toFile())) {
+                assertEquals(i % 2 == 0 ? 2 : 3, document.getNumberOfPages());
+            }
+        }
+    }
+
+    @Test
+    void failuresAreReported(@TempDir Path tempDir) throws IOException {
+        Bill invalidBill = SampleData.getExample7();
+        invalidBill.setAccount("CH0000000000000000000");
+        Path existingTarget = tempDir.resolve("invoice-1.pdf");
+        Files.write(existingTarget, new byte[] { 1, 2, 3 });
+
+        List<BulkPDFAppender.Job> jobs = new ArrayList<>();
+        jobs.add(new BulkPDFAppender.Job(invoicePath, SampleData.getExample7(), PDFCanvas.LAST_PAGE,
+                tempDir.resolve("invoice-0.pdf")));
+        jobs.add(new BulkPDFAppender.Job(invoicePath, invalidBill, PDFCanvas.LAST_PAGE, existingTarget));
+        jobs.add(new BulkPDFAppender.Job(tempDir.resolve("missing.pdf"), SampleData.getExample7(),
+                PDFCanvas.LAST_PAGE, tempDir.resolve("invoice-2.pdf")));
+
+        BulkPDFAppender.Report report;
+        try (BulkPDFAppender appender = new BulkPDFAppender(2)) {
+            report = appender.append(jobs);
+        }
+
+        assertEquals(3, report.getJobCount());
+        assertEquals(2, report.getFailureCount());
+        assertFalse(report.getResults().get(0).hasFailed());
+        assertTrue(report.getResults().get(1).getFailure() instanceof QRBillValidationError);
+        assertTrue(report.getResults().get(2).getFailure() instanceof IOException);
+        assertEquals(3, Files.size(existingTarget));
+        assertFalse(Files.exists(tempDir.resolve("invoice-2.pdf")));
+    }
+
+    @Test
+    void errorsAreReported(@TempDir Path tempDir) {
+        Bill failingBill = new Bill() {
+            @Override
+            public String getAccount() {
+                throw new AssertionError("failing bill");
+            }
+        };
+
+        List<BulkPDFAppender.Job> jobs = new ArrayList<>();
+        jobs.add(new BulkPDFAppender.Job(invoicePath, failingBill, PDFCanvas.LAST_PAGE,
+                tempDir.resolve("invoice-0.pdf")));
+        jobs.add(new BulkPDFAppender.Job(invoicePath, SampleData.getExample7(), PDFCanvas.LAST_PAGE,
+                tempDir.resolve("invoice-1.pdf")));
+
+        BulkPDFAppender.Report report;
+        try (BulkPDFAppender appender = new BulkPDFAppender(2)) {
+            report = appender.append(jobs);
+        }
+
+        assertEquals(2, report.getJobCount());
+        assertEquals(1, report.getFailureCount());
+        assertTrue(report.getResults().get(0).getFailure() instanceof AssertionError);
+        assertFalse(report.getResults().get(1).hasFailed());
+    }
+
+    @Test
+    void updateSourceInPlace(@TempDir Path tempDir) throws IOException {
+        List<BulkPDFAppender.Job> jobs = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            Path path = tempDir.resolve("invoice-" + i + ".pdf");
+            Files.copy(invoicePath, path);
+            jobs.add(new BulkPDFAppender.Job(path, SampleData.getExample7(), PDFCanvas.NEW_PAGE_AT_END, path));
+        }
+
+        BulkPDFAppender.Report report;
+        try (BulkPDFAppender appender = new BulkPDFAppender(2)) {
+            // a tiny memory limit forces the jobs to run one after the other
+            appender.setMaxMemory(1024);
+            report = appender.append(jobs);
+        }
+
+        assertEquals(0, report.getFailureCount());
+        for (BulkPDFAppender.Job job : jobs) {
+            try (PDDocument document = PDDocument.load(job.getTarget().toFile())) {
+                assertEquals(3, document.getNumberOfPages());
+            }
+        }
+    }
+
+    @Test
+    void fullRewrite(@TempDir Path tempDir) throws IOException {
+        Path path = tempDir.resolve("invoice.pdf");
+        Files.copy(invoicePath, path);
+        List<BulkPDFAppender.Job> jobs = new ArrayList<>();
+        jobs.add(new BulkPDFAppender.Job(path, SampleData.getExample7(), PDFCanvas.LAST_PAGE, path));
+
+        try (BulkPDFAppender appender = new BulkPDFAppender(1)) {
+            appender.setIncrementalSave(false);
+            assertEquals(0, appender.append(jobs).getFailureCount());
+        }
+
+        try (PDDocument document = PDDocument.load(path.toFile())) {
+            assertEquals(2, document.getNumberOfPages());
+        }
+    }
+
+    @Test
+    void invalidSettings() {
+        try (BulkPDFAppender appender = new BulkPDFAppender(1)) {
+            assertThrows(IllegalArgumentException.class, () -> appender.setMaxPending(0));
+            assertThrows(IllegalArgumentException.class, () -> appender.setMaxMemory(0));
+            assertThrows(IllegalArgumentException.class, () -> appender.setMaxDocumentMemory(0));
+        }
+    }
+}
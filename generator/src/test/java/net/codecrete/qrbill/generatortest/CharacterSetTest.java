@@ -75,6 +75,28 @@ class CharacterSetTest extends BillDataValidationBase {
         assertEquals(TEXT_WITHOUT_COMBINING_ACCENTS, validatedBill.getCreditor().getName());
     }
 
+    @Test
+    void combiningAccentsWithReplacement() {
+        bill = SampleData.getExample1();
+        Address address = createValidPerson();
+        address.setName("Mu\u0308ller^Lu\u0308di \u0394"); // Delta is not supported
+        bill.setCreditor(address);
+        validate();
+        assertSingleWarningMessage(ValidationConstants.FIELD_CREDITOR_NAME, "replaced_unsupported_characters");
+        assertEquals("Müller.Lüdi .", validatedBill.getCreditor().getName());
+    }
+
+    @Test
+    void combiningAccentOnUnsupportedLetter() {
+        bill = SampleData.getExample1();
+        Address address = createValidPerson();
+        address.setName("X\u00c5\u0301X"); // A with ring and acute (single code point after normalization)
+        bill.setCreditor(address);
+        validate();
+        assertSingleWarningMessage(ValidationConstants.FIELD_CREDITOR_NAME, "replaced_unsupported_characters");
+        assertEquals("X.X", validatedBill.getCreditor().getName());
+    }
+
     @Test
     void newlineReplacement() {
         bill = SampleData.getExample1();
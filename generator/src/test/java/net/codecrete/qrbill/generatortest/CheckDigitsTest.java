@@ -0,0 +1,114 @@
+//
+// Swiss QR Bill Generator
+// Copyright (c) 2020 Manuel Bleichenbacher
+// Licensed under MIT License
+// https://opensource.org/licenses/MIT
+//
+package net.codecrete.qrbill.generatortest;
+
+import net.codecrete.qrbill.generator.CheckDigits;
+import net.codecrete.qrbill.generator.Payments;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Unit tests for batch check digit calculations in {@link CheckDigits}
+ */
+@DisplayName("Batch check digit calculations")
+class CheckDigitsTest {
+
+    @ParameterizedTest
+    @ValueSource(booleans = { false, true })
+    void validateIBANs(boolean parallel) {
+        String[] ibans = { "CH4431999123000889012", "CH4431999123000889013", null,
+                "DE68 2105 0170 0012 3456 78", "LI21088100002324013AA", "CH44" };
+        boolean[] expected = { true, false, false, true, true, false };
+        assertArrayEquals(expected, CheckDigits.validateIBANs(ibans, parallel));
+    }
+
+    @ParameterizedTest
+    @ValueSource(booleans = { false, true })
+    void validateQRReferences(boolean parallel) {
+        String[] references = { "210000000003139471430009017", "210000000003139471430009016", null,
+                "21 00000 00003 13947 14300 09017", "RF18539007547034" };
+        boolean[] expected = { true, false, false, true, false };
+        assertArrayEquals(expected, CheckDigits.validateQRReferences(references, parallel));
+    }
+
+    @ParameterizedTest
+    @ValueSource(booleans = { false, true })
+    void validateISO11649References(boolean parallel) {
+        String[] references = { "RF18539007547034", "RF18539007547035", null, "RF18 5390 0754 7034",
+                "210000000003139471430009017" };
+        boolean[] expected = { true, false, false, true, false };
+        assertArrayEquals(expected, CheckDigits.validateISO11649References(references, parallel));
+    }
+
+    @ParameterizedTest
+    @ValueSource(booleans = { false, true })
+    void createQRReferences(boolean parallel) {
+        long[] invoiceNumbers = { 0, 1, 4711, Long.MAX_VALUE };
+        String[] references = CheckDigits.createQRReferences("123456", invoiceNumbers, parallel);
+        assertEquals(invoiceNumbers.length, references.length);
+        for (int i = 0; i < invoiceNumbers.length; i++) {
+            assertEquals(27, references[i].length());
+            assertTrue(references[i].startsWith("123456"));
+            assertEquals(invoiceNumbers[i], Long.parseLong(references[i].substring(6, 26)));
+            assertTrue(Payments.isValidQRReference(references[i]));
+        }
+    }
+
+    @Test
+    void createQRReferencesWithoutPrefix() {
+        String[] references = CheckDigits.createQRReferences(null, new long[] { 21000000000313947L }, false);
+        assertArrayEquals(new String[] { Payments.createQRReference("21000000000313947") }, references);
+    }
+
+    @Test
+    void createQRReferencesLargeBatch() {
+        long[] invoiceNumbers = new long[100000];
+        for (int i = 0; i < invoiceNumbers.length; i++)
+            invoiceNumbers[i] = i * 7919L;
+        String[] references = CheckDigits.createQRReferences("99", invoiceNumbers, true);
+        boolean[] valid = CheckDigits.validateQRReferences(references, true);
+        for (int i = 0; i < invoiceNumbers.length; i++) {
+            assertTrue(valid[i]);
+            assertEquals(Payments.createQRReference("99" + String.format("%024d", invoiceNumbers[i])), references[i]);
+        }
+    }
+
+    @Test
+    void createQRReferencesWithInvalidPrefix() {
+        assertThrows(IllegalArgumentException.class,
+                () -> CheckDigits.createQRReferences("12A", new long[] { 1 }, false));
+    }
+
+    @Test
+    void createQRReferencesWithTooLargeNumber() {
+        assertThrows(IllegalArgumentException.class,
+                () -> CheckDigits.createQRReferences("12345678", new long[] { Long.MAX_VALUE }, false));
+    }
+
+    @Test
+    void createQRReferencesWithNegativeNumber() {
+        assertThrows(IllegalArgumentException.class,
+                () -> CheckDigits.createQRReferences("", new long[] { -1 }, false));
+    }
+
+    @ParameterizedTest
+    @ValueSource(booleans = { false, true })
+    void createISO11649References(boolean parallel) {
+        String[] rawReferences = { "539007547034", "ABCD 1234", "1" };
+        String[] references = CheckDigits.createISO11649References(rawReferences, parallel);
+        assertArrayEquals(new String[] { "RF18539007547034", "RF39ABCD1234", "RF741" }, references);
+        for (String reference : references)
+            assertTrue(Payments.isValidISO11649Reference(reference));
+    }
+}
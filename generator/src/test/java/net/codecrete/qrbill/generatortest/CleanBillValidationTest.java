@@ -0,0 +1,101 @@
+//
+// Swiss QR Bill Generator
+// Copyright (c) 2020 Manuel Bleichenbacher
+// Licensed under MIT License
+// https://opensource.org/licenses/MIT
+//
+package net.codecrete.qrbill.generatortest;
+
+import net.codecrete.qrbill.generator.Bill;
+import net.codecrete.qrbill.generator.GraphicsFormat;
+import net.codecrete.qrbill.generator.QRBill;
+import net.codecrete.qrbill.generator.ValidationConstants;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.math.BigDecimal;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+
+/**
+ * Unit tests for the validation of bill data that is already clean
+ */
+@DisplayName("Validation of clean bill data")
+class CleanBillValidationTest extends BillDataValidationBase {
+
+    @ParameterizedTest
+    @ValueSource(ints = { 1, 2, 3, 4, 5, 6, 7 })
+    void cleanedBillIsUnchanged(int example) {
+        bill = QRBill.validate(SampleData.getExample(example)).getCleanedBill();
+        validate();
+        assertNoMessages();
+        assertEquals(bill, validatedBill);
+    }
+
+    @Test
+    void cleanBillIsCopied() {
+        bill = createCleanBill();
+        validate();
+        assertNoMessages();
+        assertNotSame(bill, validatedBill);
+        assertNotSame(bill.getCreditor(), validatedBill.getCreditor());
+        assertNotSame(bill.getFormat(), validatedBill.getFormat());
+    }
+
+    @Test
+    void amountIsScaled() {
+        bill = createCleanBill();
+        bill.setAmount(new BigDecimal("100"));
+        validate();
+        assertNoMessages();
+        assertEquals(new BigDecimal("100.00"), validatedBill.getAmount());
+    }
+
+    @Test
+    void countryCodeIsUpperCased() {
+        bill = createCleanBill();
+        bill.getCreditor().setCountryCode("ch");
+        validate();
+        assertNoMessages();
+        assertEquals("CH", validatedBill.getCreditor().getCountryCode());
+    }
+
+    @Test
+    void nameIsTrimmed() {
+        bill = createCleanBill();
+        bill.getCreditor().setName("  Salvation Army Foundation Switzerland ");
+        validate();
+        assertNoMessages();
+        assertEquals("Salvation Army Foundation Switzerland", validatedBill.getCreditor().getName());
+    }
+
+    @Test
+    void unsupportedCharacterIsReplaced() {
+        bill = createCleanBill();
+        bill.setUnstructuredMessage("Thanks ^^");
+        validate();
+        assertSingleWarningMessage(ValidationConstants.FIELD_UNSTRUCTURED_MESSAGE,
+                ValidationConstants.KEY_REPLACED_UNSUPPORTED_CHARACTERS);
+        assertEquals("Thanks ..", validatedBill.getUnstructuredMessage());
+    }
+
+    @Test
+    void uncleanBillGeneratesSameOutput() {
+        Bill cleanBill = QRBill.validate(SampleData.getExample3()).getCleanedBill();
+        cleanBill.getFormat().setGraphicsFormat(GraphicsFormat.SVG);
+        Bill uncleanBill = SampleData.getExample3();
+        uncleanBill.getFormat().setGraphicsFormat(GraphicsFormat.SVG);
+        uncleanBill.getCreditor().setName(" " + cleanBill.getCreditor().getName() + " ");
+        uncleanBill.getCreditor().setCountryCode(cleanBill.getCreditor().getCountryCode().toLowerCase());
+
+        assertArrayEquals(QRBill.generate(cleanBill), QRBill.generate(uncleanBill));
+    }
+
+    private static Bill createCleanBill() {
+        return QRBill.validate(SampleData.getExample1()).getCleanedBill();
+    }
+}
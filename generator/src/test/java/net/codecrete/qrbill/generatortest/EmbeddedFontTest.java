@@ -0,0 +1,182 @@
+//
+// Swiss QR Bill Generator
+// Copyright (c) 2020 Manuel Bleichenbacher
+// Licensed under MIT License
+// https://opensource.org/licenses/MIT
+//
+package net.codecrete.qrbill.generatortest;
+
+import net.codecrete.qrbill.canvas.PDFCanvas;
+import net.codecrete.qrbill.generator.Bill;
+import net.codecrete.qrbill.generator.GraphicsFormat;
+import net.codecrete.qrbill.generator.QRBill;
+import org.apache.pdfbox.cos.COSName;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.PDResources;
+import org.apache.pdfbox.pdmodel.font.PDFont;
+import org.apache.pdfbox.pdmodel.graphics.PDXObject;
+import org.apache.pdfbox.pdmodel.graphics.form.PDFormXObject;
+import org.apache.pdfbox.text.PDFTextStripper;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Unit tests for embedding TrueType fonts in PDF documents
+ */
+@DisplayName("Embedded PDF fonts")
+class EmbeddedFontTest {
+
+    private static final String FONT_FAMILY = "Embedded Test Sans";
+
+    @BeforeEach
+    void registerFont() throws IOException, URISyntaxException {
+        PDFCanvas.registerFont(FONT_FAMILY, getResourcePath("/fonts/DejaVuSans-Latin1.ttf"),
+                getResourcePath("/fonts/DejaVuSans-Bold-Latin1.ttf"));
+    }
+
+    @AfterEach
+    void unregisterFont() {
+        PDFCanvas.unregisterFont(FONT_FAMILY);
+    }
+
+    @Test
+    void subsetIsSharedByAllPages() throws IOException {
+        List<Bill> bills = new ArrayList<>();
+        for (int i = 0; i < 10; i++)
+            bills.add(createBill());
+        ByteArrayOutputStream os = new ByteArrayOutputStream();
+        QRBill.generateBatch(bills, os);
+        byte[] batch = os.toByteArray();
+        byte[] single = QRBill.generate(createBill());
+
+        // if the font were embedded per bill, the batch would be about ten times the size
+        assertTrue(batch.length < 5 * single.length);
+
+        try (PDDocument document = PDDocument.load(batch)) {
+            Set<PDFont> fonts = getFonts(document);
+            assertEquals(2, fonts.size());
+            for (PDFont font : fonts) {
+                assertTrue(font.isEmbedded());
+                assertTrue(font.getName().matches("[A-Z]{6}\\+DejaVuSans.*"), font.getName());
+            }
+            PDFTextStripper stripper = new PDFTextStripper();
+            assertTrue(stripper.getText(document).contains("Robert Schneider AG"));
+        }
+    }
+
+    @Test
+    void incrementalUpdateEmbedsSubset() throws IOException, URISyntaxException {
+        Bill bill = createBill();
+        byte[] pdf;
+        try (PDFCanvas canvas = new PDFCanvas(getResourcePath("/invoice.pdf"), PDFCanvas.NEW_PAGE_AT_END, -1,
+                bill.getFormat().getFontFamily())) {
+            canvas.setIncrementalSave(true);
+            QRBill.draw(bill, canvas);
+            pdf = canvas.toByteArray();
+        }
+
+        try (PDDocument document = PDDocument.load(pdf)) {
+            PDResources resources = document.getPage(document.getNumberOfPages() - 1).getResources();
+            Set<PDFont> fonts = Collections.newSetFromMap(new IdentityHashMap<>());
+            collectFonts(resources, fonts);
+            assertEquals(2, fonts.size());
+            for (PDFont font : fonts) {
+                assertTrue(font.isEmbedded(), font.getName());
+                assertTrue(font.getName().matches("[A-Z]{6}\\+DejaVuSans.*"), font.getName());
+            }
+            PDFTextStripper stripper = new PDFTextStripper();
+            stripper.setStartPage(document.getNumberOfPages());
+            assertTrue(stripper.getText(document).contains("Robert Schneider AG"));
+        }
+    }
+
+    @Test
+    void appendToSourceEmbedsSubset(@TempDir Path tempDir) throws IOException, URISyntaxException {
+        Path path = tempDir.resolve("invoice.pdf");
+        Files.copy(getResourcePath("/invoice.pdf"), path);
+        Bill bill = createBill();
+        try (PDFCanvas canvas = new PDFCanvas(path, PDFCanvas.NEW_PAGE_AT_END, -1,
+                bill.getFormat().getFontFamily())) {
+            canvas.setIncrementalSave(true);
+            QRBill.draw(bill, canvas);
+            canvas.appendToSource();
+        }
+
+        try (PDDocument document = PDDocument.load(path.toFile())) {
+            assertEquals(3, document.getNumberOfPages());
+            Set<PDFont> fonts = Collections.newSetFromMap(new IdentityHashMap<>());
+            collectFonts(document.getPage(2).getResources(), fonts);
+            assertEquals(2, fonts.size());
+            for (PDFont font : fonts)
+                assertTrue(font.isEmbedded(), font.getName());
+        }
+    }
+
+    @Test
+    void unregisteredFamilyUsesHelvetica() throws IOException {
+        Bill bill = createBill();
+        bill.getFormat().setFontFamily("Arial");
+        try (PDDocument document = PDDocument.load(QRBill.generate(bill))) {
+            for (PDFont font : getFonts(document))
+                assertTrue(font.getName().startsWith("Helvetica"), font.getName());
+        }
+    }
+
+    @Test
+    void unbalancedQuoteIsNotStripped() throws IOException {
+        Bill bill = createBill();
+        bill.getFormat().setFontFamily("\"" + FONT_FAMILY + "',Helvetica");
+        try (PDDocument document = PDDocument.load(QRBill.generate(bill))) {
+            for (PDFont font : getFonts(document))
+                assertTrue(font.getName().startsWith("Helvetica"), font.getName());
+        }
+    }
+
+    private static Path getResourcePath(String name) throws URISyntaxException {
+        return Paths.get(EmbeddedFontTest.class.getResource(name).toURI());
+    }
+
+    private static Bill createBill() {
+        Bill bill = SampleData.getExample1();
+        bill.getFormat().setGraphicsFormat(GraphicsFormat.PDF);
+        bill.getFormat().setFontFamily("\"" + FONT_FAMILY + "\",Helvetica");
+        return bill;
+    }
+
+    private static Set<PDFont> getFonts(PDDocument document) throws IOException {
+        // PDFBox caches the font objects, so identical fonts are identical instances
+        Set<PDFont> fonts = Collections.newSetFromMap(new IdentityHashMap<>());
+        for (PDPage page : document.getPages())
+            collectFonts(page.getResources(), fonts);
+        return fonts;
+    }
+
+    private static void collectFonts(PDResources resources, Set<PDFont> fonts) throws IOException {
+        for (COSName name : resources.getFontNames())
+            fonts.add(resources.getFont(name));
+        for (COSName name : resources.getXObjectNames()) {
+            PDXObject xObject = resources.getXObject(name);
+            if (xObject instanceof PDFormXObject)
+                collectFonts(((PDFormXObject) xObject).getResources(), fonts);
+        }
+    }
+}
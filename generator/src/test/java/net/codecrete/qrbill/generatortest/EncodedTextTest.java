@@ -13,9 +13,19 @@ import net.codecrete.qrbill.generator.QRCodeText;
 import net.codecrete.qrbill.generator.ValidationResult;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
 
 import java.math.BigDecimal;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.text.DecimalFormat;
+import java.text.DecimalFormatSymbols;
+import java.util.Arrays;
+import java.util.Locale;
 
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertThrows;
@@ -69,4 +79,46 @@ class EncodedTextTest {
         assertEquals(SampleQrCodeText.getQrCodeText3(false), QRCodeText.create(bill));
     }
 
+    @ParameterizedTest
+    @ValueSource(strings = { "0.00", "0.05", "1.50", "199.95", "999999999.99", "-12.30", "12", "7.5", "0.125",
+            "0.135", "123456789012345678901234.56", "-0.001" })
+    void amountFormatting(String amount) {
+        Bill bill = SampleQrCodeText.getBillData4();
+        bill.setAmount(new BigDecimal(amount));
+        String text = QRCodeText.create(bill);
+        DecimalFormat format = new DecimalFormat("#0.00", new DecimalFormatSymbols(Locale.US));
+        assertEquals(format.format(new BigDecimal(amount)), text.split("\n")[18]);
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = { "Pia-Maria Rutschmann-Schnyder", "Zürcher Kantonalbank", "Café €", "Emoji \uD83D\uDE00 \uD83D" })
+    void createUTF8(String name) {
+        Bill bill = SampleQrCodeText.getBillData4();
+        bill.getDebtor().setName(name);
+        byte[] expected = QRCodeText.create(bill).getBytes(StandardCharsets.UTF_8);
+        assertArrayEquals(expected, QRCodeText.createUTF8(bill));
+
+        byte[] buffer = new byte[expected.length + 4];
+        assertEquals(expected.length, QRCodeText.createUTF8(bill, buffer, 2));
+        assertArrayEquals(expected, Arrays.copyOfRange(buffer, 2, 2 + expected.length));
+
+        ByteBuffer directBuffer = ByteBuffer.allocateDirect(expected.length + 1);
+        directBuffer.put((byte) 0);
+        QRCodeText.createUTF8(bill, directBuffer);
+        assertEquals(expected.length + 1, directBuffer.position());
+        ByteBuffer heapBuffer = ByteBuffer.allocate(expected.length + 1);
+        heapBuffer.put((byte) 0);
+        QRCodeText.createUTF8(bill, heapBuffer);
+        assertEquals(directBuffer.flip(), heapBuffer.flip());
+    }
+
+    @Test
+    void createUTF8BufferTooSmall() {
+        Bill bill = SampleQrCodeText.getBillData4();
+        assertThrows(IndexOutOfBoundsException.class, () -> QRCodeText.createUTF8(bill, new byte[100], 0));
+        ByteBuffer buffer = ByteBuffer.allocate(100);
+        buffer.position(10);
+        assertThrows(BufferOverflowException.class, () -> QRCodeText.createUTF8(bill, buffer));
+        assertEquals(10, buffer.position());
+    }
 }
@@ -11,7 +11,10 @@ import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
 
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
 
 /**
  * Unit tests for {@link FontMetrics} class
@@ -158,4 +161,44 @@ class FontMetricsTest {
         assertEquals("d", lines[3]);
         assertEquals("e", lines[4]);
     }
+
+    @Test
+    void sharedInstance() {
+        FontMetrics metrics = FontMetrics.forFontFamilyList("Arial, Helvetica");
+        assertSame(metrics, FontMetrics.forFontFamilyList("Arial, Helvetica"));
+        assertEquals("Arial", metrics.getFirstFontFamily());
+    }
+
+    @Test
+    void textWidth() {
+        // widths in 1/1000 pt: a = 556, b = 556, bold a = 556, bold b = 611
+        assertEquals(1.112 * 25.4 / 72 * 10, fontMetrics.getTextWidth("ab", 10, false), 1e-9);
+        assertEquals(1.167 * 25.4 / 72 * 10, fontMetrics.getTextWidth("ab", 10, true), 1e-9);
+    }
+
+    @Test
+    void defaultWidthOutsideTable() {
+        // characters without width data have the default width
+        assertEquals(fontMetrics.getTextWidth("\u0410", 10, false), fontMetrics.getTextWidth("\u0080", 10, false));
+        assertEquals(0.556 * 25.4 / 72 * 10, fontMetrics.getTextWidth("\u20ac", 10, false), 1e-9);
+    }
+
+    @Test
+    void lineOffsets() {
+        String text = "  Robert Schneider AG\nRue du Lac 1268  \n\n2501 Biel ";
+        int[] offsets = fontMetrics.splitLineOffsets(text, 50, 10);
+        String[] lines = fontMetrics.splitLines(text, 50, 10);
+        assertEquals(lines.length * 2, offsets.length);
+        for (int i = 0; i < lines.length; i++)
+            assertEquals(lines[i], text.substring(offsets[2 * i], offsets[2 * i + 1]));
+    }
+
+    @Test
+    void cachedLinesAreCopies() {
+        String[] lines1 = fontMetrics.splitLines("abcdef ghijk", 35, 10);
+        lines1[0] = "modified";
+        String[] lines2 = fontMetrics.splitLines("abcdef ghijk", 35, 10);
+        assertNotSame(lines1, lines2);
+        assertArrayEquals(new String[] { "abcdef", "ghijk" }, lines2);
+    }
 }
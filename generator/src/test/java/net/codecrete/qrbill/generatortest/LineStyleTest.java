@@ -65,6 +65,9 @@ public class LineStyleTest {
         bill.getFormat().setSeparatorType(separatorType);
         bill.getFormat().setGraphicsFormat(graphicsFormat);
         byte[] imageData = QRBill.generate(bill);
-        FileComparison.assertFileContentsEqual(imageData, expectedFileName);
+        if (graphicsFormat == GraphicsFormat.PNG)
+            FileComparison.assertGrayscaleImageContentsEqual(imageData, expectedFileName);
+        else
+            FileComparison.assertFileContentsEqual(imageData, expectedFileName);
     }
 }
@@ -0,0 +1,128 @@
+//
+// Swiss QR Bill Generator
+// Copyright (c) 2020 Manuel Bleichenbacher
+// Licensed under MIT License
+// https://opensource.org/licenses/MIT
+//
+package net.codecrete.qrbill.generatortest;
+
+import net.codecrete.qrbill.canvas.PNGCanvas;
+import net.codecrete.qrbill.canvas.PNGCanvasPool;
+import net.codecrete.qrbill.generator.Bill;
+import net.codecrete.qrbill.generator.OutputSize;
+import net.codecrete.qrbill.generator.QRBill;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.zip.Deflater;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Unit tests for reusing PNG canvases
+ */
+@DisplayName("PNG canvas pool")
+class PNGCanvasPoolTest {
+
+    @Test
+    void reusedCanvasProducesSameImage() throws IOException {
+        Bill bill1 = SampleData.getExample1();
+        bill1.getFormat().setOutputSize(OutputSize.QR_BILL_ONLY);
+        Bill bill2 = SampleData.getExample3();
+        bill2.getFormat().setOutputSize(OutputSize.QR_BILL_ONLY);
+
+        byte[] expected;
+        try (PNGCanvas canvas = new PNGCanvas(QRBill.QR_BILL_WIDTH, QRBill.QR_BILL_HEIGHT, 144, "Arial")) {
+            QRBill.draw(bill2, canvas);
+            expected = canvas.toByteArray();
+        }
+
+        try (PNGCanvas canvas = new PNGCanvas(QRBill.QR_BILL_WIDTH, QRBill.QR_BILL_HEIGHT, 144, "Arial")) {
+            QRBill.draw(bill1, canvas);
+            canvas.toByteArray();
+            canvas.reset();
+            QRBill.draw(bill2, canvas);
+            assertArrayEquals(expected, canvas.toByteArray());
+        }
+    }
+
+    @Test
+    void poolReusesCanvas() {
+        try (PNGCanvasPool pool = new PNGCanvasPool(2)) {
+            PNGCanvas canvas1 = pool.acquire(QRBill.QR_BILL_WIDTH, QRBill.QR_BILL_HEIGHT, 144, "Arial");
+            pool.release(canvas1);
+            assertEquals(1, pool.getIdleCount());
+
+            PNGCanvas canvas2 = pool.acquire(QRBill.QR_BILL_WIDTH, QRBill.QR_BILL_HEIGHT, 144, "Arial");
+            assertSame(canvas1, canvas2);
+            assertEquals(0, pool.getIdleCount());
+            pool.release(canvas2);
+        }
+    }
+
+    @Test
+    void releasedCanvasHasDefaultOutputSettings() throws IOException {
+        Bill bill = SampleData.getExample3();
+        bill.getFormat().setOutputSize(OutputSize.QR_BILL_ONLY);
+
+        try (PNGCanvasPool pool = new PNGCanvasPool(1)) {
+            PNGCanvas canvas1 = pool.acquire(QRBill.QR_BILL_WIDTH, QRBill.QR_BILL_HEIGHT, 144, "Arial");
+            canvas1.setBilevel(true);
+            canvas1.setCompressionLevel(Deflater.BEST_SPEED);
+            QRBill.draw(bill, canvas1);
+            assertEquals(1, getBitDepth(canvas1.toByteArray()));
+            pool.release(canvas1);
+
+            PNGCanvas canvas2 = pool.acquire(QRBill.QR_BILL_WIDTH, QRBill.QR_BILL_HEIGHT, 144, "Arial");
+            assertSame(canvas1, canvas2);
+            assertFalse(canvas2.isBilevel());
+            assertEquals(Deflater.DEFAULT_COMPRESSION, canvas2.getCompressionLevel());
+            QRBill.draw(bill, canvas2);
+            assertEquals(8, getBitDepth(canvas2.toByteArray()));
+            pool.release(canvas2);
+        }
+    }
+
+    @Test
+    void poolDistinguishesSizes() {
+        try (PNGCanvasPool pool = new PNGCanvasPool(2)) {
+            PNGCanvas canvas1 = pool.acquire(QRBill.QR_BILL_WIDTH, QRBill.QR_BILL_HEIGHT, 144, "Arial");
+            pool.release(canvas1);
+
+            PNGCanvas canvas2 = pool.acquire(QRBill.QR_BILL_WIDTH, QRBill.QR_BILL_HEIGHT, 300, "Arial");
+            assertNotSame(canvas1, canvas2);
+            pool.release(canvas2);
+            assertEquals(2, pool.getIdleCount());
+        }
+    }
+
+    @Test
+    void poolLimitsIdleCanvases() {
+        try (PNGCanvasPool pool = new PNGCanvasPool(1)) {
+            PNGCanvas canvas1 = pool.acquire(QRBill.QR_CODE_WIDTH, QRBill.QR_CODE_HEIGHT, 144, "Arial");
+            PNGCanvas canvas2 = pool.acquire(QRBill.QR_CODE_WIDTH, QRBill.QR_CODE_HEIGHT, 144, "Arial");
+            pool.release(canvas1);
+            pool.release(canvas2);
+            assertEquals(1, pool.getIdleCount());
+        }
+    }
+
+    @Test
+    void releaseForeignCanvasFails() {
+        try (PNGCanvasPool pool = new PNGCanvasPool(1);
+             PNGCanvas canvas = new PNGCanvas(QRBill.QR_CODE_WIDTH, QRBill.QR_CODE_HEIGHT, 144, "Arial")) {
+            assertThrows(IllegalArgumentException.class, () -> pool.release(canvas));
+        }
+    }
+
+    // bit depth field of the IHDR chunk (after signature, chunk length, type, width and height)
+    private static int getBitDepth(byte[] png) {
+        return png[24];
+    }
+}
@@ -13,12 +13,18 @@ import net.codecrete.qrbill.generator.QRBill;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
 
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
 /**
  * Unit tests for generating QR bills as PNG
  */
@@ -67,4 +73,49 @@ class PNGCanvasTest {
         }
         Files.delete(path);
     }
+
+    @Test
+    void pngBilevel() throws IOException {
+        Bill bill = SampleData.getExample1();
+        bill.getFormat().setOutputSize(OutputSize.QR_BILL_ONLY);
+        byte[] grayPng;
+        byte[] bilevelPng;
+        try (PNGCanvas canvas = new PNGCanvas(QRBill.QR_BILL_WIDTH, QRBill.QR_BILL_HEIGHT, 300, "Arial")) {
+            QRBill.draw(bill, canvas);
+            grayPng = canvas.toByteArray();
+            canvas.setBilevel(true);
+            bilevelPng = canvas.toByteArray();
+        }
+
+        assertTrue(bilevelPng.length < grayPng.length / 2);
+        BufferedImage grayImage = ImageIO.read(new ByteArrayInputStream(grayPng));
+        BufferedImage bilevelImage = ImageIO.read(new ByteArrayInputStream(bilevelPng));
+        assertEquals(BufferedImage.TYPE_BYTE_BINARY, bilevelImage.getType());
+        assertEquals(grayImage.getWidth(), bilevelImage.getWidth());
+        assertEquals(grayImage.getHeight(), bilevelImage.getHeight());
+        for (int y = 0; y < grayImage.getHeight(); y += 7) {
+            for (int x = 0; x < grayImage.getWidth(); x += 7) {
+                int expected = grayImage.getRaster().getSample(x, y, 0) >= 128 ? 1 : 0;
+                assertEquals(expected, bilevelImage.getRaster().getSample(x, y, 0));
+            }
+        }
+    }
+
+    @Test
+    void pngCompressionLevel() throws IOException {
+        Bill bill = SampleData.getExample3();
+        bill.getFormat().setOutputSize(OutputSize.QR_BILL_ONLY);
+        try (PNGCanvas canvas = new PNGCanvas(QRBill.QR_BILL_WIDTH, QRBill.QR_BILL_HEIGHT, 144, "Arial")) {
+            QRBill.draw(bill, canvas);
+            canvas.setCompressionLevel(1);
+            byte[] fastPng = canvas.toByteArray();
+            canvas.setCompressionLevel(9);
+            byte[] smallPng = canvas.toByteArray();
+            assertTrue(smallPng.length < fastPng.length);
+
+            BufferedImage fastImage = ImageIO.read(new ByteArrayInputStream(fastPng));
+            BufferedImage smallImage = ImageIO.read(new ByteArrayInputStream(smallPng));
+            assertEquals(fastImage.getWidth(), smallImage.getWidth());
+        }
+    }
 }
@@ -0,0 +1,108 @@
+//
+// Swiss QR Bill Generator
+// Copyright (c) 2020 Manuel Bleichenbacher
+// Licensed under MIT License
+// https://opensource.org/licenses/MIT
+//
+package net.codecrete.qrbill.generatortest;
+
+import net.codecrete.qrbill.generator.Bill;
+import net.codecrete.qrbill.generator.GraphicsFormat;
+import net.codecrete.qrbill.generator.OutputSize;
+import net.codecrete.qrbill.generator.QRBill;
+import net.codecrete.qrbill.generator.QRCodeCache;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Unit tests for the QR code cache
+ */
+@DisplayName("QR code cache")
+class QRCodeCacheTest {
+
+    @BeforeEach
+    void enableCache() {
+        QRCodeCache.clear();
+        QRCodeCache.setCapacity(2);
+    }
+
+    @AfterEach
+    void disableCache() {
+        QRCodeCache.setCapacity(0);
+        QRCodeCache.clear();
+    }
+
+    @Test
+    void repeatedRenderingHitsCache() {
+        Bill bill = SampleData.getExample1();
+        bill.getFormat().setGraphicsFormat(GraphicsFormat.SVG);
+        QRBill.generate(bill);
+        bill.getFormat().setGraphicsFormat(GraphicsFormat.PDF);
+        QRBill.generate(bill);
+        bill.getFormat().setOutputSize(OutputSize.QR_CODE_ONLY);
+        QRBill.generate(bill);
+
+        assertEquals(1, QRCodeCache.getMissCount());
+        assertEquals(2, QRCodeCache.getHitCount());
+    }
+
+    @Test
+    void cachedQrCodeIsIdentical() {
+        Bill bill = SampleData.getExample3();
+        bill.getFormat().setOutputSize(OutputSize.QR_CODE_ONLY);
+        bill.getFormat().setGraphicsFormat(GraphicsFormat.SVG);
+        QRBill.generate(bill);
+        byte[] svg = QRBill.generate(bill);
+        assertEquals(1, QRCodeCache.getHitCount());
+        FileComparison.assertFileContentsEqual(svg, "qrcode_ex3.svg");
+    }
+
+    @Test
+    void leastRecentlyUsedIsEvicted() {
+        Bill bill1 = SampleData.getExample1();
+        Bill bill2 = SampleData.getExample2();
+        Bill bill3 = SampleData.getExample3();
+        QRBill.generate(bill1);
+        QRBill.generate(bill2);
+        QRBill.generate(bill1);
+        QRBill.generate(bill3); // evicts bill 2
+        QRBill.generate(bill1);
+        QRBill.generate(bill2);
+
+        assertEquals(4, QRCodeCache.getMissCount());
+        assertEquals(2, QRCodeCache.getHitCount());
+    }
+
+    @Test
+    void disabledCacheCountsNothing() {
+        QRCodeCache.setCapacity(0);
+        Bill bill = SampleData.getExample1();
+        QRBill.generate(bill);
+        QRBill.generate(bill);
+
+        assertEquals(0, QRCodeCache.getMissCount());
+        assertEquals(0, QRCodeCache.getHitCount());
+    }
+
+    @Test
+    void clearResetsCounters() {
+        Bill bill = SampleData.getExample1();
+        QRBill.generate(bill);
+        QRBill.generate(bill);
+        QRCodeCache.clear();
+        QRBill.generate(bill);
+
+        assertEquals(1, QRCodeCache.getMissCount());
+        assertEquals(0, QRCodeCache.getHitCount());
+    }
+
+    @Test
+    void negativeCapacityThrows() {
+        assertThrows(IllegalArgumentException.class, () -> QRCodeCache.setCapacity(-1));
+    }
+}
@@ -54,4 +54,13 @@ class QRCodeTest {
         byte[] svg = QRBill.generate(bill);
         FileComparison.assertFileContentsEqual(svg, "qrcode_ex4.svg");
     }
+
+    @Test
+    void qrCodeAsSVG5() {
+        Bill bill = SampleData.getExample5();
+        bill.getFormat().setOutputSize(OutputSize.QR_CODE_ONLY);
+        bill.getFormat().setGraphicsFormat(GraphicsFormat.SVG);
+        byte[] svg = QRBill.generate(bill);
+        FileComparison.assertFileContentsEqual(svg, "qrcode_ex5.svg");
+    }
 }
@@ -0,0 +1,142 @@
+//
+// Swiss QR Bill Generator
+// Copyright (c) 2020 Manuel Bleichenbacher
+// Licensed under MIT License
+// https://opensource.org/licenses/MIT
+//
+package net.codecrete.qrbill.generatortest;
+
+import net.codecrete.qrbill.generator.Address;
+import net.codecrete.qrbill.generator.Bill;
+import net.codecrete.qrbill.generator.QRBill;
+import net.codecrete.qrbill.generator.QRBillValidationError;
+import net.codecrete.qrbill.generator.QRCodeTextView;
+import net.codecrete.qrbill.generator.ValidationConstants;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import static net.codecrete.qrbill.generatortest.DecodedTextTest.assertSingleError;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Unit tests for the view of the QR code text fields
+ */
+@DisplayName("View of QR code text fields")
+class QRCodeTextViewTest {
+
+    @ParameterizedTest
+    @ValueSource(ints = { 1, 2, 3, 4 })
+    void sameAsDecodedBill(int example) {
+        String text = getQrCodeText(example, false);
+        assertEquals(QRBill.decodeQrCodeText(text), QRCodeTextView.parse(text).toBill());
+        assertEquals(QRBill.decodeQrCodeText(text), QRCodeTextView.parse(new StringBuilder(text)).toBill());
+    }
+
+    @ParameterizedTest
+    @ValueSource(ints = { 1, 2, 3, 4 })
+    void sameAsDecodedBillWithCRLF(int example) {
+        String text = getQrCodeText(example, true);
+        assertEquals(QRBill.decodeQrCodeText(text), QRCodeTextView.parse(text).toBill());
+    }
+
+    @ParameterizedTest
+    @ValueSource(ints = { 1, 2, 3, 4 })
+    void sameAsDecodedBillFromUTF8(int example) {
+        String text = getQrCodeText(example, true);
+        ByteBuffer buffer = ByteBuffer.wrap(text.getBytes(StandardCharsets.UTF_8));
+        assertEquals(QRBill.decodeQrCodeText(text), QRCodeTextView.parse(buffer).toBill());
+    }
+
+    @Test
+    void individualFields() {
+        QRCodeTextView view = QRCodeTextView.parse(SampleQrCodeText.getQrCodeText1(false));
+        assertEquals(32, view.getFieldCount());
+        assertEquals("CH5800791123000889012", view.getAccount());
+        assertEquals(new BigDecimal("3949.75"), view.getAmount());
+        assertEquals("CHF", view.getCurrency());
+        assertEquals("NON", view.getReferenceType());
+        assertEquals("", view.getReference());
+        assertEquals("Bill no. 3139 for gardening work and disposal of waste material",
+                view.getUnstructuredMessage());
+        assertEquals("", view.getBillInformation());
+        assertNull(view.getAlternativeSchemes());
+        assertTrue(view.isFieldEmpty(QRCodeTextView.FIELD_REFERENCE));
+        assertEquals("", view.getField(34));
+
+        Address debtor = view.getDebtor();
+        assertEquals("Pia Rutschmann", debtor.getName());
+        assertEquals("Marktgasse", debtor.getStreet());
+        assertEquals("28", debtor.getHouseNo());
+    }
+
+    @Test
+    void nonAsciiFieldFromByteBufferSlice() {
+        String text = SampleQrCodeText.getQrCodeText1(false).replace("Robert Schneider AG", "Zürcher Bäckerei");
+        byte[] textBytes = text.getBytes(StandardCharsets.UTF_8);
+        byte[] data = new byte[textBytes.length + 10];
+        System.arraycopy(textBytes, 0, data, 5, textBytes.length);
+        ByteBuffer buffer = ByteBuffer.wrap(data, 5, textBytes.length).slice();
+
+        QRCodeTextView view = QRCodeTextView.parse(buffer);
+        assertEquals("Zürcher Bäckerei", view.getCreditor().getName());
+        assertEquals(0, buffer.position());
+
+        ByteBuffer directBuffer = ByteBuffer.allocateDirect(textBytes.length);
+        directBuffer.put(textBytes);
+        directBuffer.flip();
+        assertEquals("Zürcher Bäckerei", QRCodeTextView.parse(directBuffer).getCreditor().getName());
+    }
+
+    @Test
+    void invalidAmountIsReportedOnAccess() {
+        String invalidText = SampleQrCodeText.getQrCodeText1(false).replace("3949.75", "1239d49.75");
+        QRCodeTextView view = QRCodeTextView.parse(invalidText);
+        assertEquals("CHF", view.getCurrency());
+        QRBillValidationError err = assertThrows(QRBillValidationError.class, view::getAmount);
+        assertSingleError(err.getValidationResult(), ValidationConstants.KEY_VALID_NUMBER, ValidationConstants.FIELD_AMOUNT);
+    }
+
+    @Test
+    void invalidStructure() {
+        QRBillValidationError err = assertThrows(QRBillValidationError.class,
+                () -> QRCodeTextView.parse(ByteBuffer.wrap("garbage".getBytes(StandardCharsets.UTF_8))));
+        assertSingleError(err.getValidationResult(), ValidationConstants.KEY_VALID_DATA_STRUCTURE, ValidationConstants.FIELD_QR_TYPE);
+    }
+
+    @Test
+    void missingTrailer() {
+        String invalidText = SampleQrCodeText.getQrCodeText1(false).replace("EPD", "E_P");
+        QRBillValidationError err = assertThrows(QRBillValidationError.class, () -> QRCodeTextView.parse(invalidText));
+        assertSingleError(err.getValidationResult(), ValidationConstants.KEY_VALID_DATA_STRUCTURE, ValidationConstants.FIELD_TRAILER);
+    }
+
+    @Test
+    void amountRoundTrip() {
+        Bill bill = SampleData.getExample1();
+        bill.setAmount(new BigDecimal("1234567.80"));
+        QRCodeTextView view = QRCodeTextView.parse(QRBill.encodeQrCodeText(bill));
+        assertEquals(new BigDecimal("1234567.80"), view.getAmount());
+    }
+
+    private static String getQrCodeText(int example, boolean withCRLF) {
+        switch (example) {
+            case 1:
+                return SampleQrCodeText.getQrCodeText1(withCRLF);
+            case 2:
+                return SampleQrCodeText.getQrCodeText2(withCRLF);
+            case 3:
+                return SampleQrCodeText.getQrCodeText3(withCRLF);
+            default:
+                return SampleQrCodeText.getQrCodeText4(withCRLF);
+        }
+    }
+}
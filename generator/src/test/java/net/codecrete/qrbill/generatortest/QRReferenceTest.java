@@ -13,6 +13,7 @@ import org.junit.jupiter.api.Test;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
 /**
@@ -51,6 +52,26 @@ class QRReferenceTest {
         assertFalse(Payments.isValidQRReference("210000000003139471430009016"));
     }
 
+    @Test
+    void createQRReference() {
+        assertEquals("210000000003139471430009017", Payments.createQRReference("21000000000313947143000901"));
+    }
+
+    @Test
+    void createQRReferenceWithPadding() {
+        assertEquals("000000000000000000000000011", Payments.createQRReference(" 1 "));
+    }
+
+    @Test
+    void createQRReferenceWithLetters() {
+        assertThrows(IllegalArgumentException.class, () -> Payments.createQRReference("ABC"));
+    }
+
+    @Test
+    void createTooLongQRReference() {
+        assertThrows(IllegalArgumentException.class, () -> Payments.createQRReference("210000000003139471430009017"));
+    }
+
     @Test
     void formatQRReference() {
         assertEquals("12 34560 00000 00129 11462 90514",
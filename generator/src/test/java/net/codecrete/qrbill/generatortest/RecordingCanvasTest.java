@@ -0,0 +1,110 @@
+//
+// Swiss QR Bill Generator
+// Copyright (c) 2020 Manuel Bleichenbacher
+// Licensed under MIT License
+// https://opensource.org/licenses/MIT
+//
+package net.codecrete.qrbill.generatortest;
+
+import net.codecrete.qrbill.canvas.PDFCanvas;
+import net.codecrete.qrbill.canvas.RecordingCanvas;
+import net.codecrete.qrbill.canvas.SVGCanvas;
+import net.codecrete.qrbill.generator.Bill;
+import net.codecrete.qrbill.generator.GraphicsFormat;
+import net.codecrete.qrbill.generator.OutputSize;
+import net.codecrete.qrbill.generator.QRBill;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.text.PDFTextStripper;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Unit tests for recording and replaying drawing operations
+ */
+@DisplayName("Recording canvas")
+class RecordingCanvasTest {
+
+    @Test
+    void replayToSvg() throws IOException {
+        Bill bill = createBill();
+        RecordingCanvas.Recording recording = record(bill);
+        assertArrayEquals(QRBill.generate(bill), replayToSvg(recording));
+    }
+
+    @Test
+    void replayToPdfWithTemplates() throws IOException {
+        Bill bill = createBill();
+        RecordingCanvas.Recording recording = record(bill);
+
+        byte[] pdf;
+        try (PDFCanvas canvas = new PDFCanvas(QRBill.A4_PORTRAIT_WIDTH, QRBill.A4_PORTRAIT_HEIGHT)) {
+            canvas.setTemplateMode(true);
+            recording.replay(canvas);
+            canvas.addPage(QRBill.A4_PORTRAIT_WIDTH, QRBill.A4_PORTRAIT_HEIGHT);
+            recording.replay(canvas);
+            pdf = canvas.toByteArray();
+        }
+
+        try (PDDocument document = PDDocument.load(pdf)) {
+            assertEquals(2, document.getNumberOfPages());
+            PDFTextStripper stripper = new PDFTextStripper();
+            stripper.setStartPage(1);
+            stripper.setEndPage(1);
+            String page1 = stripper.getText(document);
+            stripper.setStartPage(2);
+            stripper.setEndPage(2);
+            assertEquals(page1, stripper.getText(document));
+        }
+    }
+
+    @Test
+    void serializeRecording() throws IOException, ClassNotFoundException {
+        Bill bill = createBill();
+        RecordingCanvas.Recording recording = record(bill);
+
+        ByteArrayOutputStream os = new ByteArrayOutputStream();
+        try (ObjectOutputStream oos = new ObjectOutputStream(os)) {
+            oos.writeObject(recording);
+        }
+        RecordingCanvas.Recording copy;
+        try (ObjectInputStream ois = new ObjectInputStream(new ByteArrayInputStream(os.toByteArray()))) {
+            copy = (RecordingCanvas.Recording) ois.readObject();
+        }
+
+        assertEquals(recording.getWidth(), copy.getWidth());
+        assertEquals(recording.getFontFamilyList(), copy.getFontFamilyList());
+        assertArrayEquals(replayToSvg(recording), replayToSvg(copy));
+    }
+
+    private static Bill createBill() {
+        Bill bill = SampleData.getExample3();
+        bill.getFormat().setOutputSize(OutputSize.A4_PORTRAIT_SHEET);
+        bill.getFormat().setGraphicsFormat(GraphicsFormat.SVG);
+        return bill;
+    }
+
+    private static RecordingCanvas.Recording record(Bill bill) throws IOException {
+        try (RecordingCanvas canvas = new RecordingCanvas(QRBill.A4_PORTRAIT_WIDTH, QRBill.A4_PORTRAIT_HEIGHT,
+                bill.getFormat().getFontFamily())) {
+            QRBill.draw(bill, canvas);
+            return canvas.getRecording();
+        }
+    }
+
+    private static byte[] replayToSvg(RecordingCanvas.Recording recording) throws IOException {
+        try (SVGCanvas canvas = new SVGCanvas(recording.getWidth(), recording.getHeight(),
+                recording.getFontFamilyList())) {
+            recording.replay(canvas);
+            return canvas.toByteArray();
+        }
+    }
+}
@@ -12,15 +12,31 @@ import net.codecrete.qrbill.generator.Bill;
 import net.codecrete.qrbill.generator.GraphicsFormat;
 import net.codecrete.qrbill.generator.OutputSize;
 import net.codecrete.qrbill.generator.QRBill;
+import net.codecrete.qrbill.generator.QRBillGenerationException;
+import net.codecrete.qrbill.generator.QRBillValidationError;
 import net.codecrete.qrbill.generator.SeparatorType;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
 
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.text.DecimalFormat;
+import java.text.DecimalFormatSymbols;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 /**
  * Unit tests with characters challening for SVG (XML relevant characters)
@@ -60,4 +76,95 @@ class SVGTest {
         }
         Files.delete(path);
     }
-}
\ No newline at end of file
+
+    @Test
+    void svgStreamedToOutputStream() throws IOException {
+        Bill bill = SampleData.getExample1();
+        bill.setUnstructuredMessage("<h1>&&\"ff\"'t'");
+        bill.getFormat().setOutputSize(OutputSize.QR_BILL_ONLY);
+        ByteArrayOutputStream os = new ByteArrayOutputStream();
+        try (SVGCanvas canvas = new SVGCanvas(os, QRBill.QR_BILL_WIDTH, QRBill.QR_BILL_HEIGHT,
+                bill.getFormat().getFontFamily())) {
+            QRBill.draw(bill, canvas);
+        }
+        FileComparison.assertFileContentsEqual(os.toByteArray(), "qrbill_sc1.svg");
+    }
+
+    @Test
+    void svgStreamedToWriter() throws IOException {
+        Bill bill = SampleData.getExample3();
+        bill.getFormat().setOutputSize(OutputSize.QR_CODE_ONLY);
+        StringWriter writer = new StringWriter();
+        try (SVGCanvas canvas = new SVGCanvas(writer, QRBill.QR_CODE_WIDTH, QRBill.QR_CODE_HEIGHT,
+                bill.getFormat().getFontFamily())) {
+            QRBill.draw(bill, canvas);
+        }
+        FileComparison.assertFileContentsEqual(writer.toString().getBytes(StandardCharsets.UTF_8), "qrcode_ex3.svg");
+    }
+
+    @Test
+    void generateToOutputStream() {
+        Bill bill = SampleData.getExample1();
+        bill.setUnstructuredMessage("<h1>&&\"ff\"'t'");
+        bill.getFormat().setOutputSize(OutputSize.QR_BILL_ONLY);
+        bill.getFormat().setGraphicsFormat(GraphicsFormat.SVG);
+        ByteArrayOutputStream os = new ByteArrayOutputStream();
+        QRBill.generate(bill, os);
+        FileComparison.assertFileContentsEqual(os.toByteArray(), "qrbill_sc1.svg");
+    }
+
+    @Test
+    void invalidBillWritesNothing() {
+        Bill bill = SampleData.getExample1();
+        bill.setAccount("CH0000000000000000000");
+        bill.getFormat().setGraphicsFormat(GraphicsFormat.SVG);
+        ByteArrayOutputStream os = new ByteArrayOutputStream();
+        assertThrows(QRBillValidationError.class, () -> QRBill.generate(bill, os));
+        assertEquals(0, os.size());
+    }
+
+    @Test
+    void streamedCanvasHasNoByteArray() throws IOException {
+        ByteArrayOutputStream os = new ByteArrayOutputStream();
+        SVGCanvas canvas = new SVGCanvas(os, QRBill.QR_CODE_WIDTH, QRBill.QR_CODE_HEIGHT, "Arial");
+        assertThrows(QRBillGenerationException.class, canvas::toByteArray);
+    }
+
+    @Test
+    void numberFormattingMatchesDecimalFormat() throws IOException {
+        DecimalFormat format = new DecimalFormat("#.###", new DecimalFormatSymbols(Locale.UK));
+        double[] values = { 0, -0.0, 0.5, -0.5, 1.0005, 0.0005, 0.0015, 0.0025, 123.4565, -987.6545,
+                25.4 / 72, 1e-9, -1e-9, 123456.789, 3e9, 0.2 * 25.4 / 72 };
+        for (double value : values) {
+            StringWriter writer = new StringWriter();
+            try (SVGCanvas canvas = new SVGCanvas(writer, 10, 10, "Arial")) {
+                writer.getBuffer().setLength(0);
+                canvas.putText("t", value, -value, 10, false);
+            }
+            double pt = value * 72 / 25.4;
+            String expected = "<text x=\"" + format.format(pt) + "\" y=\"" + format.format(pt) + "\" font-size=\"10\">t</text>\n";
+            assertTrue(writer.toString().startsWith(expected), "value " + value);
+        }
+    }
+
+    @Test
+    void concurrentGeneration() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<byte[]>> results = new ArrayList<>();
+            for (int i = 0; i < 16; i++) {
+                results.add(executor.submit(() -> {
+                    Bill bill = SampleData.getExample1();
+                    bill.setUnstructuredMessage("<h1>&&\"ff\"'t'");
+                    bill.getFormat().setOutputSize(OutputSize.QR_BILL_ONLY);
+                    bill.getFormat().setGraphicsFormat(GraphicsFormat.SVG);
+                    return QRBill.generate(bill);
+                }));
+            }
+            for (Future<byte[]> result : results)
+                FileComparison.assertFileContentsEqual(result.get(), "qrbill_sc1.svg");
+        } finally {
+            executor.shutdown();
+        }
+    }
+}
@@ -184,4 +184,25 @@ class SampleData {
         bill.setUnstructuredMessage("Auftrag 2830188 / Rechnung 2021007834");
         return bill;
     }
+
+    static Bill getExample(int example) {
+        switch (example) {
+            case 1:
+                return getExample1();
+            case 2:
+                return getExample2();
+            case 3:
+                return getExample3();
+            case 4:
+                return getExample4();
+            case 5:
+                return getExample5();
+            case 6:
+                return getExample6();
+            case 7:
+                return getExample7();
+            default:
+                throw new IllegalArgumentException("No such example: " + example);
+        }
+    }
 }
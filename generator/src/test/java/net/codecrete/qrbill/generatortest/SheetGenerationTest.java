@@ -0,0 +1,164 @@
+//
+// Swiss QR Bill Generator
+// Copyright (c) 2020 Manuel Bleichenbacher
+// Licensed under MIT License
+// https://opensource.org/licenses/MIT
+//
+package net.codecrete.qrbill.generatortest;
+
+import net.codecrete.qrbill.canvas.SVGCanvas;
+import net.codecrete.qrbill.generator.Bill;
+import net.codecrete.qrbill.generator.QRBill;
+import net.codecrete.qrbill.generator.QRBillGenerationException;
+import net.codecrete.qrbill.generator.QRBillValidationError;
+import net.codecrete.qrbill.generator.SheetLayout;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.text.PDFTextStripper;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Unit tests for generating pages with several QR bills
+ */
+@DisplayName("Sheet generation")
+class SheetGenerationTest {
+
+    @Test
+    void pdfPagesAreFilled() throws IOException {
+        List<Bill> bills = createBills(5);
+        ByteArrayOutputStream os = new ByteArrayOutputStream();
+        assertEquals(3, QRBill.generateSheets(bills.iterator(), SheetLayout.a4TwoSlips(), os));
+
+        try (PDDocument document = PDDocument.load(os.toByteArray())) {
+            assertEquals(3, document.getNumberOfPages());
+            PDFTextStripper stripper = new PDFTextStripper();
+            stripper.setStartPage(1);
+            stripper.setEndPage(1);
+            String text = stripper.getText(document);
+            assertTrue(text.contains("Invoice 0"));
+            assertTrue(text.contains("Invoice 1"));
+            assertFalse(text.contains("Invoice 2"));
+        }
+    }
+
+    @Test
+    void pngPagesAreStreamed() throws IOException {
+        Iterator<Bill> bills = createBills(3).iterator();
+        List<byte[]> pages = new ArrayList<>();
+        int pageCount = QRBill.generateSheets(bills, SheetLayout.a4TwoSlips(), 72, "Arial",
+                (pageIndex, data) -> {
+                    assertEquals(pages.size(), pageIndex);
+                    pages.add(data);
+                });
+
+        assertEquals(2, pageCount);
+        assertEquals(2, pages.size());
+        BufferedImage image = ImageIO.read(new ByteArrayInputStream(pages.get(0)));
+        assertEquals(Math.round(QRBill.A4_PORTRAIT_WIDTH / 25.4 * 72), image.getWidth());
+    }
+
+    @Test
+    void pngPagesDoNotRetainPreviousPage() {
+        List<Bill> bills = createBills(3);
+        List<byte[]> pages = new ArrayList<>();
+        QRBill.generateSheets(bills.iterator(), SheetLayout.a4TwoSlips(), 72, "Arial",
+                (pageIndex, data) -> pages.add(data));
+
+        List<byte[]> lastPage = new ArrayList<>();
+        QRBill.generateSheets(bills.subList(2, 3).iterator(), SheetLayout.a4TwoSlips(), 72, "Arial",
+                (pageIndex, data) -> lastPage.add(data));
+        assertArrayEquals(lastPage.get(0), pages.get(1));
+    }
+
+    @Test
+    void slipsAreShiftedByOrigin() throws IOException {
+        SheetLayout layout = new SheetLayout(QRBill.QR_BILL_WIDTH, 2 * QRBill.QR_BILL_HEIGHT)
+                .addSlip(0, 0)
+                .addSlip(0, QRBill.QR_BILL_HEIGHT);
+        List<Bill> bills = Arrays.asList(SampleData.getExample3(), SampleData.getExample3());
+        List<byte[]> pages = new ArrayList<>();
+        // at 254 dpi, a slip is exactly 1050 pixels high; the separator line at the
+        // top of each slip bleeds into the neighbouring rows and is excluded
+        QRBill.generateSheets(bills.iterator(), layout, 254, "Arial", (pageIndex, data) -> pages.add(data));
+
+        BufferedImage image = ImageIO.read(new ByteArrayInputStream(pages.get(0)));
+        assertEquals(2100, image.getHeight());
+        int[] upper = image.getRGB(0, 10, image.getWidth(), 1030, null, 0, image.getWidth());
+        int[] lower = image.getRGB(0, 1060, image.getWidth(), 1030, null, 0, image.getWidth());
+        assertArrayEquals(upper, lower);
+    }
+
+    @Test
+    void singleSlipAtOriginMatchesBill() throws IOException {
+        Bill bill = SampleData.getExample1();
+        SheetLayout layout = new SheetLayout(QRBill.QR_BILL_WIDTH, QRBill.QR_BILL_HEIGHT).addSlip(0, 0);
+
+        byte[] sheet;
+        try (SVGCanvas canvas = new SVGCanvas(QRBill.QR_BILL_WIDTH, QRBill.QR_BILL_HEIGHT, "Arial")) {
+            assertEquals(1, QRBill.drawSheet(Collections.singletonList(bill).iterator(), layout, canvas));
+            sheet = canvas.toByteArray();
+        }
+        byte[] single;
+        try (SVGCanvas canvas = new SVGCanvas(QRBill.QR_BILL_WIDTH, QRBill.QR_BILL_HEIGHT, "Arial")) {
+            QRBill.draw(bill, canvas);
+            single = canvas.toByteArray();
+        }
+        assertArrayEquals(single, sheet);
+    }
+
+    @Test
+    void drawSheetStopsWhenFull() throws IOException {
+        Iterator<Bill> bills = createBills(3).iterator();
+        try (SVGCanvas canvas = new SVGCanvas(QRBill.A4_PORTRAIT_WIDTH, QRBill.A4_PORTRAIT_HEIGHT, "Arial")) {
+            assertEquals(2, QRBill.drawSheet(bills, SheetLayout.a4TwoSlips(), canvas));
+        }
+        assertTrue(bills.hasNext());
+    }
+
+    @Test
+    void invalidBillThrowsValidationError() {
+        List<Bill> bills = createBills(3);
+        bills.get(2).setAccount("CH0000000000000000000");
+        ByteArrayOutputStream os = new ByteArrayOutputStream();
+        assertThrows(QRBillValidationError.class,
+                () -> QRBill.generateSheets(bills.iterator(), SheetLayout.a4TwoSlips(), os));
+    }
+
+    @Test
+    void invalidLayouts() {
+        ByteArrayOutputStream os = new ByteArrayOutputStream();
+        SheetLayout emptyLayout = new SheetLayout(QRBill.A4_PORTRAIT_WIDTH, QRBill.A4_PORTRAIT_HEIGHT);
+        assertThrows(IllegalArgumentException.class,
+                () -> QRBill.generateSheets(createBills(1).iterator(), emptyLayout, os));
+        assertThrows(IllegalArgumentException.class, () -> emptyLayout.addSlip(0, 200));
+        assertThrows(QRBillGenerationException.class,
+                () -> QRBill.generateSheets(Collections.emptyIterator(), SheetLayout.a4TwoSlips(), os));
+    }
+
+    private static List<Bill> createBills(int count) {
+        List<Bill> bills = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            Bill bill = SampleData.getExample3();
+            bill.setUnstructuredMessage("Invoice " + i);
+            bills.add(bill);
+        }
+        return bills;
+    }
+}
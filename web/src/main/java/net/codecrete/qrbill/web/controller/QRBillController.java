@@ -14,6 +14,7 @@ import net.codecrete.qrbill.generator.Language;
 import net.codecrete.qrbill.generator.MultilingualText;
 import net.codecrete.qrbill.generator.OutputSize;
 import net.codecrete.qrbill.generator.QRBill;
+import net.codecrete.qrbill.generator.QRBillGenerationException;
 import net.codecrete.qrbill.generator.QRBillValidationError;
 import net.codecrete.qrbill.generator.SeparatorType;
 import net.codecrete.qrbill.generator.ValidationResult;
@@ -26,12 +27,15 @@ import net.codecrete.qrbill.web.model.ValidationResponse;
 import org.springframework.core.io.ByteArrayResource;
 import org.springframework.core.io.Resource;
 import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.RestController;
 import org.springframework.web.context.request.NativeWebRequest;
 
+import javax.servlet.http.HttpServletResponse;
+
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
@@ -136,9 +140,7 @@ public class QRBillController implements BillApi {
         Bill bill = QrBillDTOConverter.fromDtoQrBill(qrBill);
         setFormatDefaults(bill);
         updateForAdviceOnly(bill);
-        byte[] result = QRBill.generate(bill);
-        MediaType contentType = getContentType(bill.getFormat().getGraphicsFormat());
-        return ResponseEntity.ok().contentType(contentType).body(new ByteArrayResource(result));
+        return streamBill(bill, null);
     }
 
     private static CacheControl IMAGE_CACHE_CONTROL = CacheControl.maxAge(10, TimeUnit.DAYS);
@@ -168,13 +170,44 @@ public class QRBillController implements BillApi {
         if (graphicsFormat != null)
             bill.getFormat().setGraphicsFormat(getGraphicsFormat(graphicsFormat));
         updateForAdviceOnly(bill);
+        return streamBill(bill, IMAGE_CACHE_CONTROL);
+    }
 
-        byte[] result = QRBill.generate(bill);
+    /**
+     * Generates the QR bill and writes it directly to the servlet response.
+     * <p>
+     * If the servlet response is not available, the generated bill is returned
+     * as the response body.
+     * </p>
+     *
+     * @param bill         the bill data
+     * @param cacheControl the cache control header (or {@code null})
+     * @return {@code null} if the bill has been written to the response, the response otherwise
+     */
+    private ResponseEntity<Resource> streamBill(Bill bill, CacheControl cacheControl) {
         MediaType contentType = getContentType(bill.getFormat().getGraphicsFormat());
-        return ResponseEntity.ok()
-                .contentType(contentType)
-                .cacheControl(IMAGE_CACHE_CONTROL)
-                .body(new ByteArrayResource(result));
+        HttpServletResponse response = request.getNativeResponse(HttpServletResponse.class);
+        if (response == null) {
+            byte[] result = QRBill.generate(bill);
+            ResponseEntity.BodyBuilder builder = ResponseEntity.ok().contentType(contentType);
+            if (cacheControl != null)
+                builder.cacheControl(cacheControl);
+            return builder.body(new ByteArrayResource(result));
+        }
+
+        response.setContentType(contentType.toString());
+        if (cacheControl != null)
+            response.setHeader(HttpHeaders.CACHE_CONTROL, cacheControl.getHeaderValue());
+        try {
+            QRBill.generate(bill, response.getOutputStream());
+        } catch (QRBillValidationError e) {
+            // nothing has been written yet; the exception handler creates a new response
+            response.reset();
+            throw e;
+        } catch (IOException e) {
+            throw new QRBillGenerationException(e);
+        }
+        return null;
     }
 
     private static OutputSize getOutputSize(String value) {